@@ -0,0 +1,180 @@
+package com.forensic.agent;
+
+import android.util.AtomicFile;
+import android.util.JsonReader;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+/**
+ * Streams a zip of manifest-listed artifacts, with {@code manifest.json} as its first entry.
+ *
+ * The archive is produced front to back into any output stream, normally the write end of
+ * a pipe, so nothing is staged on disk and the reader receives compressed bytes while later
+ * files are still being read. Entries keep their paths relative to {@code extracted/}
+ * (delta segments included) so every entry can be checked against the bundled manifest.
+ * Selecting {@code mms.json} also selects the attachment blobs its parts reference.
+ * Each file is re-hashed as it is copied, and a file that no longer matches the manifest
+ * fails the bundle instead of being shipped.
+ */
+public class ArtifactBundle {
+    private static final int BUFFER_SIZE = 64 * 1024;
+    /** The artifact whose parts reference blobs by SHA-256. */
+    private static final String MMS = "mms.json";
+
+    private final File dir;
+    private final List<ArtifactManifest.Entry> entries;
+    private final int level;
+
+    private ArtifactBundle(File dir, List<ArtifactManifest.Entry> entries, int level) {
+        this.dir = dir;
+        this.entries = entries;
+        this.level = level;
+    }
+
+    /**
+     * Bundle of the artifacts named in {@code names} (for example {@code sms.json}, which also
+     * selects its delta segments), or of every manifest entry when {@code names} is empty.
+     *
+     * @param level deflate level, 0 (stored as-is) to 9
+     * @throws FileNotFoundException if a name, or a blob referenced by {@code mms.json}, is not
+     *         in the manifest
+     */
+    public static ArtifactBundle of(File dir, List<String> names, int level) throws FileNotFoundException {
+        if (level < 0 || level > 9) throw new IllegalArgumentException("Invalid level: " + level);
+        ArtifactManifest manifest = ArtifactManifest.load(dir, false);
+        List<ArtifactManifest.Entry> all = manifest.getEntries();
+        if (names.isEmpty()) return new ArtifactBundle(dir, all, level);
+
+        // Insertion-ordered and without repeats, however the names and blobs overlap
+        Set<ArtifactManifest.Entry> selected = new LinkedHashSet<>();
+        for (String name : names) {
+            String segments = manifest.relativePath(JsonSegments.dirFor(new File(dir, name))) + "/";
+            boolean found = false;
+            for (ArtifactManifest.Entry entry : all) {
+                if (entry.file.equals(name) || entry.file.startsWith(segments)) {
+                    selected.add(entry);
+                    found = true;
+                }
+            }
+            if (!found) throw new FileNotFoundException(name + " is not in the manifest");
+        }
+
+        Set<String> blobs = new TreeSet<>();
+        String mmsSegments = manifest.relativePath(JsonSegments.dirFor(new File(dir, MMS))) + "/";
+        for (ArtifactManifest.Entry entry : selected) {
+            if (entry.file.equals(MMS) || entry.file.startsWith(mmsSegments)) {
+                collectBlobs(new File(dir, entry.file), blobs);
+            }
+        }
+        if (!blobs.isEmpty()) {
+            Map<String, ArtifactManifest.Entry> byFile = new HashMap<>();
+            for (ArtifactManifest.Entry entry : all) byFile.put(entry.file, entry);
+            BlobStore store = new BlobStore(dir);
+            for (String sha256 : blobs) {
+                File blob = store.file(sha256);
+                ArtifactManifest.Entry entry = blob != null ? byFile.get(manifest.relativePath(blob)) : null;
+                if (entry == null) throw new FileNotFoundException("Blob " + sha256 + " is not in the manifest");
+                selected.add(entry);
+            }
+        }
+        return new ArtifactBundle(dir, new ArrayList<>(selected), level);
+    }
+
+    /** Adds the {@code sha256} of every part of the MMS records in {@code file} to {@code blobs}. */
+    private static void collectBlobs(File file, Set<String> blobs) throws FileNotFoundException {
+        try (JsonReader json = new JsonReader(new InputStreamReader(
+                new BufferedInputStream(new FileInputStream(file), BUFFER_SIZE), StandardCharsets.UTF_8))) {
+            json.beginArray();
+            while (json.hasNext()) {
+                json.beginObject();
+                while (json.hasNext()) {
+                    if (!"parts".equals(json.nextName())) {
+                        json.skipValue();
+                        continue;
+                    }
+                    json.beginArray();
+                    while (json.hasNext()) {
+                        json.beginObject();
+                        while (json.hasNext()) {
+                            if ("sha256".equals(json.nextName())) blobs.add(json.nextString());
+                            else json.skipValue();
+                        }
+                        json.endObject();
+                    }
+                    json.endArray();
+                }
+                json.endObject();
+            }
+            json.endArray();
+        } catch (FileNotFoundException e) {
+            throw e;
+        } catch (IOException | RuntimeException e) {
+            throw new FileNotFoundException("Cannot read attachments of " + file.getName() + ": " + e.getMessage());
+        }
+    }
+
+    public List<ArtifactManifest.Entry> getEntries() {
+        return entries;
+    }
+
+    /**
+     * Writes the whole archive to {@code out} and flushes it. {@code out} is left open, so the
+     * caller decides how to close it, e.g. with an error status on failure.
+     */
+    public void writeTo(OutputStream out) throws IOException {
+        byte[] buffer = new byte[BUFFER_SIZE];
+        ZipOutputStream zip = new ZipOutputStream(new BufferedOutputStream(out, BUFFER_SIZE));
+        zip.setLevel(level);
+
+        File manifestFile = new File(dir, ArtifactManifest.FILE_NAME);
+        ZipEntry manifestEntry = new ZipEntry(ArtifactManifest.FILE_NAME);
+        manifestEntry.setTime(manifestFile.lastModified());
+        zip.putNextEntry(manifestEntry);
+        zip.write(new AtomicFile(manifestFile).readFully());
+        zip.closeEntry();
+
+        for (ArtifactManifest.Entry entry : entries) {
+            File file = new File(dir, entry.file);
+            ZipEntry zipEntry = new ZipEntry(entry.file);
+            zipEntry.setTime(file.lastModified());
+            zip.putNextEntry(zipEntry);
+            MessageDigest sha256 = HashingOutputStream.digest("SHA-256");
+            long size = 0;
+            try (InputStream in = new FileInputStream(file)) {
+                int n;
+                while ((n = in.read(buffer)) > 0) {
+                    sha256.update(buffer, 0, n);
+                    zip.write(buffer, 0, n);
+                    size += n;
+                }
+            }
+            String actual = HashingOutputStream.hex(sha256.digest());
+            if (size != entry.size || !actual.equals(entry.sha256)) {
+                throw new IOException(entry.file + " does not match the manifest: expected " + entry.sha256
+                        + " (" + entry.size + " bytes), read " + actual + " (" + size + " bytes)");
+            }
+            zip.closeEntry();
+        }
+        zip.finish();
+        zip.flush();
+    }
+}
@@ -0,0 +1,151 @@
+package com.forensic.agent;
+
+import android.os.Build;
+import android.util.AtomicFile;
+import android.util.JsonWriter;
+import android.util.Log;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Chain-of-custody manifest for the extraction directory ({@code extracted/manifest.json}).
+ *
+ * Each artifact records its path relative to the directory, size, row count, SHA-256
+ * (and optionally MD5) digest and the time span it was written in. Digests are taken
+ * inline by {@link HashingOutputStream} while the artifact streams to disk. Entries from
+ * earlier runs are kept as long as their files still exist, so incremental segments
+ * accumulate in the same manifest.
+ */
+public class ArtifactManifest {
+    private static final String TAG = "ForensicAgent";
+    public static final String FILE_NAME = "manifest.json";
+
+    /** One artifact file as recorded in the manifest. */
+    public static class Entry {
+        public final String file;
+        public final long size;
+        public final long rows;
+        public final String sha256;
+        public final String md5;
+        public final long started;
+        public final long finished;
+
+        public Entry(String file, long size, long rows, String sha256, String md5, long started, long finished) {
+            this.file = file;
+            this.size = size;
+            this.rows = rows;
+            this.sha256 = sha256;
+            this.md5 = md5;
+            this.started = started;
+            this.finished = finished;
+        }
+    }
+
+    private final File dir;
+    private final boolean md5;
+    private final Map<String, Entry> entries = new TreeMap<>();
+
+    private ArtifactManifest(File dir, boolean md5) {
+        this.dir = dir;
+        this.md5 = md5;
+    }
+
+    /** Reads {@code dir/manifest.json} if present; a missing or corrupt file yields an empty manifest. */
+    public static ArtifactManifest load(File dir, boolean md5) {
+        ArtifactManifest manifest = new ArtifactManifest(dir, md5);
+        try {
+            AtomicFile file = new AtomicFile(new File(dir, FILE_NAME));
+            JSONObject root = new JSONObject(new String(file.readFully(), StandardCharsets.UTF_8));
+            JSONArray artifacts = root.getJSONArray("artifacts");
+            for (int i = 0; i < artifacts.length(); i++) {
+                JSONObject a = artifacts.getJSONObject(i);
+                manifest.entries.put(a.getString("file"), new Entry(a.getString("file"), a.getLong("size"),
+                        a.optLong("rows", -1), a.getString("sha256"), a.optString("md5", null),
+                        a.optLong("started"), a.optLong("finished")));
+            }
+        } catch (IOException | JSONException e) {
+            // No usable manifest yet
+        }
+        return manifest;
+    }
+
+    public boolean isMd5() {
+        return md5;
+    }
+
+    /** Path of {@code file} relative to the manifest directory, using '/' separators. */
+    public String relativePath(File file) {
+        String root = dir.getAbsolutePath() + File.separator;
+        String path = file.getAbsolutePath();
+        return (path.startsWith(root) ? path.substring(root.length()) : file.getName()).replace(File.separatorChar, '/');
+    }
+
+    public synchronized void record(File file, long size, long rows, String sha256, String md5,
+                                    long started, long finished) {
+        String path = relativePath(file);
+        Entry entry = new Entry(path, size, rows, sha256, md5, started, finished);
+        entries.put(path, entry);
+        FileIndex.get(dir).recorded(file, entry);
+        Log.d(TAG, "Manifest: " + path + " " + size + " bytes, sha256=" + sha256);
+    }
+
+    /** Whether {@code file} has an entry, recorded in this run or loaded. */
+    public synchronized boolean contains(File file) {
+        return entries.containsKey(relativePath(file));
+    }
+
+    public synchronized List<Entry> getEntries() {
+        return new ArrayList<>(entries.values());
+    }
+
+    /** Drops entries whose files are gone and atomically rewrites manifest.json. */
+    public synchronized void save() throws IOException {
+        for (Iterator<Entry> it = entries.values().iterator(); it.hasNext(); ) {
+            if (!new File(dir, it.next().file).exists()) it.remove();
+        }
+
+        AtomicFile file = new AtomicFile(new File(dir, FILE_NAME));
+        FileOutputStream out = file.startWrite();
+        try {
+            JsonWriter json = new JsonWriter(new OutputStreamWriter(out, StandardCharsets.UTF_8));
+            json.setIndent("  ");
+            json.beginObject();
+            json.name("generated").value(System.currentTimeMillis());
+            json.name("device").value(Build.MANUFACTURER + " " + Build.MODEL);
+            json.name("artifacts").beginArray();
+            for (Entry e : entries.values()) {
+                json.beginObject();
+                json.name("file").value(e.file);
+                json.name("size").value(e.size);
+                json.name("rows").value(e.rows);
+                json.name("sha256").value(e.sha256);
+                if (e.md5 != null) json.name("md5").value(e.md5);
+                json.name("started").value(e.started);
+                json.name("finished").value(e.finished);
+                json.endObject();
+            }
+            json.endArray();
+            json.endObject();
+            json.flush();
+            file.finishWrite(out);
+        } catch (IOException e) {
+            file.failWrite(out);
+            throw e;
+        }
+        FileIndex.get(dir).saved();
+        Log.d(TAG, "Manifest saved with " + entries.size() + " artifacts");
+    }
+}
@@ -0,0 +1,228 @@
+package com.forensic.agent;
+
+import android.database.Cursor;
+import android.database.CursorWindow;
+import android.database.DatabaseUtils;
+import android.net.Uri;
+import android.os.Bundle;
+import android.util.JsonWriter;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+
+/**
+ * Several {@link DataProvider} queries answered in one {@code call()} round trip.
+ *
+ * The batch is a JSON array of requests, each naming an endpoint path ({@code list},
+ * {@code sms}, {@code store/calls}, {@code timeline}...) with an optional projection,
+ * selection, sort order, paging and extra query parameters. Results come back either as
+ * one {@link CursorWindow} per request in the reply {@link Bundle}, which crosses binder
+ * as shared memory rather than being copied, or as a single JSON document streamed
+ * through a pipe when the results are too large for windows.
+ */
+public class BatchQuery {
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    /** {@code call()} method name. */
+    public static final String METHOD = "batch";
+    /** Extra selecting the reply format: {@link #MODE_WINDOW} (default) or {@link #MODE_PIPE}. */
+    public static final String EXTRA_MODE = "mode";
+    public static final String MODE_WINDOW = "window";
+    public static final String MODE_PIPE = "pipe";
+    /** Reply key of the pipe's read end in {@link #MODE_PIPE}. */
+    public static final String KEY_PAYLOAD = "payload";
+    /** Reply key listing the request keys, in request order. */
+    public static final String KEY_KEYS = "keys";
+
+    /** Per-request reply keys, each prefixed with the request key and a dot. */
+    public static final String COLUMNS = "columns";
+    public static final String WINDOW = "window";
+    public static final String COUNT = "count";
+    public static final String ROWS = "rows";
+    public static final String ERROR = "error";
+
+    /** Opens the cursor for one request; {@link DataProvider} resolves it like a normal query. */
+    public interface Opener {
+        Cursor open(Request request);
+    }
+
+    /** One dataset of a batch. */
+    public static class Request {
+        /** Key the result is returned under; defaults to the endpoint path. */
+        public final String key;
+        public final String path;
+        public final String[] projection;
+        public final String selection;
+        public final String[] selectionArgs;
+        public final String sortOrder;
+        private final JSONObject params;
+
+        Request(JSONObject json) {
+            path = json.optString("name", null);
+            if (path == null || path.isEmpty()) throw new IllegalArgumentException("Batch request without a name: " + json);
+            key = json.optString("key", path);
+            projection = strings(json.optJSONArray("projection"));
+            selection = json.optString("selection", null);
+            selectionArgs = strings(json.optJSONArray("args"));
+            sortOrder = json.optString("sort", null);
+            JSONObject p = json.optJSONObject("params");
+            params = p != null ? p : new JSONObject();
+            try {
+                if (json.has("limit")) params.put("limit", json.getLong("limit"));
+                if (json.has("offset")) params.put("offset", json.getLong("offset"));
+            } catch (JSONException e) {
+                throw new IllegalArgumentException("Invalid paging in batch request " + key + ": " + e.getMessage());
+            }
+        }
+
+        /** Provider URI of the endpoint with {@code limit}, {@code offset} and the extra parameters. */
+        public Uri uri() {
+            Uri.Builder builder = Uri.parse("content://" + DataProvider.AUTHORITY + "/" + path).buildUpon();
+            Iterator<String> names = params.keys();
+            while (names.hasNext()) {
+                String name = names.next();
+                builder.appendQueryParameter(name, params.optString(name));
+            }
+            return builder.build();
+        }
+
+        private static String[] strings(JSONArray array) {
+            if (array == null) return null;
+            String[] values = new String[array.length()];
+            for (int i = 0; i < values.length; i++) values[i] = array.optString(i);
+            return values;
+        }
+    }
+
+    private final List<Request> requests;
+
+    private BatchQuery(List<Request> requests) {
+        this.requests = requests;
+    }
+
+    /**
+     * Parses a batch such as
+     * {@code [{"name":"list"},{"name":"sms","projection":["address","date"],"limit":500},
+     * {"key":"week","name":"timeline","params":{"since":"1600000000000"}}]}.
+     */
+    public static BatchQuery parse(String json) {
+        if (json == null) throw new IllegalArgumentException("batch requires a JSON array of requests as arg");
+        List<Request> requests = new ArrayList<>();
+        try {
+            JSONArray array = new JSONArray(json);
+            for (int i = 0; i < array.length(); i++) requests.add(new Request(array.getJSONObject(i)));
+        } catch (JSONException e) {
+            throw new IllegalArgumentException("Invalid batch: " + e.getMessage());
+        }
+        List<String> keys = new ArrayList<>();
+        for (Request r : requests) {
+            if (keys.contains(r.key)) throw new IllegalArgumentException("Duplicate batch key " + r.key);
+            keys.add(r.key);
+        }
+        return new BatchQuery(requests);
+    }
+
+    public List<Request> getRequests() {
+        return requests;
+    }
+
+    /**
+     * Runs every request into its own window. A window holds as many rows as fit its
+     * default size; {@code <key>.rows} below {@code <key>.count} means the result was cut
+     * short and the rest can be fetched with an offset or through {@link #MODE_PIPE}. A
+     * failing request is reported under {@code <key>.error} without failing the batch.
+     */
+    public Bundle toWindows(Opener opener) {
+        Bundle reply = new Bundle();
+        ArrayList<String> keys = new ArrayList<>();
+        for (Request r : requests) {
+            keys.add(r.key);
+            try (Cursor c = opener.open(r)) {
+                if (c == null) {
+                    reply.putString(r.key + "." + ERROR, "No such endpoint: " + r.path);
+                    continue;
+                }
+                // Released by its finalizer once the reply has been parceled
+                CursorWindow window = new CursorWindow(r.key);
+                DatabaseUtils.cursorFillWindow(c, 0, window);
+                reply.putStringArray(r.key + "." + COLUMNS, c.getColumnNames());
+                reply.putParcelable(r.key + "." + WINDOW, window);
+                reply.putInt(r.key + "." + COUNT, c.getCount());
+                reply.putInt(r.key + "." + ROWS, window.getNumRows());
+            } catch (RuntimeException e) {
+                reply.putString(r.key + "." + ERROR, String.valueOf(e.getMessage()));
+            }
+        }
+        reply.putStringArrayList(KEY_KEYS, keys);
+        return reply;
+    }
+
+    /**
+     * Streams every request's result as one JSON object keyed by request key:
+     * {@code {"sms": {"columns": [...], "count": n, "rows": [[...], ...]}, "x": {"error": "..."}}}.
+     * Cursors are opened one at a time and rows written as they are read, so any result
+     * size streams in constant memory. BLOB cells are written as null.
+     */
+    public void writeJson(Opener opener, OutputStream out) throws IOException {
+        JsonWriter json = new JsonWriter(new BufferedWriter(new OutputStreamWriter(out, StandardCharsets.UTF_8), BUFFER_SIZE));
+        json.beginObject();
+        for (Request r : requests) {
+            json.name(r.key).beginObject();
+            Cursor c;
+            try {
+                c = opener.open(r);
+            } catch (RuntimeException e) {
+                json.name(ERROR).value(String.valueOf(e.getMessage())).endObject();
+                continue;
+            }
+            if (c == null) {
+                json.name(ERROR).value("No such endpoint: " + r.path).endObject();
+                continue;
+            }
+            try {
+                int columns = c.getColumnCount();
+                json.name(COLUMNS).beginArray();
+                for (String name : c.getColumnNames()) json.value(name);
+                json.endArray();
+                json.name(COUNT).value(c.getCount());
+                json.name(ROWS).beginArray();
+                while (c.moveToNext()) {
+                    json.beginArray();
+                    for (int i = 0; i < columns; i++) {
+                        switch (c.getType(i)) {
+                            case Cursor.FIELD_TYPE_INTEGER:
+                                json.value(c.getLong(i));
+                                break;
+                            case Cursor.FIELD_TYPE_FLOAT:
+                                json.value(c.getDouble(i));
+                                break;
+                            case Cursor.FIELD_TYPE_STRING:
+                                json.value(c.getString(i));
+                                break;
+                            default:
+                                json.nullValue();
+                                break;
+                        }
+                    }
+                    json.endArray();
+                }
+                json.endArray();
+            } finally {
+                c.close();
+            }
+            json.endObject();
+        }
+        json.endObject();
+        json.flush();
+    }
+}
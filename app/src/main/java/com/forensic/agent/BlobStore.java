@@ -0,0 +1,138 @@
+package com.forensic.agent;
+
+import android.os.ParcelFileDescriptor;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.security.MessageDigest;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Content-addressed store for attachment blobs under {@code extracted/blobs/ab/<sha256>}.
+ *
+ * Blobs move with channel transfers and are hashed through read-only maps, so no blob is
+ * ever buffered in the heap. A source backed by a regular file is hashed in place first:
+ * when that hash is already stored, nothing is copied, so an attachment forwarded across
+ * many threads is written once, and a new one is copied once and named by that hash. A
+ * pipe, or a file whose size changed during the copy, is named by the hash of what
+ * actually landed on disk.
+ *
+ * With a manifest, every blob handed to {@link #put} is recorded in it under
+ * {@code blobs/ab/<sha256>} unless it already is, so blobs left by an interrupted run are
+ * covered too.
+ */
+public class BlobStore {
+    public static final String DIR_NAME = "blobs";
+    private static final long TRANSFER_CHUNK = 8L * 1024 * 1024;
+
+    /** A stored blob; {@code written} is false when an identical blob was already present. */
+    public static class Blob {
+        public final String sha256;
+        public final long size;
+        public final boolean written;
+
+        Blob(String sha256, long size, boolean written) {
+            this.sha256 = sha256;
+            this.size = size;
+            this.written = written;
+        }
+    }
+
+    private final File dir;
+    private final ArtifactManifest manifest;
+    private final AtomicInteger tempId = new AtomicInteger();
+
+    public BlobStore(File extractedDir) {
+        this(extractedDir, null);
+    }
+
+    public BlobStore(File extractedDir, ArtifactManifest manifest) {
+        dir = new File(extractedDir, DIR_NAME);
+        this.manifest = manifest;
+    }
+
+    /** Location of the blob with this SHA-256, or null if {@code sha256} is not a 64-digit hex string. */
+    public File file(String sha256) {
+        if (sha256 == null || !sha256.matches("[0-9a-f]{64}")) return null;
+        return new File(new File(dir, sha256.substring(0, 2)), sha256);
+    }
+
+    /** Stores the content of {@code source}, which is closed afterwards. */
+    public Blob put(ParcelFileDescriptor source) throws IOException {
+        long started = System.currentTimeMillis();
+        long size = source.getStatSize();
+        try (FileInputStream in = new ParcelFileDescriptor.AutoCloseInputStream(source)) {
+            FileChannel channel = in.getChannel();
+            if (size >= 0) {
+                MessageDigest md5 = md5();
+                String known = sha256(channel, size, md5);
+                File existing = file(known);
+                if (existing.exists() && existing.length() == size) {
+                    record(existing, size, known, md5, started);
+                    return new Blob(known, size, false);
+                }
+                channel.position(0);
+                return copy(channel, size, known, md5, started);
+            }
+            return copy(channel, -1, null, null, started);
+        }
+    }
+
+    /**
+     * Copies {@code source} to a temporary file and moves it into place. A copy as long as
+     * {@code hashedSize} is named by the hash already computed in place; anything else, a
+     * pipe or a file that changed size meanwhile, is hashed again as it landed.
+     */
+    private Blob copy(FileChannel source, long hashedSize, String hashed, MessageDigest hashedMd5,
+                      long started) throws IOException {
+        if (!dir.exists() && !dir.mkdirs() && !dir.isDirectory()) throw new IOException("Cannot create " + dir);
+        File temp = new File(dir, ".tmp-" + tempId.incrementAndGet() + "-" + Thread.currentThread().getId());
+        try {
+            long size = 0;
+            try (FileOutputStream out = new FileOutputStream(temp)) {
+                FileChannel target = out.getChannel();
+                long n;
+                while ((n = target.transferFrom(source, size, TRANSFER_CHUNK)) > 0) size += n;
+                out.getFD().sync();
+            }
+            String sha256 = hashed;
+            MessageDigest md5 = hashedMd5;
+            if (hashedSize < 0 || size != hashedSize) {
+                md5 = md5();
+                try (FileInputStream in = new FileInputStream(temp)) {
+                    sha256 = sha256(in.getChannel(), size, md5);
+                }
+            }
+            File target = file(sha256);
+            boolean written = !target.exists();
+            if (written) {
+                File parent = target.getParentFile();
+                if (!parent.exists() && !parent.mkdirs() && !parent.isDirectory()) throw new IOException("Cannot create " + parent);
+                if (!temp.renameTo(target)) throw new IOException("Cannot move blob to " + target);
+            }
+            record(target, size, sha256, md5, started);
+            return new Blob(sha256, size, written);
+        } finally {
+            if (temp.exists()) temp.delete();
+        }
+    }
+
+    private MessageDigest md5() {
+        return manifest != null && manifest.isMd5() ? HashingOutputStream.digest("MD5") : null;
+    }
+
+    private void record(File blob, long size, String sha256, MessageDigest md5, long started) {
+        if (manifest == null || manifest.contains(blob)) return;
+        manifest.record(blob, size, -1, sha256, md5 != null ? HashingOutputStream.hex(md5.digest()) : null,
+                started, System.currentTimeMillis());
+    }
+
+    private static String sha256(FileChannel channel, long size, MessageDigest md5) throws IOException {
+        MessageDigest sha256 = HashingOutputStream.digest("SHA-256");
+        ManifestVerifier.digest(channel, size, sha256, md5);
+        return HashingOutputStream.hex(sha256.digest());
+    }
+}
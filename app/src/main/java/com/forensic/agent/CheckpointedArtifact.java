@@ -0,0 +1,375 @@
+package com.forensic.agent;
+
+import android.util.AtomicFile;
+import android.util.Log;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * A JSON array artifact written as fixed-size committed segments, so an extraction killed
+ * part-way can pick up where it stopped.
+ *
+ * Segments go to {@code extracted/partial/<name>/000000.json, 000001.json, ...}. Once a
+ * segment holds {@code segmentRows} records the extractor calls {@link #checkpoint}: the
+ * segment is closed and synced, then {@code checkpoint.json} records how many segments are
+ * committed and the last {@code _ID} they contain, atomically. A later run opened with
+ * {@code resume} and the same target and variant continues after that id, overwriting the
+ * segment that was in flight. {@link #finish()} stitches the segments into the target with
+ * {@link JsonSegments#concat}, so the artifact and its manifest entry are byte-for-byte what
+ * one uninterrupted writer would have produced. A run that never needed more than one
+ * segment simply renames it.
+ *
+ * A run read as {@code _ID} ranges in parallel ({@link IdPartitions}) calls
+ * {@link #partition} instead: each range writes its own segment, and once a range and all
+ * ranges before it are complete they are committed and checkpointed as one prefix.
+ */
+public class CheckpointedArtifact implements Closeable {
+    private static final String TAG = "ForensicAgent";
+    public static final String DIR_NAME = "partial";
+    public static final String CHECKPOINT_FILE = "checkpoint.json";
+
+    private final File target;
+    private final ArtifactManifest manifest;
+    private final String variant;
+    private final int segmentRows;
+    private final File dir;
+    private final AtomicFile checkpointFile;
+
+    private final int resumedSegments;
+    private final int resumedRows;
+    private final long resumedBytes;
+    private final long lastId;
+    private final long maxDate;
+    private final long started;
+
+    private int segments;
+    private int committedRows;
+    private long committedBytes;
+    private JsonArtifactWriter current;
+    private JsonArtifactWriter lastSegment;
+    private long writeNanos;
+    private long fsyncNanos;
+    private boolean finished;
+
+    private JsonArtifactWriter[] partitions;
+    private boolean[] partitionDone;
+    private long[] partitionLastId;
+    private long[] partitionMaxDate;
+    private int partitionBase;
+    private int partitionsCommitted;
+    private long partitionedMaxDate;
+
+    /**
+     * @param name    category name, which keys the partial directory
+     * @param target  file the finished artifact is moved to (the artifact or a delta segment)
+     * @param variant anything besides the target that changes the output, e.g. extraction
+     *                options; a checkpoint taken with a different variant is discarded
+     * @param resume  continue from an existing matching checkpoint instead of starting over
+     */
+    public CheckpointedArtifact(File extractedDir, String name, File target, ArtifactManifest manifest,
+                                String variant, boolean resume, int segmentRows) throws IOException {
+        this.target = target;
+        this.manifest = manifest;
+        this.variant = variant;
+        this.segmentRows = segmentRows;
+        dir = new File(new File(extractedDir, DIR_NAME), name);
+        checkpointFile = new AtomicFile(new File(dir, CHECKPOINT_FILE));
+
+        JSONObject state = resume ? readCheckpoint() : null;
+        if (state != null && (!relativeTarget().equals(state.optString("target")) || !variant.equals(state.optString("variant")))) {
+            Log.d(TAG, "Checkpoint for " + name + " does not match this run, starting over");
+            state = null;
+        }
+        if (state == null) {
+            clear();
+            if (!dir.isDirectory() && !dir.mkdirs()) throw new IOException("Cannot create " + dir);
+            resumedSegments = 0;
+            resumedRows = 0;
+            resumedBytes = 0;
+            lastId = -1;
+            maxDate = 0;
+            started = System.currentTimeMillis();
+        } else {
+            resumedSegments = state.optInt("segments");
+            resumedRows = state.optInt("rows");
+            resumedBytes = state.optLong("bytes");
+            lastId = state.optLong("last_id", -1);
+            maxDate = state.optLong("max_date");
+            started = state.optLong("started", System.currentTimeMillis());
+            Log.d(TAG, "Resuming " + name + " after _id " + lastId + ": " + resumedSegments + " segments, "
+                    + resumedRows + " rows committed");
+        }
+        segments = resumedSegments;
+        committedRows = resumedRows;
+        committedBytes = resumedBytes;
+    }
+
+    /** True when this run continues a checkpoint; {@link #getLastId()} is then where to read from. */
+    public boolean isResumed() {
+        return resumedSegments > 0;
+    }
+
+    /** Last {@code _ID} in the committed segments, or -1 when nothing was resumed. */
+    public long getLastId() {
+        return lastId;
+    }
+
+    /** Largest date in the committed segments, for the watermark. */
+    public long getMaxDate() {
+        return maxDate;
+    }
+
+    /** Writer for the segment in progress; records must be written through it whole. */
+    public JsonArtifactWriter writer() throws IOException {
+        if (current == null) current = new JsonArtifactWriter(segmentFile(segments), manifest != null && manifest.isMd5());
+        return current;
+    }
+
+    /** True once the segment in progress holds its fixed number of records. */
+    public boolean isSegmentFull() {
+        return current != null && current.getRowCount() >= segmentRows;
+    }
+
+    /**
+     * Commits the segment in progress; every record up to {@code id} is then durable and
+     * will not be read again by a resumed run. Anything else the extractor keeps per row
+     * (such as an {@link EvidenceStore.Batch}) must be committed before this is called.
+     */
+    public void checkpoint(long id, long date) throws IOException {
+        if (current == null) return;
+        closeSegment();
+        saveCheckpoint(id, date);
+    }
+
+    /**
+     * Splits the rest of the run into {@code count} segments written side by side, one per
+     * {@code _ID} range in ascending order. Must be called before any record of the run is
+     * written through {@link #writer()}.
+     */
+    public synchronized void partition(int count) {
+        if (current != null || partitions != null) throw new IllegalStateException("Already writing");
+        partitions = new JsonArtifactWriter[count];
+        partitionDone = new boolean[count];
+        partitionLastId = new long[count];
+        partitionMaxDate = new long[count];
+        partitionBase = segments;
+        partitionsCommitted = 0;
+        partitionedMaxDate = maxDate;
+    }
+
+    /** Writer for the segment of range {@code part}; safe to call from that range's thread. */
+    public synchronized JsonArtifactWriter partitionWriter(int part) throws IOException {
+        if (partitions[part] == null) {
+            partitions[part] = new JsonArtifactWriter(segmentFile(partitionBase + part), manifest != null && manifest.isMd5());
+        }
+        return partitions[part];
+    }
+
+    /**
+     * Closes range {@code part}, which holds every record up to {@code lastId}. Ranges finish
+     * in any order; whenever this completes the leading ranges they are committed and
+     * checkpointed, with the same caveat as {@link #checkpoint} for other per-row state.
+     */
+    public void commitPartition(int part, long lastId, long maxDate) throws IOException {
+        JsonArtifactWriter writer = partitionWriter(part);
+        writer.finish();
+        long through;
+        synchronized (this) {
+            partitionDone[part] = true;
+            partitionLastId[part] = lastId;
+            partitionMaxDate[part] = maxDate;
+            if (partitionsCommitted != part) return;
+            through = -1;
+            while (partitionsCommitted < partitions.length && partitionDone[partitionsCommitted]) {
+                JsonArtifactWriter done = partitions[partitionsCommitted];
+                writeNanos += done.getWriteNanos();
+                fsyncNanos += done.getFsyncNanos();
+                committedRows += done.getRowCount();
+                committedBytes += done.getBytesWritten();
+                segments++;
+                lastSegment = done;
+                partitionedMaxDate = Math.max(partitionedMaxDate, partitionMaxDate[partitionsCommitted]);
+                through = partitionLastId[partitionsCommitted];
+                partitionsCommitted++;
+            }
+        }
+        saveCheckpoint(through, partitionedMaxDate);
+    }
+
+    private void saveCheckpoint(long id, long date) throws IOException {
+        try {
+            JSONObject state = new JSONObject();
+            state.put("target", relativeTarget());
+            state.put("variant", variant);
+            state.put("segments", segments);
+            state.put("rows", committedRows);
+            state.put("bytes", committedBytes);
+            state.put("last_id", id);
+            state.put("max_date", date);
+            state.put("started", started);
+            state.put("updated", System.currentTimeMillis());
+            FileOutputStream out = checkpointFile.startWrite();
+            try {
+                out.write(state.toString(2).getBytes(StandardCharsets.UTF_8));
+                checkpointFile.finishWrite(out);
+            } catch (IOException e) {
+                checkpointFile.failWrite(out);
+                throw e;
+            }
+        } catch (JSONException e) {
+            throw new IOException(e);
+        }
+    }
+
+    /**
+     * Closes the last segment, moves the complete array to the target, records it in the
+     * manifest and removes the partial state.
+     */
+    public void finish() throws IOException {
+        if (partitions != null && partitionsCommitted < partitions.length) {
+            throw new IllegalStateException(partitions.length - partitionsCommitted + " partitions not committed");
+        }
+        if (segments == 0) writer();
+        closeSegment();
+        File parent = target.getParentFile();
+        if (parent != null && !parent.isDirectory() && !parent.mkdirs()) throw new IOException("Cannot create " + parent);
+
+        String sha256;
+        String md5;
+        long size;
+        if (segments == 1 && resumedSegments == 0) {
+            // Written in one go: the only segment already is the artifact, hashes included
+            sha256 = lastSegment.getSha256();
+            md5 = lastSegment.getMd5();
+            size = lastSegment.getBytesWritten();
+            if (!segmentFile(0).renameTo(target)) throw new IOException("Cannot move " + segmentFile(0) + " to " + target);
+        } else {
+            List<File> parts = new ArrayList<>();
+            for (int i = 0; i < segments; i++) parts.add(segmentFile(i));
+            File temp = new File(target.getPath() + ".tmp");
+            long start = System.nanoTime();
+            try (FileOutputStream fileOut = new FileOutputStream(temp)) {
+                HashingOutputStream out = new HashingOutputStream(fileOut, manifest != null && manifest.isMd5());
+                JsonSegments.concat(parts, out);
+                long synced = System.nanoTime();
+                writeNanos += synced - start;
+                fileOut.getFD().sync();
+                fsyncNanos += System.nanoTime() - synced;
+                sha256 = out.sha256Hex();
+                md5 = out.md5Hex();
+                size = out.getCount();
+            }
+            if (!temp.renameTo(target)) {
+                temp.delete();
+                throw new IOException("Cannot move " + temp + " to " + target);
+            }
+            Log.d(TAG, "Stitched " + segments + " segments into " + target.getName() + " (" + size + " bytes)");
+        }
+        if (manifest != null) manifest.record(target, size, committedRows, sha256, md5, started, System.currentTimeMillis());
+        finished = true;
+        clear();
+    }
+
+    /** Records written so far, including those of resumed segments. */
+    public synchronized int getRowCount() {
+        int rows = committedRows + (current != null ? current.getRowCount() : 0);
+        if (partitions != null) {
+            for (int i = partitionsCommitted; i < partitions.length; i++) {
+                if (partitions[i] != null) rows += partitions[i].getRowCount();
+            }
+        }
+        return rows;
+    }
+
+    /** Segment bytes written so far, including those of resumed segments. */
+    public synchronized long getBytesWritten() {
+        long bytes = committedBytes + (current != null ? current.getBytesWritten() : 0);
+        if (partitions != null) {
+            for (int i = partitionsCommitted; i < partitions.length; i++) {
+                if (partitions[i] != null) bytes += partitions[i].getBytesWritten();
+            }
+        }
+        return bytes;
+    }
+
+    public int getResumedRows() {
+        return resumedRows;
+    }
+
+    public long getResumedBytes() {
+        return resumedBytes;
+    }
+
+    /** Time in file writes by this run, segments and stitching. */
+    public long getWriteNanos() {
+        return writeNanos + (current != null ? current.getWriteNanos() : 0);
+    }
+
+    public long getFsyncNanos() {
+        return fsyncNanos;
+    }
+
+    /**
+     * Discards the segment in progress without committing it. Committed segments and the
+     * checkpoint stay on disk unless {@link #finish()} succeeded.
+     */
+    @Override
+    public void close() throws IOException {
+        if (current != null && !finished) {
+            JsonArtifactWriter open = current;
+            current = null;
+            open.close();
+        }
+        if (partitions != null && !finished) {
+            for (int i = partitionsCommitted; i < partitions.length; i++) {
+                if (partitions[i] != null && !partitionDone[i]) partitions[i].close();
+            }
+        }
+    }
+
+    private void closeSegment() throws IOException {
+        if (current == null) return;
+        current.finish();
+        writeNanos += current.getWriteNanos();
+        fsyncNanos += current.getFsyncNanos();
+        committedRows += current.getRowCount();
+        committedBytes += current.getBytesWritten();
+        segments++;
+        lastSegment = current;
+        current = null;
+    }
+
+    private File segmentFile(int index) {
+        return new File(dir, String.format(Locale.US, "%06d.json", index));
+    }
+
+    private String relativeTarget() {
+        return manifest != null ? manifest.relativePath(target) : target.getName();
+    }
+
+    private JSONObject readCheckpoint() {
+        if (!checkpointFile.getBaseFile().exists()) return null;
+        try {
+            return new JSONObject(new String(checkpointFile.readFully(), StandardCharsets.UTF_8));
+        } catch (IOException | JSONException e) {
+            Log.e(TAG, "Unreadable checkpoint " + checkpointFile.getBaseFile() + ": " + e.getMessage());
+            return null;
+        }
+    }
+
+    private void clear() {
+        File[] files = dir.listFiles();
+        if (files != null) for (File f : files) f.delete();
+        dir.delete();
+    }
+}
@@ -0,0 +1,450 @@
+package com.forensic.agent;
+
+import android.database.AbstractCursor;
+import android.util.JsonWriter;
+
+import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Memory-mapped reader for files written by {@link ColumnarWriter}.
+ *
+ * Opening a file parses only the footer. A {@link Scanner} then walks rows by decoding
+ * varints straight from the mapping: stepping a row allocates nothing, plain strings are
+ * decoded only when asked for, and each dictionary entry is decoded once per reader.
+ * {@link Scanner#seek} jumps to any row through the block index and decodes at most one
+ * block's worth of rows to reach it. Files are limited to 2 GB, the size of one mapping.
+ */
+public class ColumnarReader implements Closeable {
+    private final RandomAccessFile raf;
+    private final MappedByteBuffer buffer;
+    private final String[] names;
+    private final int[] types;
+    private final boolean[] exported;
+    private final int[] blockRows;
+    private final long[] blockFirstRow;
+    private final int[] blockOffset;
+    private final int[][] chunkOffset;
+    private final int[][] dictionaryOffset;
+    private final String[][] dictionaryCache;
+    private final long rowCount;
+
+    private ColumnarReader(File file) throws IOException {
+        raf = new RandomAccessFile(file, "r");
+        try {
+            long length = raf.length();
+            if (length > Integer.MAX_VALUE) throw new IOException(file + " is too large to map");
+            int tail = ColumnarWriter.MAGIC.length + 8;
+            if (length < ColumnarWriter.MAGIC.length + 1 + tail) throw new IOException(file + " is not a columnar artifact");
+            buffer = raf.getChannel().map(FileChannel.MapMode.READ_ONLY, 0, length);
+            for (int i = 0; i < ColumnarWriter.MAGIC.length; i++) {
+                if (buffer.get(i) != ColumnarWriter.MAGIC[i] || buffer.get((int) length - 4 + i) != ColumnarWriter.MAGIC[i]) {
+                    throw new IOException(file + " is not a complete columnar artifact");
+                }
+            }
+            if (buffer.get(4) != ColumnarWriter.VERSION) throw new IOException("Unsupported version " + buffer.get(4) + " of " + file);
+
+            int[] pos = {(int) buffer.getLong((int) length - tail)};
+            int columns = (int) readVarLong(buffer, pos);
+            names = new String[columns];
+            types = new int[columns];
+            exported = new boolean[columns];
+            for (int i = 0; i < columns; i++) {
+                names[i] = readString(buffer, pos);
+                types[i] = buffer.get(pos[0]++);
+                exported[i] = buffer.get(pos[0]++) != 0;
+            }
+            int blocks = (int) readVarLong(buffer, pos);
+            blockRows = new int[blocks];
+            blockFirstRow = new long[blocks];
+            blockOffset = new int[blocks];
+            chunkOffset = new int[blocks][columns];
+            long rows = 0;
+            for (int b = 0; b < blocks; b++) {
+                blockRows[b] = (int) readVarLong(buffer, pos);
+                blockOffset[b] = (int) readVarLong(buffer, pos);
+                for (int i = 0; i < columns; i++) chunkOffset[b][i] = (int) readVarLong(buffer, pos);
+                blockFirstRow[b] = rows;
+                rows += blockRows[b];
+            }
+            rowCount = rows;
+            dictionaryOffset = new int[columns][];
+            dictionaryCache = new String[columns][];
+            for (int i = 0; i < columns; i++) {
+                int size = (int) readVarLong(buffer, pos);
+                dictionaryOffset[i] = new int[size];
+                dictionaryCache[i] = new String[size];
+                for (int d = 0; d < size; d++) {
+                    dictionaryOffset[i][d] = pos[0];
+                    pos[0] = skipString(buffer, pos);
+                }
+            }
+        } catch (IOException | RuntimeException e) {
+            raf.close();
+            throw e instanceof IOException ? (IOException) e : new IOException("Corrupt columnar artifact " + file, e);
+        }
+    }
+
+    public static ColumnarReader open(File file) throws IOException {
+        return new ColumnarReader(file);
+    }
+
+    public long getRowCount() {
+        return rowCount;
+    }
+
+    /** Every column, hidden ones included, under its published name. */
+    public String[] getColumnNames() {
+        return names.clone();
+    }
+
+    /** Index of the column published as {@code name}, or -1. */
+    public int columnIndex(String name) {
+        return Arrays.asList(names).indexOf(name);
+    }
+
+    public Scanner scanner() {
+        return new Scanner();
+    }
+
+    /**
+     * Converts the file to the JSON array the JSON extractor writes for the same rows, byte
+     * for byte: exported columns only, typed numbers always present, null strings omitted.
+     */
+    public void writeJson(OutputStream out) throws IOException {
+        JsonWriter json = new JsonWriter(new BufferedWriter(new OutputStreamWriter(out, StandardCharsets.UTF_8), 64 * 1024));
+        json.setIndent("  ");
+        json.beginArray();
+        Scanner scanner = scanner();
+        while (scanner.next()) {
+            json.beginObject();
+            for (int i = 0; i < names.length; i++) {
+                if (!exported[i]) continue;
+                switch (types[i]) {
+                    case SourceDefinition.LONG:
+                        json.name(names[i]).value(scanner.getLong(i));
+                        break;
+                    case SourceDefinition.DOUBLE:
+                        json.name(names[i]).value(scanner.getDouble(i));
+                        break;
+                    default:
+                        byte kind = scanner.getKind(i);
+                        if (kind == RowBatch.LONG) json.name(names[i]).value(scanner.getLong(i));
+                        else if (kind == RowBatch.DOUBLE) json.name(names[i]).value(scanner.getDouble(i));
+                        else if (kind == RowBatch.STRING) json.name(names[i]).value(scanner.getString(i));
+                        break;
+                }
+            }
+            json.endObject();
+        }
+        json.endArray();
+        json.flush();
+    }
+
+    private String dictionaryEntry(int col, int code) {
+        String value = dictionaryCache[col][code];
+        if (value == null) {
+            int[] pos = {dictionaryOffset[col][code]};
+            value = readString(buffer, pos);
+            dictionaryCache[col][code] = value;
+        }
+        return value;
+    }
+
+    @Override
+    public void close() throws IOException {
+        // The mapping itself is released when it is collected
+        raf.close();
+    }
+
+    /** Forward cursor over the rows, repositionable with {@link #seek}. */
+    public class Scanner {
+        private final int columns = names.length;
+        private final int[] pos = new int[1];
+        private final int[] valuePos = new int[columns];
+        private final int[] nullsPos = new int[columns];
+        private final byte[] encoding = new byte[columns];
+        private final byte[] kind = new byte[columns];
+        private final long[] longValue = new long[columns];
+        private final double[] doubleValue = new double[columns];
+        /** Dictionary code, or the offset of a plain string's length prefix. */
+        private final int[] stringRef = new int[columns];
+        private int block = -1;
+        private int rowInBlock;
+        private long row = -1;
+
+        /** Row the scanner is on, -1 before the first. */
+        public long getRow() {
+            return row;
+        }
+
+        /** Moves to the next row; false at the end. */
+        public boolean next() {
+            if (row + 1 >= rowCount) {
+                row = rowCount;
+                return false;
+            }
+            if (block < 0 || rowInBlock + 1 >= blockRows[block]) {
+                loadBlock(block + 1);
+            } else {
+                rowInBlock++;
+            }
+            row++;
+            decodeRow();
+            return true;
+        }
+
+        /** Positions on {@code target} so that the getters read it; false if it is out of range. */
+        public boolean seek(long target) {
+            if (target < 0 || target >= rowCount) return false;
+            if (target <= row || block < 0 || target >= blockFirstRow[block] + blockRows[block]) {
+                int b = Arrays.binarySearch(blockFirstRow, target);
+                if (b < 0) b = -b - 2;
+                loadBlock(b);
+                row = blockFirstRow[b];
+                decodeRow();
+            }
+            while (row < target) next();
+            return true;
+        }
+
+        private void loadBlock(int b) {
+            block = b;
+            rowInBlock = 0;
+            int n = blockRows[b];
+            for (int i = 0; i < columns; i++) {
+                int start = blockOffset[b] + chunkOffset[b][i];
+                encoding[i] = buffer.get(start);
+                nullsPos[i] = start + 1;
+                valuePos[i] = start + 1 + (n + 7) / 8;
+                longValue[i] = 0;
+            }
+            row = blockFirstRow[b] - 1;
+        }
+
+        private void decodeRow() {
+            for (int i = 0; i < columns; i++) {
+                if ((buffer.get(nullsPos[i] + (rowInBlock >> 3)) & (1 << (rowInBlock & 7))) != 0) {
+                    kind[i] = RowBatch.NULL;
+                    continue;
+                }
+                pos[0] = valuePos[i];
+                switch (encoding[i]) {
+                    case ColumnarWriter.DELTA:
+                        longValue[i] += unzigzag(readVarLong(buffer, pos));
+                        kind[i] = RowBatch.LONG;
+                        break;
+                    case ColumnarWriter.RAW:
+                        doubleValue[i] = buffer.getDouble(pos[0]);
+                        pos[0] += 8;
+                        kind[i] = RowBatch.DOUBLE;
+                        break;
+                    case ColumnarWriter.DICTIONARY:
+                        stringRef[i] = (int) readVarLong(buffer, pos);
+                        kind[i] = RowBatch.STRING;
+                        break;
+                    case ColumnarWriter.PLAIN:
+                        stringRef[i] = pos[0];
+                        pos[0] = skipString(buffer, pos);
+                        kind[i] = RowBatch.STRING;
+                        break;
+                    default:
+                        kind[i] = buffer.get(pos[0]++);
+                        if (kind[i] == RowBatch.LONG) {
+                            longValue[i] = unzigzag(readVarLong(buffer, pos));
+                        } else if (kind[i] == RowBatch.DOUBLE) {
+                            doubleValue[i] = buffer.getDouble(pos[0]);
+                            pos[0] += 8;
+                        } else {
+                            stringRef[i] = pos[0];
+                            pos[0] = skipString(buffer, pos);
+                        }
+                        break;
+                }
+                valuePos[i] = pos[0];
+            }
+        }
+
+        /** {@link RowBatch#NULL}, {@code LONG}, {@code DOUBLE} or {@code STRING}. */
+        public byte getKind(int col) {
+            return kind[col];
+        }
+
+        public boolean isNull(int col) {
+            return kind[col] == RowBatch.NULL;
+        }
+
+        /** The column as a long; 0 for NULL, like {@code Cursor.getLong}. */
+        public long getLong(int col) {
+            if (kind[col] == RowBatch.LONG) return longValue[col];
+            if (kind[col] == RowBatch.DOUBLE) return (long) doubleValue[col];
+            return 0;
+        }
+
+        public double getDouble(int col) {
+            if (kind[col] == RowBatch.DOUBLE) return doubleValue[col];
+            if (kind[col] == RowBatch.LONG) return longValue[col];
+            return 0;
+        }
+
+        public String getString(int col) {
+            switch (kind[col]) {
+                case RowBatch.STRING:
+                    if (encoding[col] == ColumnarWriter.DICTIONARY) return dictionaryEntry(col, stringRef[col]);
+                    pos[0] = stringRef[col];
+                    return readString(buffer, pos);
+                case RowBatch.LONG:
+                    return String.valueOf(longValue[col]);
+                case RowBatch.DOUBLE:
+                    return String.valueOf(doubleValue[col]);
+                default:
+                    return null;
+            }
+        }
+    }
+
+    /**
+     * Exposes the exported columns as a cursor, the shape of the live endpoint. Moving to
+     * the next row steps the scanner; any other move seeks through the block index.
+     */
+    public static class RowCursor extends AbstractCursor {
+        private final ColumnarReader reader;
+        private final Scanner scanner;
+        private final String[] names;
+        private final int[] index;
+
+        public RowCursor(ColumnarReader reader) {
+            this.reader = reader;
+            scanner = reader.scanner();
+            List<String> names = new ArrayList<>();
+            List<Integer> index = new ArrayList<>();
+            for (int i = 0; i < reader.names.length; i++) {
+                if (!reader.exported[i]) continue;
+                names.add(reader.names[i]);
+                index.add(i);
+            }
+            this.names = names.toArray(new String[0]);
+            this.index = new int[index.size()];
+            for (int i = 0; i < this.index.length; i++) this.index[i] = index.get(i);
+        }
+
+        @Override
+        public boolean onMove(int oldPosition, int newPosition) {
+            if (newPosition == scanner.getRow() + 1) return scanner.next();
+            return scanner.seek(newPosition);
+        }
+
+        @Override
+        public int getCount() {
+            return (int) reader.rowCount;
+        }
+
+        @Override
+        public String[] getColumnNames() {
+            return names.clone();
+        }
+
+        @Override
+        public String getString(int column) {
+            return scanner.getString(index[column]);
+        }
+
+        @Override
+        public short getShort(int column) {
+            return (short) scanner.getLong(index[column]);
+        }
+
+        @Override
+        public int getInt(int column) {
+            return (int) scanner.getLong(index[column]);
+        }
+
+        @Override
+        public long getLong(int column) {
+            return scanner.getLong(index[column]);
+        }
+
+        @Override
+        public float getFloat(int column) {
+            return (float) scanner.getDouble(index[column]);
+        }
+
+        @Override
+        public double getDouble(int column) {
+            return scanner.getDouble(index[column]);
+        }
+
+        @Override
+        public boolean isNull(int column) {
+            return scanner.isNull(index[column]);
+        }
+
+        @Override
+        public int getType(int column) {
+            switch (scanner.getKind(index[column])) {
+                case RowBatch.LONG:
+                    return FIELD_TYPE_INTEGER;
+                case RowBatch.DOUBLE:
+                    return FIELD_TYPE_FLOAT;
+                case RowBatch.STRING:
+                    return FIELD_TYPE_STRING;
+                default:
+                    return FIELD_TYPE_NULL;
+            }
+        }
+
+        @Override
+        public void close() {
+            super.close();
+            try {
+                reader.close();
+            } catch (IOException e) {
+                // Read-only file
+            }
+        }
+    }
+
+    static long readVarLong(ByteBuffer buffer, int[] pos) {
+        long value = 0;
+        int shift = 0;
+        while (true) {
+            byte b = buffer.get(pos[0]++);
+            value |= (long) (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) return value;
+            shift += 7;
+        }
+    }
+
+    /** Offset just past the length-prefixed string at {@code pos[0]}. */
+    private static int skipString(ByteBuffer buffer, int[] pos) {
+        int length = (int) readVarLong(buffer, pos);
+        return pos[0] + length;
+    }
+
+    static long unzigzag(long value) {
+        return (value >>> 1) ^ -(value & 1);
+    }
+
+    /** Reads a length-prefixed UTF-8 string at {@code pos[0]} and advances past it. */
+    private static String readString(ByteBuffer buffer, int[] pos) {
+        int length = (int) readVarLong(buffer, pos);
+        byte[] bytes = new byte[length];
+        ByteBuffer view = buffer.duplicate();
+        view.position(pos[0]);
+        view.get(bytes);
+        pos[0] += length;
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+}
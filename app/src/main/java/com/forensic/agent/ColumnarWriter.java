@@ -0,0 +1,300 @@
+package com.forensic.agent;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Writes a {@link SourceDefinition}'s rows in the agent's compact columnar format, read
+ * back by {@link ColumnarReader}.
+ *
+ * Rows are grouped into blocks of {@link #BLOCK_ROWS}; within a block each column is one
+ * chunk holding a null bitmap followed by the non-null values:
+ * <ul>
+ * <li>integers as zigzag varint deltas from the previous value, so ids cost one byte and
+ * dates a few;</li>
+ * <li>strings as varint codes into a per-column dictionary when the block's values mostly
+ * repeat (addresses, numbers), else as length-prefixed UTF-8 (message bodies);</li>
+ * <li>doubles as 8 raw bytes, and {@link SourceDefinition#ANY} values tagged per cell.</li>
+ * </ul>
+ * A footer after the last block lists the columns, each block's first row, offset and chunk
+ * offsets, and the dictionaries; the file ends with the footer's offset and the magic. All
+ * columns are kept, hidden ones included, so the store and JSON can both be rebuilt.
+ */
+public class ColumnarWriter implements Closeable {
+    public static final String EXTENSION = ".col";
+    static final byte[] MAGIC = {'F', 'C', 'O', 'L'};
+    static final int VERSION = 1;
+    static final int BLOCK_ROWS = 4096;
+
+    /** Chunk encodings. */
+    static final byte DELTA = 1;
+    static final byte DICTIONARY = 2;
+    static final byte PLAIN = 3;
+    static final byte RAW = 4;
+    static final byte TAGGED = 5;
+
+    /** A dictionary stops growing here; later blocks of the column fall back to plain strings. */
+    private static final int DICTIONARY_MAX = 1 << 16;
+
+    private final File file;
+    private final File temp;
+    private final SourceDefinition source;
+    private final ArtifactManifest manifest;
+    private final FileOutputStream fileOut;
+    private final HashingOutputStream hashing;
+    private final OutputStream out;
+    private final long started = System.currentTimeMillis();
+
+    private final RowBatch block;
+    private final List<Map<String, Integer>> codes = new ArrayList<>();
+    private final List<List<String>> dictionaries = new ArrayList<>();
+    private final ByteArrayOutputStream chunk = new ByteArrayOutputStream();
+    private final List<long[]> blockIndex = new ArrayList<>();
+    private long offset;
+    private long rows;
+    private long fsyncNanos;
+    private boolean finished;
+
+    public ColumnarWriter(File file, SourceDefinition source, ArtifactManifest manifest) throws IOException {
+        this.file = file;
+        this.source = source;
+        this.manifest = manifest;
+        block = new RowBatch(source, BLOCK_ROWS);
+        for (int i = 0; i < source.columns.length; i++) {
+            codes.add(new HashMap<String, Integer>());
+            dictionaries.add(new ArrayList<String>());
+        }
+        // Written aside and moved over the target by finish(), so a failed run keeps the last good file
+        temp = new File(file.getPath() + ".tmp");
+        fileOut = new FileOutputStream(temp);
+        hashing = new HashingOutputStream(fileOut, manifest != null && manifest.isMd5());
+        out = new BufferedOutputStream(hashing, 64 * 1024);
+        out.write(MAGIC);
+        out.write(VERSION);
+        offset = MAGIC.length + 1;
+    }
+
+    /** The columnar file standing in for a JSON artifact: {@code sms.json} becomes {@code sms.col}. */
+    public static File fileFor(File jsonArtifact) {
+        String name = jsonArtifact.getName();
+        int dot = name.lastIndexOf('.');
+        return new File(jsonArtifact.getParentFile(), (dot > 0 ? name.substring(0, dot) : name) + EXTENSION);
+    }
+
+    /** Appends every row of {@code batch}; its arrays may be reused as soon as this returns. */
+    public void append(RowBatch batch) throws IOException {
+        for (int row = 0; row < batch.size(); row++) {
+            int to = block.add();
+            for (int i = 0; i < source.columns.length; i++) {
+                block.kinds[i][to] = batch.kinds[i][row];
+                if (block.longs[i] != null) block.longs[i][to] = batch.longs[i][row];
+                if (block.doubles[i] != null) block.doubles[i][to] = batch.doubles[i][row];
+                if (block.strings[i] != null) block.strings[i][to] = batch.strings[i][row];
+            }
+            if (block.size() == BLOCK_ROWS) flushBlock();
+        }
+    }
+
+    public long getRowCount() {
+        return rows + block.size();
+    }
+
+    /** Bytes handed to the file so far; trails the buffered content until {@link #finish()}. */
+    public long getBytesWritten() {
+        return hashing.getCount();
+    }
+
+    public long getWriteNanos() {
+        return hashing.getWriteNanos();
+    }
+
+    public long getFsyncNanos() {
+        return fsyncNanos;
+    }
+
+    private void flushBlock() throws IOException {
+        int n = block.size();
+        if (n == 0) return;
+        int columns = source.columns.length;
+        long[] entry = new long[2 + columns];
+        entry[0] = n;
+        entry[1] = offset;
+        long chunkOffset = 0;
+        for (int i = 0; i < columns; i++) {
+            entry[2 + i] = chunkOffset;
+            chunk.reset();
+            writeChunk(i, n);
+            chunk.writeTo(out);
+            chunkOffset += chunk.size();
+        }
+        offset += chunkOffset;
+        rows += n;
+        blockIndex.add(entry);
+        block.clear();
+    }
+
+    private void writeChunk(int col, int n) throws IOException {
+        byte[] kinds = block.kinds[col];
+        byte[] nulls = new byte[(n + 7) / 8];
+        for (int row = 0; row < n; row++) {
+            if (kinds[row] == RowBatch.NULL) nulls[row >> 3] |= 1 << (row & 7);
+        }
+        switch (source.columns[col].type) {
+            case SourceDefinition.LONG: {
+                chunk.write(DELTA);
+                chunk.write(nulls);
+                long previous = 0;
+                for (int row = 0; row < n; row++) {
+                    if (kinds[row] == RowBatch.NULL) continue;
+                    long value = block.longs[col][row];
+                    writeVarLong(chunk, zigzag(value - previous));
+                    previous = value;
+                }
+                break;
+            }
+            case SourceDefinition.DOUBLE:
+                chunk.write(RAW);
+                chunk.write(nulls);
+                for (int row = 0; row < n; row++) {
+                    if (kinds[row] != RowBatch.NULL) writeDouble(chunk, block.doubles[col][row]);
+                }
+                break;
+            case SourceDefinition.STRING:
+                if (useDictionary(col, n)) {
+                    chunk.write(DICTIONARY);
+                    chunk.write(nulls);
+                    Map<String, Integer> dictionary = codes.get(col);
+                    for (int row = 0; row < n; row++) {
+                        if (kinds[row] == RowBatch.NULL) continue;
+                        String value = block.strings[col][row];
+                        Integer code = dictionary.get(value);
+                        if (code == null) {
+                            code = dictionary.size();
+                            dictionary.put(value, code);
+                            dictionaries.get(col).add(value);
+                        }
+                        writeVarLong(chunk, code);
+                    }
+                } else {
+                    chunk.write(PLAIN);
+                    chunk.write(nulls);
+                    for (int row = 0; row < n; row++) {
+                        if (kinds[row] != RowBatch.NULL) writeString(chunk, block.strings[col][row]);
+                    }
+                }
+                break;
+            default:
+                chunk.write(TAGGED);
+                chunk.write(nulls);
+                for (int row = 0; row < n; row++) {
+                    byte kind = kinds[row];
+                    if (kind == RowBatch.NULL) continue;
+                    chunk.write(kind);
+                    if (kind == RowBatch.LONG) writeVarLong(chunk, zigzag(block.longs[col][row]));
+                    else if (kind == RowBatch.DOUBLE) writeDouble(chunk, block.doubles[col][row]);
+                    else writeString(chunk, block.strings[col][row]);
+                }
+                break;
+        }
+    }
+
+    /**
+     * Dictionary-encodes a block when at most half of its values are new to the dictionary
+     * and the dictionary stays within {@link #DICTIONARY_MAX}; unique text goes plain and
+     * never enters the dictionary.
+     */
+    private boolean useDictionary(int col, int n) {
+        Map<String, Integer> dictionary = codes.get(col);
+        Set<String> added = new HashSet<>();
+        int present = 0;
+        for (int row = 0; row < n; row++) {
+            if (block.kinds[col][row] == RowBatch.NULL) continue;
+            present++;
+            String value = block.strings[col][row];
+            if (!dictionary.containsKey(value)) added.add(value);
+        }
+        return added.size() * 2 <= present && dictionary.size() + added.size() <= DICTIONARY_MAX;
+    }
+
+    /**
+     * Writes the last block and the footer, syncs the file, moves it to its name and records
+     * it in the manifest. Without this call the target is left as it was.
+     */
+    public void finish() throws IOException {
+        flushBlock();
+        ByteArrayOutputStream footer = new ByteArrayOutputStream();
+        int columns = source.columns.length;
+        writeVarLong(footer, columns);
+        for (SourceDefinition.Column c : source.columns) {
+            writeString(footer, c.name);
+            footer.write(c.type);
+            footer.write(c.exported ? 1 : 0);
+        }
+        writeVarLong(footer, blockIndex.size());
+        for (long[] entry : blockIndex) {
+            for (long value : entry) writeVarLong(footer, value);
+        }
+        for (int i = 0; i < columns; i++) {
+            List<String> dictionary = dictionaries.get(i);
+            writeVarLong(footer, dictionary.size());
+            for (String value : dictionary) writeString(footer, value);
+        }
+        footer.writeTo(out);
+        byte[] tail = new byte[8];
+        for (int i = 0; i < 8; i++) tail[i] = (byte) (offset >>> (56 - 8 * i));
+        out.write(tail);
+        out.write(MAGIC);
+        out.flush();
+        long start = System.nanoTime();
+        fileOut.getFD().sync();
+        fsyncNanos = System.nanoTime() - start;
+        out.close();
+        if (!temp.renameTo(file)) throw new IOException("Cannot move " + temp + " to " + file);
+        finished = true;
+        if (manifest != null) {
+            manifest.record(file, hashing.getCount(), rows, hashing.sha256Hex(), hashing.md5Hex(),
+                    started, System.currentTimeMillis());
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        out.close();
+        if (!finished) temp.delete();
+    }
+
+    static long zigzag(long value) {
+        return (value << 1) ^ (value >> 63);
+    }
+
+    static void writeVarLong(ByteArrayOutputStream out, long value) {
+        while ((value & ~0x7FL) != 0) {
+            out.write((int) ((value & 0x7F) | 0x80));
+            value >>>= 7;
+        }
+        out.write((int) value);
+    }
+
+    private static void writeDouble(ByteArrayOutputStream out, double value) {
+        long bits = Double.doubleToRawLongBits(value);
+        for (int i = 0; i < 8; i++) out.write((int) (bits >>> (56 - 8 * i)));
+    }
+
+    private static void writeString(ByteArrayOutputStream out, String value) throws IOException {
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        writeVarLong(out, bytes.length);
+        out.write(bytes);
+    }
+}
@@ -1,25 +1,48 @@
 package com.forensic.agent;
 
 import android.content.ContentProvider;
+import android.content.ContentResolver;
 import android.content.ContentValues;
 import android.database.Cursor;
 import android.database.MatrixCursor;
 import android.net.Uri;
+import android.os.Build;
+import android.os.Bundle;
 import android.os.ParcelFileDescriptor;
+import android.text.TextUtils;
+import android.util.Log;
 import android.webkit.MimeTypeMap;
-import android.provider.ContactsContract;
-import android.provider.Telephony;
-import android.provider.CallLog;
-import android.provider.CalendarContract;
+
+import org.json.JSONArray;
+import org.json.JSONObject;
 
 import java.io.File;
 import java.io.FileNotFoundException;
-import java.util.Date;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
 
 public class DataProvider extends ContentProvider {
+    private static final String TAG = "ForensicAgent";
     public static final String AUTHORITY = "com.forensic.agent.provider";
-    public static final String[] COLUMNS = new String[]{"name", "size", "modified"};
+    public static final String[] COLUMNS = FileIndex.COLUMNS;
+    public static final String[] STATUS_COLUMNS = new String[]{"category", "state", "rows_done", "rows_total", "bytes", "rows_per_sec", "started", "finished"};
+    public static final String[] MANIFEST_COLUMNS = new String[]{"file", "size", "rows", "sha256", "md5", "started", "finished"};
+    /** Deflate level of {@code bundle} without a {@code level} parameter; the fastest still shrinks JSON several times. */
+    public static final int DEFAULT_BUNDLE_LEVEL = 1;
+    /** Matches returned by {@code search} without a {@code limit} parameter. */
+    public static final int DEFAULT_SEARCH_LIMIT = 50;
+    public static final String[] ENTITY_COLUMNS = new String[]{"number", "contact_ids", "names", "variants",
+            "sms_count", "sms_first", "sms_last", "call_count", "call_first", "call_last"};
+    public static final String[] VERIFY_COLUMNS = new String[]{"file", "expected_sha256", "actual_sha256", "actual_size", "ok", "error"};
     private File baseDir;
+    private PhoneIndex entities;
+    private long entitiesModified;
 
     @Override
     public boolean onCreate() {
@@ -31,112 +54,287 @@ public class DataProvider extends ContentProvider {
 
     @Override
     public Cursor query(Uri uri, String[] projection, String selection, String[] selectionArgs, String sortOrder) {
+        // Indexed snapshot: content://com.forensic.agent.provider/store/sms?address=...
+        List<String> path = uri.getPathSegments();
+        if (path.size() == 2 && "store".equals(path.get(0))) {
+            return queryStore(path.get(1), uri, projection, selection, selectionArgs, sortOrder);
+        }
+        // Columnar artifact as rows: content://com.forensic.agent.provider/columnar/sms.col?offset=...&limit=...
+        if (path.size() == 2 && "columnar".equals(path.get(0))) {
+            return queryColumnar(path.get(1), uri);
+        }
+        
         String last = uri.getLastPathSegment();
         if (last == null) return null;
         
-        // File listing fallback
+        // Recursive file listing: content://com.forensic.agent.provider/list?prefix=blobs/&offset=...&limit=...
         if ("list".equals(last)) {
-            MatrixCursor cursor = new MatrixCursor(COLUMNS);
-            File[] files = baseDir.listFiles();
-            if (files != null) {
-                for (File f : files) {
-                    cursor.addRow(new Object[]{f.getName(), f.length(), new Date(f.lastModified()).getTime()});
-                }
+            return FileIndex.get(baseDir).list(uri.getQueryParameter("prefix"),
+                    intParameter(uri, "offset", 0), intParameter(uri, "limit", -1));
+        }
+        
+        // Live progress; observers are notified on STATUS_URI as it changes
+        if ("status".equals(last)) {
+            ExtractionProgress progress = ExtractionProgress.get();
+            MatrixCursor cursor = new MatrixCursor(STATUS_COLUMNS);
+            long done = 0;
+            long bytes = 0;
+            for (ExtractionProgress.Category c : progress.snapshot()) {
+                done += c.rowsDone;
+                bytes += c.bytes;
+            }
+            cursor.addRow(new Object[]{"all", progress.getState(), done, null, bytes, null,
+                    progress.getStartedAt(), progress.getFinishedAt()});
+            for (ExtractionProgress.Category c : progress.snapshot()) {
+                cursor.addRow(new Object[]{c.name, c.state, c.rowsDone, c.rowsTotal, c.bytes,
+                        Math.round(c.rowsPerSecond), c.startedAt, c.finishedAt});
             }
+            cursor.setNotificationUri(getContext().getContentResolver(), ExtractionProgress.STATUS_URI);
             return cursor;
         }
         
-        // Structured endpoints similar to Oxygen agent
-        if ("contacts".equals(last)) {
-            MatrixCursor mc = new MatrixCursor(new String[]{"id", "name", "phone"});
-            Cursor c = getContext().getContentResolver().query(
-                    ContactsContract.CommonDataKinds.Phone.CONTENT_URI,
-                    new String[]{
-                            ContactsContract.CommonDataKinds.Phone.CONTACT_ID,
-                            ContactsContract.CommonDataKinds.Phone.DISPLAY_NAME,
-                            ContactsContract.CommonDataKinds.Phone.NUMBER
-                    }, null, null, null);
-            if (c != null) {
-                try {
-                    while (c.moveToNext()) {
-                        String id = c.getString(c.getColumnIndexOrThrow(ContactsContract.CommonDataKinds.Phone.CONTACT_ID));
-                        String name = c.getString(c.getColumnIndexOrThrow(ContactsContract.CommonDataKinds.Phone.DISPLAY_NAME));
-                        String phone = c.getString(c.getColumnIndexOrThrow(ContactsContract.CommonDataKinds.Phone.NUMBER));
-                        mc.addRow(new Object[]{id, name, phone});
-                    }
-                } finally { c.close(); }
+        // Chain of custody: recorded digests, or a fresh parallel re-hash checked against them
+        if ("manifest".equals(last)) {
+            MatrixCursor cursor = new MatrixCursor(MANIFEST_COLUMNS);
+            for (ArtifactManifest.Entry e : ArtifactManifest.load(baseDir, false).getEntries()) {
+                cursor.addRow(new Object[]{e.file, e.size, e.rows, e.sha256, e.md5, e.started, e.finished});
             }
-            return mc;
-        } else if ("sms".equals(last)) {
-            MatrixCursor mc = new MatrixCursor(new String[]{"address", "body", "date", "type"});
-            Cursor c = getContext().getContentResolver().query(
-                    Telephony.Sms.CONTENT_URI,
-                    new String[]{Telephony.Sms.ADDRESS, Telephony.Sms.BODY, Telephony.Sms.DATE, Telephony.Sms.TYPE},
-                    null, null, null);
-            if (c != null) {
-                try {
-                    while (c.moveToNext()) {
-                        mc.addRow(new Object[]{
-                                c.getString(c.getColumnIndexOrThrow(Telephony.Sms.ADDRESS)),
-                                c.getString(c.getColumnIndexOrThrow(Telephony.Sms.BODY)),
-                                c.getLong(c.getColumnIndexOrThrow(Telephony.Sms.DATE)),
-                                c.getInt(c.getColumnIndexOrThrow(Telephony.Sms.TYPE))
-                        });
-                    }
-                } finally { c.close(); }
+            return cursor;
+        }
+        if ("verify".equals(last)) {
+            MatrixCursor cursor = new MatrixCursor(VERIFY_COLUMNS);
+            try {
+                for (ManifestVerifier.Result r : ManifestVerifier.verify(baseDir, ArtifactManifest.load(baseDir, false).getEntries())) {
+                    cursor.addRow(new Object[]{r.entry.file, r.entry.sha256, r.actualSha256, r.actualSize, r.isOk() ? 1 : 0, r.error});
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
             }
-            return mc;
-        } else if ("calls".equals(last)) {
-            MatrixCursor mc = new MatrixCursor(new String[]{"number", "date", "duration", "type"});
-            Cursor c = getContext().getContentResolver().query(
-                    CallLog.Calls.CONTENT_URI,
-                    new String[]{CallLog.Calls.NUMBER, CallLog.Calls.DATE, CallLog.Calls.DURATION, CallLog.Calls.TYPE},
-                    null, null, null);
-            if (c != null) {
-                try {
-                    while (c.moveToNext()) {
-                        mc.addRow(new Object[]{
-                                c.getString(c.getColumnIndexOrThrow(CallLog.Calls.NUMBER)),
-                                c.getLong(c.getColumnIndexOrThrow(CallLog.Calls.DATE)),
-                                c.getInt(c.getColumnIndexOrThrow(CallLog.Calls.DURATION)),
-                                c.getInt(c.getColumnIndexOrThrow(CallLog.Calls.TYPE))
-                        });
-                    }
-                } finally { c.close(); }
+            return cursor;
+        }
+        
+        // Per-stage timings of the last extraction run; the full record is metrics.json
+        if ("metrics".equals(last)) {
+            MatrixCursor cursor = new MatrixCursor(ExtractionMetrics.COLUMNS);
+            JSONArray categories = ExtractionMetrics.loadCategories(baseDir);
+            for (int i = 0; i < categories.length(); i++) {
+                JSONObject c = categories.optJSONObject(i);
+                Object[] row = new Object[ExtractionMetrics.COLUMNS.length];
+                for (int j = 0; j < row.length; j++) row[j] = c.opt(ExtractionMetrics.COLUMNS[j]);
+                cursor.addRow(row);
             }
-            return mc;
-        } else if ("calendar".equals(last)) {
-            MatrixCursor mc = new MatrixCursor(new String[]{"id", "title", "dtstart", "dtend"});
-            Cursor c = getContext().getContentResolver().query(
-                    CalendarContract.Events.CONTENT_URI,
-                    new String[]{CalendarContract.Events._ID, CalendarContract.Events.TITLE, CalendarContract.Events.DTSTART, CalendarContract.Events.DTEND},
-                    null, null, null);
-            if (c != null) {
-                try {
-                    while (c.moveToNext()) {
-                        mc.addRow(new Object[]{
-                                c.getLong(c.getColumnIndexOrThrow(CalendarContract.Events._ID)),
-                                c.getString(c.getColumnIndexOrThrow(CalendarContract.Events.TITLE)),
-                                c.getLong(c.getColumnIndexOrThrow(CalendarContract.Events.DTSTART)),
-                                c.getLong(c.getColumnIndexOrThrow(CalendarContract.Events.DTEND))
-                        });
-                    }
-                } finally { c.close(); }
+            return cursor;
+        }
+        
+        // Who a number belongs to: content://com.forensic.agent.provider/entity?number=..., or graph for all
+        if ("entity".equals(last) || "graph".equals(last)) {
+            MatrixCursor cursor = new MatrixCursor(ENTITY_COLUMNS);
+            PhoneIndex index = loadEntities();
+            if (index == null) return cursor;
+            if ("graph".equals(last)) {
+                for (PhoneIndex.Entity e : index.getEntities()) addEntity(cursor, e);
+            } else {
+                String number = uri.getQueryParameter("number");
+                if (number == null) throw new IllegalArgumentException("entity requires a number parameter");
+                PhoneIndex.Entity e = index.find(number);
+                if (e != null) addEntity(cursor, e);
             }
-            return mc;
+            return cursor;
+        }
+        
+        // Keyword search: content://com.forensic.agent.provider/search?q=station&sources=sms,calendar&limit=20
+        if ("search".equals(last)) {
+            String q = uri.getQueryParameter("q");
+            if (q == null || q.trim().isEmpty()) throw new IllegalArgumentException("search requires a q parameter");
+            if (!new File(baseDir, EvidenceStore.FILE_NAME).exists()) return null;
+            String sources = uri.getQueryParameter("sources");
+            List<String> names = sources == null || sources.isEmpty() ? new ArrayList<String>() : Arrays.asList(sources.split(","));
+            return EvidenceStore.get(getContext()).search(q, names, intParameter(uri, "limit", DEFAULT_SEARCH_LIMIT));
+        }
+        
+        // Date-ordered SMS, calls and events: content://com.forensic.agent.provider/timeline?since=...&until=...
+        if ("timeline".equals(last)) {
+            String sources = uri.getQueryParameter("sources");
+            List<String> names = sources == null || sources.isEmpty() ? new ArrayList<String>() : Arrays.asList(sources.split(","));
+            Cursor c = Timeline.open(getContext().getContentResolver(), names,
+                    longParameter(uri, "since", -1), longParameter(uri, "until", -1));
+            return new ProjectionCursor(c, Timeline.COLUMNS, Timeline.COLUMNS,
+                    intParameter(uri, "offset", 0), intParameter(uri, "limit", -1));
+        }
+        
+        // Structured endpoints similar to Oxygen agent
+        SourceDefinition source = Sources.LIVE.get(last);
+        if (source != null) {
+            return queryLive(source, uri, projection, selection, selectionArgs, sortOrder);
         }
         
         return null;
     }
 
+    /**
+     * Serves a table of the {@link EvidenceStore} snapshot. Query parameters named after a
+     * column filter by equality, {@code since}/{@code until} bound the date column and
+     * {@code limit}/{@code offset} page the result; all of these hit the store's indexes.
+     */
+    private Cursor queryStore(String table, Uri uri, String[] projection, String selection,
+                              String[] selectionArgs, String sortOrder) {
+        if (!new File(baseDir, EvidenceStore.FILE_NAME).exists()) return null;
+        Map<String, String> params = new HashMap<>();
+        for (String name : uri.getQueryParameterNames()) {
+            params.put(name, uri.getQueryParameter(name));
+        }
+        return EvidenceStore.get(getContext()).query(table, projection, params, selection, selectionArgs, sortOrder);
+    }
+
+    /**
+     * Serves a {@link ColumnarWriter} file straight from its memory mapping. {@code offset}
+     * seeks through the block index rather than reading the rows before it.
+     */
+    private Cursor queryColumnar(String name, Uri uri) {
+        File file = new File(baseDir, name);
+        if (!name.endsWith(ColumnarWriter.EXTENSION) || !file.exists()) return null;
+        ColumnarReader reader;
+        try {
+            reader = ColumnarReader.open(file);
+        } catch (IOException e) {
+            Log.e(TAG, "Error opening " + file + ": " + e.getMessage(), e);
+            return null;
+        }
+        Cursor rows = new ColumnarReader.RowCursor(reader);
+        String[] names = rows.getColumnNames();
+        return new ProjectionCursor(rows, names, names, intParameter(uri, "offset", 0), intParameter(uri, "limit", -1));
+    }
+
+    /**
+     * Runs a live endpoint against its system provider. Projection, selection and sort order
+     * use the endpoint's column names and are pushed down to the source; {@code limit} and
+     * {@code offset} query parameters page the result. Rows are never copied: the source
+     * cursor is returned behind a {@link ProjectionCursor}.
+     */
+    private Cursor queryLive(SourceDefinition endpoint, Uri uri, String[] projection, String selection,
+                             String[] selectionArgs, String sortOrder) {
+        String[] names = projection != null && projection.length > 0 ? projection : endpoint.exportedNames();
+        String[] sources = new String[names.length];
+        for (int i = 0; i < names.length; i++) {
+            sources[i] = endpoint.sourceOf(names[i]);
+            if (sources[i] == null) {
+                throw new IllegalArgumentException("Unknown column " + names[i] + " for " + uri.getLastPathSegment());
+            }
+        }
+        String where = endpoint.toSource(selection);
+        String order = endpoint.toSource(sortOrder);
+        int limit = intParameter(uri, "limit", -1);
+        int offset = intParameter(uri, "offset", 0);
+        
+        ContentResolver resolver = getContext().getContentResolver();
+        Cursor c;
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.O) {
+            Bundle args = new Bundle();
+            if (where != null) args.putString(ContentResolver.QUERY_ARG_SQL_SELECTION, where);
+            if (selectionArgs != null) args.putStringArray(ContentResolver.QUERY_ARG_SQL_SELECTION_ARGS, selectionArgs);
+            if (order != null) args.putString(ContentResolver.QUERY_ARG_SQL_SORT_ORDER, order);
+            // Only the upper bound is pushed: the window below skips the offset either way,
+            // so the result is correct whether or not the provider honors the limit
+            if (limit >= 0) args.putInt(ContentResolver.QUERY_ARG_LIMIT, offset + limit);
+            c = resolver.query(endpoint.uri, sources, args, null);
+        } else {
+            c = resolver.query(endpoint.uri, sources, where, selectionArgs, order);
+        }
+        if (c == null) return null;
+        return new ProjectionCursor(c, names, sources, offset, limit);
+    }
+
+    /** The entity index of the last extraction, reloaded only when the file changes; null if there is none. */
+    private synchronized PhoneIndex loadEntities() {
+        File file = new File(baseDir, PhoneIndex.FILE_NAME);
+        if (!file.exists()) return null;
+        if (entities == null || entitiesModified != file.lastModified()) {
+            try {
+                entities = PhoneIndex.load(file, PhoneIndex.defaultCountryIso(getContext()));
+                entitiesModified = file.lastModified();
+            } catch (IOException e) {
+                Log.e(TAG, "Error loading " + file + ": " + e.getMessage(), e);
+                return null;
+            }
+        }
+        return entities;
+    }
+
+    private static void addEntity(MatrixCursor cursor, PhoneIndex.Entity e) {
+        cursor.addRow(new Object[]{e.number, TextUtils.join(",", e.contactIds), TextUtils.join(",", e.names),
+                TextUtils.join(",", e.variants),
+                e.sms.count, e.sms.count > 0 ? e.sms.first : null, e.sms.count > 0 ? e.sms.last : null,
+                e.calls.count, e.calls.count > 0 ? e.calls.first : null, e.calls.count > 0 ? e.calls.last : null});
+    }
+
+    private static int intParameter(Uri uri, String name, int fallback) {
+        String value = uri.getQueryParameter(name);
+        if (value == null) return fallback;
+        try {
+            return Integer.parseInt(value);
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Invalid " + name + ": " + value);
+        }
+    }
+
+    private static long longParameter(Uri uri, String name, long fallback) {
+        String value = uri.getQueryParameter(name);
+        if (value == null) return fallback;
+        try {
+            return Long.parseLong(value);
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Invalid " + name + ": " + value);
+        }
+    }
+
     @Override
     public String getType(Uri uri) {
+        List<String> path = uri.getPathSegments();
+        if (path.size() == 2 && BlobStore.DIR_NAME.equals(path.get(0))) return "application/octet-stream";
+        if (path.size() == 1 && "bundle".equals(path.get(0))) return "application/zip";
         String name = uri.getLastPathSegment();
+        if (name != null && name.endsWith(ColumnarWriter.EXTENSION)) return "application/octet-stream";
         String ext = name != null && name.contains(".") ? name.substring(name.lastIndexOf('.') + 1) : "json";
         String mime = MimeTypeMap.getSingleton().getMimeTypeFromExtension(ext);
         return mime != null ? mime : "application/json";
     }
 
+    /**
+     * {@code batch}: answers a JSON array of dataset requests (see {@link BatchQuery}) in one
+     * round trip, e.g. {@code content call --uri content://com.forensic.agent.provider
+     * --method batch --arg '[{"name":"list"},{"name":"sms","limit":500}]'}. With the extra
+     * {@code mode=pipe} the reply carries a pipe streaming all results as JSON instead of
+     * one cursor window per dataset.
+     */
+    @Override
+    public Bundle call(String method, String arg, Bundle extras) {
+        if (!BatchQuery.METHOD.equals(method)) return super.call(method, arg, extras);
+        final BatchQuery batch = BatchQuery.parse(arg);
+        BatchQuery.Opener opener = r -> query(r.uri(), r.projection, r.selection, r.selectionArgs, r.sortOrder);
+        String mode = extras != null ? extras.getString(BatchQuery.EXTRA_MODE, BatchQuery.MODE_WINDOW) : BatchQuery.MODE_WINDOW;
+        if (BatchQuery.MODE_WINDOW.equals(mode)) return batch.toWindows(opener);
+        if (!BatchQuery.MODE_PIPE.equals(mode)) throw new IllegalArgumentException("Unknown batch mode " + mode);
+
+        ParcelFileDescriptor payload;
+        try {
+            payload = stream("batch", out -> {
+                long started = System.currentTimeMillis();
+                batch.writeJson(opener, out);
+                Log.d(TAG, "Batch of " + batch.getRequests().size() + " datasets streamed in "
+                        + (System.currentTimeMillis() - started) + " ms");
+            });
+        } catch (IOException e) {
+            throw new IllegalStateException("Cannot create pipe: " + e.getMessage(), e);
+        }
+        Bundle reply = new Bundle();
+        ArrayList<String> keys = new ArrayList<>();
+        for (BatchQuery.Request r : batch.getRequests()) keys.add(r.key);
+        reply.putStringArrayList(BatchQuery.KEY_KEYS, keys);
+        // Like the windows, this end is dup'ed into the reply and released by its finalizer
+        reply.putParcelable(BatchQuery.KEY_PAYLOAD, payload);
+        return reply;
+    }
+
     @Override
     public Uri insert(Uri uri, ContentValues values) { return null; }
 
@@ -148,11 +346,112 @@ public class DataProvider extends ContentProvider {
 
     @Override
     public ParcelFileDescriptor openFile(Uri uri, String mode) throws FileNotFoundException {
+        // Attachments by content hash: content://com.forensic.agent.provider/blobs/<sha256>
+        List<String> path = uri.getPathSegments();
+        if (path.size() == 2 && BlobStore.DIR_NAME.equals(path.get(0))) {
+            File blob = new BlobStore(baseDir).file(path.get(1));
+            if (blob == null || !blob.exists()) throw new FileNotFoundException(uri.getPath());
+            return ParcelFileDescriptor.open(blob, ParcelFileDescriptor.MODE_READ_ONLY);
+        }
+        
+        // Compressed acquisition: content://com.forensic.agent.provider/bundle?files=sms.json,contacts.json&level=6
+        if (path.size() == 1 && "bundle".equals(path.get(0))) return openBundle(uri);
+        
         // content://com.forensic.agent.provider/contacts.json → open specific file
         String name = uri.getLastPathSegment();
         File target = new File(baseDir, name);
+        // Columnar runs keep no JSON; convert the columnar file as it is read
+        File columnar = ColumnarWriter.fileFor(target);
+        if (!target.exists() && name.endsWith(".json") && columnar.exists()) return openConverted(columnar);
         if (!target.exists()) throw new FileNotFoundException(name);
+        
+        // Incremental runs append delta segments; serve base + segments as one logical array
+        List<File> segments = JsonSegments.list(target);
+        if (!segments.isEmpty()) {
+            segments.add(0, target);
+            return openMerged(segments);
+        }
         int fileMode = ParcelFileDescriptor.MODE_READ_ONLY;
         return ParcelFileDescriptor.open(target, fileMode);
     }
+
+    /**
+     * Streams a zip of the requested artifacts (default: everything in the manifest) plus the
+     * manifest through a pipe as it is compressed. The pipe is a reliable one, so a failure
+     * part-way reaches the reader as an error instead of a truncated archive.
+     */
+    private ParcelFileDescriptor openBundle(Uri uri) throws FileNotFoundException {
+        String files = uri.getQueryParameter("files");
+        List<String> names = files == null || files.isEmpty() ? new ArrayList<String>() : Arrays.asList(files.split(","));
+        final ArtifactBundle bundle = ArtifactBundle.of(baseDir, names, intParameter(uri, "level", DEFAULT_BUNDLE_LEVEL));
+        try {
+            return stream("bundle", out -> {
+                long started = System.currentTimeMillis();
+                bundle.writeTo(out);
+                Log.d(TAG, "Bundle of " + bundle.getEntries().size() + " artifacts streamed in "
+                        + (System.currentTimeMillis() - started) + " ms");
+            });
+        } catch (IOException e) {
+            throw new FileNotFoundException("Cannot create pipe: " + e.getMessage());
+        }
+    }
+
+    private ParcelFileDescriptor openConverted(final File columnar) throws FileNotFoundException {
+        final ColumnarReader reader;
+        try {
+            reader = ColumnarReader.open(columnar);
+        } catch (IOException e) {
+            throw new FileNotFoundException("Cannot convert " + columnar.getName() + ": " + e.getMessage());
+        }
+        try {
+            return stream("columnar-json", out -> {
+                try (ColumnarReader closing = reader) {
+                    closing.writeJson(out);
+                }
+            });
+        } catch (IOException e) {
+            try {
+                reader.close();
+            } catch (IOException closeError) {
+                // Already failing
+            }
+            throw new FileNotFoundException("Cannot create pipe: " + e.getMessage());
+        }
+    }
+
+    private ParcelFileDescriptor openMerged(final List<File> parts) throws FileNotFoundException {
+        try {
+            return stream("segment-merge", out -> JsonSegments.concat(parts, out));
+        } catch (IOException e) {
+            throw new FileNotFoundException("Cannot create pipe: " + e.getMessage());
+        }
+    }
+
+    /** Writes one streamed response into the pipe handed out by {@link #stream}. */
+    interface PipeWriter {
+        void writeTo(OutputStream out) throws IOException;
+    }
+
+    /**
+     * Runs {@code body} on a thread named {@code threadName} writing into a reliable pipe and
+     * returns the read end. The write end is closed when the body returns, or closed with
+     * the error when it throws, so the reader sees a failure instead of a truncated stream.
+     */
+    static ParcelFileDescriptor stream(String threadName, final PipeWriter body) throws IOException {
+        final ParcelFileDescriptor[] pipe = ParcelFileDescriptor.createReliablePipe();
+        new Thread(() -> {
+            try {
+                body.writeTo(new FileOutputStream(pipe[1].getFileDescriptor()));
+                pipe[1].close();
+            } catch (IOException | RuntimeException e) {
+                Log.e(TAG, "Error streaming " + threadName + ": " + e.getMessage(), e);
+                try {
+                    pipe[1].closeWithError(String.valueOf(e.getMessage()));
+                } catch (IOException closeError) {
+                    // Reader already gone
+                }
+            }
+        }, threadName).start();
+        return pipe[0];
+    }
 }
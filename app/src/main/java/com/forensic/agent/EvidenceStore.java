@@ -0,0 +1,417 @@
+package com.forensic.agent;
+
+import android.content.Context;
+import android.database.Cursor;
+import android.database.MatrixCursor;
+import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteException;
+import android.database.sqlite.SQLiteOpenHelper;
+import android.database.sqlite.SQLiteQueryBuilder;
+import android.database.sqlite.SQLiteStatement;
+
+import java.io.Closeable;
+import java.io.File;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.IntBuffer;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+
+/**
+ * On-device SQLite snapshot of the extracted evidence.
+ *
+ * Lives next to the JSON artifacts as {@code extracted/evidence.db}, with typed tables and
+ * indexes on the columns analysts filter by (address/number, date, contact id). Extraction
+ * fills it through a {@link Batch} per category; {@link DataProvider} serves it under
+ * {@code store/<table>}.
+ *
+ * SMS bodies and calendar titles are also full-text indexed in FTS4 tables that reference
+ * the typed tables instead of copying their text ({@link #search}).
+ */
+public class EvidenceStore extends SQLiteOpenHelper {
+    public static final String FILE_NAME = "evidence.db";
+    private static final int VERSION = 2;
+    private static final int BATCH_SIZE = 1000;
+    public static final String[] SEARCH_COLUMNS = new String[]{"source", "id", "date", "snippet", "score"};
+    /** Okapi BM25 parameters for ranking search matches. */
+    private static final double BM25_K1 = 1.2;
+    private static final double BM25_B = 0.75;
+
+    /** Queryable columns per table, and the date column used by since/until filters. */
+    static final Map<String, String[]> TABLES = new HashMap<>();
+    static final Map<String, String> DATE_COLUMNS = new HashMap<>();
+    static {
+        TABLES.put("contacts", new String[]{"id", "name"});
+        TABLES.put("contact_phones", new String[]{"contact_id", "number"});
+        TABLES.put("sms", new String[]{"_id", "address", "body", "date", "type"});
+        TABLES.put("calls", new String[]{"_id", "number", "date", "duration", "type"});
+        TABLES.put("calendar", new String[]{"id", "title", "dtstart", "dtend"});
+        DATE_COLUMNS.put("sms", "date");
+        DATE_COLUMNS.put("calls", "date");
+        DATE_COLUMNS.put("calendar", "dtstart");
+    }
+
+    /** Full-text indexed tables: FTS table, indexed text column and the table's id column. */
+    static final Map<String, String[]> SEARCH_TABLES = new LinkedHashMap<>();
+    static {
+        SEARCH_TABLES.put("sms", new String[]{"sms_fts", "body", "_id"});
+        SEARCH_TABLES.put("calendar", new String[]{"calendar_fts", "title", "id"});
+    }
+
+    private static EvidenceStore instance;
+
+    public static synchronized EvidenceStore get(Context context) {
+        if (instance == null) {
+            File dir = new File(context.getExternalFilesDir(null), "extracted");
+            instance = new EvidenceStore(context.getApplicationContext(), new File(dir, FILE_NAME));
+        }
+        return instance;
+    }
+
+    private EvidenceStore(Context context, File file) {
+        super(context, file.getAbsolutePath(), null, VERSION);
+        // Readers (DataProvider) keep working while extraction writes
+        setWriteAheadLoggingEnabled(true);
+    }
+
+    @Override
+    public void onCreate(SQLiteDatabase db) {
+        db.execSQL("CREATE TABLE contacts (id INTEGER PRIMARY KEY, name TEXT)");
+        db.execSQL("CREATE TABLE contact_phones (contact_id INTEGER NOT NULL, number TEXT)");
+        db.execSQL("CREATE INDEX contact_phones_contact ON contact_phones (contact_id)");
+        db.execSQL("CREATE INDEX contact_phones_number ON contact_phones (number)");
+        db.execSQL("CREATE TABLE sms (_id INTEGER PRIMARY KEY, address TEXT, body TEXT, date INTEGER, type INTEGER)");
+        db.execSQL("CREATE INDEX sms_address ON sms (address, date)");
+        db.execSQL("CREATE INDEX sms_date ON sms (date)");
+        db.execSQL("CREATE TABLE calls (_id INTEGER PRIMARY KEY, number TEXT, date INTEGER, duration INTEGER, type INTEGER)");
+        db.execSQL("CREATE INDEX calls_number ON calls (number, date)");
+        db.execSQL("CREATE INDEX calls_date ON calls (date)");
+        db.execSQL("CREATE TABLE calendar (id INTEGER PRIMARY KEY, title TEXT, dtstart INTEGER, dtend INTEGER)");
+        db.execSQL("CREATE INDEX calendar_dtstart ON calendar (dtstart)");
+        // External content: the index holds only terms, the text stays in the typed table
+        for (Map.Entry<String, String[]> e : SEARCH_TABLES.entrySet()) {
+            db.execSQL("CREATE VIRTUAL TABLE " + e.getValue()[0] + " USING fts4(content=\"" + e.getKey() + "\", "
+                    + e.getValue()[1] + ", tokenize=unicode61)");
+        }
+    }
+
+    @Override
+    public void onUpgrade(SQLiteDatabase db, int oldVersion, int newVersion) {
+        for (String[] search : SEARCH_TABLES.values()) db.execSQL("DROP TABLE IF EXISTS " + search[0]);
+        for (String table : TABLES.keySet()) db.execSQL("DROP TABLE IF EXISTS " + table);
+        onCreate(db);
+    }
+
+    /**
+     * Re-indexes the full-text tables from the typed tables. Extraction calls this once all
+     * categories are in: building the index in one pass is much cheaper than keeping it in
+     * step row by row, and replaced rows cannot leave stale terms behind.
+     */
+    public void rebuildSearch() {
+        SQLiteDatabase db = getWritableDatabase();
+        for (String[] search : SEARCH_TABLES.values()) {
+            db.execSQL("INSERT INTO " + search[0] + "(" + search[0] + ") VALUES('rebuild')");
+            db.execSQL("INSERT INTO " + search[0] + "(" + search[0] + ") VALUES('optimize')");
+        }
+    }
+
+    /**
+     * Full-text search over the indexed tables, best matches first. {@code query} is FTS4
+     * MATCH syntax (words, {@code "phrases"}, {@code pre*}, {@code OR}, {@code -word}).
+     * Every match is scored with BM25 from its {@code matchinfo}, which needs no text, and
+     * snippets are cut only for the {@code limit} rows returned.
+     *
+     * @param sources tables to search, or every indexed table when empty
+     */
+    public Cursor search(String query, List<String> sources, int limit) {
+        if (limit < 0) throw new IllegalArgumentException("Invalid limit: " + limit);
+        if (sources.isEmpty()) sources = new ArrayList<>(SEARCH_TABLES.keySet());
+        SQLiteDatabase db = getReadableDatabase();
+
+        // Lowest score at the head, so the heap keeps the best limit matches
+        PriorityQueue<Match> best = new PriorityQueue<>(Math.max(1, limit));
+        for (String source : sources) {
+            String[] search = SEARCH_TABLES.get(source);
+            if (search == null) throw new IllegalArgumentException("Unknown search source " + source);
+            try (Cursor c = match(db, "SELECT docid, matchinfo(" + search[0] + ", 'pcnalx') FROM " + search[0]
+                    + " WHERE " + search[0] + " MATCH ?", query)) {
+                while (c.moveToNext()) {
+                    Match m = new Match(source, c.getLong(0), bm25(c.getBlob(1)));
+                    if (best.size() < limit) {
+                        best.add(m);
+                    } else if (limit > 0 && best.peek().score < m.score) {
+                        best.poll();
+                        best.add(m);
+                    }
+                }
+            }
+        }
+
+        List<Match> ranked = new ArrayList<>(best);
+        Collections.sort(ranked, Collections.reverseOrder());
+        for (String source : sources) {
+            String[] search = SEARCH_TABLES.get(source);
+            Map<Long, Match> byId = new HashMap<>();
+            StringBuilder ids = new StringBuilder();
+            for (Match m : ranked) {
+                if (!m.source.equals(source)) continue;
+                byId.put(m.id, m);
+                ids.append(ids.length() == 0 ? "" : ",").append(m.id);
+            }
+            if (byId.isEmpty()) continue;
+            try (Cursor c = match(db, "SELECT f.docid, snippet(" + search[0] + ", '[', ']', '\u2026', -1, 12), t."
+                    + DATE_COLUMNS.get(source) + " FROM " + search[0] + " f JOIN " + source + " t ON t." + search[2]
+                    + " = f.docid WHERE " + search[0] + " MATCH ? AND f.docid IN (" + ids + ")", query)) {
+                while (c.moveToNext()) {
+                    Match m = byId.get(c.getLong(0));
+                    m.snippet = c.getString(1);
+                    m.date = c.isNull(2) ? null : c.getLong(2);
+                }
+            }
+        }
+
+        MatrixCursor cursor = new MatrixCursor(SEARCH_COLUMNS, ranked.size());
+        for (Match m : ranked) cursor.addRow(new Object[]{m.source, m.id, m.date, m.snippet, m.score});
+        return cursor;
+    }
+
+    private static Cursor match(SQLiteDatabase db, String sql, String query) {
+        Cursor c = null;
+        try {
+            c = db.rawQuery(sql, new String[]{query});
+            // rawQuery only prepares; FTS parses the MATCH expression when the query first steps
+            c.getCount();
+            return c;
+        } catch (SQLiteException e) {
+            if (c != null) c.close();
+            // Malformed MATCH expressions are the caller's mistake
+            throw new IllegalArgumentException("Invalid search query " + query + ": " + e.getMessage());
+        }
+    }
+
+    /**
+     * BM25 of one row from FTS4 {@code matchinfo(..., 'pcnalx')}: phrase and column counts,
+     * row count, average and row token counts per column, then per phrase and column the hits
+     * in this row, hits in all rows and rows with a hit.
+     */
+    static double bm25(byte[] matchinfo) {
+        IntBuffer info = ByteBuffer.wrap(matchinfo).order(ByteOrder.nativeOrder()).asIntBuffer();
+        int phrases = info.get(0);
+        int columns = info.get(1);
+        long rows = info.get(2) & 0xffffffffL;
+        double score = 0;
+        for (int col = 0; col < columns; col++) {
+            double avgLength = Math.max(1, info.get(3 + col));
+            double length = info.get(3 + columns + col);
+            for (int p = 0; p < phrases; p++) {
+                int x = 3 + 2 * columns + 3 * (col + p * columns);
+                double hits = info.get(x);
+                if (hits == 0) continue;
+                double withHit = info.get(x + 2);
+                // Floor the idf so that words in most rows still rank by frequency
+                double idf = Math.max(1e-6, Math.log((rows - withHit + 0.5) / (withHit + 0.5)));
+                score += idf * hits * (BM25_K1 + 1)
+                        / (hits + BM25_K1 * (1 - BM25_B + BM25_B * length / avgLength));
+            }
+        }
+        return score;
+    }
+
+    private static class Match implements Comparable<Match> {
+        final String source;
+        final long id;
+        final double score;
+        Long date;
+        String snippet;
+
+        Match(String source, long id, double score) {
+            this.source = source;
+            this.id = id;
+            this.score = score;
+        }
+
+        @Override
+        public int compareTo(Match other) {
+            int c = Double.compare(score, other.score);
+            if (c != 0) return c;
+            // Equal scores: the newer row (larger id) ranks higher
+            return Long.compare(id, other.id);
+        }
+    }
+
+    /** Starts a batched write; add one {@link Insert} per target table. */
+    public Batch batch() {
+        return new Batch(getWritableDatabase());
+    }
+
+    /**
+     * Filtered, sorted query over one table. Every query parameter named after a column is an
+     * equality filter; {@code since}/{@code until} bound the table's date column and
+     * {@code limit}/{@code offset} page the result.
+     */
+    public Cursor query(String table, String[] projection, Map<String, String> params,
+                        String selection, String[] selectionArgs, String sortOrder) {
+        String[] columns = TABLES.get(table);
+        if (columns == null) throw new IllegalArgumentException("Unknown table " + table);
+
+        StringBuilder where = new StringBuilder();
+        List<String> args = new ArrayList<>();
+        for (String column : columns) {
+            String value = params.get(column);
+            if (value != null) {
+                and(where).append(column).append(" = ?");
+                args.add(value);
+            }
+        }
+        String dateColumn = DATE_COLUMNS.get(table);
+        if (dateColumn != null && params.get("since") != null) {
+            and(where).append(dateColumn).append(" >= ?");
+            args.add(params.get("since"));
+        }
+        if (dateColumn != null && params.get("until") != null) {
+            and(where).append(dateColumn).append(" < ?");
+            args.add(params.get("until"));
+        }
+        if (selection != null && !selection.isEmpty()) {
+            and(where).append('(').append(selection).append(')');
+            if (selectionArgs != null) {
+                for (String arg : selectionArgs) args.add(arg);
+            }
+        }
+
+        String limit = null;
+        if (params.get("limit") != null) {
+            limit = params.get("offset") != null
+                    ? Integer.parseInt(params.get("offset")) + "," + Integer.parseInt(params.get("limit"))
+                    : String.valueOf(Integer.parseInt(params.get("limit")));
+        }
+
+        SQLiteQueryBuilder builder = new SQLiteQueryBuilder();
+        builder.setTables(table);
+        builder.setStrict(true);
+        return builder.query(getReadableDatabase(), projection, where.length() > 0 ? where.toString() : null,
+                args.toArray(new String[0]), null, null, sortOrder, limit);
+    }
+
+    private static StringBuilder and(StringBuilder where) {
+        return where.length() > 0 ? where.append(" AND ") : where;
+    }
+
+    /**
+     * One thread's write session. Rows are committed every {@value #BATCH_SIZE} inserts so
+     * that categories extracting in parallel can interleave their writes.
+     *
+     * A transaction holds SQLite's only writer connection, so none is open until the first
+     * write after creation or a commit: a category opening its batch and then querying its
+     * provider, or reading the next rows, does not keep the other categories waiting.
+     * Tables to be replaced are emptied in that first transaction.
+     */
+    public static class Batch implements Closeable {
+        private final SQLiteDatabase db;
+        private final List<Insert> inserts = new ArrayList<>();
+        private final List<String> replaced = new ArrayList<>();
+        private boolean inTransaction;
+        private int pending;
+
+        Batch(SQLiteDatabase db) {
+            this.db = db;
+        }
+
+        /**
+         * Compiled insert into {@code table}. With {@code replaceAll} the table is emptied first
+         * (full extraction); otherwise rows are upserted by primary key (incremental).
+         */
+        public Insert into(String table, boolean replaceAll, String... columns) {
+            if (replaceAll) replaced.add(table);
+            StringBuilder sql = new StringBuilder("INSERT OR REPLACE INTO ").append(table).append(" (");
+            StringBuilder values = new StringBuilder();
+            for (int i = 0; i < columns.length; i++) {
+                sql.append(i == 0 ? "" : ", ").append(columns[i]);
+                values.append(i == 0 ? "?" : ", ?");
+            }
+            sql.append(") VALUES (").append(values).append(')');
+            Insert insert = new Insert(this, db.compileStatement(sql.toString()));
+            inserts.add(insert);
+            return insert;
+        }
+
+        /** Deletes rows whose {@code column} is above {@code id}, e.g. rows past a checkpoint that will be inserted again. */
+        public void deleteAfter(String table, String column, long id) {
+            begin();
+            db.delete(table, column + " > ?", new String[]{String.valueOf(id)});
+        }
+
+        /** Opens the transaction for a write, emptying the replaced tables in the first one. */
+        void begin() {
+            if (inTransaction) return;
+            db.beginTransaction();
+            inTransaction = true;
+            for (String table : replaced) db.delete(table, null, null);
+            replaced.clear();
+        }
+
+        void rowInserted() {
+            if (++pending >= BATCH_SIZE) checkpoint();
+        }
+
+        /** Commits everything written so far; the next write opens a new transaction. */
+        public void checkpoint() {
+            // A replaced table with no rows since is still emptied
+            if (!replaced.isEmpty()) begin();
+            pending = 0;
+            if (!inTransaction) return;
+            db.setTransactionSuccessful();
+            db.endTransaction();
+            inTransaction = false;
+        }
+
+        /** Marks outstanding rows for commit. Call before {@link #close()} on success. */
+        public void commit() {
+            if (!replaced.isEmpty()) begin();
+            if (inTransaction) db.setTransactionSuccessful();
+        }
+
+        @Override
+        public void close() {
+            for (Insert insert : inserts) insert.statement.close();
+            if (inTransaction) db.endTransaction();
+            inTransaction = false;
+        }
+    }
+
+    /** A compiled insert statement belonging to a {@link Batch}. */
+    public static class Insert {
+        private final Batch batch;
+        private final SQLiteStatement statement;
+
+        Insert(Batch batch, SQLiteStatement statement) {
+            this.batch = batch;
+            this.statement = statement;
+        }
+
+        public void bind(int index, String value) {
+            if (value == null) statement.bindNull(index);
+            else statement.bindString(index, value);
+        }
+
+        public void bind(int index, long value) {
+            statement.bindLong(index, value);
+        }
+
+        public void bind(int index, double value) {
+            statement.bindDouble(index, value);
+        }
+
+        public void insert() {
+            batch.begin();
+            statement.executeInsert();
+            statement.clearBindings();
+            batch.rowInserted();
+        }
+    }
+}
@@ -0,0 +1,173 @@
+package com.forensic.agent;
+
+import android.content.Context;
+import android.content.pm.PackageInfo;
+import android.content.pm.PackageManager;
+import android.os.Build;
+import android.util.AtomicFile;
+import android.util.JsonWriter;
+import android.util.Log;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Per-stage timings for one extraction run, saved as {@code extracted/metrics.json}.
+ *
+ * Each category accumulates nanoseconds spent in the provider query, cursor iteration
+ * (including CursorWindow refills across binder), record serialization, evidence store
+ * inserts, disk writes and the final fsync, plus rows, bytes and the peak Java heap seen
+ * while it ran. Timers are plain {@code System.nanoTime()} deltas owned by the extracting
+ * thread, so recording costs a few nanoseconds per row. Where a {@link RowPipeline} reads
+ * the cursor on a second thread, iteration overlaps the other stages and the stages can
+ * add up to more than the total.
+ */
+public class ExtractionMetrics {
+    private static final String TAG = "ForensicAgent";
+    public static final String FILE_NAME = "metrics.json";
+
+    /** Counters for one category; mutated only by the thread extracting it. */
+    public static class Stage {
+        public final String category;
+        public long queryNanos;
+        public long iterateNanos;
+        public long serializeNanos;
+        /** Evidence store inserts and attachment blob copies. */
+        public long storeNanos;
+        public long writeNanos;
+        public long fsyncNanos;
+        public long totalNanos;
+        public long rows;
+        public long bytes;
+        public long peakHeapBytes;
+
+        Stage(String category) {
+            this.category = category;
+        }
+
+        public void sampleHeap() {
+            Runtime rt = Runtime.getRuntime();
+            peakHeapBytes = Math.max(peakHeapBytes, rt.totalMemory() - rt.freeMemory());
+        }
+
+        /**
+         * Copies row, byte, disk write and fsync figures from a closed artifact. Rows and bytes
+         * of resumed segments belong to the run that wrote them and are left out.
+         */
+        public void recordWriter(CheckpointedArtifact artifact) {
+            rows += artifact.getRowCount() - artifact.getResumedRows();
+            bytes += artifact.getBytesWritten() - artifact.getResumedBytes();
+            writeNanos += artifact.getWriteNanos();
+            fsyncNanos += artifact.getFsyncNanos();
+        }
+
+        /** Encoding time excluding the disk writes it triggered. */
+        public long encodeNanos() {
+            return Math.max(0, serializeNanos - writeNanos);
+        }
+
+        public double rowsPerSecond() {
+            return totalNanos > 0 ? rows * 1e9 / totalNanos : 0;
+        }
+    }
+
+    /** Column order of the per-category objects in {@code metrics.json}. */
+    public static final String[] COLUMNS = new String[]{"category", "rows", "bytes", "query_ms", "iterate_ms",
+            "serialize_ms", "store_ms", "write_ms", "fsync_ms", "total_ms", "rows_per_sec", "peak_heap"};
+
+    private final Map<String, Stage> stages = new LinkedHashMap<>();
+    private final long startedAt = System.currentTimeMillis();
+
+    public synchronized Stage stage(String category) {
+        Stage stage = stages.get(category);
+        if (stage == null) {
+            stage = new Stage(category);
+            stages.put(category, stage);
+        }
+        return stage;
+    }
+
+    public synchronized List<Stage> getStages() {
+        return new ArrayList<>(stages.values());
+    }
+
+    public synchronized void save(Context context, File dir) throws IOException {
+        AtomicFile file = new AtomicFile(new File(dir, FILE_NAME));
+        FileOutputStream out = file.startWrite();
+        try {
+            JsonWriter json = new JsonWriter(new OutputStreamWriter(out, StandardCharsets.UTF_8));
+            json.setIndent("  ");
+            json.beginObject();
+            json.name("started").value(startedAt);
+            json.name("finished").value(System.currentTimeMillis());
+            json.name("device").value(Build.MANUFACTURER + " " + Build.MODEL);
+            json.name("sdk").value(Build.VERSION.SDK_INT);
+            json.name("cores").value(Runtime.getRuntime().availableProcessors());
+            json.name("agent_version").value(agentVersion(context));
+            json.name("categories").beginArray();
+            for (Stage s : stages.values()) {
+                json.beginObject();
+                json.name("category").value(s.category);
+                json.name("rows").value(s.rows);
+                json.name("bytes").value(s.bytes);
+                json.name("query_ms").value(s.queryNanos / 1e6);
+                json.name("iterate_ms").value(s.iterateNanos / 1e6);
+                json.name("serialize_ms").value(s.encodeNanos() / 1e6);
+                json.name("store_ms").value(s.storeNanos / 1e6);
+                json.name("write_ms").value(s.writeNanos / 1e6);
+                json.name("fsync_ms").value(s.fsyncNanos / 1e6);
+                json.name("total_ms").value(s.totalNanos / 1e6);
+                json.name("rows_per_sec").value(Math.round(s.rowsPerSecond()));
+                json.name("peak_heap").value(s.peakHeapBytes);
+                json.endObject();
+            }
+            json.endArray();
+            json.endObject();
+            json.flush();
+            file.finishWrite(out);
+        } catch (IOException e) {
+            file.failWrite(out);
+            throw e;
+        }
+        Log.d(TAG, "Metrics saved for " + stages.size() + " categories");
+    }
+
+    /** Per-category objects of the last saved run, empty if none was recorded. */
+    public static JSONArray loadCategories(File dir) {
+        try {
+            AtomicFile file = new AtomicFile(new File(dir, FILE_NAME));
+            return new JSONObject(new String(file.readFully(), StandardCharsets.UTF_8)).getJSONArray("categories");
+        } catch (IOException | JSONException e) {
+            return new JSONArray();
+        }
+    }
+
+    private static String agentVersion(Context context) {
+        PackageManager pm = context.getPackageManager();
+        try {
+            PackageInfo info = Build.VERSION.SDK_INT >= Build.VERSION_CODES.TIRAMISU
+                    ? pm.getPackageInfo(context.getPackageName(), PackageManager.PackageInfoFlags.of(0))
+                    : packageInfo(pm, context.getPackageName());
+            return info.versionName;
+        } catch (PackageManager.NameNotFoundException e) {
+            return null;
+        }
+    }
+
+    /** The int-flags lookup, the only one before API 33. */
+    @SuppressWarnings("deprecation")
+    private static PackageInfo packageInfo(PackageManager pm, String packageName) throws PackageManager.NameNotFoundException {
+        return pm.getPackageInfo(packageName, 0);
+    }
+}
@@ -0,0 +1,209 @@
+package com.forensic.agent;
+
+import android.content.Context;
+import android.net.Uri;
+import android.os.SystemClock;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * Live, process-wide status of the current extraction.
+ *
+ * {@link ExtractionService} reports per-category state, rows and bytes as it goes; every
+ * change is published with {@code ContentResolver.notifyChange} on {@link #STATUS_URI}
+ * (throttled for row updates) and to in-process listeners, and {@link DataProvider}
+ * serves {@link #snapshot()} as the {@code status} endpoint. Host scripts can watch or
+ * poll that endpoint and start pulling as soon as the overall state is {@code complete}.
+ */
+public final class ExtractionProgress {
+    public static final Uri STATUS_URI = Uri.parse("content://" + DataProvider.AUTHORITY + "/status");
+
+    public static final String IDLE = "idle";
+    public static final String PENDING = "pending";
+    public static final String RUNNING = "running";
+    public static final String DONE = "done";
+    public static final String FAILED = "failed";
+    public static final String COMPLETE = "complete";
+
+    /** Row updates are published at most this often; state changes always are. */
+    private static final long NOTIFY_INTERVAL_MS = 250;
+
+    /** Receives every published change, on the reporting thread. */
+    public interface Listener {
+        void onProgress(ExtractionProgress progress);
+    }
+
+    /** Immutable view of one category. */
+    public static final class Category {
+        public final String name;
+        public final String state;
+        public final long rowsDone;
+        public final long rowsTotal;
+        public final long bytes;
+        public final long startedAt;
+        public final long finishedAt;
+        public final double rowsPerSecond;
+
+        Category(String name, String state, long rowsDone, long rowsTotal, long bytes,
+                 long startedAt, long finishedAt, double rowsPerSecond) {
+            this.name = name;
+            this.state = state;
+            this.rowsDone = rowsDone;
+            this.rowsTotal = rowsTotal;
+            this.bytes = bytes;
+            this.startedAt = startedAt;
+            this.finishedAt = finishedAt;
+            this.rowsPerSecond = rowsPerSecond;
+        }
+    }
+
+    private static final class Mutable {
+        String state = PENDING;
+        long rowsDone;
+        long rowsTotal = -1;
+        long bytes;
+        long startedAt;
+        long finishedAt;
+        long startedElapsed;
+        long finishedElapsed;
+    }
+
+    private static final ExtractionProgress INSTANCE = new ExtractionProgress();
+
+    private final Map<String, Mutable> categories = new LinkedHashMap<>();
+    private final List<Listener> listeners = new CopyOnWriteArrayList<>();
+    private Context context;
+    private String state = IDLE;
+    private long startedAt;
+    private long finishedAt;
+    private long lastNotify;
+
+    public static ExtractionProgress get() {
+        return INSTANCE;
+    }
+
+    private ExtractionProgress() {}
+
+    public void addListener(Listener listener) {
+        listeners.add(listener);
+    }
+
+    public void removeListener(Listener listener) {
+        listeners.remove(listener);
+    }
+
+    /** Resets the status for a new run over {@code names}. */
+    public void begin(Context context, List<String> names) {
+        synchronized (this) {
+            this.context = context.getApplicationContext();
+            categories.clear();
+            for (String name : names) categories.put(name, new Mutable());
+            state = RUNNING;
+            startedAt = System.currentTimeMillis();
+            finishedAt = 0;
+        }
+        publish(true);
+    }
+
+    public void started(String name, long rowsTotal) {
+        synchronized (this) {
+            Mutable c = category(name);
+            c.state = RUNNING;
+            c.rowsTotal = rowsTotal;
+            c.startedAt = System.currentTimeMillis();
+            c.startedElapsed = SystemClock.elapsedRealtime();
+        }
+        publish(true);
+    }
+
+    /** Sets the row total once the category's cursor is open. */
+    public void total(String name, long rowsTotal) {
+        synchronized (this) {
+            category(name).rowsTotal = rowsTotal;
+        }
+        publish(false);
+    }
+
+    public void update(String name, long rowsDone, long bytes) {
+        synchronized (this) {
+            Mutable c = category(name);
+            c.rowsDone = rowsDone;
+            c.bytes = bytes;
+        }
+        publish(false);
+    }
+
+    public void finished(String name, boolean success) {
+        synchronized (this) {
+            Mutable c = category(name);
+            c.state = success ? DONE : FAILED;
+            c.finishedAt = System.currentTimeMillis();
+            c.finishedElapsed = SystemClock.elapsedRealtime();
+        }
+        publish(true);
+    }
+
+    /** Marks the whole run complete; published after every category has finished. */
+    public void complete() {
+        synchronized (this) {
+            state = COMPLETE;
+            finishedAt = System.currentTimeMillis();
+        }
+        publish(true);
+    }
+
+    public synchronized String getState() {
+        return state;
+    }
+
+    public synchronized long getStartedAt() {
+        return startedAt;
+    }
+
+    public synchronized long getFinishedAt() {
+        return finishedAt;
+    }
+
+    public synchronized boolean isRunning() {
+        return RUNNING.equals(state);
+    }
+
+    public synchronized List<Category> snapshot() {
+        long now = SystemClock.elapsedRealtime();
+        List<Category> out = new ArrayList<>();
+        for (Map.Entry<String, Mutable> e : categories.entrySet()) {
+            Mutable c = e.getValue();
+            long end = c.finishedElapsed > 0 ? c.finishedElapsed : now;
+            long elapsed = c.startedElapsed > 0 ? end - c.startedElapsed : 0;
+            double rate = elapsed > 0 ? c.rowsDone * 1000.0 / elapsed : 0;
+            out.add(new Category(e.getKey(), c.state, c.rowsDone, c.rowsTotal, c.bytes,
+                    c.startedAt, c.finishedAt, rate));
+        }
+        return out;
+    }
+
+    private Mutable category(String name) {
+        Mutable c = categories.get(name);
+        if (c == null) {
+            c = new Mutable();
+            categories.put(name, c);
+        }
+        return c;
+    }
+
+    private void publish(boolean force) {
+        Context ctx;
+        synchronized (this) {
+            long now = SystemClock.elapsedRealtime();
+            if (!force && now - lastNotify < NOTIFY_INTERVAL_MS) return;
+            lastNotify = now;
+            ctx = context;
+        }
+        for (Listener l : listeners) l.onProgress(this);
+        if (ctx != null) ctx.getContentResolver().notifyChange(STATUS_URI, null);
+    }
+}
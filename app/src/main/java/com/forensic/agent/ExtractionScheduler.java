@@ -0,0 +1,95 @@
+package com.forensic.agent;
+
+import android.os.Process;
+import android.util.Log;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Runs independent extraction categories concurrently on a bounded pool.
+ *
+ * Each category reads its own provider and writes its own artifact, so they are scheduled
+ * side by side. A category that throws is logged and recorded without affecting the
+ * others, and the completion callback fires exactly once after the last category ends.
+ * Category state transitions are reported to {@link ExtractionProgress}.
+ */
+public class ExtractionScheduler {
+    private static final String TAG = "ForensicAgent";
+
+    /** A single category's extraction work. */
+    public interface Task {
+        void run() throws Exception;
+    }
+
+    private final Map<String, Task> tasks = new LinkedHashMap<>();
+    private final List<String> failed = Collections.synchronizedList(new ArrayList<String>());
+    private final ExtractionProgress progress;
+
+    public ExtractionScheduler(ExtractionProgress progress) {
+        this.progress = progress;
+    }
+
+    public void add(String category, Task task) {
+        tasks.put(category, task);
+    }
+
+    public List<String> getCategories() {
+        return new ArrayList<>(tasks.keySet());
+    }
+
+    /** Pool size: one thread per category, capped at the device's core count. */
+    static int poolSize(int taskCount) {
+        return Math.max(1, Math.min(taskCount, Runtime.getRuntime().availableProcessors()));
+    }
+
+    public void start(final Runnable onComplete) {
+        if (tasks.isEmpty()) {
+            onComplete.run();
+            return;
+        }
+
+        final AtomicInteger threadId = new AtomicInteger();
+        final ExecutorService executor = Executors.newFixedThreadPool(poolSize(tasks.size()),
+                r -> new Thread(r, "extract-" + threadId.incrementAndGet()));
+        final AtomicInteger remaining = new AtomicInteger(tasks.size());
+        final long started = System.currentTimeMillis();
+        Log.d(TAG, "Scheduling " + tasks.size() + " categories on " + poolSize(tasks.size()) + " threads");
+
+        for (final Map.Entry<String, Task> entry : tasks.entrySet()) {
+            executor.execute(() -> {
+                Process.setThreadPriority(Process.THREAD_PRIORITY_BACKGROUND);
+                String category = entry.getKey();
+                boolean success = false;
+                try {
+                    Log.d(TAG, "Category started: " + category);
+                    progress.started(category, -1);
+                    entry.getValue().run();
+                    success = true;
+                    Log.d(TAG, "Category finished: " + category);
+                } catch (Throwable t) {
+                    failed.add(category);
+                    Log.e(TAG, "Error extracting " + category + ": " + t.getMessage(), t);
+                } finally {
+                    progress.finished(category, success);
+                    if (remaining.decrementAndGet() == 0) {
+                        executor.shutdown();
+                        Log.d(TAG, "All categories finished in " + (System.currentTimeMillis() - started)
+                                + " ms, failed: " + failed);
+                        onComplete.run();
+                    }
+                }
+            });
+        }
+    }
+
+    public List<String> getFailed() {
+        return new ArrayList<>(failed);
+    }
+}
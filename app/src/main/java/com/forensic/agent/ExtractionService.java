@@ -8,22 +8,85 @@ import android.content.Intent;
 import android.os.IBinder;
 import android.database.Cursor;
 import android.net.Uri;
+import android.os.ParcelFileDescriptor;
 import android.provider.ContactsContract;
 import android.provider.Telephony;
-import android.provider.CallLog;
-import android.provider.CalendarContract;
 import androidx.core.app.NotificationCompat;
+import androidx.core.app.ServiceCompat;
 import android.app.PendingIntent;
-import org.json.JSONArray;
-import org.json.JSONObject;
 import java.io.File;
-import java.io.FileWriter;
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
 import android.util.Log;
 import android.os.Environment;
 
 public class ExtractionService extends Service {
     private static final String TAG = "ForensicAgent";
+    private static final String CHANNEL_ID = "forensic_agent_channel";
+    private static final int NOTIFICATION_ID = 1;
+    
+    /** Rows between progress reports from an extractor loop. */
+    private static final int PROGRESS_EVERY = 256;
+    
+    /**
+     * Records per committed segment; at most this many are read again after a kill. A source
+     * read as parallel ranges keeps no more than this many rows in flight beyond its checkpoint.
+     */
+    private static final int SEGMENT_ROWS = 25000;
+    
+    /** Rows per batch handed from a source's cursor reader to its writer, and batches in flight. */
+    private static final int PIPELINE_BATCH_ROWS = 256;
+    private static final int PIPELINE_DEPTH = 4;
+    
+    /** All MMS parts; {@code Telephony.Mms.Part.CONTENT_URI} only exists from API 29. */
+    private static final Uri MMS_PART_URI = Uri.parse("content://mms/part");
+    
+    /** Boolean extra: also collect emails, organizations and postal addresses per contact. */
+    public static final String EXTRA_CONTACT_DETAILS = "contact_details";
+    
+    /** String extra: {@link #MODE_INCREMENTAL} appends only rows newer than the stored watermarks. */
+    public static final String EXTRA_MODE = "mode";
+    public static final String MODE_INCREMENTAL = "incremental";
+    
+    /** Boolean extra: also write rows into the indexed {@link EvidenceStore}. */
+    public static final String EXTRA_STORE = "store";
+    
+    /** Boolean extra: record MD5 next to SHA-256 in the manifest. */
+    public static final String EXTRA_MD5 = "md5";
+    
+    /** {@link #EXTRA_MODE} value that re-hashes the manifest's artifacts instead of extracting. */
+    public static final String MODE_VERIFY = "verify";
+    
+    /**
+     * String extra: {@link #FORMAT_COLUMNAR} writes SMS, calls and calendar as
+     * {@link ColumnarWriter} files instead of JSON; {@link DataProvider} converts them back on request.
+     */
+    public static final String EXTRA_FORMAT = "format";
+    public static final String FORMAT_JSON = "json";
+    public static final String FORMAT_COLUMNAR = "columnar";
+    
+    /**
+     * Int extra: most threads a large source is read with in parallel, as {@code _ID} ranges
+     * ({@link IdPartitions}); defaults to the core count, 1 reads every source through one cursor.
+     */
+    public static final String EXTRA_PARTITIONS = "partitions";
+    
+    private volatile boolean includeContactDetails;
+    private volatile boolean incremental;
+    private volatile boolean writeStore;
+    private volatile boolean verifyOnly;
+    private volatile boolean resume;
+    private volatile boolean columnar;
+    private volatile int maxPartitions;
+    private Watermarks watermarks;
+    private ArtifactManifest manifest;
+    private ExtractionMetrics metrics;
+    private final AtomicBoolean running = new AtomicBoolean();
+    private final ExtractionProgress progress = ExtractionProgress.get();
+    private final ExtractionProgress.Listener notificationUpdater = this::updateNotification;
 
     @Override
     public int onStartCommand(Intent intent, int flags, int startId) {
@@ -31,23 +94,38 @@ public class ExtractionService extends Service {
         // Start foreground to comply with Android 8+ and Oxygen-style agent
         startForegroundWithNotification();
         
-        new Thread(() -> {
-            try {
-                Log.d(TAG, "Starting extraction in background thread");
-                extractData();
-            } catch (Exception e) {
-                Log.e(TAG, "Error during extraction: " + e.getMessage(), e);
-            } finally {
-                Log.d(TAG, "Stopping service");
-                stopSelf();
-            }
-        }).start();
-        return START_NOT_STICKY;
+        if (!running.compareAndSet(false, true)) {
+            Log.d(TAG, "Extraction already running, ignoring start request");
+            return START_NOT_STICKY;
+        }
+        includeContactDetails = intent != null && intent.getBooleanExtra(EXTRA_CONTACT_DETAILS, false);
+        incremental = intent != null && MODE_INCREMENTAL.equals(intent.getStringExtra(EXTRA_MODE));
+        writeStore = intent != null && intent.getBooleanExtra(EXTRA_STORE, false);
+        verifyOnly = intent != null && MODE_VERIFY.equals(intent.getStringExtra(EXTRA_MODE));
+        columnar = intent != null && FORMAT_COLUMNAR.equals(intent.getStringExtra(EXTRA_FORMAT));
+        maxPartitions = intent != null ? intent.getIntExtra(EXTRA_PARTITIONS, 0) : 0;
+        if (maxPartitions <= 0) maxPartitions = Runtime.getRuntime().availableProcessors();
+        // A redelivered intent means the process died mid-run: continue from the checkpoints
+        resume = (flags & START_FLAG_REDELIVERY) != 0;
+        if (resume) Log.d(TAG, "Restarted after being killed, resuming from checkpoints");
+        boolean md5 = intent != null && intent.getBooleanExtra(EXTRA_MD5, false);
+        manifest = ArtifactManifest.load(new File(getExternalFilesDir(null), "extracted"), md5);
+        
+        progress.addListener(notificationUpdater);
+        extractData(() -> {
+            progress.complete();
+            Log.d(TAG, "Stopping service");
+            running.set(false);
+            // Detach rather than remove, so the completion notification stays up
+            ServiceCompat.stopForeground(this, ServiceCompat.STOP_FOREGROUND_DETACH);
+            stopSelf();
+        });
+        // Have the system restart a killed run with the same intent until stopSelf()
+        return verifyOnly ? START_NOT_STICKY : START_REDELIVER_INTENT;
     }
     
     private void startForegroundWithNotification() {
         Log.d(TAG, "startForegroundWithNotification() called");
-        final String CHANNEL_ID = "forensic_agent_channel";
         NotificationManager nm = (NotificationManager) getSystemService(NOTIFICATION_SERVICE);
         if (android.os.Build.VERSION.SDK_INT >= android.os.Build.VERSION_CODES.O) {
             NotificationChannel channel = new NotificationChannel(CHANNEL_ID, "Forensic Agent", NotificationManager.IMPORTANCE_LOW);
@@ -61,193 +139,791 @@ public class ExtractionService extends Service {
                 .setOngoing(true)
                 .setContentIntent(pi)
                 .build();
-        startForeground(1, notification);
+        startForeground(NOTIFICATION_ID, notification);
         Log.d(TAG, "Started foreground service with notification");
     }
     
-    private void extractData() {
+    /** Mirrors {@link ExtractionProgress} into the foreground notification. */
+    private void updateNotification(ExtractionProgress p) {
+        long done = 0;
+        long total = 0;
+        boolean indeterminate = false;
+        String current = null;
+        for (ExtractionProgress.Category c : p.snapshot()) {
+            done += c.rowsDone;
+            if (c.rowsTotal < 0) indeterminate = true;
+            else total += c.rowsTotal;
+            if (ExtractionProgress.RUNNING.equals(c.state)) current = c.name;
+        }
+        boolean finished = !p.isRunning();
+        Notification notification = new NotificationCompat.Builder(this, CHANNEL_ID)
+                .setContentTitle("Forensic Agent")
+                .setContentText(finished ? "Extraction complete"
+                        : "Extracting " + (current != null ? current : "device data") + "… " + done + " rows")
+                .setSmallIcon(finished ? android.R.drawable.stat_sys_download_done : android.R.drawable.stat_sys_download)
+                .setOngoing(!finished)
+                .setOnlyAlertOnce(true)
+                .setProgress(finished ? 0 : (int) Math.min(total, Integer.MAX_VALUE),
+                        (int) Math.min(done, Integer.MAX_VALUE), !finished && (indeterminate || total == 0))
+                .build();
+        NotificationManager nm = (NotificationManager) getSystemService(NOTIFICATION_SERVICE);
+        nm.notify(NOTIFICATION_ID, notification);
+    }
+    
+    @Override
+    public void onDestroy() {
+        progress.removeListener(notificationUpdater);
+        super.onDestroy();
+    }
+    
+    /**
+     * Schedules every category concurrently; {@code onComplete} runs once after the last
+     * category has finished, whether or not any of them failed.
+     */
+    private void extractData(Runnable onComplete) {
         Log.d(TAG, "extractData() called");
         
+        // Use app-accessible external storage (doesn't require MANAGE_EXTERNAL_STORAGE)
+        File outputDir = new File(getExternalFilesDir(null), "extracted");
+        Log.d(TAG, "Output directory: " + outputDir.getAbsolutePath());
+        
+        // Create directory if it doesn't exist
+        if (!outputDir.exists()) {
+            Log.d(TAG, "Directory doesn't exist, creating...");
+            boolean created = outputDir.mkdirs();
+            Log.d(TAG, "Directory created: " + created);
+            if (!created) {
+                Log.e(TAG, "Failed to create directory: " + outputDir.getAbsolutePath());
+                onComplete.run();
+                return;
+            }
+        }
+        
+        if (verifyOnly) {
+            verifyArtifacts(outputDir, onComplete);
+            return;
+        }
+        
+        Log.d(TAG, "Starting " + (incremental ? "incremental" : "full") + " extraction...");
+        watermarks = new Watermarks(outputDir.getParentFile());
+        metrics = new ExtractionMetrics();
+        
+        // Extract all data types; each category reads its own provider and writes its own file
+        ExtractionScheduler scheduler = new ExtractionScheduler(progress);
+        scheduler.add("contacts", () -> extractContacts(new File(outputDir, "contacts.json")));
+        for (SourceDefinition source : Sources.EXTRACTED) {
+            scheduler.add(source.name, () -> extractSource(source, new File(outputDir, source.artifact)));
+        }
+        scheduler.add("mms", () -> extractMms(new File(outputDir, "mms.json")));
+        scheduler.add("timeline", () -> extractTimeline(new File(outputDir, Timeline.FILE_NAME)));
+        progress.begin(this, scheduler.getCategories());
+        scheduler.start(() -> {
+            buildEntityIndex(outputDir);
+            if (writeStore) buildSearchIndex();
+            try {
+                metrics.save(this, outputDir);
+            } catch (IOException e) {
+                Log.e(TAG, "Error saving metrics: " + e.getMessage(), e);
+            }
+            try {
+                manifest.save();
+            } catch (IOException e) {
+                Log.e(TAG, "Error saving manifest: " + e.getMessage(), e);
+            }
+            onComplete.run();
+        });
+    }
+    
+    /**
+     * Writes SMS, calls and calendar events merged in date order. The merge needs each
+     * source sorted by date rather than by id, so the timeline is re-read in full on
+     * incremental runs instead of taking delta segments.
+     */
+    private void extractTimeline(File outputFile) throws IOException {
+        ExtractionMetrics.Stage stage = metrics.stage("timeline");
+        long started = System.nanoTime();
+        JsonArtifactWriter written = null;
+        try (Cursor timeline = Timeline.open(getContentResolver(), Collections.<String>emptyList(), -1, -1);
+             JsonArtifactWriter writer = new JsonArtifactWriter(outputFile, manifest)) {
+            written = writer;
+            stage.queryNanos += System.nanoTime() - started;
+            progress.total("timeline", timeline.getCount());
+            long iterated = System.nanoTime();
+            Timeline.write(timeline, writer);
+            writer.finish();
+            stage.serializeNanos += System.nanoTime() - iterated;
+            progress.update("timeline", writer.getRowCount(), writer.getBytesWritten());
+            Log.d(TAG, "Timeline written successfully, size: " + writer.getRowCount());
+        } finally {
+            if (written != null) {
+                stage.rows = written.getRowCount();
+                stage.bytes = written.getBytesWritten();
+                stage.writeNanos = written.getWriteNanos();
+                stage.fsyncNanos = written.getFsyncNanos();
+            }
+            stage.sampleHeap();
+            stage.totalNanos = System.nanoTime() - started;
+        }
+    }
+
+    /** Full-text indexes the SMS and calendar text the categories just stored, for {@code search}. */
+    private void buildSearchIndex() {
+        ExtractionMetrics.Stage stage = metrics.stage("search");
+        long started = System.nanoTime();
         try {
-            // Use app-accessible external storage (doesn't require MANAGE_EXTERNAL_STORAGE)
-            File outputDir = new File(getExternalFilesDir(null), "extracted");
-            Log.d(TAG, "Output directory: " + outputDir.getAbsolutePath());
-            
-            // Create directory if it doesn't exist
-            if (!outputDir.exists()) {
-                Log.d(TAG, "Directory doesn't exist, creating...");
-                boolean created = outputDir.mkdirs();
-                Log.d(TAG, "Directory created: " + created);
-                if (!created) {
-                    Log.e(TAG, "Failed to create directory: " + outputDir.getAbsolutePath());
-                    return;
+            EvidenceStore.get(this).rebuildSearch();
+            Log.d(TAG, "Search index built in " + (System.nanoTime() - started) / 1000000 + " ms");
+        } catch (RuntimeException e) {
+            Log.e(TAG, "Error building search index: " + e.getMessage(), e);
+        } finally {
+            stage.sampleHeap();
+            stage.storeNanos = System.nanoTime() - started;
+            stage.totalNanos = stage.storeNanos;
+        }
+    }
+
+    /**
+     * Links numbers across the finished contacts, SMS and call artifacts into
+     * {@link PhoneIndex#FILE_NAME}. It reads the artifacts rather than the cursors, so
+     * incremental segments and resumed runs are covered the same way.
+     */
+    private void buildEntityIndex(File outputDir) {
+        ExtractionMetrics.Stage stage = metrics.stage("entities");
+        long started = System.nanoTime();
+        try {
+            PhoneIndex index = PhoneIndex.build(outputDir, PhoneIndex.defaultCountryIso(this));
+            long built = System.nanoTime();
+            stage.iterateNanos += built - started;
+            File file = new File(outputDir, PhoneIndex.FILE_NAME);
+            index.write(file, manifest);
+            stage.serializeNanos += System.nanoTime() - built;
+            stage.rows = index.getEntities().size();
+            stage.bytes = file.length();
+            Log.d(TAG, "Entity index written, " + stage.rows + " numbers");
+        } catch (IOException | RuntimeException e) {
+            Log.e(TAG, "Error building entity index: " + e.getMessage(), e);
+        } finally {
+            stage.sampleHeap();
+            stage.totalNanos = System.nanoTime() - started;
+        }
+    }
+    
+    /** Re-hashes every artifact in the manifest in parallel and logs any mismatch. */
+    private void verifyArtifacts(File outputDir, Runnable onComplete) {
+        progress.begin(this, Collections.singletonList("verify"));
+        new Thread(() -> {
+            boolean success = false;
+            try {
+                progress.started("verify", manifest.getEntries().size());
+                int failed = 0;
+                for (ManifestVerifier.Result r : ManifestVerifier.verify(outputDir, manifest.getEntries())) {
+                    if (r.isOk()) {
+                        Log.d(TAG, "Verified " + r.entry.file);
+                    } else {
+                        failed++;
+                        Log.e(TAG, "Verification FAILED for " + r.entry.file + ": expected " + r.entry.sha256
+                                + " (" + r.entry.size + " bytes), got " + r.actualSha256 + " (" + r.actualSize + " bytes)"
+                                + (r.error != null ? ", " + r.error : ""));
+                    }
                 }
+                progress.update("verify", manifest.getEntries().size(), 0);
+                success = failed == 0;
+                Log.d(TAG, "Verification finished, " + failed + " mismatches");
+            } catch (Exception e) {
+                Log.e(TAG, "Error verifying artifacts: " + e.getMessage(), e);
+            } finally {
+                progress.finished("verify", success);
+                onComplete.run();
             }
-            
-            Log.d(TAG, "Starting extraction...");
-            
-            // Extract all data types
-            extractContacts(new File(outputDir, "contacts.json"));
-            extractSMS(new File(outputDir, "sms.json"));
-            extractCallLogs(new File(outputDir, "call_logs.json"));
-            extractCalendar(new File(outputDir, "calendar.json"));
-            
-            Log.d(TAG, "Extraction completed successfully");
-        } catch (Exception e) {
-            Log.e(TAG, "Error during extraction: " + e.getMessage(), e);
-        }
+        }, "verify").start();
     }
     
-    private void extractContacts(File outputFile) {
+    /**
+     * Writes one record per contact using exactly two provider queries, however large the
+     * address book: the contact list ordered by _ID, and a single Data query ordered by
+     * CONTACT_ID that is merge-joined against it in one pass.
+     */
+    private void extractContacts(File outputFile) throws IOException {
         Log.d(TAG, "extractContacts() called, output file: " + outputFile.getAbsolutePath());
         
-        try {
-            JSONArray contacts = new JSONArray();
-            
-            Uri uri = ContactsContract.Contacts.CONTENT_URI;
-            Cursor cursor = getContentResolver().query(uri, null, null, null, null);
+        List<String> mimeTypes = new ArrayList<>();
+        mimeTypes.add(ContactsContract.CommonDataKinds.Phone.CONTENT_ITEM_TYPE);
+        if (includeContactDetails) {
+            mimeTypes.add(ContactsContract.CommonDataKinds.Email.CONTENT_ITEM_TYPE);
+            mimeTypes.add(ContactsContract.CommonDataKinds.Organization.CONTENT_ITEM_TYPE);
+            mimeTypes.add(ContactsContract.CommonDataKinds.StructuredPostal.CONTENT_ITEM_TYPE);
+        }
+        StringBuilder selection = new StringBuilder(ContactsContract.Data.MIMETYPE).append(" IN (");
+        for (int i = 0; i < mimeTypes.size(); i++) selection.append(i == 0 ? "?" : ",?");
+        selection.append(')');
+        
+        ExtractionMetrics.Stage stage = metrics.stage("contacts");
+        long started = System.nanoTime();
+        Cursor cursor = null;
+        Cursor data = null;
+        CheckpointedArtifact written = null;
+        try (CheckpointedArtifact artifact = checkpointed("contacts", outputFile, outputFile, "details=" + includeContactDetails);
+             EvidenceStore.Batch batch = writeStore ? EvidenceStore.get(this).batch() : null) {
+            written = artifact;
+            boolean fresh = !artifact.isResumed();
+            String[] after = fresh ? null : new String[]{String.valueOf(artifact.getLastId())};
+            List<String> dataArgs = new ArrayList<>(mimeTypes);
+            if (!fresh) {
+                selection.append(" AND ").append(ContactsContract.Data.CONTACT_ID).append(" > ?");
+                dataArgs.add(after[0]);
+                // Phones have no key to upsert on; drop any committed past the checkpoint
+                if (batch != null) batch.deleteAfter("contact_phones", "contact_id", artifact.getLastId());
+            }
+            EvidenceStore.Insert storeContact = batch != null ? batch.into("contacts", fresh, "id", "name") : null;
+            EvidenceStore.Insert storePhone = batch != null ? batch.into("contact_phones", fresh, "contact_id", "number") : null;
+            cursor = getContentResolver().query(
+                    ContactsContract.Contacts.CONTENT_URI,
+                    new String[]{ContactsContract.Contacts._ID, ContactsContract.Contacts.DISPLAY_NAME},
+                    fresh ? null : ContactsContract.Contacts._ID + " > ?", after, ContactsContract.Contacts._ID + " ASC");
+            data = getContentResolver().query(
+                    ContactsContract.Data.CONTENT_URI,
+                    new String[]{
+                            ContactsContract.Data.CONTACT_ID,
+                            ContactsContract.Data.MIMETYPE,
+                            ContactsContract.Data.DATA1,
+                            ContactsContract.CommonDataKinds.Organization.TITLE
+                    },
+                    selection.toString(), dataArgs.toArray(new String[0]),
+                    ContactsContract.Data.CONTACT_ID + " ASC, " + ContactsContract.Data._ID + " ASC");
             
-            if (cursor != null && cursor.moveToFirst()) {
-                Log.d(TAG, "Contacts cursor has data, count: " + cursor.getCount());
-                do {
-                    JSONObject contact = new JSONObject();
-                    String id = cursor.getString(cursor.getColumnIndex(ContactsContract.Contacts._ID));
-                    String name = cursor.getString(cursor.getColumnIndex(ContactsContract.Contacts.DISPLAY_NAME));
-                    
-                    contact.put("id", id);
-                    contact.put("name", name);
+            if (cursor != null) {
+                Log.d(TAG, "Contacts cursor count: " + cursor.getCount()
+                        + ", data rows: " + (data != null ? data.getCount() : 0));
+                // getCount() fills the first window, so it belongs to the query stage
+                stage.queryNanos += System.nanoTime() - started;
+                progress.total("contacts", artifact.getRowCount() + cursor.getCount());
+                int idCol = cursor.getColumnIndexOrThrow(ContactsContract.Contacts._ID);
+                int nameCol = cursor.getColumnIndexOrThrow(ContactsContract.Contacts.DISPLAY_NAME);
+                int dataContactCol = data != null ? data.getColumnIndexOrThrow(ContactsContract.Data.CONTACT_ID) : -1;
+                int mimeCol = data != null ? data.getColumnIndexOrThrow(ContactsContract.Data.MIMETYPE) : -1;
+                int valueCol = data != null ? data.getColumnIndexOrThrow(ContactsContract.Data.DATA1) : -1;
+                int titleCol = data != null ? data.getColumnIndexOrThrow(ContactsContract.CommonDataKinds.Organization.TITLE) : -1;
+                boolean hasData = data != null && data.moveToFirst();
+                
+                // Per-contact scratch lists, reused so memory stays bounded by the largest contact
+                List<String> phones = new ArrayList<>();
+                List<String> emails = new ArrayList<>();
+                List<String[]> organizations = new ArrayList<>();
+                List<String> addresses = new ArrayList<>();
+                
+                long loopStarted = System.nanoTime();
+                while (cursor.moveToNext()) {
+                    long id = cursor.getLong(idCol);
+                    phones.clear();
+                    emails.clear();
+                    organizations.clear();
+                    addresses.clear();
                     
-                    // Get phone numbers
-                    JSONArray phones = new JSONArray();
-                    Cursor phoneCursor = getContentResolver().query(
-                        ContactsContract.CommonDataKinds.Phone.CONTENT_URI,
-                        null,
-                        ContactsContract.CommonDataKinds.Phone.CONTACT_ID + " = ?",
-                        new String[]{id},
-                        null
-                    );
-                    
-                    if (phoneCursor != null && phoneCursor.moveToFirst()) {
-                        do {
-                            String number = phoneCursor.getString(
-                                phoneCursor.getColumnIndex(ContactsContract.CommonDataKinds.Phone.NUMBER)
-                            );
-                            phones.put(number);
-                        } while (phoneCursor.moveToNext());
-                        phoneCursor.close();
+                    // Both cursors are ordered by contact id; skip orphans, collect this contact's rows
+                    while (hasData && data.getLong(dataContactCol) < id) hasData = data.moveToNext();
+                    while (hasData && data.getLong(dataContactCol) == id) {
+                        String mime = data.getString(mimeCol);
+                        String value = data.getString(valueCol);
+                        if (ContactsContract.CommonDataKinds.Phone.CONTENT_ITEM_TYPE.equals(mime)) {
+                            phones.add(value);
+                        } else if (ContactsContract.CommonDataKinds.Email.CONTENT_ITEM_TYPE.equals(mime)) {
+                            emails.add(value);
+                        } else if (ContactsContract.CommonDataKinds.Organization.CONTENT_ITEM_TYPE.equals(mime)) {
+                            organizations.add(new String[]{value, data.getString(titleCol)});
+                        } else if (ContactsContract.CommonDataKinds.StructuredPostal.CONTENT_ITEM_TYPE.equals(mime)) {
+                            addresses.add(value);
+                        }
+                        hasData = data.moveToNext();
                     }
                     
-                    contact.put("phones", phones);
-                    contacts.put(contact);
+                    String name = cursor.getString(nameCol);
+                    long serializeStarted = System.nanoTime();
+                    JsonArtifactWriter writer = artifact.writer();
+                    writer.beginRecord();
+                    writer.field("id", String.valueOf(id));
+                    writer.field("name", name);
+                    writeStrings(writer, "phones", phones);
+                    if (includeContactDetails) {
+                        writeStrings(writer, "emails", emails);
+                        writer.json().name("organizations").beginArray();
+                        for (String[] org : organizations) {
+                            writer.json().beginObject();
+                            if (org[0] != null) writer.json().name("company").value(org[0]);
+                            if (org[1] != null) writer.json().name("title").value(org[1]);
+                            writer.json().endObject();
+                        }
+                        writer.json().endArray();
+                        writeStrings(writer, "addresses", addresses);
+                    }
+                    writer.endRecord();
+                    long storeStarted = System.nanoTime();
+                    stage.serializeNanos += storeStarted - serializeStarted;
+                    if (artifact.getRowCount() % PROGRESS_EVERY == 0) {
+                        progress.update("contacts", artifact.getRowCount(), artifact.getBytesWritten());
+                        stage.sampleHeap();
+                    }
                     
-                } while (cursor.moveToNext());
-                cursor.close();
+                    if (batch != null) {
+                        storeContact.bind(1, id);
+                        storeContact.bind(2, name);
+                        storeContact.insert();
+                        for (String phone : phones) {
+                            storePhone.bind(1, id);
+                            storePhone.bind(2, phone);
+                            storePhone.insert();
+                        }
+                        stage.storeNanos += System.nanoTime() - storeStarted;
+                    }
+                    checkpointIfFull(artifact, batch, stage, id, 0);
+                }
+                // The merge join interleaves both cursors, so iteration is what is left of the loop
+                stage.iterateNanos += System.nanoTime() - loopStarted - stage.serializeNanos - stage.storeNanos;
             }
+            if (batch != null) {
+                long commitStarted = System.nanoTime();
+                batch.checkpoint();
+                stage.storeNanos += System.nanoTime() - commitStarted;
+            }
+            artifact.finish();
+            progress.update("contacts", artifact.getRowCount(), artifact.getBytesWritten());
             
-            // Write to file
-            FileWriter writer = new FileWriter(outputFile);
-            writer.write(contacts.toString(2));
-            writer.close();
-            Log.d(TAG, "Contacts written successfully, size: " + contacts.length());
-        } catch (Exception e) {
-            Log.e(TAG, "Error extracting contacts: " + e.getMessage(), e);
+            Log.d(TAG, "Contacts written successfully, size: " + artifact.getRowCount() + " (2 provider queries)");
+        } finally {
+            if (cursor != null) cursor.close();
+            if (data != null) data.close();
+            if (written != null) stage.recordWriter(written);
+            stage.sampleHeap();
+            stage.totalNanos = System.nanoTime() - started;
         }
     }
     
-    private void extractSMS(File outputFile) {
-        Log.d(TAG, "extractSMS() called, output file: " + outputFile.getAbsolutePath());
+    private static void writeStrings(JsonArtifactWriter writer, String name, List<String> values) throws IOException {
+        writer.json().name(name).beginArray();
+        for (String value : values) writer.json().value(value);
+        writer.json().endArray();
+    }
+    
+    /**
+     * Writes one record per MMS with its parts, using two queries merge-joined on the message
+     * id like {@link #extractContacts}. Text and SMIL parts are inlined; every other part is
+     * streamed into the {@link BlobStore}, recorded in the manifest and referenced by SHA-256.
+     * MMS dates are stored in seconds by the provider and are exported in milliseconds like SMS.
+     */
+    private void extractMms(File outputFile) throws IOException {
+        Log.d(TAG, "extractMms() called, output file: " + outputFile.getAbsolutePath());
         
-        try {
-            JSONArray messages = new JSONArray();
-            
-            Uri uri = Telephony.Sms.CONTENT_URI;
-            Cursor cursor = getContentResolver().query(uri, null, null, null, null);
+        long since = deltaStart("mms", outputFile);
+        File target = since < 0 ? outputFile : JsonSegments.next(outputFile);
+        long maxId = since;
+        long maxDate = since < 0 ? 0 : watermarks.getMaxDate("mms");
+        BlobStore blobs = new BlobStore(outputFile.getParentFile(), manifest);
+        int rows;
+        int written = 0;
+        int shared = 0;
+        long blobBytes = 0;
+        
+        ExtractionMetrics.Stage stage = metrics.stage("mms");
+        long started = System.nanoTime();
+        Cursor mms = null;
+        Cursor parts = null;
+        CheckpointedArtifact opened = null;
+        try (CheckpointedArtifact artifact = checkpointed("mms", outputFile, target, "since=" + since)) {
+            opened = artifact;
+            long from = since;
+            if (artifact.isResumed()) {
+                from = maxId = artifact.getLastId();
+                maxDate = artifact.getMaxDate();
+            }
+            String[] args = from < 0 ? null : new String[]{String.valueOf(from)};
+            mms = getContentResolver().query(Telephony.Mms.CONTENT_URI,
+                    new String[]{Telephony.Mms._ID, Telephony.Mms.THREAD_ID, Telephony.Mms.DATE,
+                            Telephony.Mms.MESSAGE_BOX, Telephony.Mms.SUBJECT},
+                    from < 0 ? null : Telephony.Mms._ID + " > ?", args, Telephony.Mms._ID + " ASC");
+            parts = getContentResolver().query(MMS_PART_URI,
+                    new String[]{Telephony.Mms.Part._ID, Telephony.Mms.Part.MSG_ID, Telephony.Mms.Part.SEQ,
+                            Telephony.Mms.Part.CONTENT_TYPE, Telephony.Mms.Part.NAME,
+                            Telephony.Mms.Part.FILENAME, Telephony.Mms.Part.TEXT},
+                    from < 0 ? null : Telephony.Mms.Part.MSG_ID + " > ?", args,
+                    Telephony.Mms.Part.MSG_ID + " ASC, " + Telephony.Mms.Part._ID + " ASC");
             
-            if (cursor != null && cursor.moveToFirst()) {
-                Log.d(TAG, "SMS cursor has data, count: " + cursor.getCount());
-                do {
-                    JSONObject msg = new JSONObject();
-                    msg.put("address", cursor.getString(cursor.getColumnIndex(Telephony.Sms.ADDRESS)));
-                    msg.put("body", cursor.getString(cursor.getColumnIndex(Telephony.Sms.BODY)));
-                    msg.put("date", cursor.getLong(cursor.getColumnIndex(Telephony.Sms.DATE)));
-                    msg.put("type", cursor.getInt(cursor.getColumnIndex(Telephony.Sms.TYPE)));
-                    messages.put(msg);
-                } while (cursor.moveToNext());
-                cursor.close();
+            if (mms != null) {
+                Log.d(TAG, "MMS cursor count: " + mms.getCount() + ", parts: " + (parts != null ? parts.getCount() : 0));
+                stage.queryNanos += System.nanoTime() - started;
+                progress.total("mms", artifact.getRowCount() + mms.getCount());
+                int idCol = mms.getColumnIndexOrThrow(Telephony.Mms._ID);
+                int threadCol = mms.getColumnIndexOrThrow(Telephony.Mms.THREAD_ID);
+                int dateCol = mms.getColumnIndexOrThrow(Telephony.Mms.DATE);
+                int boxCol = mms.getColumnIndexOrThrow(Telephony.Mms.MESSAGE_BOX);
+                int subjectCol = mms.getColumnIndexOrThrow(Telephony.Mms.SUBJECT);
+                int partIdCol = parts != null ? parts.getColumnIndexOrThrow(Telephony.Mms.Part._ID) : -1;
+                int msgCol = parts != null ? parts.getColumnIndexOrThrow(Telephony.Mms.Part.MSG_ID) : -1;
+                int seqCol = parts != null ? parts.getColumnIndexOrThrow(Telephony.Mms.Part.SEQ) : -1;
+                int typeCol = parts != null ? parts.getColumnIndexOrThrow(Telephony.Mms.Part.CONTENT_TYPE) : -1;
+                int nameCol = parts != null ? parts.getColumnIndexOrThrow(Telephony.Mms.Part.NAME) : -1;
+                int fileCol = parts != null ? parts.getColumnIndexOrThrow(Telephony.Mms.Part.FILENAME) : -1;
+                int textCol = parts != null ? parts.getColumnIndexOrThrow(Telephony.Mms.Part.TEXT) : -1;
+                boolean hasPart = parts != null && parts.moveToFirst();
+                
+                long loopStarted = System.nanoTime();
+                long blobNanos = 0;
+                while (mms.moveToNext()) {
+                    long id = mms.getLong(idCol);
+                    long date = mms.getLong(dateCol) * 1000;
+                    maxId = Math.max(maxId, id);
+                    maxDate = Math.max(maxDate, date);
+                    JsonArtifactWriter writer = artifact.writer();
+                    writer.beginRecord();
+                    writer.field("id", id);
+                    writer.field("thread_id", mms.getLong(threadCol));
+                    writer.field("date", date);
+                    writer.field("msg_box", mms.getLong(boxCol));
+                    writer.field("subject", mms.getString(subjectCol));
+                    writer.json().name("parts").beginArray();
+                    
+                    // Both cursors are ordered by message id; skip orphans, write this message's parts
+                    while (hasPart && parts.getLong(msgCol) < id) hasPart = parts.moveToNext();
+                    while (hasPart && parts.getLong(msgCol) == id) {
+                        writer.json().beginObject();
+                        writer.field("seq", parts.getLong(seqCol));
+                        writer.field("content_type", parts.getString(typeCol));
+                        writer.field("name", parts.getString(nameCol));
+                        writer.field("filename", parts.getString(fileCol));
+                        String text = parts.getString(textCol);
+                        if (text != null) {
+                            writer.field("text", text);
+                        } else {
+                            long blobStarted = System.nanoTime();
+                            Uri partUri = Uri.withAppendedPath(MMS_PART_URI, String.valueOf(parts.getLong(partIdCol)));
+                            try {
+                                ParcelFileDescriptor pfd = getContentResolver().openFileDescriptor(partUri, "r");
+                                if (pfd == null) throw new IOException("no descriptor");
+                                BlobStore.Blob blob = blobs.put(pfd);
+                                writer.field("sha256", blob.sha256);
+                                writer.field("size", blob.size);
+                                if (blob.written) {
+                                    written++;
+                                    blobBytes += blob.size;
+                                } else {
+                                    shared++;
+                                }
+                            } catch (IOException e) {
+                                Log.e(TAG, "Error copying " + partUri + ": " + e.getMessage());
+                                writer.field("error", e.getMessage());
+                            }
+                            blobNanos += System.nanoTime() - blobStarted;
+                        }
+                        writer.json().endObject();
+                        hasPart = parts.moveToNext();
+                    }
+                    
+                    writer.json().endArray();
+                    writer.endRecord();
+                    if (artifact.getRowCount() % PROGRESS_EVERY == 0) {
+                        progress.update("mms", artifact.getRowCount(), artifact.getBytesWritten() + blobBytes);
+                        stage.sampleHeap();
+                    }
+                    // Blobs are content-addressed, so parts stored after the checkpoint are simply found again
+                    checkpointIfFull(artifact, null, stage, id, maxDate);
+                }
+                // Serialization is interleaved with the part cursor; only blob copies are split out
+                stage.storeNanos += blobNanos;
+                stage.serializeNanos += System.nanoTime() - loopStarted - blobNanos;
             }
+            artifact.finish();
+            progress.update("mms", artifact.getRowCount(), artifact.getBytesWritten() + blobBytes);
             
-            // Write to file
-            FileWriter writer = new FileWriter(outputFile);
-            writer.write(messages.toString(2));
-            writer.close();
-            Log.d(TAG, "SMS written successfully, size: " + messages.length());
-        } catch (Exception e) {
-            Log.e(TAG, "Error extracting SMS: " + e.getMessage(), e);
+            rows = artifact.getRowCount();
+            Log.d(TAG, "MMS written successfully, size: " + rows + ", blobs written: " + written
+                    + " (" + blobBytes + " bytes), deduplicated: " + shared);
+        } finally {
+            if (mms != null) mms.close();
+            if (parts != null) parts.close();
+            if (opened != null) stage.recordWriter(opened);
+            stage.bytes += blobBytes;
+            stage.sampleHeap();
+            stage.totalNanos = System.nanoTime() - started;
         }
+        commitWatermark("mms", outputFile, target, maxId, maxDate, rows);
     }
     
-    private void extractCallLogs(File outputFile) {
-        Log.d(TAG, "extractCallLogs() called, output file: " + outputFile.getAbsolutePath());
+    /**
+     * Opens the checkpointed writer for one category. The store flag is part of the variant,
+     * since a checkpoint taken without the store has no store rows to resume from.
+     */
+    private CheckpointedArtifact checkpointed(String name, File artifact, File target, String variant) throws IOException {
+        return new CheckpointedArtifact(artifact.getParentFile(), name, target, manifest,
+                variant + ",store=" + writeStore, resume, SEGMENT_ROWS);
+    }
+    
+    /**
+     * Commits the segment in progress once it is full, after the store batch so a checkpoint
+     * never runs ahead of the store. Counted as serialization, like the rest of the artifact.
+     */
+    private static void checkpointIfFull(CheckpointedArtifact artifact, EvidenceStore.Batch batch,
+                                         ExtractionMetrics.Stage stage, long id, long maxDate) throws IOException {
+        if (!artifact.isSegmentFull()) return;
+        long started = System.nanoTime();
+        if (batch != null) batch.checkpoint();
+        artifact.checkpoint(id, maxDate);
+        stage.serializeNanos += System.nanoTime() - started;
+    }
+    
+    /**
+     * First _ID this run still has to read for a watermarked source, or -1 for a full rewrite.
+     * Incremental runs only apply once both the base artifact and its watermark exist.
+     */
+    private long deltaStart(String source, File artifact) {
+        if (!incremental || !artifact.exists() || !watermarks.has(source)) return -1;
+        return watermarks.getMaxId(source);
+    }
+    
+    /**
+     * Finalizes a watermarked source after its rows were written to {@code target}: a full
+     * rewrite drops stale delta segments, an empty delta segment is discarded.
+     */
+    private void commitWatermark(String source, File artifact, File target, long maxId, long maxDate, int rows) throws IOException {
+        if (target.equals(artifact)) {
+            JsonSegments.clear(artifact);
+        } else if (rows == 0) {
+            target.delete();
+        }
+        watermarks.update(source, maxId, maxDate);
+    }
+    
+    /**
+     * Generic extractor driven by a {@link SourceDefinition}: one query with the definition's
+     * projection ordered by its id column, column indexes resolved once, and each row
+     * streamed to the JSON artifact (and the evidence store when enabled). The cursor is read
+     * on its own thread through a {@link RowPipeline}, so provider IPC overlaps the writes.
+     * Sources large enough to split are read as parallel {@code _ID} ranges instead, see
+     * {@link #readPartitioned}.
+     */
+    private void extractSource(SourceDefinition source, File outputFile) throws IOException {
+        Log.d(TAG, "extractSource(" + source.name + ") called, output file: " + outputFile.getAbsolutePath());
+        if (columnar) {
+            extractSourceColumnar(source, outputFile);
+            return;
+        }
         
-        try {
-            JSONArray calls = new JSONArray();
+        long since = deltaStart(source.name, outputFile);
+        // A full JSON run replaces a columnar file from an earlier run
+        if (since < 0) ColumnarWriter.fileFor(outputFile).delete();
+        File target = since < 0 ? outputFile : JsonSegments.next(outputFile);
+        long maxId = since;
+        long maxDate = since < 0 ? 0 : watermarks.getMaxDate(source.name);
+        int rows;
+        
+        ExtractionMetrics.Stage stage = metrics.stage(source.name);
+        long started = System.nanoTime();
+        CheckpointedArtifact written = null;
+        try (CheckpointedArtifact artifact = checkpointed(source.name, outputFile, target, "since=" + since);
+             EvidenceStore.Batch batch = writeStore && source.storeTable != null ? EvidenceStore.get(this).batch() : null) {
+            written = artifact;
+            long from = since;
+            if (artifact.isResumed()) {
+                from = maxId = artifact.getLastId();
+                maxDate = artifact.getMaxDate();
+            }
+            // Resumed rows upsert by primary key, so only a fresh full run empties the table
+            EvidenceStore.Insert store = batch != null
+                    ? batch.into(source.storeTable, since < 0 && !artifact.isResumed(), source.names()) : null;
+            IdPartitions ranges = IdPartitions.plan(getContentResolver(), source, from, maxPartitions, SEGMENT_ROWS);
+            Cursor cursor = ranges != null ? null : getContentResolver().query(source.uri, source.projection(),
+                    from < 0 ? null : source.idColumn + " > ?",
+                    from < 0 ? null : new String[]{String.valueOf(from)},
+                    source.idColumn + " ASC");
             
-            Uri uri = CallLog.Calls.CONTENT_URI;
-            Cursor cursor = getContentResolver().query(uri, null, null, null, null);
+            if (ranges != null) {
+                stage.queryNanos += System.nanoTime() - started;
+                long[] watermark = readPartitioned(source, ranges, artifact, batch, store, stage, maxId, maxDate);
+                maxId = watermark[0];
+                maxDate = watermark[1];
+            } else if (cursor != null) {
+                try {
+                    Log.d(TAG, source.name + " cursor count: " + cursor.getCount());
+                    progress.total(source.name, artifact.getRowCount() + cursor.getCount());
+                    RecordReader reader = new RecordReader(source, cursor);
+                    stage.queryNanos += System.nanoTime() - started;
+                    SourceWriter sink = new SourceWriter(source.name, artifact, batch, store, stage, maxId, maxDate);
+                    RowPipeline pipeline = new RowPipeline(source, PIPELINE_BATCH_ROWS, PIPELINE_DEPTH);
+                    pipeline.run(source.name + "-reader", reader::fill, sink);
+                    // Cursor time on the reader thread; it overlaps serialize and store
+                    stage.iterateNanos += pipeline.getReadNanos();
+                    maxId = sink.maxId;
+                    maxDate = sink.maxDate;
+                } finally { cursor.close(); }
+            }
+            if (batch != null) {
+                long commitStarted = System.nanoTime();
+                batch.checkpoint();
+                stage.storeNanos += System.nanoTime() - commitStarted;
+            }
+            artifact.finish();
+            progress.update(source.name, artifact.getRowCount(), artifact.getBytesWritten());
             
-            if (cursor != null && cursor.moveToFirst()) {
-                Log.d(TAG, "Call logs cursor has data, count: " + cursor.getCount());
-                do {
-                    JSONObject call = new JSONObject();
-                    call.put("number", cursor.getString(cursor.getColumnIndex(CallLog.Calls.NUMBER)));
-                    call.put("date", cursor.getLong(cursor.getColumnIndex(CallLog.Calls.DATE)));
-                    call.put("duration", cursor.getInt(cursor.getColumnIndex(CallLog.Calls.DURATION)));
-                    call.put("type", cursor.getInt(cursor.getColumnIndex(CallLog.Calls.TYPE)));
-                    calls.put(call);
-                } while (cursor.moveToNext());
-                cursor.close();
+            rows = artifact.getRowCount();
+            Log.d(TAG, source.name + " written successfully, size: " + rows + (since < 0 ? "" : " (delta after _id " + since + ")"));
+        } finally {
+            if (written != null) stage.recordWriter(written);
+            stage.sampleHeap();
+            stage.totalNanos = System.nanoTime() - started;
+        }
+        commitWatermark(source.name, outputFile, target, maxId, maxDate, rows);
+    }
+    
+    /**
+     * Columnar variant of {@link #extractSource}: every row goes to
+     * {@link ColumnarWriter#fileFor} the JSON artifact, which is removed together with its
+     * delta segments. Columnar runs are always full and are not checkpointed; a resumed run
+     * starts the file over.
+     */
+    private void extractSourceColumnar(SourceDefinition source, File outputFile) throws IOException {
+        File target = ColumnarWriter.fileFor(outputFile);
+        ExtractionMetrics.Stage stage = metrics.stage(source.name);
+        long started = System.nanoTime();
+        long[] watermark = {-1, 0};
+        ColumnarWriter written = null;
+        try (ColumnarWriter writer = new ColumnarWriter(target, source, manifest);
+             EvidenceStore.Batch batch = writeStore && source.storeTable != null ? EvidenceStore.get(this).batch() : null) {
+            written = writer;
+            EvidenceStore.Insert store = batch != null ? batch.into(source.storeTable, true, source.names()) : null;
+            Cursor cursor = getContentResolver().query(source.uri, source.projection(), null, null, source.idColumn + " ASC");
+            if (cursor != null) {
+                try {
+                    progress.total(source.name, cursor.getCount());
+                    RecordReader reader = new RecordReader(source, cursor);
+                    stage.queryNanos += System.nanoTime() - started;
+                    RowPipeline pipeline = new RowPipeline(source, PIPELINE_BATCH_ROWS, PIPELINE_DEPTH);
+                    pipeline.run(source.name + "-reader", reader::fill, rows -> {
+                        long encodeStarted = System.nanoTime();
+                        writer.append(rows);
+                        long encoded = System.nanoTime();
+                        stage.serializeNanos += encoded - encodeStarted;
+                        for (int row = 0; row < rows.size(); row++) {
+                            watermark[0] = Math.max(watermark[0], rows.id(row));
+                            watermark[1] = Math.max(watermark[1], rows.date(row));
+                            if (store != null) rows.insert(row, store);
+                        }
+                        if (store != null) stage.storeNanos += System.nanoTime() - encoded;
+                        progress.update(source.name, writer.getRowCount(), writer.getBytesWritten());
+                        stage.sampleHeap();
+                    });
+                    stage.iterateNanos += pipeline.getReadNanos();
+                } finally { cursor.close(); }
+            }
+            if (batch != null) batch.commit();
+            writer.finish();
+            progress.update(source.name, writer.getRowCount(), writer.getBytesWritten());
+            Log.d(TAG, source.name + " written successfully as " + target.getName() + ", size: " + writer.getRowCount());
+        } finally {
+            if (written != null) {
+                stage.rows = written.getRowCount();
+                stage.bytes = written.getBytesWritten();
+                stage.writeNanos = written.getWriteNanos();
+                stage.fsyncNanos = written.getFsyncNanos();
+            }
+            stage.sampleHeap();
+            stage.totalNanos = System.nanoTime() - started;
+        }
+        outputFile.delete();
+        JsonSegments.clear(outputFile);
+        watermarks.update(source.name, watermark[0], watermark[1]);
+    }
+    
+    /**
+     * Partitioned read for {@link #extractSource}: every {@code _ID} range is read and encoded
+     * on its own threads into its own segment of {@code artifact}, while this thread stores
+     * the rows (the store batch belongs to it) and commits each range with a checkpoint.
+     * Returns the watermark, {maxId, maxDate}.
+     */
+    private long[] readPartitioned(SourceDefinition source, IdPartitions ranges, CheckpointedArtifact artifact,
+                                   EvidenceStore.Batch batch, EvidenceStore.Insert store,
+                                   ExtractionMetrics.Stage stage, long maxId, long maxDate) throws IOException {
+        int n = ranges.size();
+        long[] partMaxId = new long[n];
+        long[] partMaxDate = new long[n];
+        long[] partSerializeNanos = new long[n];
+        artifact.partition(n);
+        progress.total(source.name, artifact.getRowCount() + ranges.getRowCount());
+        ranges.run(getContentResolver(), PIPELINE_BATCH_ROWS, PIPELINE_DEPTH, (part, rows) -> {
+            JsonArtifactWriter writer = artifact.partitionWriter(part);
+            long started = System.nanoTime();
+            for (int row = 0; row < rows.size(); row++) {
+                partMaxId[part] = Math.max(partMaxId[part], rows.id(row));
+                partMaxDate[part] = Math.max(partMaxDate[part], rows.date(row));
+                rows.writeJson(row, writer);
+            }
+            partSerializeNanos[part] += System.nanoTime() - started;
+        }, new IdPartitions.Caller() {
+            @Override
+            public void written(int part, RowBatch rows) {
+                if (store != null) {
+                    long started = System.nanoTime();
+                    for (int row = 0; row < rows.size(); row++) rows.insert(row, store);
+                    stage.storeNanos += System.nanoTime() - started;
+                }
+                progress.update(source.name, artifact.getRowCount(), artifact.getBytesWritten());
+                stage.sampleHeap();
             }
             
-            // Write to file
-            FileWriter writer = new FileWriter(outputFile);
-            writer.write(calls.toString(2));
-            writer.close();
-            Log.d(TAG, "Call logs written successfully, size: " + calls.length());
-        } catch (Exception e) {
-            Log.e(TAG, "Error extracting call logs: " + e.getMessage(), e);
+            @Override
+            public void finished(int part) throws IOException {
+                long started = System.nanoTime();
+                if (batch != null) batch.checkpoint();
+                // A range holds every id up to its bound; the open-ended last one up to its last row
+                long through = part < n - 1 ? ranges.upperBound(part) : Math.max(partMaxId[part], ranges.upperBound(n - 2));
+                artifact.commitPartition(part, through, partMaxDate[part]);
+                stage.serializeNanos += System.nanoTime() - started;
+            }
+        });
+        stage.iterateNanos += ranges.getReadNanos();
+        for (int i = 0; i < n; i++) {
+            stage.serializeNanos += partSerializeNanos[i];
+            maxId = Math.max(maxId, partMaxId[i]);
+            maxDate = Math.max(maxDate, partMaxDate[i]);
         }
+        return new long[]{maxId, maxDate};
     }
     
-    private void extractCalendar(File outputFile) {
-        Log.d(TAG, "extractCalendar() called, output file: " + outputFile.getAbsolutePath());
+    /** Writer side of a source pipeline: each row goes to the artifact, then the store. */
+    private final class SourceWriter implements RowPipeline.Consumer {
+        private final String name;
+        private final CheckpointedArtifact artifact;
+        private final EvidenceStore.Batch storeBatch;
+        private final EvidenceStore.Insert store;
+        private final ExtractionMetrics.Stage stage;
+        long maxId;
+        long maxDate;
         
-        try {
-            JSONArray events = new JSONArray();
-            Cursor c = getContentResolver().query(
-                    CalendarContract.Events.CONTENT_URI,
-                    new String[]{CalendarContract.Events._ID, CalendarContract.Events.TITLE, CalendarContract.Events.DTSTART, CalendarContract.Events.DTEND},
-                    null, null, null);
-            
-            if (c != null && c.moveToFirst()) {
-                Log.d(TAG, "Calendar cursor has data, count: " + c.getCount());
-                do {
-                    JSONObject ev = new JSONObject();
-                    ev.put("id", c.getLong(c.getColumnIndexOrThrow(CalendarContract.Events._ID)));
-                    ev.put("title", c.getString(c.getColumnIndexOrThrow(CalendarContract.Events.TITLE)));
-                    ev.put("dtstart", c.getLong(c.getColumnIndexOrThrow(CalendarContract.Events.DTSTART)));
-                    ev.put("dtend", c.getLong(c.getColumnIndexOrThrow(CalendarContract.Events.DTEND)));
-                    events.put(ev);
-                } while (c.moveToNext());
-                c.close();
+        SourceWriter(String name, CheckpointedArtifact artifact, EvidenceStore.Batch storeBatch,
+                     EvidenceStore.Insert store, ExtractionMetrics.Stage stage, long maxId, long maxDate) {
+            this.name = name;
+            this.artifact = artifact;
+            this.storeBatch = storeBatch;
+            this.store = store;
+            this.stage = stage;
+            this.maxId = maxId;
+            this.maxDate = maxDate;
+        }
+        
+        @Override
+        public void accept(RowBatch rows) throws IOException {
+            for (int row = 0; row < rows.size(); row++) {
+                long id = rows.id(row);
+                maxId = Math.max(maxId, id);
+                maxDate = Math.max(maxDate, rows.date(row));
+                long started = System.nanoTime();
+                rows.writeJson(row, artifact.writer());
+                long serialized = System.nanoTime();
+                stage.serializeNanos += serialized - started;
+                if (store != null) {
+                    rows.insert(row, store);
+                    stage.storeNanos += System.nanoTime() - serialized;
+                }
+                checkpointIfFull(artifact, storeBatch, stage, id, maxDate);
             }
-            
-            // Write to file
-            FileWriter writer = new FileWriter(outputFile);
-            writer.write(events.toString(2));
-            writer.close();
-            Log.d(TAG, "Calendar written successfully, size: " + events.length());
-        } catch (Exception e) {
-            Log.e(TAG, "Error extracting calendar: " + e.getMessage(), e);
+            progress.update(name, artifact.getRowCount(), artifact.getBytesWritten());
+            stage.sampleHeap();
         }
     }
     
@@ -0,0 +1,135 @@
+package com.forensic.agent;
+
+import android.database.Cursor;
+import android.database.MatrixCursor;
+import android.util.Log;
+
+import java.io.File;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.SortedMap;
+import java.util.TreeMap;
+
+/**
+ * Cached metadata of every file under the extraction directory, backing the {@code list}
+ * endpoint.
+ *
+ * The first listing walks the tree once, statting each file and joining the manifest's row
+ * counts and digests by relative path; later listings are served from memory in path
+ * order, so a prefix is a range lookup and paging never touches the disk. Rows of files
+ * recorded with {@link ArtifactManifest#record} (artifacts, delta segments, blobs) are
+ * updated as they are written. The index is rebuilt after {@link #invalidate()} (every
+ * manifest save) or when a file is added to or removed from any directory of the tree,
+ * such as a blob prefix or an in-progress checkpoint: each listing stats the directories
+ * seen by the last walk, not the files in them. Sizes of files still being appended to,
+ * like the segment in flight, are as of the last walk.
+ */
+public class FileIndex {
+    private static final String TAG = "ForensicAgent";
+    public static final String[] COLUMNS = new String[]{"name", "size", "modified", "rows", "sha256"};
+
+    private static final Map<String, FileIndex> INDEXES = new HashMap<>();
+
+    private final File dir;
+    private final File manifestFile;
+    /** Entries recorded since the manifest was last saved; the file on disk does not have them yet. */
+    private final Map<String, ArtifactManifest.Entry> recorded = new HashMap<>();
+    private TreeMap<String, Object[]> rows;
+    /** Modification time of every directory of the tree at the last walk. */
+    private final Map<File, Long> dirs = new HashMap<>();
+    private long manifestModified;
+
+    private FileIndex(File dir) {
+        this.dir = dir;
+        manifestFile = new File(dir, ArtifactManifest.FILE_NAME);
+    }
+
+    /** The index of {@code dir}, shared by the service and the provider. */
+    public static synchronized FileIndex get(File dir) {
+        String key = dir.getAbsolutePath();
+        FileIndex index = INDEXES.get(key);
+        if (index == null) {
+            index = new FileIndex(dir);
+            INDEXES.put(key, index);
+        }
+        return index;
+    }
+
+    /** An artifact was written and recorded: add or refresh its row without a rebuild. */
+    synchronized void recorded(File file, ArtifactManifest.Entry entry) {
+        recorded.put(entry.file, entry);
+        if (rows != null) rows.put(entry.file, row(entry.file, file.length(), file.lastModified(), entry));
+    }
+
+    /** Drops the cached listing; the next one walks the directory again. */
+    public synchronized void invalidate() {
+        rows = null;
+    }
+
+    /** The manifest was saved with everything recorded so far, and files may have gone. */
+    synchronized void saved() {
+        recorded.clear();
+        rows = null;
+    }
+
+    /**
+     * Files whose relative path starts with {@code prefix} (all when null), in path order,
+     * skipping {@code offset} and returning at most {@code limit} ({@code < 0} for all).
+     */
+    public synchronized Cursor list(String prefix, int offset, int limit) {
+        if (rows == null || changed()) build();
+        SortedMap<String, Object[]> range = prefix == null || prefix.isEmpty() ? rows
+                : rows.subMap(prefix, prefix + Character.MAX_VALUE);
+        MatrixCursor cursor = new MatrixCursor(COLUMNS);
+        int skipped = 0;
+        for (Object[] row : range.values()) {
+            if (limit >= 0 && cursor.getCount() >= limit) break;
+            if (skipped++ < offset) continue;
+            cursor.addRow(row);
+        }
+        return cursor;
+    }
+
+    private boolean changed() {
+        if (manifestFile.lastModified() != manifestModified) return true;
+        for (Map.Entry<File, Long> d : dirs.entrySet()) {
+            if (d.getKey().lastModified() != d.getValue()) return true;
+        }
+        return false;
+    }
+
+    private void build() {
+        long started = System.nanoTime();
+        dirs.clear();
+        manifestModified = manifestFile.lastModified();
+        Map<String, ArtifactManifest.Entry> known = new HashMap<>();
+        for (ArtifactManifest.Entry e : ArtifactManifest.load(dir, false).getEntries()) known.put(e.file, e);
+        known.putAll(recorded);
+        rows = new TreeMap<>();
+        walk(dir, "", known);
+        Log.d(TAG, "Indexed " + rows.size() + " files in " + dirs.size() + " directories in "
+                + (System.nanoTime() - started) / 1000000 + " ms");
+    }
+
+    private void walk(File directory, String path, Map<String, ArtifactManifest.Entry> known) {
+        // Before listing, so a file added meanwhile shows up as a change next time
+        dirs.put(directory, directory.lastModified());
+        File[] children = directory.listFiles();
+        if (children == null) return;
+        for (File child : children) {
+            String name = path + child.getName();
+            if (child.isDirectory()) {
+                walk(child, name + "/", known);
+            } else {
+                rows.put(name, row(name, child.length(), child.lastModified(), known.get(name)));
+            }
+        }
+    }
+
+    private static Object[] row(String name, long size, long modified, ArtifactManifest.Entry entry) {
+        // Rows and digest only while the file still has the size they were recorded with
+        boolean current = entry != null && entry.size == size;
+        return new Object[]{name, size, modified, current && entry.rows >= 0 ? entry.rows : null,
+                current ? entry.sha256 : null};
+    }
+}
@@ -0,0 +1,81 @@
+package com.forensic.agent;
+
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+
+/**
+ * Counts and hashes bytes on their way to disk, so an artifact's digest is known the
+ * moment it is closed without reading the file back. Time spent in the underlying
+ * writes is accumulated for {@link ExtractionMetrics}.
+ */
+public class HashingOutputStream extends FilterOutputStream {
+    private final MessageDigest sha256;
+    private final MessageDigest md5;
+    private long count;
+    private long writeNanos;
+
+    public HashingOutputStream(OutputStream out, boolean withMd5) {
+        super(out);
+        sha256 = digest("SHA-256");
+        md5 = withMd5 ? digest("MD5") : null;
+    }
+
+    static MessageDigest digest(String algorithm) {
+        try {
+            return MessageDigest.getInstance(algorithm);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(algorithm + " not available", e);
+        }
+    }
+
+    @Override
+    public void write(int b) throws IOException {
+        long start = System.nanoTime();
+        out.write(b);
+        writeNanos += System.nanoTime() - start;
+        sha256.update((byte) b);
+        if (md5 != null) md5.update((byte) b);
+        count++;
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) throws IOException {
+        long start = System.nanoTime();
+        out.write(b, off, len);
+        writeNanos += System.nanoTime() - start;
+        sha256.update(b, off, len);
+        if (md5 != null) md5.update(b, off, len);
+        count += len;
+    }
+
+    public long getCount() {
+        return count;
+    }
+
+    public long getWriteNanos() {
+        return writeNanos;
+    }
+
+    /** Hex SHA-256 of everything written; call once, after the last write. */
+    public String sha256Hex() {
+        return hex(sha256.digest());
+    }
+
+    /** Hex MD5 of everything written, or null when MD5 was not requested. */
+    public String md5Hex() {
+        return md5 != null ? hex(md5.digest()) : null;
+    }
+
+    static String hex(byte[] bytes) {
+        char[] digits = "0123456789abcdef".toCharArray();
+        char[] out = new char[bytes.length * 2];
+        for (int i = 0; i < bytes.length; i++) {
+            out[2 * i] = digits[(bytes[i] >> 4) & 0xf];
+            out[2 * i + 1] = digits[bytes[i] & 0xf];
+        }
+        return new String(out);
+    }
+}
@@ -0,0 +1,298 @@
+package com.forensic.agent;
+
+import android.content.ContentResolver;
+import android.database.Cursor;
+import android.util.Log;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+
+/**
+ * Reads one large source as contiguous {@code _ID} ranges in parallel.
+ *
+ * {@link #plan} queries only the id column after a starting id and picks a thread count:
+ * one per core, but with at least {@link #MIN_ROWS} rows each, so small sources keep their
+ * single cursor. It then cuts the rows into ranges of equal row count, small enough that
+ * one range per thread fits in a given window of rows. {@link #run} reads ranges in id
+ * order on those threads, each with its own cursor and {@link RowPipeline}, so several
+ * cursor windows are filled over binder at once. A thread only starts a range while it is
+ * within one range per thread of the leading finished ranges, so no more than the window is
+ * ever read past the point a checkpoint can reach. The last range is open-ended and takes
+ * rows added after planning.
+ *
+ * Work that must stay on the calling thread, such as {@link EvidenceStore.Batch} inserts
+ * (the transaction belongs to that thread) and checkpoints, goes through {@link Caller}:
+ * range threads hand it their batches and wait, and the caller runs it in between.
+ */
+public class IdPartitions {
+    private static final String TAG = "ForensicAgent";
+
+    /** Fewest rows worth a cursor and threads of their own: a few cursor windows. */
+    static final int MIN_ROWS = 4096;
+
+    /** Range thread side: encodes a batch of range {@code part}'s rows. */
+    public interface Writer {
+        void write(int part, RowBatch rows) throws IOException;
+    }
+
+    /** Calling thread side. */
+    public interface Caller {
+        /** Runs after {@link Writer#write} for the same batch, e.g. to store its rows. */
+        void written(int part, RowBatch rows) throws IOException;
+
+        /** Range {@code part} has been read and written in full. */
+        void finished(int part) throws IOException;
+    }
+
+    private final SourceDefinition source;
+    private final long after;
+    private final long[] upper;
+    private final int threads;
+    private final int rows;
+    private long readNanos;
+
+    // Ranges handed to threads, and the leading ranges the caller has finished
+    private final Object claims = new Object();
+    private int claimed;
+    private int released;
+    private boolean[] done;
+    private boolean stopping;
+
+    private IdPartitions(SourceDefinition source, long after, long[] upper, int threads, int rows) {
+        this.source = source;
+        this.after = after;
+        this.upper = upper;
+        this.threads = threads;
+        this.rows = rows;
+    }
+
+    /** Threads for {@code rows} rows, at most {@code maxThreads} and with a window of {@code windowRows}. */
+    static int count(int rows, int maxThreads, int windowRows) {
+        return Math.max(1, Math.min(Math.min(maxThreads, windowRows / MIN_ROWS), rows / MIN_ROWS));
+    }
+
+    /**
+     * Splits the rows with an id above {@code after} (-1 for all) into ranges for at most
+     * {@code maxThreads} threads, such that the ranges in flight hold no more than
+     * {@code windowRows} rows together; null when one cursor is the better plan.
+     */
+    public static IdPartitions plan(ContentResolver resolver, SourceDefinition source, long after, int maxThreads,
+                                    int windowRows) {
+        if (maxThreads < 2) return null;
+        Cursor ids = resolver.query(source.uri, new String[]{source.idColumn},
+                after < 0 ? null : source.idColumn + " > ?",
+                after < 0 ? null : new String[]{String.valueOf(after)},
+                source.idColumn + " ASC");
+        if (ids == null) return null;
+        try {
+            int rows = ids.getCount();
+            int threads = count(rows, maxThreads, windowRows);
+            if (threads < 2) return null;
+            int rangeRows = windowRows / threads;
+            int n = Math.max(threads, (rows + rangeRows - 1) / rangeRows);
+            long[] upper = new long[n];
+            for (int i = 0; i < n - 1; i++) {
+                // Ranges end on the id of every (rows / n)th row
+                if (!ids.moveToPosition((int) ((long) rows * (i + 1) / n) - 1)) return null;
+                upper[i] = ids.getLong(0);
+            }
+            upper[n - 1] = Long.MAX_VALUE;
+            Log.d(TAG, source.name + ": " + rows + " rows after _id " + after + " in " + n + " ranges on "
+                    + threads + " threads");
+            return new IdPartitions(source, after, upper, threads, rows);
+        } finally {
+            ids.close();
+        }
+    }
+
+    /** Number of ranges. */
+    public int size() {
+        return upper.length;
+    }
+
+    public int getThreads() {
+        return threads;
+    }
+
+    /** Rows counted when planning. */
+    public int getRowCount() {
+        return rows;
+    }
+
+    /** Highest id in range {@code part}; {@link Long#MAX_VALUE} for the last. */
+    public long upperBound(int part) {
+        return upper[part];
+    }
+
+    /** Cursor time of all ranges together; valid after {@link #run}. */
+    public long getReadNanos() {
+        return readNanos;
+    }
+
+    /**
+     * Reads every range on the planned threads, {@code writer} encoding its batches there and
+     * {@code caller} running on this thread, until all are done. On failure no further ranges
+     * are started and the first error is thrown once every thread has finished.
+     */
+    public void run(ContentResolver resolver, int batchRows, int depth, Writer writer, Caller caller) throws IOException {
+        int n = upper.length;
+        BlockingQueue<Message> inbox = new LinkedBlockingQueue<>();
+        long[] partReadNanos = new long[n];
+        synchronized (claims) {
+            claimed = 0;
+            released = 0;
+            done = new boolean[n];
+            stopping = false;
+        }
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        Throwable error = null;
+        try {
+            for (int i = 0; i < threads; i++) {
+                final String name = source.name + "-part-" + (i + 1);
+                executor.execute(() -> {
+                    Thread.currentThread().setName(name);
+                    int part;
+                    while ((part = claim()) >= 0) {
+                        Throwable failed = null;
+                        try {
+                            partReadNanos[part] = readPartition(resolver, part, batchRows, depth, writer, inbox);
+                        } catch (Throwable t) {
+                            failed = t;
+                        }
+                        inbox.add(new Message(part, null, failed));
+                        if (failed != null) break;
+                    }
+                    inbox.add(new Message(-1, null, null));
+                });
+            }
+            int running = threads;
+            while (running > 0) {
+                Message m;
+                try {
+                    m = inbox.take();
+                } catch (InterruptedException e) {
+                    // Range threads may be waiting on this one; let them fail and drain
+                    Thread.currentThread().interrupt();
+                    stop();
+                    executor.shutdownNow();
+                    throw new InterruptedIOException("Interrupted while reading " + source.name);
+                }
+                try {
+                    if (m.rows != null) {
+                        if (error == null) caller.written(m.part, m.rows);
+                    } else if (m.part < 0) {
+                        running--;
+                    } else {
+                        if (m.error != null) throw m.error;
+                        if (error == null) {
+                            caller.finished(m.part);
+                            release(m.part);
+                        }
+                    }
+                } catch (Throwable t) {
+                    if (error == null) {
+                        error = t;
+                        stop();
+                    }
+                } finally {
+                    if (m.done != null) {
+                        m.failed = error != null;
+                        m.done.countDown();
+                    }
+                }
+            }
+        } finally {
+            executor.shutdown();
+        }
+        for (long nanos : partReadNanos) readNanos += nanos;
+        if (error instanceof IOException) throw (IOException) error;
+        if (error instanceof RuntimeException) throw (RuntimeException) error;
+        if (error instanceof Error) throw (Error) error;
+        if (error != null) throw new IOException(error);
+    }
+
+    /** Next range for a thread, waiting while it would run ahead of the window; -1 when there is none. */
+    private int claim() {
+        synchronized (claims) {
+            try {
+                while (!stopping && claimed < upper.length && claimed >= released + threads) claims.wait();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return -1;
+            }
+            return stopping || claimed >= upper.length ? -1 : claimed++;
+        }
+    }
+
+    private void release(int part) {
+        synchronized (claims) {
+            done[part] = true;
+            while (released < upper.length && done[released]) released++;
+            claims.notifyAll();
+        }
+    }
+
+    private void stop() {
+        synchronized (claims) {
+            stopping = true;
+            claims.notifyAll();
+        }
+    }
+
+    private long readPartition(ContentResolver resolver, int part, int batchRows, int depth, Writer writer,
+                               BlockingQueue<Message> inbox) throws IOException {
+        List<String> args = new ArrayList<>();
+        String selection = source.idColumn + " > ?";
+        args.add(String.valueOf(part == 0 ? after : upper[part - 1]));
+        if (part < upper.length - 1) {
+            selection += " AND " + source.idColumn + " <= ?";
+            args.add(String.valueOf(upper[part]));
+        }
+        Cursor cursor = resolver.query(source.uri, source.projection(), selection,
+                args.toArray(new String[0]), source.idColumn + " ASC");
+        if (cursor == null) return 0;
+        try {
+            RecordReader reader = new RecordReader(source, cursor);
+            RowPipeline pipeline = new RowPipeline(source, batchRows, depth);
+            pipeline.run(source.name + "-part-" + part + "-reader", reader::fill, rows -> {
+                writer.write(part, rows);
+                // The batch goes back to the pipeline's pool once the caller is done with it
+                Message m = new Message(part, rows, null);
+                m.done = new CountDownLatch(1);
+                inbox.add(m);
+                try {
+                    m.done.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new InterruptedIOException();
+                }
+                if (m.failed) throw new IOException("Stopped: another range of " + source.name + " failed");
+            });
+            return pipeline.getReadNanos();
+        } finally {
+            cursor.close();
+        }
+    }
+
+    /** A batch for the caller; with {@code rows == null} the end of a range, or of a thread when {@code part < 0}. */
+    private static final class Message {
+        final int part;
+        final RowBatch rows;
+        final Throwable error;
+        CountDownLatch done;
+        volatile boolean failed;
+
+        Message(int part, RowBatch rows, Throwable error) {
+            this.part = part;
+            this.rows = rows;
+            this.error = error;
+        }
+    }
+}
@@ -0,0 +1,141 @@
+package com.forensic.agent;
+
+import android.util.JsonWriter;
+
+import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Streams a JSON array artifact to disk one record at a time.
+ *
+ * Records are encoded straight into a buffered writer as the cursor advances, so heap
+ * usage stays flat regardless of row count. The layout matches what
+ * {@code JSONArray.toString(2)} used to produce: a two-space indented array of objects,
+ * with null string fields omitted the same way {@code JSONObject.put} dropped them.
+ *
+ * Bytes are hashed as they are written. {@link #finish()} completes the array and, when a
+ * manifest is supplied, records the artifact's size, row count and digests in it; closing a
+ * writer that was not finished discards the partial file, so a failed write never leaves a
+ * truncated artifact with a digest that looks valid.
+ */
+public class JsonArtifactWriter implements Closeable {
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    private final File file;
+    private final ArtifactManifest manifest;
+    private final FileOutputStream fileOut;
+    private final HashingOutputStream hashing;
+    private final JsonWriter json;
+    private final long started = System.currentTimeMillis();
+    private int rows;
+    private long fsyncNanos;
+    private String sha256;
+    private String md5;
+    private boolean finished;
+
+    public JsonArtifactWriter(File file) throws IOException {
+        this(file, null);
+    }
+
+    public JsonArtifactWriter(File file, ArtifactManifest manifest) throws IOException {
+        this(file, manifest, manifest != null && manifest.isMd5());
+    }
+
+    /** Writer that is not recorded anywhere but still hashes, e.g. one segment of a larger artifact. */
+    public JsonArtifactWriter(File file, boolean md5) throws IOException {
+        this(file, null, md5);
+    }
+
+    private JsonArtifactWriter(File file, ArtifactManifest manifest, boolean md5) throws IOException {
+        this.file = file;
+        this.manifest = manifest;
+        fileOut = new FileOutputStream(file);
+        hashing = new HashingOutputStream(fileOut, md5);
+        json = new JsonWriter(new BufferedWriter(
+                new OutputStreamWriter(hashing, StandardCharsets.UTF_8), BUFFER_SIZE));
+        json.setIndent("  ");
+        json.beginArray();
+    }
+
+    public void beginRecord() throws IOException {
+        json.beginObject();
+    }
+
+    public void endRecord() throws IOException {
+        json.endObject();
+        rows++;
+    }
+
+    public void field(String name, String value) throws IOException {
+        if (value != null) json.name(name).value(value);
+    }
+
+    public void field(String name, long value) throws IOException {
+        json.name(name).value(value);
+    }
+
+    /** Raw access for nested values such as the contact phone list. */
+    public JsonWriter json() {
+        return json;
+    }
+
+    public int getRowCount() {
+        return rows;
+    }
+
+    /** Bytes handed to the file so far; trails the buffered content until {@link #finish()}. */
+    public long getBytesWritten() {
+        return hashing.getCount();
+    }
+
+    public long getWriteNanos() {
+        return hashing.getWriteNanos();
+    }
+
+    public long getFsyncNanos() {
+        return fsyncNanos;
+    }
+
+    /** Hex SHA-256 of the whole file; null until {@link #finish()}. */
+    public String getSha256() {
+        return sha256;
+    }
+
+    /** Hex MD5 of the whole file; null until {@link #finish()} or when MD5 was not requested. */
+    public String getMd5() {
+        return md5;
+    }
+
+    /** Ends the array, syncs and closes the file, and records it in the manifest if there is one. */
+    public void finish() throws IOException {
+        json.endArray();
+        json.flush();
+        // Durable before it is recorded in the manifest
+        long start = System.nanoTime();
+        fileOut.getFD().sync();
+        fsyncNanos = System.nanoTime() - start;
+        json.close();
+        sha256 = hashing.sha256Hex();
+        md5 = hashing.md5Hex();
+        finished = true;
+        if (manifest != null) {
+            manifest.record(file, hashing.getCount(), rows, sha256, md5, started, System.currentTimeMillis());
+        }
+    }
+
+    /** Releases the file; unless {@link #finish()} succeeded, the partial file is deleted. */
+    @Override
+    public void close() throws IOException {
+        if (finished) return;
+        try {
+            fileOut.close();
+        } finally {
+            file.delete();
+        }
+    }
+}
@@ -0,0 +1,86 @@
+package com.forensic.agent;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Segment layout for JSON array artifacts and byte-level stitching of those segments.
+ *
+ * Segments of {@code extracted/sms.json} live in {@code extracted/segments/sms/} and are
+ * named by sequence number. Every segment is a complete array written by
+ * {@link JsonArtifactWriter}, so its elements are always the bytes between the leading
+ * {@code [} and the trailing {@code \n]}. Concatenating those ranges yields exactly the
+ * array one writer would have produced for all rows, without reparsing anything.
+ */
+public final class JsonSegments {
+    public static final String DIR_NAME = "segments";
+
+    private JsonSegments() {}
+
+    /** Directory holding the segments of {@code artifact}, e.g. {@code segments/sms}. */
+    public static File dirFor(File artifact) {
+        String name = artifact.getName();
+        int dot = name.lastIndexOf('.');
+        return new File(new File(artifact.getParentFile(), DIR_NAME), dot > 0 ? name.substring(0, dot) : name);
+    }
+
+    /** Existing segments of {@code artifact} in sequence order; empty when there are none. */
+    public static List<File> list(File artifact) {
+        File[] files = dirFor(artifact).listFiles((dir, name) -> name.endsWith(".json"));
+        if (files == null) return new ArrayList<>();
+        Arrays.sort(files);
+        return new ArrayList<>(Arrays.asList(files));
+    }
+
+    /** Allocates the file for the next segment of {@code artifact}. */
+    public static synchronized File next(File artifact) throws IOException {
+        File dir = dirFor(artifact);
+        if (!dir.isDirectory() && !dir.mkdirs()) throw new IOException("Cannot create " + dir);
+        List<File> existing = list(artifact);
+        int seq = 1;
+        if (!existing.isEmpty()) {
+            String last = existing.get(existing.size() - 1).getName();
+            seq = Integer.parseInt(last.substring(0, last.indexOf('.'))) + 1;
+        }
+        return new File(dir, String.format(Locale.US, "%06d.json", seq));
+    }
+
+    /** Removes all segments of {@code artifact}, e.g. after a full rewrite. */
+    public static void clear(File artifact) {
+        File dir = dirFor(artifact);
+        for (File f : list(artifact)) f.delete();
+        dir.delete();
+    }
+
+    /** Writes the single array formed by all elements of {@code parts}, in order. */
+    public static void concat(List<File> parts, OutputStream out) throws IOException {
+        WritableByteChannel target = Channels.newChannel(out);
+        boolean any = false;
+        out.write('[');
+        for (File part : parts) {
+            try (FileInputStream in = new FileInputStream(part)) {
+                FileChannel channel = in.getChannel();
+                long length = channel.size();
+                if (length <= 2) continue; // "[]"
+                if (any) out.write(',');
+                long position = 1;
+                long end = length - 2;
+                while (position < end) {
+                    position += channel.transferTo(position, end - position, target);
+                }
+                any = true;
+            }
+        }
+        out.write(any ? new byte[]{'\n', ']'} : new byte[]{']'});
+        out.flush();
+    }
+}
@@ -17,6 +17,10 @@ import java.util.Arrays;
 import java.util.HashSet;
 import java.util.Set;
 import android.util.Log;
+import android.database.ContentObserver;
+import android.os.Handler;
+import android.os.Looper;
+import java.util.Locale;
 
 public class MainActivity extends AppCompatActivity {
     
@@ -24,6 +28,15 @@ public class MainActivity extends AppCompatActivity {
     private static final int PERMISSION_REQUEST_CODE = 100;
     private TextView statusText;
     private Button extractButton;
+    private boolean awaitingCompletion;
+    
+    // Fires on the main thread whenever ExtractionService publishes progress
+    private final ContentObserver statusObserver = new ContentObserver(new Handler(Looper.getMainLooper())) {
+        @Override
+        public void onChange(boolean selfChange) {
+            renderProgress();
+        }
+    };
     
     @Override
     protected void onCreate(Bundle savedInstanceState) {
@@ -55,12 +68,25 @@ public class MainActivity extends AppCompatActivity {
             Toast.makeText(this, "Requesting permissions...", Toast.LENGTH_SHORT).show();
             statusText.postDelayed(this::requestPermissions, 300);
         }
+        
+        getContentResolver().registerContentObserver(ExtractionProgress.STATUS_URI, false, statusObserver);
+    }
+    
+    @Override
+    protected void onDestroy() {
+        getContentResolver().unregisterContentObserver(statusObserver);
+        super.onDestroy();
     }
     
     @Override
     protected void onResume() {
         super.onResume();
         Log.d(TAG, "onResume() called");
+        // An extraction may have started or finished while we were in the background
+        if (ExtractionProgress.get().isRunning() || awaitingCompletion) {
+            renderProgress();
+            return;
+        }
         // After returning from Settings, re-check essential permissions
         if (!checkPermissions()) {
             statusText.setText("Permissions missing. Tap EXTRACT DATA to grant or enable in Settings.");
@@ -181,13 +207,34 @@ public class MainActivity extends AppCompatActivity {
         statusText.setText("Extraction in progress...\n\nData saving to:\n" + appDataPath + "\n\nAccessible via Content Provider\n\nCheck logcat for details");
         extractButton.setEnabled(false);
         extractButton.setText("EXTRACTING...");
+        awaitingCompletion = true;
+    }
+    
+    /** Shows per-category progress and re-enables the button once the service reports completion. */
+    private void renderProgress() {
+        ExtractionProgress progress = ExtractionProgress.get();
+        String state = progress.getState();
+        if (ExtractionProgress.IDLE.equals(state)) return;
         
-        // Re-enable button after 45 seconds
-        extractButton.postDelayed(() -> {
+        boolean complete = ExtractionProgress.COMPLETE.equals(state);
+        StringBuilder text = new StringBuilder(complete ? "Extraction complete!\n\n" : "Extraction in progress...\n\n");
+        for (ExtractionProgress.Category c : progress.snapshot()) {
+            text.append(c.name).append(": ").append(c.state).append(", ").append(c.rowsDone);
+            if (c.rowsTotal >= 0) text.append('/').append(c.rowsTotal);
+            text.append(" rows, ").append(c.bytes / 1024).append(" KB");
+            if (c.rowsPerSecond > 0) text.append(String.format(Locale.US, ", %.0f rows/s", c.rowsPerSecond));
+            text.append('\n');
+        }
+        if (complete) {
+            text.append("\nQuery via:\nadb shell content query --uri content://com.forensic.agent.provider/list");
+        }
+        statusText.setText(text);
+        
+        if (complete && awaitingCompletion) {
+            awaitingCompletion = false;
             extractButton.setEnabled(true);
             extractButton.setText("EXTRACT DATA");
-            statusText.setText("Extraction complete!\n\nCheck logcat for errors\n\nQuery via:\nadb shell content query --uri content://com.forensic.agent.provider/list");
             Toast.makeText(this, "Extraction complete! Check logcat for details", Toast.LENGTH_LONG).show();
-        }, 45000);
+        }
     }
 }
\ No newline at end of file
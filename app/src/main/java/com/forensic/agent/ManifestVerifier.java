@@ -0,0 +1,94 @@
+package com.forensic.agent;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Re-hashes the artifacts listed in a manifest and compares them with the recorded digests.
+ *
+ * Files are checked in parallel, one per core, and read through read-only memory maps
+ * in fixed-size windows so large artifacts are hashed without copying them into the heap.
+ */
+public final class ManifestVerifier {
+    private static final long MAP_WINDOW = 32L * 1024 * 1024;
+
+    /** Outcome for one manifest entry. */
+    public static class Result {
+        public final ArtifactManifest.Entry entry;
+        public final long actualSize;
+        public final String actualSha256;
+        public final String actualMd5;
+        public final String error;
+
+        Result(ArtifactManifest.Entry entry, long actualSize, String actualSha256, String actualMd5, String error) {
+            this.entry = entry;
+            this.actualSize = actualSize;
+            this.actualSha256 = actualSha256;
+            this.actualMd5 = actualMd5;
+            this.error = error;
+        }
+
+        public boolean isOk() {
+            return error == null && actualSize == entry.size && entry.sha256.equals(actualSha256)
+                    && (entry.md5 == null || entry.md5.equals(actualMd5));
+        }
+    }
+
+    private ManifestVerifier() {}
+
+    public static List<Result> verify(final File dir, List<ArtifactManifest.Entry> entries) throws InterruptedException {
+        ExecutorService executor = Executors.newFixedThreadPool(
+                Math.max(1, Math.min(entries.size(), Runtime.getRuntime().availableProcessors())));
+        try {
+            List<Future<Result>> futures = new ArrayList<>();
+            for (final ArtifactManifest.Entry entry : entries) {
+                futures.add(executor.submit(() -> verifyOne(new File(dir, entry.file), entry)));
+            }
+            List<Result> results = new ArrayList<>();
+            for (Future<Result> f : futures) {
+                try {
+                    results.add(f.get());
+                } catch (ExecutionException e) {
+                    throw new IllegalStateException(e.getCause());
+                }
+            }
+            return results;
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    /** Feeds the first {@code size} bytes of {@code channel} to the digests through read-only maps. */
+    static void digest(FileChannel channel, long size, MessageDigest sha256, MessageDigest md5) throws IOException {
+        for (long position = 0; position < size; position += MAP_WINDOW) {
+            MappedByteBuffer window = channel.map(FileChannel.MapMode.READ_ONLY, position,
+                    Math.min(MAP_WINDOW, size - position));
+            if (md5 != null) md5.update(window.duplicate());
+            sha256.update(window);
+        }
+    }
+
+    private static Result verifyOne(File file, ArtifactManifest.Entry entry) {
+        MessageDigest sha256 = HashingOutputStream.digest("SHA-256");
+        MessageDigest md5 = entry.md5 != null ? HashingOutputStream.digest("MD5") : null;
+        try (FileInputStream in = new FileInputStream(file)) {
+            FileChannel channel = in.getChannel();
+            long size = channel.size();
+            digest(channel, size, sha256, md5);
+            return new Result(entry, size, HashingOutputStream.hex(sha256.digest()),
+                    md5 != null ? HashingOutputStream.hex(md5.digest()) : null, null);
+        } catch (IOException e) {
+            return new Result(entry, -1, null, null, e.getMessage());
+        }
+    }
+}
@@ -0,0 +1,398 @@
+package com.forensic.agent;
+
+import android.content.Context;
+import android.provider.CallLog;
+import android.provider.Telephony;
+import android.telephony.PhoneNumberUtils;
+import android.telephony.TelephonyManager;
+import android.util.JsonReader;
+import android.util.JsonToken;
+import android.util.Log;
+
+import java.io.BufferedInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Hash index of normalized phone numbers linking contacts, SMS and calls, saved as
+ * {@code extracted/entities.json}.
+ *
+ * Numbers are normalized once per distinct spelling: to E.164 with the device's country
+ * when the platform can, otherwise stripped to digits with a leading {@code +}. Entities
+ * are bucketed by their last {@value #MIN_MATCH} digits, like the platform's caller-ID
+ * match, and within a bucket two numbers are the same entity when one ends with the other,
+ * so {@code 555-123-4567}, {@code +1 555 123 4567} and {@code 0044...} forms meet; a
+ * spelling that fits more than one entity gets an entity of its own. Lookups are a map hit
+ * on the raw spelling or one bucket probe, never a scan.
+ */
+public class PhoneIndex {
+    private static final String TAG = "ForensicAgent";
+    public static final String FILE_NAME = "entities.json";
+    /** Trailing digits that select a bucket, as in {@code PhoneNumberUtils.compare}. */
+    static final int MIN_MATCH = 7;
+
+    /** Count and first/last timestamps of one kind of interaction. */
+    public static class Tally {
+        public int count;
+        public long first;
+        public long last;
+
+        void add(long date) {
+            first = count == 0 ? date : Math.min(first, date);
+            last = count == 0 ? date : Math.max(last, date);
+            count++;
+        }
+    }
+
+    /** One person-or-sender, keyed by its normalized number. */
+    public static class Entity {
+        public final String number;
+        public final List<Long> contactIds = new ArrayList<>();
+        public final List<String> names = new ArrayList<>();
+        /** Spellings of the number as they appeared in the sources. */
+        public final Set<String> variants = new LinkedHashSet<>();
+        public final Tally sms = new Tally();
+        public final Tally calls = new Tally();
+
+        Entity(String number) {
+            this.number = number;
+        }
+
+        void addContact(long id, String name) {
+            if (contactIds.contains(id)) return;
+            contactIds.add(id);
+            names.add(name);
+        }
+    }
+
+    private final String countryIso;
+    private final Map<String, Entity> byRaw = new HashMap<>();
+    private final Map<String, List<Entity>> buckets = new HashMap<>();
+    private final List<Entity> entities = new ArrayList<>();
+    private boolean e164Available = true;
+
+    public PhoneIndex(String countryIso) {
+        this.countryIso = countryIso;
+    }
+
+    /** Upper-case ISO country of the SIM, else the network, else the locale; null if none. */
+    public static String defaultCountryIso(Context context) {
+        TelephonyManager tm = (TelephonyManager) context.getSystemService(Context.TELEPHONY_SERVICE);
+        String iso = tm != null ? tm.getSimCountryIso() : null;
+        if ((iso == null || iso.isEmpty()) && tm != null) iso = tm.getNetworkCountryIso();
+        if (iso == null || iso.isEmpty()) iso = Locale.getDefault().getCountry();
+        return iso == null || iso.isEmpty() ? null : iso.toUpperCase(Locale.US);
+    }
+
+    /**
+     * Builds the index from the artifacts in {@code dir}: contact phones first, so messages
+     * and calls attach to the contact's entity, then SMS and calls including any incremental
+     * delta segments. Missing artifacts are skipped.
+     */
+    public static PhoneIndex build(File dir, String countryIso) throws IOException {
+        PhoneIndex index = new PhoneIndex(countryIso);
+        index.readContacts(new File(dir, "contacts.json"));
+        index.readEvents(new File(dir, Sources.SMS.artifact), Telephony.Sms.ADDRESS, Telephony.Sms.DATE, true);
+        index.readEvents(new File(dir, Sources.CALLS.artifact), CallLog.Calls.NUMBER, CallLog.Calls.DATE, false);
+        return index;
+    }
+
+    public List<Entity> getEntities() {
+        return entities;
+    }
+
+    /** The entity {@code raw} belongs to, or null when the index has none. */
+    public Entity find(String raw) {
+        Entity entity = byRaw.get(raw);
+        if (entity != null) return entity;
+        String number = normalize(raw);
+        return number != null ? match(number) : null;
+    }
+
+    /** The entity for {@code raw}, created if needed; null for an empty number. */
+    Entity resolve(String raw) {
+        Entity entity = byRaw.get(raw);
+        if (entity != null) return entity;
+        String number = normalize(raw);
+        if (number == null) return null;
+        entity = match(number);
+        if (entity == null) entity = add(number);
+        entity.variants.add(raw);
+        byRaw.put(raw, entity);
+        return entity;
+    }
+
+    /**
+     * The entity of the bucket {@code number} is the same line as. An exact match wins; a
+     * number that suffix-matches more than one entity, like {@code 1234567} against
+     * {@code +15551234567} and {@code +16661234567}, is ambiguous and matches none, so it
+     * does not go to whichever was indexed first.
+     */
+    private Entity match(String number) {
+        List<Entity> bucket = buckets.get(key(number));
+        if (bucket == null) return null;
+        Entity found = null;
+        int matches = 0;
+        for (Entity entity : bucket) {
+            if (entity.number.equals(number)) return entity;
+            if (sameNumber(entity.number, number)) {
+                found = entity;
+                matches++;
+            }
+        }
+        return matches == 1 ? found : null;
+    }
+
+    /** E.164 when the platform can format it, else digits with a leading '+'; lower-cased text for sender names. */
+    String normalize(String raw) {
+        String trimmed = raw.trim();
+        if (trimmed.isEmpty()) return null;
+        if (e164Available && countryIso != null) {
+            try {
+                String e164 = PhoneNumberUtils.formatNumberToE164(trimmed, countryIso);
+                if (e164 != null) return e164;
+            } catch (RuntimeException e) {
+                // Numbering metadata missing from this runtime; stripping still matches on suffix
+                Log.w(TAG, "E.164 formatting unavailable: " + e.getMessage());
+                e164Available = false;
+            }
+        }
+        StringBuilder sb = new StringBuilder(trimmed.length());
+        for (int i = 0; i < trimmed.length(); i++) {
+            char c = trimmed.charAt(i);
+            if (c >= '0' && c <= '9') sb.append(c);
+            else if (c == '+' && sb.length() == 0) sb.append(c);
+        }
+        if (sb.length() == 0 || (sb.length() == 1 && sb.charAt(0) == '+')) return trimmed.toLowerCase(Locale.US);
+        if (sb.length() > 2 && sb.charAt(0) == '0' && sb.charAt(1) == '0') sb.replace(0, 2, "+");
+        return sb.toString();
+    }
+
+    private static boolean isNumeric(String number) {
+        char c = number.charAt(0);
+        return c == '+' || (c >= '0' && c <= '9');
+    }
+
+    /** Bucket key: the last {@link #MIN_MATCH} digits, or the whole value when shorter or not a number. */
+    static String key(String number) {
+        if (!isNumeric(number)) return number;
+        return number.length() > MIN_MATCH ? number.substring(number.length() - MIN_MATCH) : number;
+    }
+
+    /**
+     * Whether two normalized numbers are the same line: equal, or one ends with the other
+     * once international and trunk prefixes are dropped, with at least {@link #MIN_MATCH} digits.
+     */
+    static boolean sameNumber(String a, String b) {
+        if (a.equals(b)) return true;
+        if (!isNumeric(a) || !isNumeric(b)) return false;
+        String da = significant(a);
+        String db = significant(b);
+        if (da.length() < MIN_MATCH || db.length() < MIN_MATCH) return false;
+        return da.length() >= db.length() ? da.endsWith(db) : db.endsWith(da);
+    }
+
+    private static String significant(String number) {
+        int start = 0;
+        while (start < number.length() && (number.charAt(start) == '+' || number.charAt(start) == '0')) start++;
+        return number.substring(start);
+    }
+
+    private void readContacts(File file) throws IOException {
+        if (!file.exists()) return;
+        try (JsonReader reader = open(file)) {
+            reader.beginArray();
+            while (reader.hasNext()) {
+                long id = -1;
+                String name = null;
+                List<String> phones = new ArrayList<>();
+                reader.beginObject();
+                while (reader.hasNext()) {
+                    String field = reader.nextName();
+                    if ("id".equals(field)) {
+                        id = Long.parseLong(reader.nextString());
+                    } else if ("name".equals(field)) {
+                        name = reader.nextString();
+                    } else if ("phones".equals(field)) {
+                        reader.beginArray();
+                        while (reader.hasNext()) phones.add(reader.nextString());
+                        reader.endArray();
+                    } else {
+                        reader.skipValue();
+                    }
+                }
+                reader.endObject();
+                for (String phone : phones) {
+                    Entity entity = resolve(phone);
+                    if (entity != null) entity.addContact(id, name);
+                }
+            }
+            reader.endArray();
+        }
+    }
+
+    private void readEvents(File artifact, String numberField, String dateField, boolean sms) throws IOException {
+        File columnar = ColumnarWriter.fileFor(artifact);
+        if (!artifact.exists() && columnar.exists()) {
+            try (ColumnarReader reader = ColumnarReader.open(columnar)) {
+                int number = reader.columnIndex(numberField);
+                int date = reader.columnIndex(dateField);
+                ColumnarReader.Scanner rows = reader.scanner();
+                while (rows.next()) {
+                    Entity entity = rows.getKind(number) == RowBatch.STRING ? resolve(rows.getString(number)) : null;
+                    if (entity != null) (sms ? entity.sms : entity.calls).add(rows.getLong(date));
+                }
+            }
+            return;
+        }
+        List<File> parts = JsonSegments.list(artifact);
+        if (artifact.exists()) parts.add(0, artifact);
+        for (File part : parts) {
+            try (JsonReader reader = open(part)) {
+                reader.beginArray();
+                while (reader.hasNext()) {
+                    String number = null;
+                    long date = 0;
+                    reader.beginObject();
+                    while (reader.hasNext()) {
+                        String field = reader.nextName();
+                        if (numberField.equals(field) && reader.peek() == JsonToken.STRING) {
+                            number = reader.nextString();
+                        } else if (dateField.equals(field)) {
+                            date = reader.nextLong();
+                        } else {
+                            reader.skipValue();
+                        }
+                    }
+                    reader.endObject();
+                    Entity entity = number != null ? resolve(number) : null;
+                    if (entity != null) (sms ? entity.sms : entity.calls).add(date);
+                }
+                reader.endArray();
+            }
+        }
+    }
+
+    private static JsonReader open(File file) throws IOException {
+        return new JsonReader(new InputStreamReader(new BufferedInputStream(new FileInputStream(file), 64 * 1024),
+                StandardCharsets.UTF_8));
+    }
+
+    /** Writes every entity, ordered by number, and records the file in {@code manifest}. */
+    public void write(File file, ArtifactManifest manifest) throws IOException {
+        List<Entity> sorted = new ArrayList<>(entities);
+        Collections.sort(sorted, (a, b) -> a.number.compareTo(b.number));
+        try (JsonArtifactWriter writer = new JsonArtifactWriter(file, manifest)) {
+            for (Entity entity : sorted) {
+                writer.beginRecord();
+                writer.field("number", entity.number);
+                writer.json().name("contacts").beginArray();
+                for (int i = 0; i < entity.contactIds.size(); i++) {
+                    writer.json().beginObject();
+                    writer.field("id", entity.contactIds.get(i));
+                    writer.field("name", entity.names.get(i));
+                    writer.json().endObject();
+                }
+                writer.json().endArray();
+                writer.json().name("variants").beginArray();
+                for (String variant : entity.variants) writer.json().value(variant);
+                writer.json().endArray();
+                writeTally(writer, "sms", entity.sms);
+                writeTally(writer, "calls", entity.calls);
+                writer.endRecord();
+            }
+            writer.finish();
+        }
+    }
+
+    private static void writeTally(JsonArtifactWriter writer, String name, Tally tally) throws IOException {
+        writer.json().name(name).beginObject();
+        writer.field("count", tally.count);
+        if (tally.count > 0) {
+            writer.field("first", tally.first);
+            writer.field("last", tally.last);
+        }
+        writer.json().endObject();
+    }
+
+    /** Reads an index written by {@link #write}. */
+    public static PhoneIndex load(File file, String countryIso) throws IOException {
+        PhoneIndex index = new PhoneIndex(countryIso);
+        try (JsonReader reader = open(file)) {
+            reader.beginArray();
+            while (reader.hasNext()) {
+                Entity entity = null;
+                reader.beginObject();
+                while (reader.hasNext()) {
+                    String field = reader.nextName();
+                    if ("number".equals(field)) {
+                        entity = index.add(reader.nextString());
+                    } else if ("contacts".equals(field) && entity != null) {
+                        reader.beginArray();
+                        while (reader.hasNext()) {
+                            long id = -1;
+                            String name = null;
+                            reader.beginObject();
+                            while (reader.hasNext()) {
+                                String contactField = reader.nextName();
+                                if ("id".equals(contactField)) id = reader.nextLong();
+                                else if ("name".equals(contactField)) name = reader.nextString();
+                                else reader.skipValue();
+                            }
+                            reader.endObject();
+                            entity.addContact(id, name);
+                        }
+                        reader.endArray();
+                    } else if ("variants".equals(field) && entity != null) {
+                        reader.beginArray();
+                        while (reader.hasNext()) {
+                            String variant = reader.nextString();
+                            entity.variants.add(variant);
+                            index.byRaw.put(variant, entity);
+                        }
+                        reader.endArray();
+                    } else if (("sms".equals(field) || "calls".equals(field)) && entity != null) {
+                        readTally(reader, "sms".equals(field) ? entity.sms : entity.calls);
+                    } else {
+                        reader.skipValue();
+                    }
+                }
+                reader.endObject();
+            }
+            reader.endArray();
+        }
+        return index;
+    }
+
+    private Entity add(String number) {
+        Entity entity = new Entity(number);
+        entities.add(entity);
+        List<Entity> bucket = buckets.get(key(number));
+        if (bucket == null) buckets.put(key(number), bucket = new ArrayList<>(1));
+        bucket.add(entity);
+        return entity;
+    }
+
+    private static void readTally(JsonReader reader, Tally tally) throws IOException {
+        reader.beginObject();
+        while (reader.hasNext()) {
+            String field = reader.nextName();
+            if ("count".equals(field)) tally.count = reader.nextInt();
+            else if ("first".equals(field)) tally.first = reader.nextLong();
+            else if ("last".equals(field)) tally.last = reader.nextLong();
+            else reader.skipValue();
+        }
+        reader.endObject();
+    }
+}
@@ -0,0 +1,192 @@
+package com.forensic.agent;
+
+import android.database.CharArrayBuffer;
+import android.database.Cursor;
+import android.database.CursorWrapper;
+
+import java.util.Arrays;
+
+/**
+ * Exposes a provider cursor under the agent's public column names without copying rows.
+ *
+ * Column {@code i} of this cursor reads source column {@code sourceIndex[i]}, so endpoint
+ * names such as {@code id} or {@code phone} can map onto provider columns like
+ * {@code contact_id} or {@code data1}. An optional row window ({@code offset}/{@code limit})
+ * is applied by repositioning the source cursor, for providers that do not honor paging
+ * arguments themselves.
+ */
+public class ProjectionCursor extends CursorWrapper {
+    private final String[] names;
+    private final int[] sourceIndex;
+    private final int offset;
+    private final int count;
+    private int position = -1;
+
+    /**
+     * @param names      public column names, in output order
+     * @param sources    source column name for each entry of {@code names}
+     * @param offset     rows of {@code cursor} to skip, 0 for none
+     * @param limit      maximum rows to expose, negative for no limit
+     */
+    public ProjectionCursor(Cursor cursor, String[] names, String[] sources, int offset, int limit) {
+        super(cursor);
+        this.names = names;
+        this.sourceIndex = new int[names.length];
+        for (int i = 0; i < names.length; i++) {
+            sourceIndex[i] = cursor.getColumnIndexOrThrow(sources[i]);
+        }
+        this.offset = Math.max(0, offset);
+        int available = Math.max(0, cursor.getCount() - this.offset);
+        this.count = limit < 0 ? available : Math.min(limit, available);
+    }
+
+    // --- columns ---
+
+    @Override
+    public String[] getColumnNames() {
+        return names.clone();
+    }
+
+    @Override
+    public int getColumnCount() {
+        return names.length;
+    }
+
+    @Override
+    public int getColumnIndex(String columnName) {
+        return Arrays.asList(names).indexOf(columnName);
+    }
+
+    @Override
+    public int getColumnIndexOrThrow(String columnName) {
+        int index = getColumnIndex(columnName);
+        if (index < 0) throw new IllegalArgumentException("column '" + columnName + "' does not exist");
+        return index;
+    }
+
+    @Override
+    public String getColumnName(int columnIndex) {
+        return names[columnIndex];
+    }
+
+    @Override
+    public String getString(int columnIndex) {
+        return super.getString(sourceIndex[columnIndex]);
+    }
+
+    @Override
+    public void copyStringToBuffer(int columnIndex, CharArrayBuffer buffer) {
+        super.copyStringToBuffer(sourceIndex[columnIndex], buffer);
+    }
+
+    @Override
+    public byte[] getBlob(int columnIndex) {
+        return super.getBlob(sourceIndex[columnIndex]);
+    }
+
+    @Override
+    public short getShort(int columnIndex) {
+        return super.getShort(sourceIndex[columnIndex]);
+    }
+
+    @Override
+    public int getInt(int columnIndex) {
+        return super.getInt(sourceIndex[columnIndex]);
+    }
+
+    @Override
+    public long getLong(int columnIndex) {
+        return super.getLong(sourceIndex[columnIndex]);
+    }
+
+    @Override
+    public float getFloat(int columnIndex) {
+        return super.getFloat(sourceIndex[columnIndex]);
+    }
+
+    @Override
+    public double getDouble(int columnIndex) {
+        return super.getDouble(sourceIndex[columnIndex]);
+    }
+
+    @Override
+    public int getType(int columnIndex) {
+        return super.getType(sourceIndex[columnIndex]);
+    }
+
+    @Override
+    public boolean isNull(int columnIndex) {
+        return super.isNull(sourceIndex[columnIndex]);
+    }
+
+    // --- positioning within the window ---
+
+    @Override
+    public int getCount() {
+        return count;
+    }
+
+    @Override
+    public int getPosition() {
+        return position;
+    }
+
+    @Override
+    public boolean moveToPosition(int target) {
+        if (target < 0) {
+            position = -1;
+            return false;
+        }
+        if (target >= count) {
+            position = count;
+            return false;
+        }
+        position = target;
+        return super.moveToPosition(target + offset);
+    }
+
+    @Override
+    public boolean move(int delta) {
+        return moveToPosition(position + delta);
+    }
+
+    @Override
+    public boolean moveToFirst() {
+        return moveToPosition(0);
+    }
+
+    @Override
+    public boolean moveToLast() {
+        return moveToPosition(count - 1);
+    }
+
+    @Override
+    public boolean moveToNext() {
+        return moveToPosition(position + 1);
+    }
+
+    @Override
+    public boolean moveToPrevious() {
+        return moveToPosition(position - 1);
+    }
+
+    @Override
+    public boolean isFirst() {
+        return count > 0 && position == 0;
+    }
+
+    @Override
+    public boolean isLast() {
+        return count > 0 && position == count - 1;
+    }
+
+    @Override
+    public boolean isBeforeFirst() {
+        return count == 0 || position == -1;
+    }
+
+    @Override
+    public boolean isAfterLast() {
+        return count == 0 || position == count;
+    }
+}
@@ -0,0 +1,103 @@
+package com.forensic.agent;
+
+import android.database.Cursor;
+
+/**
+ * Maps the rows of one cursor onto a {@link SourceDefinition}.
+ *
+ * Column indexes are resolved once when the reader is created, and each value is read
+ * with the getter for its declared type (or, for {@link SourceDefinition#ANY}, the type
+ * the cursor reports), so the per-row loop does no name lookups and no boxing. Rows are
+ * copied into {@link RowBatch}es, which the writing side encodes.
+ */
+public class RecordReader {
+    private final Cursor cursor;
+    private final int[] types;
+    private final int[] index;
+    private final int idIndex;
+    private final int dateIndex;
+
+    public RecordReader(SourceDefinition source, Cursor cursor) {
+        this.cursor = cursor;
+        int n = source.columns.length;
+        types = new int[n];
+        index = new int[n];
+        int id = -1;
+        int date = -1;
+        for (int i = 0; i < n; i++) {
+            SourceDefinition.Column c = source.columns[i];
+            types[i] = c.type;
+            index[i] = cursor.getColumnIndexOrThrow(c.source);
+            if (c.source.equals(source.idColumn)) id = index[i];
+            if (c.name.equals(source.dateColumn)) date = index[i];
+        }
+        idIndex = id;
+        dateIndex = date;
+    }
+
+    public Cursor getCursor() {
+        return cursor;
+    }
+
+    /** Value of the definition's id column on the current row, or -1 if it has none. */
+    public long id() {
+        return idIndex >= 0 ? cursor.getLong(idIndex) : -1;
+    }
+
+    /** Value of the definition's date column on the current row, or 0 if it has none. */
+    public long date() {
+        return dateIndex >= 0 ? cursor.getLong(dateIndex) : 0;
+    }
+
+    /**
+     * Copies rows into {@code batch} until it is full or the cursor is exhausted; false once
+     * there was nothing left to copy.
+     */
+    public boolean fill(RowBatch batch) {
+        batch.clear();
+        while (batch.size() < batch.capacity() && cursor.moveToNext()) copy(batch, batch.add());
+        return batch.size() > 0;
+    }
+
+    private void copy(RowBatch batch, int row) {
+        batch.ids[row] = id();
+        batch.dates[row] = date();
+        for (int i = 0; i < index.length; i++) {
+            int col = index[i];
+            switch (types[i]) {
+                case SourceDefinition.STRING:
+                    String value = cursor.getString(col);
+                    batch.strings[i][row] = value;
+                    batch.kinds[i][row] = value == null ? RowBatch.NULL : RowBatch.STRING;
+                    break;
+                case SourceDefinition.LONG:
+                    batch.longs[i][row] = cursor.getLong(col);
+                    batch.kinds[i][row] = cursor.isNull(col) ? RowBatch.NULL : RowBatch.LONG;
+                    break;
+                case SourceDefinition.DOUBLE:
+                    batch.doubles[i][row] = cursor.getDouble(col);
+                    batch.kinds[i][row] = cursor.isNull(col) ? RowBatch.NULL : RowBatch.DOUBLE;
+                    break;
+                default:
+                    switch (cursor.getType(col)) {
+                        case Cursor.FIELD_TYPE_INTEGER:
+                            batch.longs[i][row] = cursor.getLong(col);
+                            batch.kinds[i][row] = RowBatch.LONG;
+                            break;
+                        case Cursor.FIELD_TYPE_FLOAT:
+                            batch.doubles[i][row] = cursor.getDouble(col);
+                            batch.kinds[i][row] = RowBatch.DOUBLE;
+                            break;
+                        case Cursor.FIELD_TYPE_STRING:
+                            batch.strings[i][row] = cursor.getString(col);
+                            batch.kinds[i][row] = RowBatch.STRING;
+                            break;
+                        default:
+                            // NULL, and BLOBs, which are neither exported nor stored
+                            batch.kinds[i][row] = RowBatch.NULL;
+                            break;
+                    }
+            }
+        }
+    }
+}
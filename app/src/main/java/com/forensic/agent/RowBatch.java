@@ -0,0 +1,139 @@
+package com.forensic.agent;
+
+import java.io.IOException;
+
+/**
+ * A reusable block of rows copied out of a cursor for one {@link SourceDefinition}.
+ *
+ * Values are held column by column in primitive arrays allocated once, so passing rows from
+ * the thread reading the cursor to the thread writing them allocates nothing per row beyond
+ * the strings themselves. {@link RecordReader#fill} copies rows in; {@link #writeJson} and
+ * {@link #insert} encode them exactly as reading the cursor directly would.
+ */
+public class RowBatch {
+    /** Per-cell value kinds. */
+    static final byte NULL = 0;
+    static final byte LONG = 1;
+    static final byte DOUBLE = 2;
+    static final byte STRING = 3;
+
+    private final String[] names;
+    private final int[] types;
+    private final boolean[] exported;
+    private final int capacity;
+    final byte[][] kinds;
+    final long[][] longs;
+    final double[][] doubles;
+    final String[][] strings;
+    final long[] ids;
+    final long[] dates;
+    private int size;
+
+    public RowBatch(SourceDefinition source, int capacity) {
+        int n = source.columns.length;
+        this.capacity = capacity;
+        names = new String[n];
+        types = new int[n];
+        exported = new boolean[n];
+        kinds = new byte[n][capacity];
+        longs = new long[n][];
+        doubles = new double[n][];
+        strings = new String[n][];
+        for (int i = 0; i < n; i++) {
+            SourceDefinition.Column c = source.columns[i];
+            names[i] = c.name;
+            types[i] = c.type;
+            exported[i] = c.exported;
+            // Only the arrays a column can use; ANY columns may hold any kind
+            if (c.type == SourceDefinition.LONG || c.type == SourceDefinition.ANY) longs[i] = new long[capacity];
+            if (c.type == SourceDefinition.DOUBLE || c.type == SourceDefinition.ANY) doubles[i] = new double[capacity];
+            if (c.type == SourceDefinition.STRING || c.type == SourceDefinition.ANY) strings[i] = new String[capacity];
+        }
+        ids = new long[capacity];
+        dates = new long[capacity];
+    }
+
+    public int capacity() {
+        return capacity;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public void clear() {
+        size = 0;
+    }
+
+    /** Claims the next row slot for {@link RecordReader} to fill. */
+    int add() {
+        return size++;
+    }
+
+    /** The definition's id column on {@code row}, or -1 if it has none. */
+    public long id(int row) {
+        return ids[row];
+    }
+
+    /** The definition's date column on {@code row}, or 0 if it has none. */
+    public long date(int row) {
+        return dates[row];
+    }
+
+    /** Writes the exported columns of {@code row} as one JSON record. */
+    public void writeJson(int row, JsonArtifactWriter writer) throws IOException {
+        writer.beginRecord();
+        for (int i = 0; i < names.length; i++) {
+            if (!exported[i]) continue;
+            switch (types[i]) {
+                case SourceDefinition.STRING:
+                    writer.field(names[i], strings[i][row]);
+                    break;
+                case SourceDefinition.LONG:
+                    // Typed numbers were always written, a NULL as the 0 getLong returns for it
+                    writer.field(names[i], longs[i][row]);
+                    break;
+                case SourceDefinition.DOUBLE:
+                    writer.json().name(names[i]).value(doubles[i][row]);
+                    break;
+                default:
+                    switch (kinds[i][row]) {
+                        case LONG:
+                            writer.field(names[i], longs[i][row]);
+                            break;
+                        case DOUBLE:
+                            writer.json().name(names[i]).value(doubles[i][row]);
+                            break;
+                        case STRING:
+                            writer.field(names[i], strings[i][row]);
+                            break;
+                        default:
+                            // NULL is omitted like JSONObject.put(name, null); BLOBs are not exported
+                            break;
+                    }
+            }
+        }
+        writer.endRecord();
+    }
+
+    /** Binds every column of {@code row}, hidden ones included, and inserts it. */
+    public void insert(int row, EvidenceStore.Insert insert) {
+        for (int i = 0; i < names.length; i++) {
+            switch (kinds[i][row]) {
+                case LONG:
+                    insert.bind(i + 1, longs[i][row]);
+                    break;
+                case DOUBLE:
+                    insert.bind(i + 1, doubles[i][row]);
+                    break;
+                case STRING:
+                    insert.bind(i + 1, strings[i][row]);
+                    break;
+                default:
+                    insert.bind(i + 1, (String) null);
+                    break;
+            }
+        }
+        insert.insert();
+    }
+}
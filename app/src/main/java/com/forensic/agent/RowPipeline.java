@@ -0,0 +1,123 @@
+package com.forensic.agent;
+
+import android.os.Process;
+import android.util.Log;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+
+/**
+ * Overlaps reading a cursor with writing its rows: a reader thread fills {@link RowBatch}es
+ * while the calling thread encodes and writes them.
+ *
+ * A fixed pool of {@code depth} batches circulates between the two threads through bounded
+ * queues. Memory therefore stays at a few batches however large the source is, and a slow
+ * writer holds the reader back instead of letting rows pile up. While the writer waits on
+ * flash, the reader is already pulling the next cursor window over IPC.
+ */
+public class RowPipeline {
+    private static final String TAG = "ForensicAgent";
+
+    /** Reader side: fills the batch, returning false once there are no more rows. */
+    public interface Producer {
+        boolean fill(RowBatch batch);
+    }
+
+    /** Writer side: encodes every row of a filled batch. */
+    public interface Consumer {
+        void accept(RowBatch batch) throws IOException;
+    }
+
+    private final BlockingQueue<RowBatch> free;
+    private final BlockingQueue<RowBatch> full;
+    private volatile Throwable readerError;
+    private long readNanos;
+    private long writerWaitNanos;
+
+    public RowPipeline(SourceDefinition source, int batchRows, int depth) {
+        free = new ArrayBlockingQueue<>(depth);
+        full = new ArrayBlockingQueue<>(depth);
+        for (int i = 0; i < depth; i++) free.add(new RowBatch(source, batchRows));
+    }
+
+    /**
+     * Runs {@code producer} on a new thread named {@code name} and {@code consumer} on this one
+     * until the producer is exhausted. The reader has stopped touching its cursor by the time
+     * this returns or throws, so the caller may close it.
+     */
+    public void run(String name, Producer producer, Consumer consumer) throws IOException {
+        Thread reader = new Thread(() -> {
+            Process.setThreadPriority(Process.THREAD_PRIORITY_BACKGROUND);
+            try {
+                boolean more = true;
+                while (more) {
+                    RowBatch batch = free.take();
+                    long started = System.nanoTime();
+                    try {
+                        more = producer.fill(batch);
+                    } catch (Throwable t) {
+                        readerError = t;
+                        batch.clear();
+                        more = false;
+                    }
+                    readNanos += System.nanoTime() - started;
+                    // An empty batch tells the writer the reader is done
+                    if (!more) batch.clear();
+                    full.put(batch);
+                }
+            } catch (InterruptedException e) {
+                // The writer failed and stopped consuming
+            }
+        }, name);
+
+        reader.start();
+        try {
+            while (true) {
+                long waitStarted = System.nanoTime();
+                RowBatch batch = full.take();
+                writerWaitNanos += System.nanoTime() - waitStarted;
+                if (batch.size() == 0) break;
+                consumer.accept(batch);
+                free.add(batch);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while waiting for " + name);
+        } finally {
+            reader.interrupt();
+            joinUninterruptibly(reader);
+        }
+
+        Throwable error = readerError;
+        if (error instanceof RuntimeException) throw (RuntimeException) error;
+        if (error instanceof Error) throw (Error) error;
+        if (error != null) throw new IOException(error);
+        Log.d(TAG, name + ": reader busy " + readNanos / 1000000 + " ms, writer waited "
+                + writerWaitNanos / 1000000 + " ms for rows");
+    }
+
+    /** Time the reader spent moving the cursor and copying rows; valid after {@link #run}. */
+    public long getReadNanos() {
+        return readNanos;
+    }
+
+    /** Time the writer spent waiting for the reader; near zero when reading keeps up. */
+    public long getWriterWaitNanos() {
+        return writerWaitNanos;
+    }
+
+    private static void joinUninterruptibly(Thread thread) {
+        boolean interrupted = false;
+        while (true) {
+            try {
+                thread.join();
+                break;
+            } catch (InterruptedException e) {
+                interrupted = true;
+            }
+        }
+        if (interrupted) Thread.currentThread().interrupt();
+    }
+}
@@ -0,0 +1,193 @@
+package com.forensic.agent;
+
+import android.net.Uri;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Declarative description of one row source: the provider URI, the columns to read and
+ * the names and types they are published under.
+ *
+ * A single definition drives the file extractor, the evidence store insert and the live
+ * {@link DataProvider} endpoint for that source, so adding a source means adding a
+ * definition to {@link Sources} rather than another hand-written cursor loop.
+ */
+public final class SourceDefinition {
+
+    /** Column value types; {@link #ANY} dispatches on {@code Cursor.getType} per row. */
+    public static final int STRING = 1;
+    public static final int LONG = 2;
+    public static final int DOUBLE = 3;
+    public static final int ANY = 4;
+
+    /** One provider column and how it is published. */
+    public static final class Column {
+        public final String source;
+        public final String name;
+        public final int type;
+        /** Hidden columns are read and stored but not written to JSON or live endpoints. */
+        public final boolean exported;
+
+        Column(String source, String name, int type, boolean exported) {
+            this.source = source;
+            this.name = name;
+            this.type = type;
+            this.exported = exported;
+        }
+    }
+
+    public final String name;
+    public final Uri uri;
+    public final String artifact;
+    public final String storeTable;
+    public final Column[] columns;
+    /** Provider column used for ordering and watermarks, e.g. {@code _id}. */
+    public final String idColumn;
+    /** Published name of the column recorded as the date watermark, or null. */
+    public final String dateColumn;
+
+    private SourceDefinition(Builder b) {
+        name = b.name;
+        uri = b.uri;
+        artifact = b.artifact;
+        storeTable = b.storeTable;
+        columns = b.columns.toArray(new Column[0]);
+        idColumn = b.idColumn;
+        dateColumn = b.dateColumn;
+    }
+
+    /** Provider projection: every declared source column, hidden ones included. */
+    public String[] projection() {
+        String[] projection = new String[columns.length];
+        for (int i = 0; i < columns.length; i++) projection[i] = columns[i].source;
+        return projection;
+    }
+
+    /** Public names of the exported columns, in declaration order. */
+    public String[] exportedNames() {
+        List<String> names = new ArrayList<>();
+        for (Column c : columns) if (c.exported) names.add(c.name);
+        return names.toArray(new String[0]);
+    }
+
+    /** Published names of every column, in declaration order (store column names). */
+    public String[] names() {
+        String[] names = new String[columns.length];
+        for (int i = 0; i < columns.length; i++) names[i] = columns[i].name;
+        return names;
+    }
+
+    /** Source column for an exported public name, or null if there is none. */
+    public String sourceOf(String exportedName) {
+        for (Column c : columns) {
+            if (c.exported && c.name.equals(exportedName)) return c.source;
+        }
+        return null;
+    }
+
+    /**
+     * Rewrites public column names in a selection or sort clause to source columns. Only
+     * identifiers are rewritten, bare or quoted; string literals, numbers and the rest of
+     * the clause are copied as they are, and a clause with an unterminated quote is
+     * rejected rather than guessed at.
+     */
+    public String toSource(String clause) {
+        if (clause == null) return null;
+        StringBuilder out = new StringBuilder(clause.length() + 16);
+        int i = 0;
+        int n = clause.length();
+        while (i < n) {
+            char c = clause.charAt(i);
+            if (c == '\'' || c == '"' || c == '`' || c == '[') {
+                char close = c == '[' ? ']' : c;
+                int end = clause.indexOf(close, i + 1);
+                if (end < 0) throw new IllegalArgumentException("Unterminated " + c + " in " + clause);
+                String quoted = clause.substring(i + 1, end);
+                // '' inside a literal ends one quoted run and starts the next, which is copied the same way
+                out.append(c).append(c == '\'' ? quoted : sourceName(quoted)).append(close);
+                i = end + 1;
+            } else if (Character.isLetter(c) || c == '_') {
+                int end = i + 1;
+                while (end < n && (Character.isLetterOrDigit(clause.charAt(end)) || clause.charAt(end) == '_')) end++;
+                out.append(sourceName(clause.substring(i, end)));
+                i = end;
+            } else if (Character.isDigit(c)) {
+                // Numbers, including forms like 1e5 or 0x1F, are never names
+                int end = i + 1;
+                while (end < n && (Character.isLetterOrDigit(clause.charAt(end)) || clause.charAt(end) == '.')) end++;
+                out.append(clause, i, end);
+                i = end;
+            } else {
+                out.append(c);
+                i++;
+            }
+        }
+        return out.toString();
+    }
+
+    /** The source column of an exported public name; anything else unchanged. */
+    private String sourceName(String identifier) {
+        String source = sourceOf(identifier);
+        return source != null ? source : identifier;
+    }
+
+    public static Builder builder(String name, Uri uri) {
+        return new Builder(name, uri);
+    }
+
+    public static final class Builder {
+        private final String name;
+        private final Uri uri;
+        private final List<Column> columns = new ArrayList<>();
+        private String artifact;
+        private String storeTable;
+        private String idColumn;
+        private String dateColumn;
+
+        private Builder(String name, Uri uri) {
+            this.name = name;
+            this.uri = uri;
+        }
+
+        /** Exported column published under its source name. */
+        public Builder column(String source, int type) {
+            return column(source, source, type);
+        }
+
+        /** Exported column published as {@code name}. */
+        public Builder column(String source, String name, int type) {
+            columns.add(new Column(source, name, type, true));
+            return this;
+        }
+
+        /** Column that is read and stored but not exported. */
+        public Builder hidden(String source, String name, int type) {
+            columns.add(new Column(source, name, type, false));
+            return this;
+        }
+
+        /** JSON artifact file name, e.g. {@code sms.json}. */
+        public Builder artifact(String artifact) {
+            this.artifact = artifact;
+            return this;
+        }
+
+        /** {@link EvidenceStore} table receiving the rows, under the columns' published names. */
+        public Builder store(String table) {
+            this.storeTable = table;
+            return this;
+        }
+
+        /** Watermark columns: provider id column and published date column. */
+        public Builder watermark(String idColumn, String dateColumn) {
+            this.idColumn = idColumn;
+            this.dateColumn = dateColumn;
+            return this;
+        }
+
+        public SourceDefinition build() {
+            return new SourceDefinition(this);
+        }
+    }
+}
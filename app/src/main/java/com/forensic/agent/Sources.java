@@ -0,0 +1,72 @@
+package com.forensic.agent;
+
+import android.provider.CalendarContract;
+import android.provider.CallLog;
+import android.provider.ContactsContract;
+import android.provider.Telephony;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Registry of the row sources the agent knows how to read.
+ *
+ * {@link #EXTRACTED} feeds {@link ExtractionService}'s generic extractor; {@link #LIVE}
+ * backs the structured {@link DataProvider} endpoints of the same name.
+ */
+public final class Sources {
+
+    public static final SourceDefinition SMS = SourceDefinition.builder("sms", Telephony.Sms.CONTENT_URI)
+            .hidden(Telephony.Sms._ID, "_id", SourceDefinition.LONG)
+            .column(Telephony.Sms.ADDRESS, SourceDefinition.STRING)
+            .column(Telephony.Sms.BODY, SourceDefinition.STRING)
+            .column(Telephony.Sms.DATE, SourceDefinition.LONG)
+            .column(Telephony.Sms.TYPE, SourceDefinition.LONG)
+            .artifact("sms.json")
+            .store("sms")
+            .watermark(Telephony.Sms._ID, "date")
+            .build();
+
+    public static final SourceDefinition CALLS = SourceDefinition.builder("calls", CallLog.Calls.CONTENT_URI)
+            .hidden(CallLog.Calls._ID, "_id", SourceDefinition.LONG)
+            .column(CallLog.Calls.NUMBER, SourceDefinition.STRING)
+            .column(CallLog.Calls.DATE, SourceDefinition.LONG)
+            .column(CallLog.Calls.DURATION, SourceDefinition.LONG)
+            .column(CallLog.Calls.TYPE, SourceDefinition.LONG)
+            .artifact("call_logs.json")
+            .store("calls")
+            .watermark(CallLog.Calls._ID, "date")
+            .build();
+
+    public static final SourceDefinition CALENDAR = SourceDefinition.builder("calendar", CalendarContract.Events.CONTENT_URI)
+            .column(CalendarContract.Events._ID, "id", SourceDefinition.LONG)
+            .column(CalendarContract.Events.TITLE, SourceDefinition.STRING)
+            .column(CalendarContract.Events.DTSTART, SourceDefinition.LONG)
+            .column(CalendarContract.Events.DTEND, SourceDefinition.LONG)
+            .artifact("calendar.json")
+            .store("calendar")
+            .watermark(CalendarContract.Events._ID, "dtstart")
+            .build();
+
+    /** Flat contact/phone pairs; the contacts artifact itself is grouped per contact. */
+    public static final SourceDefinition CONTACT_PHONES = SourceDefinition.builder("contacts",
+                    ContactsContract.CommonDataKinds.Phone.CONTENT_URI)
+            .column(ContactsContract.CommonDataKinds.Phone.CONTACT_ID, "id", SourceDefinition.LONG)
+            .column(ContactsContract.CommonDataKinds.Phone.DISPLAY_NAME, "name", SourceDefinition.STRING)
+            .column(ContactsContract.CommonDataKinds.Phone.NUMBER, "phone", SourceDefinition.STRING)
+            .build();
+
+    /** Sources written by the generic extractor, in scheduling order. */
+    public static final SourceDefinition[] EXTRACTED = {SMS, CALLS, CALENDAR};
+
+    /** Live provider endpoints by name. */
+    public static final Map<String, SourceDefinition> LIVE = new LinkedHashMap<>();
+    static {
+        LIVE.put(CONTACT_PHONES.name, CONTACT_PHONES);
+        LIVE.put(SMS.name, SMS);
+        LIVE.put(CALLS.name, CALLS);
+        LIVE.put(CALENDAR.name, CALENDAR);
+    }
+
+    private Sources() {}
+}
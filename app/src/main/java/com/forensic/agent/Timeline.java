@@ -0,0 +1,287 @@
+package com.forensic.agent;
+
+import android.content.ContentResolver;
+import android.database.AbstractCursor;
+import android.database.Cursor;
+import android.provider.CalendarContract;
+import android.provider.CallLog;
+import android.provider.Telephony;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.PriorityQueue;
+
+/**
+ * SMS, calls and calendar events as one date-ordered stream.
+ *
+ * Each source is queried already sorted by date, optionally restricted to a time window,
+ * and the cursors are merged k ways: a heap holds the current row of every source and the
+ * earliest one is exposed next. Memory stays at one row position per source however long
+ * the timeline is, and a window only reads the rows that fall inside it.
+ */
+public class Timeline {
+    public static final String FILE_NAME = "timeline.json";
+    public static final String[] COLUMNS = new String[]{"date", "end", "source", "id", "party", "text", "type"};
+
+    private static final int DATE = 0;
+    private static final int END = 1;
+    private static final int SOURCE = 2;
+    private static final int ID = 3;
+    private static final int PARTY = 4;
+    private static final int TEXT = 5;
+    private static final int TYPE = 6;
+
+    /**
+     * How one source maps onto {@link #COLUMNS}: the provider column behind each timeline
+     * column, or null where the source has none. A call's end is its date plus its duration.
+     */
+    static final class Lane {
+        final SourceDefinition source;
+        final String[] columns;
+        final boolean endFromDuration;
+
+        Lane(SourceDefinition source, boolean endFromDuration, String date, String end, String id,
+             String party, String text, String type) {
+            this.source = source;
+            this.endFromDuration = endFromDuration;
+            this.columns = new String[]{date, end, null, id, party, text, type};
+        }
+
+        String date() {
+            return columns[DATE];
+        }
+    }
+
+    static final Lane[] LANES = {
+            new Lane(Sources.SMS, false, Telephony.Sms.DATE, null, Telephony.Sms._ID,
+                    Telephony.Sms.ADDRESS, Telephony.Sms.BODY, Telephony.Sms.TYPE),
+            new Lane(Sources.CALLS, true, CallLog.Calls.DATE, CallLog.Calls.DURATION, CallLog.Calls._ID,
+                    CallLog.Calls.NUMBER, null, CallLog.Calls.TYPE),
+            new Lane(Sources.CALENDAR, false, CalendarContract.Events.DTSTART, CalendarContract.Events.DTEND,
+                    CalendarContract.Events._ID, null, CalendarContract.Events.TITLE, null),
+    };
+
+    private Timeline() {}
+
+    /**
+     * Opens the merged timeline of {@code sources} (every source when empty), limited to
+     * {@code since <= date < until}; pass -1 for an open bound.
+     */
+    public static Cursor open(ContentResolver resolver, List<String> sources, long since, long until) {
+        List<Lane> lanes = new ArrayList<>();
+        for (String name : sources) {
+            Lane lane = lane(name);
+            if (lane == null) throw new IllegalArgumentException("Unknown timeline source " + name);
+            lanes.add(lane);
+        }
+        if (lanes.isEmpty()) lanes.addAll(Arrays.asList(LANES));
+
+        List<Cursor> cursors = new ArrayList<>();
+        List<Lane> opened = new ArrayList<>();
+        try {
+            for (Lane lane : lanes) {
+                Cursor c = query(resolver, lane, since, until);
+                if (c == null) continue;
+                cursors.add(c);
+                opened.add(lane);
+            }
+        } catch (RuntimeException e) {
+            for (Cursor c : cursors) c.close();
+            throw e;
+        }
+        return new MergeCursor(opened, cursors);
+    }
+
+    private static Lane lane(String name) {
+        for (Lane lane : LANES) {
+            if (lane.source.name.equals(name)) return lane;
+        }
+        return null;
+    }
+
+    private static Cursor query(ContentResolver resolver, Lane lane, long since, long until) {
+        List<String> projection = new ArrayList<>();
+        for (String column : lane.columns) {
+            if (column != null && !projection.contains(column)) projection.add(column);
+        }
+        StringBuilder where = new StringBuilder();
+        List<String> args = new ArrayList<>();
+        if (since >= 0) {
+            where.append(lane.date()).append(" >= ?");
+            args.add(String.valueOf(since));
+        }
+        if (until >= 0) {
+            where.append(where.length() > 0 ? " AND " : "").append(lane.date()).append(" < ?");
+            args.add(String.valueOf(until));
+        }
+        // Providers index these dates; the id breaks ties so equal dates merge stably
+        return resolver.query(lane.source.uri, projection.toArray(new String[0]),
+                where.length() > 0 ? where.toString() : null, args.toArray(new String[0]),
+                lane.date() + " ASC, " + lane.columns[ID] + " ASC");
+    }
+
+    /** Writes every row of a timeline cursor as one JSON record, skipping null columns. */
+    public static void write(Cursor timeline, JsonArtifactWriter writer) throws IOException {
+        while (timeline.moveToNext()) {
+            writer.beginRecord();
+            for (int i = 0; i < COLUMNS.length; i++) {
+                if (timeline.isNull(i)) continue;
+                if (i == SOURCE || i == PARTY || i == TEXT) writer.field(COLUMNS[i], timeline.getString(i));
+                else writer.field(COLUMNS[i], timeline.getLong(i));
+            }
+            writer.endRecord();
+        }
+    }
+
+    /**
+     * Forward k-way merge of date-sorted cursors. Moving backwards restarts the merge from
+     * the first row, which {@link ProjectionCursor} paging never needs.
+     */
+    static final class MergeCursor extends AbstractCursor {
+        private final List<Lane> lanes;
+        private final List<Cursor> cursors;
+        private final int[][] index;
+        private final PriorityQueue<Integer> heads;
+        private final int count;
+        private int current = -1;
+        /** Row the lane cursors are on; AbstractCursor may reset its own position without a move. */
+        private int merged = -1;
+
+        MergeCursor(List<Lane> lanes, List<Cursor> cursors) {
+            this.lanes = lanes;
+            this.cursors = cursors;
+            index = new int[lanes.size()][COLUMNS.length];
+            int total = 0;
+            for (int l = 0; l < lanes.size(); l++) {
+                Cursor c = cursors.get(l);
+                for (int i = 0; i < COLUMNS.length; i++) {
+                    String column = lanes.get(l).columns[i];
+                    index[l][i] = column == null ? -1 : c.getColumnIndexOrThrow(column);
+                }
+                total += c.getCount();
+            }
+            count = total;
+            // Earliest date first; on equal dates the lane order, then the source's own order
+            heads = new PriorityQueue<>(Math.max(1, lanes.size()), (a, b) -> {
+                int c = Long.compare(dateOf(a), dateOf(b));
+                return c != 0 ? c : Integer.compare(a, b);
+            });
+            restart();
+        }
+
+        private long dateOf(int lane) {
+            return cursors.get(lane).getLong(index[lane][DATE]);
+        }
+
+        private void restart() {
+            heads.clear();
+            current = -1;
+            merged = -1;
+            for (int l = 0; l < cursors.size(); l++) {
+                if (cursors.get(l).moveToFirst()) heads.add(l);
+            }
+        }
+
+        /** Advances to the next row in date order; false once every source is exhausted. */
+        private boolean advance() {
+            if (current >= 0 && cursors.get(current).moveToNext()) heads.add(current);
+            Integer next = heads.poll();
+            current = next == null ? -1 : next;
+            return next != null;
+        }
+
+        @Override
+        public boolean onMove(int oldPosition, int newPosition) {
+            if (newPosition <= merged) restart();
+            while (merged < newPosition) {
+                if (!advance()) return false;
+                merged++;
+            }
+            return true;
+        }
+
+        @Override
+        public int getCount() {
+            return count;
+        }
+
+        @Override
+        public String[] getColumnNames() {
+            return COLUMNS.clone();
+        }
+
+        private Cursor row() {
+            return cursors.get(current);
+        }
+
+        private int column(int column) {
+            checkPosition();
+            return index[current][column];
+        }
+
+        @Override
+        public String getString(int column) {
+            if (column == SOURCE) {
+                checkPosition();
+                return lanes.get(current).source.name;
+            }
+            if (column == END && lanes.get(current).endFromDuration) return isNull(column) ? null : String.valueOf(getLong(column));
+            int i = column(column);
+            return i < 0 ? null : row().getString(i);
+        }
+
+        @Override
+        public long getLong(int column) {
+            if (column == SOURCE) return 0;
+            int i = column(column);
+            if (i < 0) return 0;
+            if (column == END && lanes.get(current).endFromDuration) {
+                return row().getLong(index[current][DATE]) + row().getLong(i) * 1000L;
+            }
+            return row().getLong(i);
+        }
+
+        @Override
+        public short getShort(int column) {
+            return (short) getLong(column);
+        }
+
+        @Override
+        public int getInt(int column) {
+            return (int) getLong(column);
+        }
+
+        @Override
+        public float getFloat(int column) {
+            return getLong(column);
+        }
+
+        @Override
+        public double getDouble(int column) {
+            return getLong(column);
+        }
+
+        @Override
+        public boolean isNull(int column) {
+            if (column == SOURCE) return false;
+            int i = column(column);
+            return i < 0 || row().isNull(i);
+        }
+
+        @Override
+        public int getType(int column) {
+            if (column == SOURCE) return FIELD_TYPE_STRING;
+            int i = column(column);
+            if (i < 0) return FIELD_TYPE_NULL;
+            return column == END && !row().isNull(i) ? FIELD_TYPE_INTEGER : row().getType(i);
+        }
+
+        @Override
+        public void close() {
+            super.close();
+            for (Cursor c : cursors) c.close();
+        }
+    }
+}
@@ -0,0 +1,74 @@
+package com.forensic.agent;
+
+import android.util.AtomicFile;
+import android.util.Log;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Per-source high-water marks for incremental extraction.
+ *
+ * Stored as {@code watermarks.json} next to the {@code extracted} directory. Each source
+ * records the largest {@code _ID} and date already written, so a later incremental run
+ * only asks its provider for rows above that id.
+ */
+public class Watermarks {
+    private static final String TAG = "ForensicAgent";
+    public static final String FILE_NAME = "watermarks.json";
+
+    private final AtomicFile file;
+    private JSONObject state;
+
+    public Watermarks(File dir) {
+        file = new AtomicFile(new File(dir, FILE_NAME));
+        try {
+            state = new JSONObject(new String(file.readFully(), StandardCharsets.UTF_8));
+        } catch (IOException | JSONException e) {
+            state = new JSONObject();
+        }
+    }
+
+    public synchronized boolean has(String source) {
+        return state.has(source);
+    }
+
+    /** Largest {@code _ID} already extracted for {@code source}, or -1 if none. */
+    public synchronized long getMaxId(String source) {
+        JSONObject mark = state.optJSONObject(source);
+        return mark != null ? mark.optLong("max_id", -1) : -1;
+    }
+
+    public synchronized long getMaxDate(String source) {
+        JSONObject mark = state.optJSONObject(source);
+        return mark != null ? mark.optLong("max_date", 0) : 0;
+    }
+
+    /** Records the new marks for {@code source} and persists the whole file atomically. */
+    public synchronized void update(String source, long maxId, long maxDate) throws IOException {
+        try {
+            JSONObject mark = new JSONObject();
+            mark.put("max_id", maxId);
+            mark.put("max_date", maxDate);
+            mark.put("updated", System.currentTimeMillis());
+            state.put(source, mark);
+        } catch (JSONException e) {
+            throw new IOException(e);
+        }
+
+        FileOutputStream out = file.startWrite();
+        try {
+            out.write(state.toString(2).getBytes(StandardCharsets.UTF_8));
+            file.finishWrite(out);
+        } catch (IOException | JSONException e) {
+            file.failWrite(out);
+            throw e instanceof IOException ? (IOException) e : new IOException(e);
+        }
+        Log.d(TAG, "Watermark for " + source + ": max_id=" + maxId + ", max_date=" + maxDate);
+    }
+}
@@ -0,0 +1,193 @@
+package com.forensic.agent;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.security.MessageDigest;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * An artifact interrupted after some committed segments and resumed by a new writer must come
+ * out byte-identical to the same rows written in one go, with a matching manifest entry.
+ */
+@RunWith(RobolectricTestRunner.class)
+@Config(sdk = 33)
+public class CheckpointedArtifactTest {
+    private static final int ROWS = 1000;
+    private static final int SEGMENT_ROWS = 64;
+
+    private File dir;
+    private File expected;
+
+    @Before
+    public void setUp() throws IOException {
+        dir = Files.createTempDirectory("checkpointed").toFile();
+        expected = new File(dir, "expected.json");
+        try (JsonArtifactWriter writer = new JsonArtifactWriter(expected)) {
+            for (int id = 1; id <= ROWS; id++) writeRecord(writer, id);
+            writer.finish();
+        }
+    }
+
+    @After
+    public void tearDown() {
+        delete(dir);
+    }
+
+    @Test
+    public void resumedRunMatchesUninterruptedRun() throws IOException {
+        File target = new File(dir, "sms.json");
+        ArtifactManifest manifest = ArtifactManifest.load(dir, true);
+
+        // First run: commits segments, then dies part-way through the next one without closing
+        CheckpointedArtifact first = new CheckpointedArtifact(dir, "sms", target, manifest, "full", false, SEGMENT_ROWS);
+        int lastCommitted = 0;
+        for (int id = 1; id <= 450; id++) {
+            writeRecord(first.writer(), id);
+            if (first.isSegmentFull()) {
+                first.checkpoint(id, id * 1000L);
+                lastCommitted = id;
+            }
+        }
+        assertFalse(target.exists());
+
+        CheckpointedArtifact second = new CheckpointedArtifact(dir, "sms", target, manifest, "full", true, SEGMENT_ROWS);
+        assertTrue(second.isResumed());
+        assertEquals(lastCommitted, second.getLastId());
+        assertEquals(lastCommitted * 1000L, second.getMaxDate());
+        assertEquals(lastCommitted, second.getRowCount());
+        for (long id = second.getLastId() + 1; id <= ROWS; id++) {
+            writeRecord(second.writer(), id);
+            if (second.isSegmentFull()) second.checkpoint(id, id * 1000L);
+        }
+        second.finish();
+        second.close();
+
+        assertArrayEquals(Files.readAllBytes(expected.toPath()), Files.readAllBytes(target.toPath()));
+        ArtifactManifest.Entry entry = manifest.getEntries().get(0);
+        assertEquals("sms.json", entry.file);
+        assertEquals(ROWS, entry.rows);
+        assertEquals(target.length(), entry.size);
+        assertEquals(sha256(target), entry.sha256);
+        assertFalse(new File(dir, CheckpointedArtifact.DIR_NAME + "/sms").exists());
+    }
+
+    @Test
+    public void singleSegmentIsMovedWithItsHash() throws IOException {
+        File target = new File(dir, "calls.json");
+        ArtifactManifest manifest = ArtifactManifest.load(dir, false);
+        try (CheckpointedArtifact artifact = new CheckpointedArtifact(dir, "calls", target, manifest, "full", false, ROWS)) {
+            for (int id = 1; id <= ROWS; id++) writeRecord(artifact.writer(), id);
+            artifact.finish();
+        }
+        assertArrayEquals(Files.readAllBytes(expected.toPath()), Files.readAllBytes(target.toPath()));
+        assertEquals(sha256(target), manifest.getEntries().get(0).sha256);
+    }
+
+    @Test
+    public void partitionsCommitInOrderAndResume() throws IOException {
+        File target = new File(dir, "sms.json");
+        ArtifactManifest manifest = ArtifactManifest.load(dir, false);
+
+        // Ranges (0, 250], (250, 600], (600, 1000]; the last finishes first, the first never does
+        CheckpointedArtifact first = new CheckpointedArtifact(dir, "sms", target, manifest, "full", false, SEGMENT_ROWS);
+        first.partition(3);
+        for (int id = 1; id <= 100; id++) writeRecord(first.partitionWriter(0), id);
+        for (int id = 251; id <= 600; id++) writeRecord(first.partitionWriter(1), id);
+        for (int id = 601; id <= ROWS; id++) writeRecord(first.partitionWriter(2), id);
+        first.commitPartition(2, ROWS, ROWS * 1000L);
+        first.commitPartition(1, 600, 600 * 1000L);
+        assertEquals(850, first.getRowCount());
+        first.close();
+
+        CheckpointedArtifact resumed = new CheckpointedArtifact(dir, "sms", target, manifest, "full", true, SEGMENT_ROWS);
+        assertFalse(resumed.isResumed());
+        resumed.close();
+
+        CheckpointedArtifact second = new CheckpointedArtifact(dir, "sms", target, manifest, "full", false, SEGMENT_ROWS);
+        second.partition(2);
+        for (int id = 501; id <= ROWS; id++) writeRecord(second.partitionWriter(1), id);
+        for (int id = 1; id <= 250; id++) writeRecord(second.partitionWriter(0), id);
+        second.commitPartition(1, ROWS, ROWS * 1000L);
+        for (int id = 251; id <= 500; id++) writeRecord(second.partitionWriter(0), id);
+        second.commitPartition(0, 500, 500 * 1000L);
+        second.close();
+
+        // Killed after both ranges committed but before finish: the checkpoint covers them all
+        CheckpointedArtifact third = new CheckpointedArtifact(dir, "sms", target, manifest, "full", true, SEGMENT_ROWS);
+        assertTrue(third.isResumed());
+        assertEquals(ROWS, third.getLastId());
+        assertEquals(ROWS * 1000L, third.getMaxDate());
+        assertEquals(ROWS, third.getRowCount());
+        third.finish();
+        third.close();
+
+        assertArrayEquals(Files.readAllBytes(expected.toPath()), Files.readAllBytes(target.toPath()));
+        ArtifactManifest.Entry entry = manifest.getEntries().get(0);
+        assertEquals(ROWS, entry.rows);
+        assertEquals(sha256(target), entry.sha256);
+    }
+
+    @Test
+    public void checkpointOfDifferentVariantIsDiscarded() throws IOException {
+        File target = new File(dir, "contacts.json");
+        CheckpointedArtifact first = new CheckpointedArtifact(dir, "contacts", target, null, "details=false", false, SEGMENT_ROWS);
+        for (int id = 1; id <= SEGMENT_ROWS; id++) writeRecord(first.writer(), id);
+        first.checkpoint(SEGMENT_ROWS, 0);
+
+        CheckpointedArtifact second = new CheckpointedArtifact(dir, "contacts", target, null, "details=true", true, SEGMENT_ROWS);
+        assertFalse(second.isResumed());
+        assertEquals(-1, second.getLastId());
+        assertEquals(0, second.getRowCount());
+        second.close();
+    }
+
+    @Test
+    public void unfinishedWriterIsDiscarded() throws IOException {
+        File target = new File(dir, "timeline.json");
+        ArtifactManifest manifest = ArtifactManifest.load(dir, false);
+        try (JsonArtifactWriter writer = new JsonArtifactWriter(target, manifest)) {
+            for (int id = 1; id <= 10; id++) writeRecord(writer, id);
+            // Fails before finish()
+        }
+        assertFalse(target.exists());
+        assertTrue(manifest.getEntries().isEmpty());
+    }
+
+    private static void writeRecord(JsonArtifactWriter writer, long id) throws IOException {
+        writer.beginRecord();
+        writer.field("_id", id);
+        writer.field("body", id % 7 == 0 ? null : "message " + id + " caf\u00e9 \"quoted\"\n\ud83d\udc4d");
+        writer.field("date", id * 1000L);
+        writer.endRecord();
+    }
+
+    private static String sha256(File file) throws IOException {
+        MessageDigest digest = HashingOutputStream.digest("SHA-256");
+        try (InputStream in = new FileInputStream(file)) {
+            byte[] buffer = new byte[8192];
+            int n;
+            while ((n = in.read(buffer)) > 0) digest.update(buffer, 0, n);
+        }
+        return HashingOutputStream.hex(digest.digest());
+    }
+
+    private static void delete(File file) {
+        File[] children = file.listFiles();
+        if (children != null) for (File child : children) delete(child);
+        file.delete();
+    }
+}
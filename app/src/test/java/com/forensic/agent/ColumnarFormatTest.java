@@ -0,0 +1,155 @@
+package com.forensic.agent;
+
+import android.database.Cursor;
+import android.database.MatrixCursor;
+import android.provider.Telephony;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.file.Files;
+import java.util.Random;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * SMS rows written in the columnar format must convert back to exactly the JSON the JSON
+ * extractor writes, seek to any row, and come out far smaller.
+ */
+@RunWith(RobolectricTestRunner.class)
+@Config(sdk = 33)
+public class ColumnarFormatTest {
+    private static final int ROWS = 10000;
+
+    private File dir;
+    private File json;
+    private File columnar;
+
+    @Before
+    public void setUp() throws IOException {
+        dir = Files.createTempDirectory("columnar").toFile();
+        json = new File(dir, "sms.json");
+        columnar = ColumnarWriter.fileFor(json);
+
+        try (JsonArtifactWriter writer = new JsonArtifactWriter(json); Cursor rows = sms()) {
+            RecordReader reader = new RecordReader(Sources.SMS, rows);
+            RowBatch batch = new RowBatch(Sources.SMS, 256);
+            while (reader.fill(batch)) {
+                for (int row = 0; row < batch.size(); row++) batch.writeJson(row, writer);
+            }
+            writer.finish();
+        }
+        ArtifactManifest manifest = ArtifactManifest.load(dir, false);
+        try (ColumnarWriter writer = new ColumnarWriter(columnar, Sources.SMS, manifest); Cursor rows = sms()) {
+            RecordReader reader = new RecordReader(Sources.SMS, rows);
+            RowBatch batch = new RowBatch(Sources.SMS, 256);
+            while (reader.fill(batch)) writer.append(batch);
+            writer.finish();
+        }
+        assertEquals(ROWS, manifest.getEntries().get(0).rows);
+    }
+
+    @After
+    public void tearDown() {
+        File[] files = dir.listFiles();
+        if (files != null) for (File f : files) f.delete();
+        dir.delete();
+    }
+
+    @Test
+    public void convertsBackToIdenticalJson() throws IOException {
+        ByteArrayOutputStream converted = new ByteArrayOutputStream();
+        try (ColumnarReader reader = ColumnarReader.open(columnar)) {
+            assertEquals(ROWS, reader.getRowCount());
+            reader.writeJson(converted);
+        }
+        assertArrayEquals(Files.readAllBytes(json.toPath()), converted.toByteArray());
+        assertTrue(columnar.length() * 2 < json.length());
+    }
+
+    @Test
+    public void seeksToAnyRow() throws IOException {
+        try (ColumnarReader reader = ColumnarReader.open(columnar)) {
+            int id = reader.columnIndex("_id");
+            int address = reader.columnIndex(Telephony.Sms.ADDRESS);
+            int body = reader.columnIndex(Telephony.Sms.BODY);
+            ColumnarReader.Scanner scanner = reader.scanner();
+            for (long row : new long[]{9999, 0, 4096, 4095, 5000, 5001, 8191, 1}) {
+                assertTrue(scanner.seek(row));
+                assertEquals(row + 1, scanner.getLong(id));
+                assertEquals(address(row + 1), scanner.getString(address));
+                if ((row + 1) % 50 == 0) assertNull(scanner.getString(body));
+                else assertEquals(body(row + 1), scanner.getString(body));
+            }
+            assertFalse(scanner.seek(ROWS));
+
+            try (Cursor c = new ColumnarReader.RowCursor(ColumnarReader.open(columnar))) {
+                assertEquals(ROWS, c.getCount());
+                assertTrue(c.moveToPosition(7000));
+                assertEquals(address(7001), c.getString(c.getColumnIndexOrThrow(Telephony.Sms.ADDRESS)));
+                assertEquals(-1, c.getColumnIndex("_id"));
+            }
+        }
+    }
+
+    @Test
+    public void rejectsUnfinishedFile() throws IOException {
+        try (RandomAccessFile file = new RandomAccessFile(columnar, "rw")) {
+            file.setLength(file.length() - 1);
+        }
+        try {
+            ColumnarReader.open(columnar).close();
+            fail("Truncated file was accepted");
+        } catch (IOException expected) {
+            // No footer
+        }
+    }
+
+    @Test
+    public void failedRunKeepsPreviousFile() throws IOException {
+        byte[] before = Files.readAllBytes(columnar.toPath());
+        try (ColumnarWriter writer = new ColumnarWriter(columnar, Sources.SMS, null); Cursor rows = sms()) {
+            RecordReader reader = new RecordReader(Sources.SMS, rows);
+            RowBatch batch = new RowBatch(Sources.SMS, 256);
+            reader.fill(batch);
+            writer.append(batch);
+            // No finish(): the run failed
+        }
+        assertArrayEquals(before, Files.readAllBytes(columnar.toPath()));
+        assertFalse(new File(columnar.getPath() + ".tmp").exists());
+    }
+
+    /** SMS with a few hundred correspondents, unique bodies, and some NULL bodies and types. */
+    private static Cursor sms() {
+        MatrixCursor cursor = new MatrixCursor(Sources.SMS.projection());
+        Random random = new Random(313);
+        long date = 1600000000000L;
+        for (long id = 1; id <= ROWS; id++) {
+            date += random.nextInt(600000);
+            cursor.addRow(new Object[]{id, address(id), id % 50 == 0 ? null : body(id), date,
+                    id % 7 == 0 ? null : 1 + id % 2});
+        }
+        return cursor;
+    }
+
+    private static String address(long id) {
+        return "+1555" + (1000000 + id * 7919 % 300);
+    }
+
+    private static String body(long id) {
+        return "message " + id + " caf\u00e9 \"quoted\"\n\ud83d\udc4d";
+    }
+}
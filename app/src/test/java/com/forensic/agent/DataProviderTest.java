@@ -0,0 +1,95 @@
+package com.forensic.agent;
+
+import android.os.ParcelFileDescriptor;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+import org.robolectric.shadows.ShadowLog;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.fail;
+
+/**
+ * Every streamed endpoint writes through {@link DataProvider#stream}: the reader gets all of
+ * a body's output, and a body that fails, with an I/O or a runtime error, ends its thread
+ * and closes the pipe with the error instead of leaving the reader waiting.
+ */
+@RunWith(RobolectricTestRunner.class)
+@Config(sdk = 33)
+public class DataProviderTest {
+    private static final String TAG = "ForensicAgent";
+
+    private final AtomicReference<Throwable> uncaught = new AtomicReference<>();
+    private Thread.UncaughtExceptionHandler previous;
+
+    @Before
+    public void setUp() {
+        previous = Thread.getDefaultUncaughtExceptionHandler();
+        Thread.setDefaultUncaughtExceptionHandler((t, e) -> uncaught.set(e));
+    }
+
+    @After
+    public void tearDown() {
+        Thread.setDefaultUncaughtExceptionHandler(previous);
+    }
+
+    @Test
+    public void streamDeliversEverythingWritten() throws IOException {
+        byte[] data = new byte[1 << 20];
+        new Random(7).nextBytes(data);
+        ParcelFileDescriptor pipe = DataProvider.stream("test-stream", out -> out.write(data));
+        assertArrayEquals(data, readAll(pipe, "test-stream"));
+        assertNull(uncaught.get());
+    }
+
+    @Test
+    public void failedWriteClosesWithError() throws IOException {
+        ParcelFileDescriptor pipe = DataProvider.stream("test-io-error", out -> {
+            out.write(new byte[100]);
+            throw new IOException("disk gone");
+        });
+        // Robolectric's pipes do not carry the error to the reader; a device's do
+        assertEquals(100, readAll(pipe, "test-io-error").length);
+        assertLogged("Error streaming test-io-error: disk gone");
+        assertNull(uncaught.get());
+    }
+
+    @Test
+    public void runtimeFailureDoesNotEscapeTheThread() throws IOException {
+        ParcelFileDescriptor pipe = DataProvider.stream("test-runtime-error", out -> {
+            throw new IllegalStateException("cursor closed");
+        });
+        assertEquals(0, readAll(pipe, "test-runtime-error").length);
+        assertLogged("Error streaming test-runtime-error: cursor closed");
+        assertNull(uncaught.get());
+    }
+
+    private static byte[] readAll(ParcelFileDescriptor pipe, String writer) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        byte[] buffer = new byte[64 * 1024];
+        try (InputStream in = Pipes.read(pipe, writer)) {
+            int n;
+            while ((n = in.read(buffer)) > 0) bytes.write(buffer, 0, n);
+        }
+        return bytes.toByteArray();
+    }
+
+    private static void assertLogged(String message) {
+        for (ShadowLog.LogItem item : ShadowLog.getLogsForTag(TAG)) {
+            if (message.equals(item.msg)) return;
+        }
+        fail("Not logged: " + message);
+    }
+}
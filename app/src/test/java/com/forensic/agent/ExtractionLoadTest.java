@@ -0,0 +1,650 @@
+package com.forensic.agent;
+
+import android.content.ContentResolver;
+import android.content.Context;
+import android.content.Intent;
+import android.database.Cursor;
+import android.database.CursorWindow;
+import android.net.Uri;
+import android.os.Bundle;
+import android.os.ParcelFileDescriptor;
+import android.os.Parcelable;
+import android.text.TextUtils;
+import android.util.JsonReader;
+
+import org.junit.After;
+import org.junit.AfterClass;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.Robolectric;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.RuntimeEnvironment;
+import org.robolectric.annotation.Config;
+
+import java.io.BufferedInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FilterInputStream;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipInputStream;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * End-to-end load harness: extracts a {@link SyntheticDevice} with {@link ExtractionService},
+ * then reads every artifact and every {@link DataProvider} endpoint back.
+ *
+ * The device is installed and extracted once, by whichever test needs it first; the other
+ * tests serve the same extraction directory, so each endpoint is checked by its own test.
+ * The partitioned and columnar runs extract again. Each phase records wall time, rows,
+ * output bytes and heap; a phase over its budget ({@code forensic.budget.extractMs},
+ * {@code forensic.budget.endpointMs}, {@code forensic.budget.heapMb}) fails the class once
+ * every test has run. The report is printed and written to
+ * {@code build/reports/load-harness.txt}. Defaults are sized for a quick run; for a load test:
+ *
+ * <pre>./gradlew :app:testDebugUnitTest --tests '*ExtractionLoadTest' -Pforensic.load.sms=500000 -Pforensic.load.contacts=50000</pre>
+ */
+@RunWith(RobolectricTestRunner.class)
+@Config(sdk = 33)
+public class ExtractionLoadTest {
+    private static final long EXTRACT_BUDGET_MS = Long.getLong("forensic.budget.extractMs", 120000);
+    private static final long ENDPOINT_BUDGET_MS = Long.getLong("forensic.budget.endpointMs", 30000);
+    private static final long HEAP_BUDGET_MB = Long.getLong("forensic.budget.heapMb", 128);
+    private static final String REPORT = System.getProperty("forensic.report", "build/reports/load-harness.txt");
+    private static final long WEEK_START = 1600000000000L + 7 * 86400000L;
+    private static final long WEEK_END = WEEK_START + 7 * 86400000L;
+    private static final String WEEK = "since=" + WEEK_START + "&until=" + WEEK_END;
+
+    // Robolectric keeps the test class loaded between its tests, so these outlive each one
+    private static SyntheticDevice device;
+    /** The first run's extraction directory, once a test has extracted. */
+    private static File extracted;
+    private static final StringBuilder report = new StringBuilder(String.format("%-28s %10s %10s %12s %10s %12s%n",
+            "phase", "ms", "rows", "bytes", "heap MB", "retained MB"));
+    private static final List<String> overBudget = new ArrayList<>();
+
+    private Context context;
+    private ContentResolver resolver;
+    private HeapSampler heap;
+
+    @Before
+    public void setUp() throws IOException {
+        context = RuntimeEnvironment.getApplication();
+        resolver = context.getContentResolver();
+        device = device == null ? new SyntheticDevice().install() : device.register();
+        heap = new HeapSampler();
+    }
+
+    @After
+    public void tearDown() {
+        heap.close();
+    }
+
+    @AfterClass
+    public static void checkBudgets() throws IOException {
+        if (device != null) device.close();
+        System.out.print(report);
+        File file = new File(REPORT);
+        file.getParentFile().mkdirs();
+        try (Writer out = new FileWriter(file)) {
+            out.write(report.toString());
+        }
+        assertTrue("Over budget: " + overBudget, overBudget.isEmpty());
+    }
+
+    /**
+     * The extraction directory of this test, holding the shared run: the first test to ask
+     * extracts into its own directory, later ones link theirs to it.
+     */
+    private File extracted() throws Exception {
+        File dir = new File(context.getExternalFilesDir(null), "extracted");
+        if (extracted == null) {
+            Robolectric.setupContentProvider(DataProvider.class, DataProvider.AUTHORITY);
+            extract("extract", new Intent(context, ExtractionService.class)
+                    .putExtra(ExtractionService.EXTRA_CONTACT_DETAILS, true)
+                    .putExtra(ExtractionService.EXTRA_STORE, true));
+            extracted = dir;
+        } else if (!dir.equals(extracted)) {
+            Files.createSymbolicLink(dir.toPath(), extracted.toPath());
+            Robolectric.setupContentProvider(DataProvider.class, DataProvider.AUTHORITY);
+        }
+        return dir;
+    }
+
+    /** Runs the service with {@code intent} and waits until every category is done. */
+    private void extract(String phase, Intent intent) throws Exception {
+        heap.reset();
+        long started = System.nanoTime();
+        Robolectric.buildService(ExtractionService.class, intent).create().startCommand(0, 1);
+        awaitComplete(started, EXTRACT_BUDGET_MS * 2 + 60000);
+        long total = device.contacts + device.sms + device.calls + device.calendar + device.mms;
+        record(phase, started, total, directorySize(new File(context.getExternalFilesDir(null), "extracted")),
+                EXTRACT_BUDGET_MS);
+        for (ExtractionProgress.Category c : ExtractionProgress.get().snapshot()) {
+            assertEquals(c.name + " finished", ExtractionProgress.DONE, c.state);
+        }
+    }
+
+    @Test
+    public void artifactsMatchManifest() throws Exception {
+        File dir = extracted();
+        // The manifest's row counts, then each file parsed back in full
+        Map<String, Long> expected = new HashMap<>();
+        expected.put("contacts.json", (long) device.contacts);
+        expected.put(Sources.SMS.artifact, (long) device.sms);
+        expected.put(Sources.CALLS.artifact, (long) device.calls);
+        expected.put(Sources.CALENDAR.artifact, (long) device.calendar);
+        expected.put("mms.json", (long) device.mms);
+        expected.put(Timeline.FILE_NAME, (long) (device.sms + device.calls + device.calendar));
+        Map<String, Long> artifacts = manifest();
+        assertNotNull(artifacts.remove(PhoneIndex.FILE_NAME));
+        artifacts.keySet().removeAll(manifestBlobs(artifacts));
+        assertEquals(expected, artifacts);
+        for (Map.Entry<String, Long> e : expected.entrySet()) {
+            assertEquals(e.getKey(), e.getValue().longValue(), readArtifact(dir, e.getKey()));
+        }
+        try (Cursor c = query("verify", "verify")) {
+            while (c.moveToNext()) {
+                assertEquals(c.getString(0) + " verifies", 1, c.getInt(c.getColumnIndexOrThrow("ok")));
+            }
+        }
+    }
+
+    @Test
+    public void blobsStoredOncePerAttachment() throws Exception {
+        File dir = extracted();
+        // One blob per distinct file however often it was sent, recorded without rows and served by hash
+        Map<String, Long> manifest = manifest();
+        Set<String> blobs = manifestBlobs(manifest);
+        for (String blob : blobs) assertEquals(blob, -1L, manifest.get(blob).longValue());
+        assertEquals(device.distinctAttachments(), storedBlobs(dir));
+        assertEquals(storedBlobs(dir), blobs.size());
+        if (device.anyAttachment() != null) {
+            File attachment = device.anyAttachment();
+            assertEquals(attachment.length(), readBlob(sha256(attachment)));
+        }
+    }
+
+    @Test
+    public void listServesIndexedFiles() throws Exception {
+        File dir = extracted();
+        int stored = storedBlobs(dir);
+        int listed = drain("list", "list");
+        assertEquals(stored, drain("list blobs", "list?prefix=" + BlobStore.DIR_NAME + "/"));
+        try (Cursor c = query("list page", "list?prefix=" + Sources.SMS.artifact + "&limit=1")) {
+            assertTrue(c.moveToFirst());
+            assertEquals(Sources.SMS.artifact, c.getString(c.getColumnIndexOrThrow("name")));
+            assertEquals(device.sms, c.getLong(c.getColumnIndexOrThrow("rows")));
+            assertNotNull(c.getString(c.getColumnIndexOrThrow("sha256")));
+            assertFalse(c.moveToNext());
+        }
+        assertEquals(listed - 1, drain("list offset", "list?offset=1"));
+        // A file added or removed in a subdirectory behind the index's back shows up on the next listing
+        File blobs = new File(dir, BlobStore.DIR_NAME);
+        File stray = new File(new File(blobs, blobs.list()[0]), "stray");
+        Thread.sleep(5);
+        try (Writer w = new FileWriter(stray)) {
+            w.write("x");
+        }
+        assertEquals(stored + 1, drain("list blobs changed", "list?prefix=" + BlobStore.DIR_NAME + "/"));
+        Thread.sleep(5);
+        assertTrue(stray.delete());
+        assertEquals(stored, drain("list blobs restored", "list?prefix=" + BlobStore.DIR_NAME + "/"));
+        drain("status", "status");
+        drain("metrics", "metrics");
+    }
+
+    @Test
+    public void entityIndexAttributesEveryRow() throws Exception {
+        extracted();
+        // Every message and call attributed once, contact numbers found in any format
+        assertEquals(device.sms, linked("graph", "sms_count"));
+        assertEquals(device.calls, linked("graph", "call_count"));
+        drain("graph", "graph");
+        try (Cursor c = query("entity", "entity?number=" + Uri.encode(device.samplePhone()))) {
+            assertTrue("entity for " + device.samplePhone(), c.moveToFirst());
+            List<String> ids = Arrays.asList(c.getString(c.getColumnIndexOrThrow("contact_ids")).split(","));
+            assertTrue(ids + " contains " + device.samplePhoneContact(), ids.contains(String.valueOf(device.samplePhoneContact())));
+        }
+    }
+
+    @Test
+    public void bundleCarriesManifestAndArtifacts() throws Exception {
+        File dir = extracted();
+        // The manifest and every file it records, each entry as large as recorded
+        Map<String, Long> manifest = manifest();
+        Map<String, Long> bundled = readBundle("bundle", new ArrayList<String>(), DataProvider.DEFAULT_BUNDLE_LEVEL);
+        assertEquals(manifest.size() + 1, bundled.size());
+        assertTrue(bundled.containsKey(ArtifactManifest.FILE_NAME));
+        for (String file : manifest.keySet()) {
+            assertEquals(file, new File(dir, file).length(), bundled.get(file).longValue());
+        }
+        assertEquals(2, readBundle("bundle sms level 6", Collections.singletonList(Sources.SMS.artifact), 6).size());
+        // An MMS bundle carries the attachments its parts reference
+        Set<String> blobs = manifestBlobs(manifest);
+        Map<String, Long> mmsBundle = readBundle("bundle mms", Collections.singletonList("mms.json"), DataProvider.DEFAULT_BUNDLE_LEVEL);
+        assertEquals(blobs.size() + 2, mmsBundle.size());
+        assertTrue(mmsBundle.keySet().containsAll(blobs));
+        // Naming a blob the MMS artifact already pulls in ships it once
+        List<String> overlapping = Arrays.asList("mms.json", blobs.iterator().next());
+        assertEquals(mmsBundle.size() - 1, ArtifactBundle.of(dir, overlapping, DataProvider.DEFAULT_BUNDLE_LEVEL).getEntries().size());
+        assertEquals(mmsBundle.keySet(), readBundle("bundle mms and blob", overlapping, DataProvider.DEFAULT_BUNDLE_LEVEL).keySet());
+    }
+
+    @Test
+    public void storeServesEveryRow() throws Exception {
+        extracted();
+        assertEquals(device.sms, drain("store/sms", "store/sms"));
+        assertEquals(device.calls, drain("store/calls", "store/calls"));
+        assertEquals(device.calendar, drain("store/calendar", "store/calendar"));
+        assertEquals(device.contacts, drain("store/contacts", "store/contacts"));
+        assertEquals(device.contactPhones(), drain("store/contact_phones", "store/contact_phones"));
+        drain("store/sms by date", "store/sms?since=1600000000000&limit=1000");
+    }
+
+    @Test
+    public void searchCountsAndRanks() throws Exception {
+        extracted();
+        // Exact hit count for a planted word, ranked snippets for a common one
+        assertEquals(device.codeWordSms(), drain("search rare", "search?q=" + SyntheticDevice.CODE_WORD + "&limit=100000"));
+        assertEquals(0, drain("search missing", "search?q=zanzibar"));
+        assertEquals(50, drain("search common", "search?q=station"));
+        try {
+            query("search malformed", "search?q=" + Uri.encode("\"")).close();
+            fail("Malformed MATCH expression was not rejected");
+        } catch (IllegalArgumentException e) {
+            assertTrue(e.getMessage(), e.getMessage().startsWith("Invalid search query"));
+        }
+        try (Cursor c = query("search ranked", "search?q=station&sources=calendar&limit=20")) {
+            assertEquals(Math.min(20, device.calendar), c.getCount());
+            double previous = Double.MAX_VALUE;
+            while (c.moveToNext()) {
+                assertEquals("calendar", c.getString(c.getColumnIndexOrThrow("source")));
+                assertTrue(c.getString(c.getColumnIndexOrThrow("snippet")).contains("[station]"));
+                double score = c.getDouble(c.getColumnIndexOrThrow("score"));
+                assertTrue(score <= previous);
+                previous = score;
+            }
+        }
+    }
+
+    @Test
+    public void timelineOrdersByDate() throws Exception {
+        extracted();
+        // Everything in date order, and a one-week window with exactly its rows
+        assertEquals(device.sms + device.calls + device.calendar, drain("timeline", "timeline"));
+        int inWeek = drain("store/sms week", "store/sms?" + WEEK) + drain("store/calls week", "store/calls?" + WEEK)
+                + drain("store/calendar week", "store/calendar?" + WEEK);
+        try (Cursor c = query("timeline week", "timeline?" + WEEK)) {
+            assertEquals(inWeek, c.getCount());
+            long previous = WEEK_START;
+            int rows = 0;
+            while (c.moveToNext()) {
+                long date = c.getLong(c.getColumnIndexOrThrow("date"));
+                assertTrue(date + " after " + previous, date >= previous);
+                previous = date;
+                rows++;
+            }
+            assertEquals(inWeek, rows);
+            assertTrue(previous < WEEK_END);
+        }
+        assertEquals(10, drain("timeline page", "timeline?sources=sms,calls&offset=5000&limit=10"));
+    }
+
+    @Test
+    public void batchAnswersInOneCall() throws Exception {
+        extracted();
+        // Several datasets in one call(), as cursor windows and as one streamed document
+        String batch = "[{\"name\":\"list\"},{\"name\":\"contacts\"},"
+                + "{\"name\":\"sms\",\"projection\":[\"address\",\"date\"],\"limit\":500},"
+                + "{\"key\":\"calls week\",\"name\":\"store/calls\",\"params\":{\"since\":\"" + WEEK_START
+                + "\",\"until\":\"" + WEEK_END + "\"}},{\"name\":\"nope\"}]";
+        heap.reset();
+        long started = System.nanoTime();
+        Bundle reply = resolver.call(Uri.parse("content://" + DataProvider.AUTHORITY), BatchQuery.METHOD, batch, null);
+        assertNotNull(reply);
+        assertEquals(Arrays.asList("list", "contacts", "sms", "calls week", "nope"), reply.getStringArrayList(BatchQuery.KEY_KEYS));
+        CursorWindow sms = parcelable(reply, "sms." + BatchQuery.WINDOW);
+        assertEquals(500, reply.getInt("sms." + BatchQuery.COUNT));
+        assertEquals(500, sms.getNumRows());
+        assertEquals(Arrays.asList("address", "date"), Arrays.asList(reply.getStringArray("sms." + BatchQuery.COLUMNS)));
+        assertNotNull(sms.getString(499, 0));
+        assertEquals(device.contactPhones(), reply.getInt("contacts." + BatchQuery.COUNT));
+        int contactRows = reply.getInt("contacts." + BatchQuery.ROWS);
+        assertTrue(contactRows > 0 && contactRows <= device.contactPhones());
+        CursorWindow calls = parcelable(reply, "calls week." + BatchQuery.WINDOW);
+        assertTrue(reply.getInt("list." + BatchQuery.COUNT) > 0);
+        assertNotNull(reply.getString("nope." + BatchQuery.ERROR));
+        record("batch windows", started, sms.getNumRows() + contactRows + calls.getNumRows(), 0, ENDPOINT_BUDGET_MS);
+
+        Map<String, Long> streamed = readBatch("batch pipe", "[{\"name\":\"contacts\"},{\"name\":\"sms\"},"
+                + "{\"name\":\"calls\"},{\"name\":\"calendar\"},{\"name\":\"timeline\",\"limit\":1000}]");
+        assertEquals(device.contactPhones(), streamed.get("contacts").longValue());
+        assertEquals(device.sms, streamed.get("sms").longValue());
+        assertEquals(device.calls, streamed.get("calls").longValue());
+        assertEquals(device.calendar, streamed.get("calendar").longValue());
+        assertEquals(1000, streamed.get("timeline").longValue());
+    }
+
+    @Test
+    public void liveEndpointsReadProviders() throws Exception {
+        extracted();
+        // Against the fake system providers, not the extraction
+        assertEquals(device.contactPhones(), drain("live contacts", "contacts"));
+        assertEquals(device.sms, drain("live sms", "sms"));
+        assertEquals(device.calls, drain("live calls", "calls"));
+        assertEquals(device.calendar, drain("live calendar", "calendar"));
+        assertEquals(Math.min(100, Math.max(0, device.sms - 1000)), drain("live sms page", "sms?limit=100&offset=1000"));
+    }
+
+    @Test
+    public void partitionedRunMatchesSequential() throws Exception {
+        File dir = extracted();
+        // _ID ranges read in parallel stitch into the same bytes and store rows, so the shared run is unchanged
+        String smsSha = sha256(new File(dir, Sources.SMS.artifact));
+        String callsSha = sha256(new File(dir, Sources.CALLS.artifact));
+        extract("extract partitioned", new Intent(context, ExtractionService.class)
+                .putExtra(ExtractionService.EXTRA_CONTACT_DETAILS, true)
+                .putExtra(ExtractionService.EXTRA_STORE, true)
+                .putExtra(ExtractionService.EXTRA_PARTITIONS, 4));
+        assertEquals(smsSha, sha256(new File(dir, Sources.SMS.artifact)));
+        assertEquals(callsSha, sha256(new File(dir, Sources.CALLS.artifact)));
+        assertEquals(device.sms, drain("store/sms partitioned", "store/sms"));
+        assertEquals(device.calls, drain("store/calls partitioned", "store/calls"));
+        assertFalse(new File(dir, CheckpointedArtifact.DIR_NAME + "/" + Sources.SMS.name).exists());
+    }
+
+    @Test
+    public void columnarRunServesSameRows() throws Exception {
+        // Its own directory: the columnar run replaces the JSON of the generic sources
+        File dir = new File(context.getExternalFilesDir(null), "extracted");
+        Robolectric.setupContentProvider(DataProvider.class, DataProvider.AUTHORITY);
+        extract("extract columnar", new Intent(context, ExtractionService.class)
+                .putExtra(ExtractionService.EXTRA_FORMAT, ExtractionService.FORMAT_COLUMNAR));
+        File smsColumnar = ColumnarWriter.fileFor(new File(dir, Sources.SMS.artifact));
+        assertTrue(smsColumnar.exists());
+        assertFalse(new File(dir, Sources.SMS.artifact).exists());
+        Map<String, Long> columnarRows = new HashMap<>();
+        for (ArtifactManifest.Entry e : ArtifactManifest.load(dir, false).getEntries()) columnarRows.put(e.file, e.rows);
+        assertEquals(device.sms, columnarRows.get(smsColumnar.getName()).longValue());
+        assertEquals(null, columnarRows.get(Sources.SMS.artifact));
+        assertEquals(device.sms, drain("columnar sms", "columnar/" + smsColumnar.getName()));
+        assertEquals(100, drain("columnar sms page", "columnar/" + smsColumnar.getName() + "?offset=" + (device.sms - 100)));
+        assertEquals(device.sms, linked("graph columnar", "sms_count"));
+    }
+
+    /** Rows by file, as the manifest endpoint serves them. */
+    private Map<String, Long> manifest() {
+        Map<String, Long> rows = new HashMap<>();
+        try (Cursor c = query("manifest", "manifest")) {
+            while (c.moveToNext()) {
+                rows.put(c.getString(c.getColumnIndexOrThrow("file")), c.getLong(c.getColumnIndexOrThrow("rows")));
+            }
+        }
+        return rows;
+    }
+
+    private static Set<String> manifestBlobs(Map<String, Long> manifest) {
+        Set<String> blobs = new HashSet<>();
+        for (String file : manifest.keySet()) {
+            if (file.startsWith(BlobStore.DIR_NAME + "/")) blobs.add(file);
+        }
+        return blobs;
+    }
+
+    private static int storedBlobs(File dir) {
+        File blobs = new File(dir, BlobStore.DIR_NAME);
+        int stored = 0;
+        String[] prefixes = blobs.list();
+        for (String prefix : prefixes != null ? prefixes : new String[0]) {
+            String[] inPrefix = new File(blobs, prefix).list();
+            if (inPrefix != null) stored += inPrefix.length;
+        }
+        return stored;
+    }
+
+    /** Sum of one count column over the entity graph. */
+    private long linked(String phase, String column) {
+        long linked = 0;
+        try (Cursor c = query(phase, "graph")) {
+            while (c.moveToNext()) linked += c.getLong(c.getColumnIndexOrThrow(column));
+        }
+        return linked;
+    }
+
+    private void awaitComplete(long started, long timeoutMs) throws InterruptedException {
+        ExtractionProgress progress = ExtractionProgress.get();
+        while (!ExtractionProgress.COMPLETE.equals(progress.getState())) {
+            if ((System.nanoTime() - started) / 1000000 > timeoutMs) {
+                fail("Extraction did not complete within " + timeoutMs + " ms");
+            }
+            Thread.sleep(20);
+        }
+    }
+
+    private Cursor query(String phase, String path) {
+        Cursor c = resolver.query(Uri.parse("content://" + DataProvider.AUTHORITY + "/" + path), null, null, null, null);
+        assertNotNull(phase + " returned no cursor", c);
+        return c;
+    }
+
+    /** Queries an endpoint and reads every column of every row, as a host-side pull would. */
+    private int drain(String phase, String path) {
+        heap.reset();
+        long started = System.nanoTime();
+        int rows = 0;
+        long bytes = 0;
+        try (Cursor c = query(phase, path)) {
+            int columns = c.getColumnCount();
+            while (c.moveToNext()) {
+                for (int i = 0; i < columns; i++) {
+                    String value = c.getString(i);
+                    if (value != null) bytes += value.length();
+                }
+                rows++;
+            }
+        }
+        record(phase, started, rows, bytes, ENDPOINT_BUDGET_MS);
+        return rows;
+    }
+
+    /** Streams an artifact through the provider and counts its top-level records. */
+    private long readArtifact(File dir, String name) throws IOException {
+        heap.reset();
+        long started = System.nanoTime();
+        long rows = 0;
+        Uri uri = Uri.parse("content://" + DataProvider.AUTHORITY + "/" + name);
+        try (InputStream in = resolver.openInputStream(uri);
+             JsonReader reader = new JsonReader(new InputStreamReader(new BufferedInputStream(in), StandardCharsets.UTF_8))) {
+            reader.beginArray();
+            while (reader.hasNext()) {
+                reader.skipValue();
+                rows++;
+            }
+            reader.endArray();
+        }
+        record("read " + name, started, rows, new File(dir, name).length(), ENDPOINT_BUDGET_MS);
+        return rows;
+    }
+
+    /** Streams a batch with {@code mode=pipe} and counts the rows of each dataset. */
+    private Map<String, Long> readBatch(String phase, String json) throws IOException {
+        heap.reset();
+        long started = System.nanoTime();
+        Bundle extras = new Bundle();
+        extras.putString(BatchQuery.EXTRA_MODE, BatchQuery.MODE_PIPE);
+        Bundle reply = resolver.call(Uri.parse("content://" + DataProvider.AUTHORITY), BatchQuery.METHOD, json, extras);
+        assertNotNull(phase + " returned no reply", reply);
+        ParcelFileDescriptor pipe = parcelable(reply, BatchQuery.KEY_PAYLOAD);
+        return readPipe(phase, started, pipe, "batch", (in, rows) -> {
+            long total = 0;
+            JsonReader reader = new JsonReader(new InputStreamReader(in, StandardCharsets.UTF_8));
+            reader.beginObject();
+            while (reader.hasNext()) {
+                String key = reader.nextName();
+                long n = 0;
+                reader.beginObject();
+                while (reader.hasNext()) {
+                    if (BatchQuery.ROWS.equals(reader.nextName())) {
+                        reader.beginArray();
+                        while (reader.hasNext()) {
+                            reader.skipValue();
+                            n++;
+                        }
+                        reader.endArray();
+                    } else {
+                        reader.skipValue();
+                    }
+                }
+                reader.endObject();
+                rows.put(key, n);
+                total += n;
+            }
+            reader.endObject();
+            return total;
+        });
+    }
+
+    /**
+     * Reads a bundle from the {@code bundle} endpoint, records its compressed size and returns
+     * each entry's uncompressed size.
+     */
+    private Map<String, Long> readBundle(String phase, List<String> files, int level) throws IOException {
+        heap.reset();
+        long started = System.nanoTime();
+        Uri uri = Uri.parse("content://" + DataProvider.AUTHORITY + "/bundle").buildUpon()
+                .appendQueryParameter("level", String.valueOf(level)).build();
+        if (!files.isEmpty()) uri = uri.buildUpon().appendQueryParameter("files", TextUtils.join(",", files)).build();
+        ParcelFileDescriptor pipe = resolver.openFileDescriptor(uri, "r");
+        assertNotNull(phase + " returned no pipe", pipe);
+        return readPipe(phase, started, pipe, "bundle", (in, entries) -> {
+            byte[] buffer = new byte[64 * 1024];
+            ZipInputStream zip = new ZipInputStream(in);
+            ZipEntry entry;
+            while ((entry = zip.getNextEntry()) != null) {
+                long size = 0;
+                int n;
+                while ((n = zip.read(buffer)) > 0) size += n;
+                entries.put(entry.getName(), size);
+            }
+            return entries.size();
+        });
+    }
+
+    /** Parses a streamed endpoint into {@code into} and returns the rows it read. */
+    private interface PipeParser {
+        long parse(InputStream in, Map<String, Long> into) throws IOException;
+    }
+
+    /**
+     * Reads the pipe a streamed endpoint returned, written by the provider thread named
+     * {@code writer}, through {@code parser}, and records the phase with every byte the pipe
+     * carried.
+     */
+    private Map<String, Long> readPipe(String phase, long started, ParcelFileDescriptor pipe, String writer,
+                                       PipeParser parser) throws IOException {
+        Map<String, Long> parsed = new HashMap<>();
+        long rows;
+        byte[] buffer = new byte[64 * 1024];
+        try (CountingInputStream counted = new CountingInputStream(Pipes.read(pipe, writer))) {
+            rows = parser.parse(counted, parsed);
+            while (counted.read(buffer) > 0) {
+                // Whatever the parser did not need, like a zip's central directory
+            }
+            record(phase, started, rows, counted.count, ENDPOINT_BUDGET_MS);
+        }
+        return parsed;
+    }
+
+    private static class CountingInputStream extends FilterInputStream {
+        long count;
+
+        CountingInputStream(InputStream in) {
+            super(in);
+        }
+
+        @Override
+        public int read() throws IOException {
+            int b = super.read();
+            if (b >= 0) count++;
+            return b;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            int n = super.read(b, off, len);
+            if (n > 0) count += n;
+            return n;
+        }
+    }
+
+    private long readBlob(String sha256) throws IOException {
+        heap.reset();
+        long started = System.nanoTime();
+        long size = 0;
+        byte[] buffer = new byte[64 * 1024];
+        try (InputStream in = resolver.openInputStream(Uri.parse("content://" + DataProvider.AUTHORITY + "/blobs/" + sha256))) {
+            int n;
+            while ((n = in.read(buffer)) > 0) size += n;
+        }
+        record("read blob", started, 1, size, ENDPOINT_BUDGET_MS);
+        return size;
+    }
+
+    /**
+     * A parcelable of a batch reply. The typed getter needs API 33 or androidx.core 1.10,
+     * newer than the core that appcompat 1.6.1 brings.
+     */
+    @SuppressWarnings("deprecation")
+    private static <T extends Parcelable> T parcelable(Bundle reply, String key) {
+        return reply.getParcelable(key);
+    }
+
+    private static String sha256(File file) throws IOException {
+        MessageDigest digest = HashingOutputStream.digest("SHA-256");
+        byte[] buffer = new byte[64 * 1024];
+        try (InputStream in = new FileInputStream(file)) {
+            int n;
+            while ((n = in.read(buffer)) > 0) digest.update(buffer, 0, n);
+        }
+        return HashingOutputStream.hex(digest.digest());
+    }
+
+    private void record(String phase, long started, long rows, long bytes, long budgetMs) {
+        long ms = (System.nanoTime() - started) / 1000000;
+        double usedMb = heap.peakUsed() / (1024.0 * 1024.0);
+        double retainedMb = heap.peakRetained() / (1024.0 * 1024.0);
+        report.append(String.format("%-28s %10d %10d %12d %10.1f %12.1f%n", phase, ms, rows, bytes, usedMb, retainedMb));
+        if (ms > budgetMs) overBudget.add(phase + ": " + ms + " ms > " + budgetMs + " ms");
+        if (retainedMb > HEAP_BUDGET_MB) overBudget.add(phase + ": " + Math.round(retainedMb) + " MB > " + HEAP_BUDGET_MB + " MB");
+    }
+
+    private static long directorySize(File dir) {
+        long size = 0;
+        File[] files = dir.listFiles();
+        if (files == null) return 0;
+        for (File f : files) size += f.isDirectory() ? directorySize(f) : f.length();
+        return size;
+    }
+}
@@ -0,0 +1,92 @@
+package com.forensic.agent;
+
+import android.content.ContentProvider;
+import android.content.ContentValues;
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteQueryBuilder;
+import android.net.Uri;
+import android.os.ParcelFileDescriptor;
+import android.text.TextUtils;
+
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Read-only stand-in for a system provider, answering queries from SQLite tables or views.
+ *
+ * Selection, arguments and sort order go straight to SQLite, so pushed-down filters,
+ * {@code _id > ?} deltas and ordered merge joins behave as they do against the real
+ * providers, and cursors are windowed the same way. Rows of a {@link #files} table are also
+ * served through {@link #openFile} from the path in their {@code _data} column.
+ */
+public class FakeProvider extends ContentProvider {
+    private final Map<String, String> tables = new HashMap<>();
+    private final Map<String, String> files = new HashMap<>();
+    private SQLiteDatabase db;
+
+    FakeProvider serve(SQLiteDatabase db) {
+        this.db = db;
+        return this;
+    }
+
+    /** Answers {@code content://<authority>/<path>} from {@code table}. */
+    FakeProvider table(String path, String table) {
+        tables.put(path, table);
+        return this;
+    }
+
+    /** Opens {@code content://<authority>/<path>/<_id>} from the {@code _data} file of that row in {@code table}. */
+    FakeProvider files(String path, String table) {
+        files.put(path, table);
+        return this;
+    }
+
+    @Override
+    public boolean onCreate() {
+        return true;
+    }
+
+    @Override
+    public Cursor query(Uri uri, String[] projection, String selection, String[] selectionArgs, String sortOrder) {
+        String table = tables.get(TextUtils.join("/", uri.getPathSegments()));
+        if (table == null) return null;
+        SQLiteQueryBuilder builder = new SQLiteQueryBuilder();
+        builder.setTables(table);
+        return builder.query(db, projection, selection, selectionArgs, null, null, sortOrder);
+    }
+
+    @Override
+    public ParcelFileDescriptor openFile(Uri uri, String mode) throws FileNotFoundException {
+        String path = TextUtils.join("/", uri.getPathSegments().subList(0, uri.getPathSegments().size() - 1));
+        String table = files.get(path);
+        if (table == null) throw new FileNotFoundException(uri.toString());
+        try (Cursor c = db.query(table, new String[]{"_data"}, "_id = ?", new String[]{uri.getLastPathSegment()},
+                null, null, null)) {
+            if (!c.moveToFirst() || c.isNull(0)) throw new FileNotFoundException(uri.toString());
+            return ParcelFileDescriptor.open(new File(c.getString(0)), ParcelFileDescriptor.MODE_READ_ONLY);
+        }
+    }
+
+    @Override
+    public String getType(Uri uri) {
+        return null;
+    }
+
+    @Override
+    public Uri insert(Uri uri, ContentValues values) {
+        throw new UnsupportedOperationException("read-only");
+    }
+
+    @Override
+    public int delete(Uri uri, String selection, String[] selectionArgs) {
+        throw new UnsupportedOperationException("read-only");
+    }
+
+    @Override
+    public int update(Uri uri, ContentValues values, String selection, String[] selectionArgs) {
+        throw new UnsupportedOperationException("read-only");
+    }
+}
@@ -0,0 +1,119 @@
+package com.forensic.agent;
+
+import com.sun.management.GarbageCollectionNotificationInfo;
+
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryUsage;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import javax.management.ListenerNotFoundException;
+import javax.management.Notification;
+import javax.management.NotificationEmitter;
+import javax.management.NotificationListener;
+import javax.management.openmbean.CompositeData;
+
+/**
+ * Tracks Java heap while a phase of the load test runs.
+ *
+ * Two figures are kept since the last {@link #reset()}: the peak of used heap sampled every
+ * few milliseconds, which includes garbage the collector has not reclaimed yet, and the peak
+ * heap left after any collection, which is what a phase actually retains. Budgets are
+ * checked against the retained figure so they do not depend on how lazy the collector is.
+ */
+public class HeapSampler implements AutoCloseable {
+    private static final long INTERVAL_MS = 5;
+
+    private final Thread thread;
+    private final List<NotificationEmitter> emitters = new ArrayList<>();
+    private final NotificationListener gcListener = this::onGc;
+    private volatile boolean running = true;
+    private long baseline;
+    private long resetUptime;
+    private long peakUsed;
+    private long peakRetained;
+
+    public HeapSampler() {
+        for (GarbageCollectorMXBean gc : ManagementFactory.getGarbageCollectorMXBeans()) {
+            if (gc instanceof NotificationEmitter) {
+                NotificationEmitter emitter = (NotificationEmitter) gc;
+                emitter.addNotificationListener(gcListener, null, null);
+                emitters.add(emitter);
+            }
+        }
+        reset();
+        thread = new Thread(() -> {
+            while (running) {
+                sample();
+                try {
+                    Thread.sleep(INTERVAL_MS);
+                } catch (InterruptedException e) {
+                    return;
+                }
+            }
+        }, "heap-sampler");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    private static long used() {
+        Runtime rt = Runtime.getRuntime();
+        return rt.totalMemory() - rt.freeMemory();
+    }
+
+    private synchronized void sample() {
+        peakUsed = Math.max(peakUsed, used());
+    }
+
+    private void onGc(Notification notification, Object handback) {
+        if (!GarbageCollectionNotificationInfo.GARBAGE_COLLECTION_NOTIFICATION.equals(notification.getType())) return;
+        GarbageCollectionNotificationInfo info = GarbageCollectionNotificationInfo.from((CompositeData) notification.getUserData());
+        long after = 0;
+        for (Map.Entry<String, MemoryUsage> pool : info.getGcInfo().getMemoryUsageAfterGc().entrySet()) {
+            // Concurrent cycles report eden as it is mid-allocation; survivors and old space are what is retained
+            if (!pool.getKey().contains("Eden")) after += pool.getValue().getUsed();
+        }
+        synchronized (this) {
+            // Notifications arrive asynchronously; one for a collection begun before reset() is stale
+            if (info.getGcInfo().getStartTime() < resetUptime) return;
+            peakRetained = Math.max(peakRetained, after);
+        }
+    }
+
+    /** Collects garbage and starts a new measurement from the heap that is live now. */
+    public void reset() {
+        System.gc();
+        synchronized (this) {
+            resetUptime = ManagementFactory.getRuntimeMXBean().getUptime();
+            baseline = used();
+            peakUsed = baseline;
+            peakRetained = baseline;
+        }
+    }
+
+    /** Peak sampled heap above the baseline, in bytes. */
+    public synchronized long peakUsed() {
+        sample();
+        return Math.max(0, peakUsed - baseline);
+    }
+
+    /** Peak heap surviving a collection above the baseline, in bytes. */
+    public synchronized long peakRetained() {
+        return Math.max(0, peakRetained - baseline);
+    }
+
+    @Override
+    public void close() {
+        running = false;
+        thread.interrupt();
+        for (NotificationEmitter emitter : emitters) {
+            try {
+                emitter.removeNotificationListener(gcListener);
+            } catch (ListenerNotFoundException e) {
+                // already gone
+            }
+        }
+    }
+}
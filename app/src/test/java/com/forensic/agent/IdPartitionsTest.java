@@ -0,0 +1,119 @@
+package com.forensic.agent;
+
+import android.content.ContentResolver;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.RuntimeEnvironment;
+import org.robolectric.annotation.Config;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * Ranges of a partitioned read cover every row once, in id order, and never run further
+ * ahead of the leading finished ranges than one range per thread.
+ */
+@RunWith(RobolectricTestRunner.class)
+@Config(sdk = 33)
+public class IdPartitionsTest {
+    private static final int THREADS = 3;
+    private static final int WINDOW_ROWS = THREADS * IdPartitions.MIN_ROWS;
+
+    private SyntheticDevice device;
+    private ContentResolver resolver;
+
+    @Before
+    public void setUp() throws IOException {
+        device = new SyntheticDevice().install();
+        resolver = RuntimeEnvironment.getApplication().getContentResolver();
+    }
+
+    @After
+    public void tearDown() {
+        device.close();
+    }
+
+    @Test
+    public void rangesStayWithinWindow() throws IOException {
+        IdPartitions ranges = IdPartitions.plan(resolver, Sources.SMS, -1, THREADS, WINDOW_ROWS);
+        assertNotNull(ranges);
+        assertEquals(THREADS, ranges.getThreads());
+        assertEquals((device.sms + IdPartitions.MIN_ROWS - 1) / IdPartitions.MIN_ROWS, ranges.size());
+
+        int n = ranges.size();
+        List<List<Long>> ids = new ArrayList<>();
+        for (int i = 0; i < n; i++) ids.add(new ArrayList<Long>());
+        boolean[] finished = new boolean[n];
+        int[] leading = new int[1];
+        ranges.run(resolver, 256, 2, (part, rows) -> {
+            List<Long> partIds = ids.get(part);
+            synchronized (partIds) {
+                for (int row = 0; row < rows.size(); row++) partIds.add(rows.id(row));
+            }
+        }, new IdPartitions.Caller() {
+            @Override
+            public void written(int part, RowBatch rows) {
+                assertTrue("range " + part + " started with " + leading[0] + " finished",
+                        part < leading[0] + THREADS);
+            }
+
+            @Override
+            public void finished(int part) {
+                finished[part] = true;
+                while (leading[0] < n && finished[leading[0]]) leading[0]++;
+            }
+        });
+        assertEquals(n, leading[0]);
+
+        long previous = -1;
+        int rows = 0;
+        for (List<Long> part : ids) {
+            assertTrue(part.size() <= IdPartitions.MIN_ROWS);
+            for (long id : part) {
+                assertTrue(id > previous);
+                previous = id;
+                rows++;
+            }
+        }
+        assertEquals(device.sms, rows);
+        assertEquals(device.sms, ranges.getRowCount());
+    }
+
+    @Test
+    public void failedRangeStopsTheRest() {
+        IdPartitions ranges = IdPartitions.plan(resolver, Sources.SMS, -1, THREADS, WINDOW_ROWS);
+        assertNotNull(ranges);
+        assertTrue(ranges.size() > THREADS + 1);
+        AtomicInteger furthest = new AtomicInteger();
+        try {
+            ranges.run(resolver, 256, 2, (part, rows) -> {
+                furthest.accumulateAndGet(part, Math::max);
+                if (part == 1) throw new IOException("range 1 failed");
+            }, new IdPartitions.Caller() {
+                @Override
+                public void written(int part, RowBatch rows) {
+                }
+
+                @Override
+                public void finished(int part) {
+                }
+            });
+            fail("Failure of range 1 was not reported");
+        } catch (IOException e) {
+            assertEquals("range 1 failed", e.getMessage());
+        }
+        // Range 1 never finishes, so at most range 0 is released and nothing past the window starts
+        assertTrue(furthest.get() <= THREADS);
+    }
+}
@@ -0,0 +1,48 @@
+package com.forensic.agent;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+
+/**
+ * Spellings of one line meet in one entity, and a short spelling that fits several lines
+ * is attributed to none of them, whatever order the numbers are indexed in.
+ */
+@RunWith(RobolectricTestRunner.class)
+@Config(sdk = 33)
+public class PhoneIndexTest {
+    private static final String US = "+15551234567";
+    private static final String OTHER = "+16661234567";
+    private static final String SHORT = "123-4567";
+
+    @Test
+    public void spellingsOfOneLineMeet() {
+        PhoneIndex index = new PhoneIndex(null);
+        PhoneIndex.Entity entity = index.resolve(US);
+        assertSame(entity, index.resolve("555-123-4567"));
+        assertSame(entity, index.resolve(SHORT));
+        assertSame(entity, index.find("(555) 123 4567"));
+        assertEquals(1, index.getEntities().size());
+    }
+
+    @Test
+    public void ambiguousSpellingGetsItsOwnEntity() {
+        for (String[] order : new String[][]{{US, OTHER}, {OTHER, US}}) {
+            PhoneIndex index = new PhoneIndex(null);
+            PhoneIndex.Entity first = index.resolve(order[0]);
+            PhoneIndex.Entity second = index.resolve(order[1]);
+            PhoneIndex.Entity ambiguous = index.resolve(SHORT);
+            assertNotSame(first, ambiguous);
+            assertNotSame(second, ambiguous);
+            assertEquals(3, index.getEntities().size());
+            // The same spelling keeps finding its own entity
+            assertSame(ambiguous, index.resolve("1234567"));
+            assertSame(ambiguous, index.find(SHORT));
+        }
+    }
+}
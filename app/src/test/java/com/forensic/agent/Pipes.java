@@ -0,0 +1,32 @@
+package com.forensic.agent;
+
+import android.os.ParcelFileDescriptor;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+
+/**
+ * Reads the pipes {@link DataProvider#stream} hands out.
+ *
+ * Robolectric emulates a pipe with a file that only holds everything once the writer has
+ * closed it, so the reader waits for the provider's writer thread before it starts.
+ */
+final class Pipes {
+    private Pipes() {
+    }
+
+    /** The read end of a provider pipe, after the thread named {@code writer} has finished. */
+    static InputStream read(ParcelFileDescriptor readEnd, String writer) throws IOException {
+        for (Thread t : Thread.getAllStackTraces().keySet()) {
+            if (!writer.equals(t.getName())) continue;
+            try {
+                t.join();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("Interrupted waiting for " + writer);
+            }
+        }
+        return new ParcelFileDescriptor.AutoCloseInputStream(readEnd);
+    }
+}
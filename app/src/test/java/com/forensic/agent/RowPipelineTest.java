@@ -0,0 +1,154 @@
+package com.forensic.agent;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * Rows cross the pipeline in order with at most {@code depth} batches in flight, and a
+ * failure on either side, or an interrupt, ends both threads and reaches the caller.
+ */
+@RunWith(RobolectricTestRunner.class)
+@Config(sdk = 33)
+public class RowPipelineTest {
+    private static final int BATCH_ROWS = 16;
+    private static final int DEPTH = 3;
+
+    /** Numbers rows from 1 up to {@code rows}, or forever when {@code rows < 0}. */
+    private static final class Counter implements RowPipeline.Producer {
+        final AtomicInteger batches = new AtomicInteger();
+        final AtomicReference<Thread> thread = new AtomicReference<>();
+        private final long rows;
+        private long next = 1;
+
+        Counter(long rows) {
+            this.rows = rows;
+        }
+
+        @Override
+        public boolean fill(RowBatch batch) {
+            thread.set(Thread.currentThread());
+            batches.incrementAndGet();
+            batch.clear();
+            while (batch.size() < batch.capacity() && (rows < 0 || next <= rows)) batch.ids[batch.add()] = next++;
+            return batch.size() > 0;
+        }
+
+        void assertStopped() throws InterruptedException {
+            Thread reader = thread.get();
+            assertNotNull(reader);
+            reader.join(5000);
+            assertFalse(reader.getName() + " still running", reader.isAlive());
+        }
+    }
+
+    @Test
+    public void deliversEveryRowInOrder() throws Exception {
+        Counter producer = new Counter(1000);
+        long[] expected = {1};
+        int[] inFlight = {0};
+        new RowPipeline(Sources.SMS, BATCH_ROWS, DEPTH).run("rows", producer, batch -> {
+            for (int row = 0; row < batch.size(); row++) assertEquals(expected[0]++, batch.id(row));
+            inFlight[0] = Math.max(inFlight[0], producer.batches.get() - (int) (expected[0] / BATCH_ROWS));
+        });
+        assertEquals(1001, expected[0]);
+        assertTrue("batches ahead of the writer: " + inFlight[0], inFlight[0] <= DEPTH);
+        producer.assertStopped();
+    }
+
+    @Test
+    public void readerFailureReachesCaller() throws Exception {
+        IllegalStateException failure = new IllegalStateException("cursor closed");
+        AtomicReference<Thread> reader = new AtomicReference<>();
+        int[] fills = {0};
+        try {
+            new RowPipeline(Sources.SMS, BATCH_ROWS, DEPTH).run("failing-reader", batch -> {
+                reader.set(Thread.currentThread());
+                if (++fills[0] > 2) throw failure;
+                batch.clear();
+                batch.ids[batch.add()] = fills[0];
+                return true;
+            }, batch -> { });
+            fail("Reader failure was swallowed");
+        } catch (IllegalStateException e) {
+            assertSame(failure, e);
+        }
+        reader.get().join(5000);
+        assertFalse(reader.get().isAlive());
+    }
+
+    @Test
+    public void writerFailureStopsBlockedReader() throws Exception {
+        // Endless reader: it can only stop because the writer failed
+        Counter producer = new Counter(-1);
+        IOException failure = new IOException("disk full");
+        int[] accepted = {0};
+        try {
+            new RowPipeline(Sources.SMS, BATCH_ROWS, DEPTH).run("endless", producer, batch -> {
+                if (++accepted[0] == 5) {
+                    // Let the reader fill every free batch and block on the bounded queue
+                    try {
+                        Thread.sleep(50);
+                    } catch (InterruptedException e) {
+                        throw new InterruptedIOException();
+                    }
+                    throw failure;
+                }
+            });
+            fail("Writer failure was swallowed");
+        } catch (IOException e) {
+            assertSame(failure, e);
+        }
+        producer.assertStopped();
+        // Only the batches the writer took plus the bounded pool were ever filled
+        assertTrue("filled " + producer.batches.get(), producer.batches.get() <= accepted[0] + DEPTH);
+    }
+
+    @Test
+    public void interruptedCallerStopsBothThreads() throws Exception {
+        CountDownLatch never = new CountDownLatch(1);
+        CountDownLatch reading = new CountDownLatch(1);
+        AtomicReference<Thread> reader = new AtomicReference<>();
+        AtomicReference<Throwable> thrown = new AtomicReference<>();
+        Thread caller = new Thread(() -> {
+            try {
+                new RowPipeline(Sources.SMS, BATCH_ROWS, DEPTH).run("stuck", batch -> {
+                    reader.set(Thread.currentThread());
+                    reading.countDown();
+                    try {
+                        // A provider that never answers
+                        never.await();
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    }
+                    return false;
+                }, batch -> { });
+            } catch (Throwable t) {
+                thrown.set(t);
+            }
+        }, "caller");
+        caller.start();
+        assertTrue(reading.await(5, TimeUnit.SECONDS));
+        caller.interrupt();
+        caller.join(5000);
+        assertFalse(caller.isAlive());
+        assertTrue(String.valueOf(thrown.get()), thrown.get() instanceof InterruptedIOException);
+        reader.get().join(5000);
+        assertFalse(reader.get().isAlive());
+    }
+}
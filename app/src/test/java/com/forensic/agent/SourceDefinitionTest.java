@@ -0,0 +1,42 @@
+package com.forensic.agent;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.fail;
+
+/**
+ * Live endpoint selections and sort orders name public columns; only those identifiers may
+ * change on the way to the source provider.
+ */
+@RunWith(RobolectricTestRunner.class)
+@Config(sdk = 33)
+public class SourceDefinitionTest {
+    private static final SourceDefinition CONTACTS = Sources.CONTACT_PHONES;
+
+    @Test
+    public void rewritesIdentifiersOnly() {
+        String name = CONTACTS.sourceOf("name");
+        String phone = CONTACTS.sourceOf("phone");
+        assertEquals(name + " = 'phone repair' AND " + phone + " LIKE '%name%'",
+                CONTACTS.toSource("name = 'phone repair' AND phone LIKE '%name%'"));
+        assertEquals(name + " = 'it''s name'", CONTACTS.toSource("name = 'it''s name'"));
+        assertEquals("\"" + name + "\" DESC, " + CONTACTS.sourceOf("id"), CONTACTS.toSource("\"name\" DESC, id"));
+        assertEquals("nickname = ? AND " + name + " > 1e5", CONTACTS.toSource("nickname = ? AND name > 1e5"));
+        assertNull(CONTACTS.toSource(null));
+    }
+
+    @Test
+    public void rejectsUnterminatedQuotes() {
+        try {
+            CONTACTS.toSource("name = 'phone");
+            fail("Unterminated literal was passed through");
+        } catch (IllegalArgumentException expected) {
+            // The provider would have been handed a clause we could not read
+        }
+    }
+}
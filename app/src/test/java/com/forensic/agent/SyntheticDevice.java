@@ -0,0 +1,299 @@
+package com.forensic.agent;
+
+import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteStatement;
+import android.provider.CalendarContract;
+import android.provider.CallLog;
+import android.provider.ContactsContract;
+import android.provider.Telephony;
+
+import org.robolectric.Robolectric;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+
+/**
+ * Fills an in-memory database with deterministic synthetic device data and registers
+ * {@link FakeProvider}s for it under the Contacts, SMS, MMS, call log and calendar authorities.
+ *
+ * Sizes come from system properties ({@code forensic.load.sms}, {@code .contacts},
+ * {@code .phonesPerContact}, {@code .calls}, {@code .calendar}, {@code .mms},
+ * {@code .attachments}), so the same harness runs as a quick check by default and as a
+ * large-dataset load test on demand. MMS attachments are drawn from a small pool of files,
+ * the way forwarded media repeats across threads.
+ */
+public class SyntheticDevice {
+    private static final String[] WORDS = {
+            "ok", "see", "you", "at", "the", "station", "tomorrow", "call", "me", "when", "free",
+            "meeting", "moved", "to", "3pm", "thanks", "caf\u00e9", "on", "my", "way", "\"quoted\"",
+            "line\nbreak", "\u20ac20", "\u8def\u4e0a", "\ud83d\udc4d"
+    };
+
+    public final int sms = Integer.getInteger("forensic.load.sms", 20000);
+    public final int contacts = Integer.getInteger("forensic.load.contacts", 2000);
+    public final int phonesPerContact = Integer.getInteger("forensic.load.phonesPerContact", 2);
+    public final int calls = Integer.getInteger("forensic.load.calls", 10000);
+    public final int calendar = Integer.getInteger("forensic.load.calendar", 2000);
+    public final int mms = Integer.getInteger("forensic.load.mms", 1000);
+    public final int attachments = Integer.getInteger("forensic.load.attachments", 40);
+
+    /** A word planted in a fixed share of SMS bodies, for exact search counts. */
+    public static final String CODE_WORD = "kilimanjaro";
+
+    private final Random random = new Random(313);
+    private final SQLiteDatabase db = SQLiteDatabase.create(null);
+    private final Set<Integer> attachmentsUsed = new HashSet<>();
+    private final List<String> contactNumbers = new ArrayList<>();
+    private File attachmentDir;
+    private int codeWordSms;
+
+    /** Distinct attachment files referenced by MMS parts. */
+    public int distinctAttachments() {
+        return attachmentsUsed.size();
+    }
+
+    /** SMS whose body contains {@link #CODE_WORD}. */
+    public int codeWordSms() {
+        return codeWordSms;
+    }
+
+    /** Path of a pool attachment referenced by at least one MMS part. */
+    public File anyAttachment() {
+        return attachmentsUsed.isEmpty() ? null : new File(attachmentDir, attachmentsUsed.iterator().next() + ".bin");
+    }
+
+    /** A contact phone in national format, as SMS and calls from that contact often show it. */
+    public String samplePhone() {
+        return national(contactNumbers.get(0));
+    }
+
+    /** Id of the contact {@link #samplePhone()} belongs to. */
+    public long samplePhoneContact() {
+        return 2;
+    }
+
+    /** Contacts with at least one phone; every third contact has none. */
+    public int contactPhones() {
+        return (contacts - (contacts + 2) / 3) * phonesPerContact;
+    }
+
+    public SyntheticDevice install() throws IOException {
+        db.beginTransaction();
+        try {
+            populateContacts();
+            populateSms();
+            populateMms();
+            populateCalls();
+            populateCalendar();
+            db.setTransactionSuccessful();
+        } finally {
+            db.endTransaction();
+        }
+        return register();
+    }
+
+    /**
+     * Registers the fake providers for the data already installed. Robolectric drops
+     * providers between tests while the database lives on, so a device shared by the tests of
+     * a class is registered again by each of them.
+     */
+    public SyntheticDevice register() {
+        Robolectric.buildContentProvider(FakeProvider.class).create(ContactsContract.AUTHORITY).get()
+                .serve(db)
+                .table("contacts", "contacts")
+                .table("data", "data")
+                .table("data/phones", "phones");
+        Robolectric.buildContentProvider(FakeProvider.class).create("sms").get()
+                .serve(db)
+                .table("", "sms");
+        Robolectric.buildContentProvider(FakeProvider.class).create("mms").get()
+                .serve(db)
+                .table("", "pdu")
+                .table("part", "part")
+                .files("part", "part");
+        Robolectric.buildContentProvider(FakeProvider.class).create(CallLog.AUTHORITY).get()
+                .serve(db)
+                .table("calls", "calls");
+        Robolectric.buildContentProvider(FakeProvider.class).create(CalendarContract.AUTHORITY).get()
+                .serve(db)
+                .table("events", "events");
+        return this;
+    }
+
+    public void close() {
+        db.close();
+        if (attachmentDir != null) {
+            File[] files = attachmentDir.listFiles();
+            if (files != null) for (File f : files) f.delete();
+            attachmentDir.delete();
+        }
+    }
+
+    private void populateContacts() {
+        db.execSQL("CREATE TABLE contacts (_id INTEGER PRIMARY KEY, display_name TEXT)");
+        db.execSQL("CREATE TABLE data (_id INTEGER PRIMARY KEY, contact_id INTEGER, mimetype TEXT,"
+                + " data1 TEXT, data4 TEXT, display_name TEXT)");
+        db.execSQL("CREATE INDEX data_contact ON data (contact_id)");
+        db.execSQL("CREATE VIEW phones AS SELECT * FROM data WHERE mimetype = '"
+                + ContactsContract.CommonDataKinds.Phone.CONTENT_ITEM_TYPE + "'");
+        SQLiteStatement contact = db.compileStatement("INSERT INTO contacts VALUES (?, ?)");
+        SQLiteStatement data = db.compileStatement("INSERT INTO data (contact_id, mimetype, data1, data4, display_name)"
+                + " VALUES (?, ?, ?, ?, ?)");
+        for (int id = 1; id <= contacts; id++) {
+            String name = word() + " " + word();
+            contact.bindLong(1, id);
+            contact.bindString(2, name);
+            contact.executeInsert();
+            if (id % 3 == 1) continue;
+            for (int p = 0; p < phonesPerContact; p++) {
+                String number = number();
+                contactNumbers.add(number);
+                insertData(data, id, ContactsContract.CommonDataKinds.Phone.CONTENT_ITEM_TYPE, number, null, name);
+            }
+            insertData(data, id, ContactsContract.CommonDataKinds.Email.CONTENT_ITEM_TYPE, word() + "@example.com", null, name);
+            insertData(data, id, ContactsContract.CommonDataKinds.Organization.CONTENT_ITEM_TYPE, word(), word(), name);
+        }
+    }
+
+    private static void insertData(SQLiteStatement data, long contactId, String mime, String value, String title, String name) {
+        data.clearBindings();
+        data.bindLong(1, contactId);
+        data.bindString(2, mime);
+        data.bindString(3, value);
+        if (title != null) data.bindString(4, title);
+        data.bindString(5, name);
+        data.executeInsert();
+    }
+
+    private void populateSms() {
+        db.execSQL("CREATE TABLE sms (" + Telephony.Sms._ID + " INTEGER PRIMARY KEY, address TEXT, body TEXT,"
+                + " date INTEGER, type INTEGER)");
+        SQLiteStatement insert = db.compileStatement("INSERT INTO sms (address, body, date, type) VALUES (?, ?, ?, ?)");
+        long date = 1600000000000L;
+        for (int i = 0; i < sms; i++) {
+            date += random.nextInt(600000);
+            insert.clearBindings();
+            insert.bindString(1, correspondent());
+            if (random.nextInt(50) != 0) {
+                String body = sentence();
+                if (i % 97 == 0) {
+                    body += " " + CODE_WORD;
+                    codeWordSms++;
+                }
+                insert.bindString(2, body);
+            }
+            insert.bindLong(3, date);
+            insert.bindLong(4, 1 + random.nextInt(2));
+            insert.executeInsert();
+        }
+    }
+
+    private void populateMms() throws IOException {
+        db.execSQL("CREATE TABLE pdu (_id INTEGER PRIMARY KEY, thread_id INTEGER, date INTEGER, msg_box INTEGER, sub TEXT)");
+        db.execSQL("CREATE TABLE part (_id INTEGER PRIMARY KEY, mid INTEGER, seq INTEGER, ct TEXT, name TEXT,"
+                + " fn TEXT, text TEXT, _data TEXT)");
+        attachmentDir = Files.createTempDirectory("mms-parts").toFile();
+        byte[] chunk = new byte[4096];
+        for (int i = 0; i < attachments; i++) {
+            try (FileOutputStream out = new FileOutputStream(new File(attachmentDir, i + ".bin"))) {
+                int chunks = 1 + random.nextInt(128);
+                for (int c = 0; c < chunks; c++) {
+                    random.nextBytes(chunk);
+                    out.write(chunk);
+                }
+            }
+        }
+        SQLiteStatement pdu = db.compileStatement("INSERT INTO pdu (thread_id, date, msg_box, sub) VALUES (?, ?, ?, ?)");
+        SQLiteStatement part = db.compileStatement("INSERT INTO part (mid, seq, ct, name, fn, text, _data)"
+                + " VALUES (?, ?, ?, ?, ?, ?, ?)");
+        long date = 1600000000L;
+        for (int i = 0; i < mms; i++) {
+            date += random.nextInt(600);
+            pdu.clearBindings();
+            pdu.bindLong(1, 1 + random.nextInt(200));
+            pdu.bindLong(2, date);
+            pdu.bindLong(3, 1 + random.nextInt(2));
+            if (random.nextInt(4) == 0) pdu.bindString(4, sentence());
+            long id = pdu.executeInsert();
+
+            part.clearBindings();
+            part.bindLong(1, id);
+            part.bindLong(2, 0);
+            part.bindString(3, "text/plain");
+            part.bindString(6, sentence());
+            part.executeInsert();
+            if (attachments == 0) continue;
+
+            int attachment = random.nextInt(attachments);
+            attachmentsUsed.add(attachment);
+            part.clearBindings();
+            part.bindLong(1, id);
+            part.bindLong(2, 1);
+            part.bindString(3, "image/jpeg");
+            part.bindString(5, "IMG_" + attachment + ".jpg");
+            part.bindString(7, new File(attachmentDir, attachment + ".bin").getAbsolutePath());
+            part.executeInsert();
+        }
+    }
+
+    private void populateCalls() {
+        db.execSQL("CREATE TABLE calls (_id INTEGER PRIMARY KEY, number TEXT, date INTEGER,"
+                + " duration INTEGER, type INTEGER)");
+        SQLiteStatement insert = db.compileStatement("INSERT INTO calls (number, date, duration, type) VALUES (?, ?, ?, ?)");
+        long date = 1600000000000L;
+        for (int i = 0; i < calls; i++) {
+            date += random.nextInt(3600000);
+            insert.bindString(1, correspondent());
+            insert.bindLong(2, date);
+            insert.bindLong(3, random.nextInt(1800));
+            insert.bindLong(4, 1 + random.nextInt(3));
+            insert.executeInsert();
+        }
+    }
+
+    private void populateCalendar() {
+        db.execSQL("CREATE TABLE events (_id INTEGER PRIMARY KEY, title TEXT, dtstart INTEGER, dtend INTEGER)");
+        SQLiteStatement insert = db.compileStatement("INSERT INTO events (title, dtstart, dtend) VALUES (?, ?, ?)");
+        long start = 1600000000000L;
+        for (int i = 0; i < calendar; i++) {
+            start += random.nextInt(86400000);
+            insert.bindString(1, sentence());
+            insert.bindLong(2, start);
+            insert.bindLong(3, start + 1800000L * (1 + random.nextInt(4)));
+            insert.executeInsert();
+        }
+    }
+
+    private String word() {
+        return WORDS[random.nextInt(WORDS.length)];
+    }
+
+    private String number() {
+        return "+1555" + (1000000 + random.nextInt(9000000));
+    }
+
+    /** A third of messages and calls involve a contact, written in national format. */
+    private String correspondent() {
+        if (contactNumbers.isEmpty() || random.nextInt(3) != 0) return number();
+        return national(contactNumbers.get(random.nextInt(contactNumbers.size())));
+    }
+
+    /** {@code +15551234567} as {@code (555) 123-4567}. */
+    private static String national(String number) {
+        return "(" + number.substring(2, 5) + ") " + number.substring(5, 8) + "-" + number.substring(8);
+    }
+
+    private String sentence() {
+        StringBuilder sb = new StringBuilder(word());
+        int words = 2 + random.nextInt(25);
+        for (int i = 0; i < words; i++) sb.append(' ').append(word());
+        return sb.toString();
+    }
+}
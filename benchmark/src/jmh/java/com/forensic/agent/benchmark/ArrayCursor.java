@@ -0,0 +1,64 @@
+package com.forensic.agent.benchmark;
+
+/**
+ * The subset of {@code android.database.Cursor} the extractors use, over a {@link SyntheticDataset}.
+ *
+ * {@link #getColumnIndex} scans the column names case-insensitively like
+ * {@code AbstractCursor} does, so per-row name lookups cost what they cost on a device.
+ */
+final class ArrayCursor {
+    static final int FIELD_TYPE_NULL = 0;
+    static final int FIELD_TYPE_INTEGER = 1;
+    static final int FIELD_TYPE_STRING = 3;
+
+    private final SyntheticDataset data;
+    private int position = -1;
+
+    ArrayCursor(SyntheticDataset data) {
+        this.data = data;
+    }
+
+    int getCount() {
+        return data.rows;
+    }
+
+    boolean moveToNext() {
+        if (position >= data.rows - 1) {
+            position = data.rows;
+            return false;
+        }
+        position++;
+        return true;
+    }
+
+    void reset() {
+        position = -1;
+    }
+
+    int getColumnIndex(String name) {
+        String[] columns = data.columns;
+        for (int i = 0; i < columns.length; i++) {
+            if (columns[i].equalsIgnoreCase(name)) return i;
+        }
+        return -1;
+    }
+
+    String getString(int column) {
+        String[] values = data.strings[column];
+        return values != null ? values[position] : String.valueOf(data.longs[column][position]);
+    }
+
+    long getLong(int column) {
+        long[] values = data.longs[column];
+        return values != null ? values[position] : Long.parseLong(data.strings[column][position]);
+    }
+
+    int getType(int column) {
+        if (data.longs[column] != null) return FIELD_TYPE_INTEGER;
+        return data.strings[column][position] != null ? FIELD_TYPE_STRING : FIELD_TYPE_NULL;
+    }
+
+    boolean isNull(int column) {
+        return getType(column) == FIELD_TYPE_NULL;
+    }
+}
@@ -0,0 +1,217 @@
+package com.forensic.agent.benchmark;
+
+import com.google.gson.stream.JsonWriter;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Mapping plus encoding of a whole dataset into a byte sink, as one artifact.
+ *
+ * {@link #jsonArrayToString} is the original approach: every record held in a
+ * {@link JSONArray} and the artifact built as one string. {@link #streamingJsonWriter}
+ * mirrors {@code JsonArtifactWriter} and produces the same bytes. {@link #binaryRecords}
+ * is a length-prefixed binary encoding (zigzag varints, UTF-8 strings) for comparison.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+public class EncodingBenchmark {
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    @Benchmark
+    public long jsonArrayToString(DatasetState state, DatasetState.Counters counters) throws JSONException, IOException {
+        SyntheticDataset data = state.data;
+        ArrayCursor cursor = state.cursor();
+        int[] index = resolve(cursor, data);
+        JSONArray array = new JSONArray();
+        while (cursor.moveToNext()) {
+            JSONObject record = new JSONObject();
+            for (int c = 0; c < index.length; c++) {
+                if (!data.exported[c]) continue;
+                if (data.types[c] == SyntheticDataset.LONG) {
+                    record.put(data.columns[c], cursor.getLong(index[c]));
+                } else {
+                    record.put(data.columns[c], cursor.getString(index[c]));
+                }
+            }
+            array.put(record);
+            counters.rowsMapped++;
+        }
+        CountingSink sink = new CountingSink();
+        sink.write(array.toString(2).getBytes(StandardCharsets.UTF_8));
+        counters.bytesOut += sink.count;
+        return sink.count;
+    }
+
+    @Benchmark
+    public long streamingJsonWriter(DatasetState state, DatasetState.Counters counters) throws IOException {
+        SyntheticDataset data = state.data;
+        ArrayCursor cursor = state.cursor();
+        int[] index = resolve(cursor, data);
+        CountingSink sink = new CountingSink();
+        JsonWriter json = new JsonWriter(new BufferedWriter(
+                new OutputStreamWriter(sink, StandardCharsets.UTF_8), BUFFER_SIZE));
+        json.setIndent("  ");
+        json.beginArray();
+        while (cursor.moveToNext()) {
+            json.beginObject();
+            for (int c = 0; c < index.length; c++) {
+                if (!data.exported[c]) continue;
+                if (data.types[c] == SyntheticDataset.LONG) {
+                    json.name(data.columns[c]).value(cursor.getLong(index[c]));
+                } else {
+                    String value = cursor.getString(index[c]);
+                    if (value != null) json.name(data.columns[c]).value(value);
+                }
+            }
+            json.endObject();
+            counters.rowsMapped++;
+        }
+        json.endArray();
+        json.close();
+        counters.bytesOut += sink.count;
+        return sink.count;
+    }
+
+    @Benchmark
+    public long binaryRecords(DatasetState state, DatasetState.Counters counters) throws IOException {
+        SyntheticDataset data = state.data;
+        ArrayCursor cursor = state.cursor();
+        int[] index = resolve(cursor, data);
+        CountingSink sink = new CountingSink();
+        BinaryWriter out = new BinaryWriter(sink);
+        while (cursor.moveToNext()) {
+            for (int c = 0; c < index.length; c++) {
+                if (!data.exported[c]) continue;
+                if (data.types[c] == SyntheticDataset.LONG) {
+                    out.writeLong(cursor.getLong(index[c]));
+                } else {
+                    out.writeString(cursor.getString(index[c]));
+                }
+            }
+            counters.rowsMapped++;
+        }
+        out.flush();
+        counters.bytesOut += sink.count;
+        return sink.count;
+    }
+
+    private static int[] resolve(ArrayCursor cursor, SyntheticDataset data) {
+        int[] index = new int[data.columns.length];
+        for (int c = 0; c < index.length; c++) index[c] = cursor.getColumnIndex(data.columns[c]);
+        return index;
+    }
+
+    /** Discards bytes, counting them. */
+    static final class CountingSink extends OutputStream {
+        long count;
+
+        @Override
+        public void write(int b) {
+            count++;
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) {
+            count += len;
+        }
+    }
+
+    /**
+     * Zigzag varint longs and length-prefixed UTF-8 strings (length + 1, so 0 is null),
+     * encoded straight into a reused buffer without per-value allocation.
+     */
+    static final class BinaryWriter {
+        private final OutputStream out;
+        private final byte[] buffer = new byte[BUFFER_SIZE];
+        private int position;
+
+        BinaryWriter(OutputStream out) {
+            this.out = out;
+        }
+
+        void writeLong(long value) throws IOException {
+            writeVarint((value << 1) ^ (value >> 63));
+        }
+
+        void writeString(String value) throws IOException {
+            if (value == null) {
+                writeVarint(0);
+                return;
+            }
+            writeVarint(utf8Length(value) + 1);
+            for (int i = 0; i < value.length(); i++) {
+                char ch = value.charAt(i);
+                ensure(4);
+                if (ch < 0x80) {
+                    buffer[position++] = (byte) ch;
+                } else if (ch < 0x800) {
+                    buffer[position++] = (byte) (0xc0 | (ch >> 6));
+                    buffer[position++] = (byte) (0x80 | (ch & 0x3f));
+                } else if (Character.isHighSurrogate(ch) && i + 1 < value.length()) {
+                    int cp = Character.toCodePoint(ch, value.charAt(++i));
+                    buffer[position++] = (byte) (0xf0 | (cp >> 18));
+                    buffer[position++] = (byte) (0x80 | ((cp >> 12) & 0x3f));
+                    buffer[position++] = (byte) (0x80 | ((cp >> 6) & 0x3f));
+                    buffer[position++] = (byte) (0x80 | (cp & 0x3f));
+                } else {
+                    buffer[position++] = (byte) (0xe0 | (ch >> 12));
+                    buffer[position++] = (byte) (0x80 | ((ch >> 6) & 0x3f));
+                    buffer[position++] = (byte) (0x80 | (ch & 0x3f));
+                }
+            }
+        }
+
+        void flush() throws IOException {
+            out.write(buffer, 0, position);
+            position = 0;
+            out.flush();
+        }
+
+        private void writeVarint(long value) throws IOException {
+            ensure(10);
+            while ((value & ~0x7fL) != 0) {
+                buffer[position++] = (byte) ((value & 0x7f) | 0x80);
+                value >>>= 7;
+            }
+            buffer[position++] = (byte) value;
+        }
+
+        private void ensure(int bytes) throws IOException {
+            if (position + bytes > buffer.length) {
+                out.write(buffer, 0, position);
+                position = 0;
+            }
+        }
+
+        private static int utf8Length(String value) {
+            int length = 0;
+            for (int i = 0; i < value.length(); i++) {
+                char ch = value.charAt(i);
+                if (ch < 0x80) {
+                    length++;
+                } else if (ch < 0x800) {
+                    length += 2;
+                } else if (Character.isHighSurrogate(ch) && i + 1 < value.length()) {
+                    length += 4;
+                    i++;
+                } else {
+                    length += 3;
+                }
+            }
+            return length;
+        }
+    }
+}
@@ -0,0 +1,104 @@
+package com.forensic.agent.benchmark;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Row-to-record mapping, without encoding.
+ *
+ * Every variant converts each exported field of every row to its type and hands the finished
+ * record to the {@link Blackhole}, so they differ only in how a record is built.
+ * {@link #lookupByNamePerRow} is the original extractor loop: a column-name lookup per field
+ * per row and a {@link JSONObject} per record. {@link #resolvedIndexes} builds the same
+ * {@link JSONObject} with indexes resolved once, which isolates the lookup cost.
+ * {@link #resolvedIntoRow} is what {@code RecordReader} does: indexes resolved once, typed
+ * getters into a reused row, no per-row objects.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+public class MappingBenchmark {
+
+    /** One record in the shape of a {@code RowBatch} row: typed slots per column, reused. */
+    static final class Row {
+        final long[] longs;
+        final String[] strings;
+
+        Row(int columns) {
+            longs = new long[columns];
+            strings = new String[columns];
+        }
+    }
+
+    @Benchmark
+    public void lookupByNamePerRow(DatasetState state, DatasetState.Counters counters, Blackhole bh) throws JSONException {
+        SyntheticDataset data = state.data;
+        ArrayCursor cursor = state.cursor();
+        while (cursor.moveToNext()) {
+            JSONObject record = new JSONObject();
+            for (int c = 0; c < data.columns.length; c++) {
+                if (!data.exported[c]) continue;
+                int index = cursor.getColumnIndex(data.columns[c]);
+                if (data.types[c] == SyntheticDataset.LONG) {
+                    record.put(data.columns[c], cursor.getLong(index));
+                } else {
+                    record.put(data.columns[c], cursor.getString(index));
+                }
+            }
+            bh.consume(record);
+            counters.rowsMapped++;
+        }
+    }
+
+    @Benchmark
+    public void resolvedIndexes(DatasetState state, DatasetState.Counters counters, Blackhole bh) throws JSONException {
+        SyntheticDataset data = state.data;
+        ArrayCursor cursor = state.cursor();
+        int[] index = resolve(cursor, data);
+        while (cursor.moveToNext()) {
+            JSONObject record = new JSONObject();
+            for (int c = 0; c < index.length; c++) {
+                if (!data.exported[c]) continue;
+                if (data.types[c] == SyntheticDataset.LONG) {
+                    record.put(data.columns[c], cursor.getLong(index[c]));
+                } else {
+                    record.put(data.columns[c], cursor.getString(index[c]));
+                }
+            }
+            bh.consume(record);
+            counters.rowsMapped++;
+        }
+    }
+
+    @Benchmark
+    public void resolvedIntoRow(DatasetState state, DatasetState.Counters counters, Blackhole bh) {
+        SyntheticDataset data = state.data;
+        ArrayCursor cursor = state.cursor();
+        int[] index = resolve(cursor, data);
+        Row record = new Row(index.length);
+        while (cursor.moveToNext()) {
+            for (int c = 0; c < index.length; c++) {
+                if (!data.exported[c]) continue;
+                if (data.types[c] == SyntheticDataset.LONG) {
+                    record.longs[c] = cursor.getLong(index[c]);
+                } else {
+                    record.strings[c] = cursor.getString(index[c]);
+                }
+            }
+            bh.consume(record);
+            counters.rowsMapped++;
+        }
+    }
+
+    private static int[] resolve(ArrayCursor cursor, SyntheticDataset data) {
+        int[] index = new int[data.columns.length];
+        for (int c = 0; c < index.length; c++) index[c] = cursor.getColumnIndex(data.columns[c]);
+        return index;
+    }
+}
@@ -0,0 +1,122 @@
+package com.forensic.agent.benchmark;
+
+import java.util.Random;
+
+/**
+ * Deterministic, column-oriented stand-in for a provider result set.
+ *
+ * Column names, types and exported flags mirror the app's {@code Sources} definitions, so the
+ * benchmarks map and encode the same shape of rows the extractor does. Message bodies and
+ * addresses are drawn from fixed pools (a handset has far fewer correspondents than messages),
+ * which keeps a million-row dataset small enough to sit in the heap next to its encodings.
+ */
+public final class SyntheticDataset {
+    public static final int STRING = 1;
+    public static final int LONG = 2;
+
+    private static final long SEED = 313;
+    private static final String[] WORDS = {
+            "ok", "see", "you", "at", "the", "station", "tomorrow", "call", "me", "when", "free",
+            "meeting", "moved", "to", "3pm", "thanks", "caf\u00e9", "on", "my", "way", "done", "\"quoted\"",
+            "line\nbreak", "price", "\u20ac20", "address", "sent", "\u8def\u4e0a", "\ud83d\udc4d"
+    };
+
+    public final String name;
+    public final String[] columns;
+    public final int[] types;
+    public final boolean[] exported;
+    public final int rows;
+    /** {@code strings[column][row]}, null for LONG columns. */
+    final String[][] strings;
+    /** {@code longs[column][row]}, null for STRING columns. */
+    final long[][] longs;
+
+    private SyntheticDataset(String name, String[] columns, int[] types, boolean[] exported, int rows) {
+        this.name = name;
+        this.columns = columns;
+        this.types = types;
+        this.exported = exported;
+        this.rows = rows;
+        strings = new String[columns.length][];
+        longs = new long[columns.length][];
+        for (int c = 0; c < columns.length; c++) {
+            if (types[c] == STRING) strings[c] = new String[rows];
+            else longs[c] = new long[rows];
+        }
+    }
+
+    public static SyntheticDataset create(String name, int rows) {
+        Random random = new Random(SEED);
+        String[] numbers = pool(random, 2000, r -> "+1555" + (1000000 + r.nextInt(9000000)));
+        switch (name) {
+            case "sms": {
+                SyntheticDataset d = new SyntheticDataset(name,
+                        new String[]{"_id", "address", "body", "date", "type"},
+                        new int[]{LONG, STRING, STRING, LONG, LONG},
+                        new boolean[]{false, true, true, true, true}, rows);
+                String[] bodies = pool(random, 4096, SyntheticDataset::sentence);
+                long date = 1600000000000L;
+                for (int i = 0; i < rows; i++) {
+                    date += random.nextInt(600000);
+                    d.longs[0][i] = i + 1;
+                    d.strings[1][i] = numbers[random.nextInt(numbers.length)];
+                    d.strings[2][i] = random.nextInt(50) == 0 ? null : bodies[random.nextInt(bodies.length)];
+                    d.longs[3][i] = date;
+                    d.longs[4][i] = 1 + random.nextInt(2);
+                }
+                return d;
+            }
+            case "calls": {
+                SyntheticDataset d = new SyntheticDataset(name,
+                        new String[]{"_id", "number", "date", "duration", "type"},
+                        new int[]{LONG, STRING, LONG, LONG, LONG},
+                        new boolean[]{false, true, true, true, true}, rows);
+                long date = 1600000000000L;
+                for (int i = 0; i < rows; i++) {
+                    date += random.nextInt(3600000);
+                    d.longs[0][i] = i + 1;
+                    d.strings[1][i] = numbers[random.nextInt(numbers.length)];
+                    d.longs[2][i] = date;
+                    d.longs[3][i] = random.nextInt(4) == 0 ? 0 : random.nextInt(1800);
+                    d.longs[4][i] = 1 + random.nextInt(3);
+                }
+                return d;
+            }
+            case "contacts": {
+                SyntheticDataset d = new SyntheticDataset(name,
+                        new String[]{"id", "name", "phone"},
+                        new int[]{STRING, STRING, STRING},
+                        new boolean[]{true, true, true}, rows);
+                String[] names = pool(random, 4096, r -> WORDS[r.nextInt(WORDS.length)] + " " + WORDS[r.nextInt(WORDS.length)]);
+                for (int i = 0; i < rows; i++) {
+                    d.strings[0][i] = String.valueOf(i + 1);
+                    d.strings[1][i] = names[random.nextInt(names.length)];
+                    d.strings[2][i] = numbers[random.nextInt(numbers.length)];
+                }
+                return d;
+            }
+            default:
+                throw new IllegalArgumentException("Unknown dataset: " + name);
+        }
+    }
+
+    private interface Generator {
+        String next(Random random);
+    }
+
+    private static String[] pool(Random random, int size, Generator generator) {
+        String[] pool = new String[size];
+        for (int i = 0; i < size; i++) pool[i] = generator.next(random);
+        return pool;
+    }
+
+    private static String sentence(Random random) {
+        StringBuilder sb = new StringBuilder();
+        int words = 3 + random.nextInt(25);
+        for (int i = 0; i < words; i++) {
+            if (i > 0) sb.append(' ');
+            sb.append(WORDS[random.nextInt(WORDS.length)]);
+        }
+        return sb.toString();
+    }
+}
@@ -0,0 +1,179 @@
+package com.forensic.agent.ingest;
+
+import java.io.BufferedInputStream;
+import java.io.Closeable;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Enumeration;
+import java.util.List;
+import java.util.TreeSet;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+
+/**
+ * One pulled acquisition: the agent's {@code extracted/} directory copied off the device, or
+ * a bundle zip it streamed. Both are addressed by the paths the manifest uses, so a record
+ * stream reads {@code sms.json}, its delta segments and {@code sms.col} the same way from
+ * either.
+ *
+ * Safe for concurrent reads; {@link Ingest} parses several artifacts of one acquisition at once.
+ */
+public final class Acquisition implements Closeable {
+    private static final int BUFFER_SIZE = 64 * 1024;
+    private static final String SEGMENTS = "segments/";
+
+    private final Path path;
+    private final Path dir;
+    private final ZipFile zip;
+    /** Entry names of a bundle, sorted so a directory's files are contiguous and in order. */
+    private final TreeSet<String> entries;
+    private final Manifest manifest;
+
+    private Acquisition(Path path, Path dir, ZipFile zip, TreeSet<String> entries) throws IOException {
+        this.path = path;
+        this.dir = dir;
+        this.zip = zip;
+        this.entries = entries;
+        if (exists(Manifest.FILE_NAME)) {
+            try (InputStream in = open(Manifest.FILE_NAME)) {
+                manifest = Manifest.read(in);
+            }
+        } else {
+            manifest = Manifest.EMPTY;
+        }
+    }
+
+    /** Opens an output directory or a bundle {@code .zip}. */
+    public static Acquisition open(Path path) throws IOException {
+        if (Files.isDirectory(path)) return new Acquisition(path, path, null, null);
+        ZipFile zip = new ZipFile(path.toFile());
+        try {
+            TreeSet<String> entries = new TreeSet<>();
+            Enumeration<? extends ZipEntry> e = zip.entries();
+            while (e.hasMoreElements()) {
+                ZipEntry entry = e.nextElement();
+                if (!entry.isDirectory()) entries.add(entry.getName());
+            }
+            return new Acquisition(path, null, zip, entries);
+        } catch (IOException | RuntimeException e) {
+            zip.close();
+            throw e;
+        }
+    }
+
+    public Path getPath() {
+        return path;
+    }
+
+    public boolean isBundle() {
+        return zip != null;
+    }
+
+    /** The acquisition's manifest; empty when it has none, in which case nothing verifies. */
+    public Manifest getManifest() {
+        return manifest;
+    }
+
+    /** Streams the records of {@code type} across the artifact and its delta segments. */
+    public <T> RecordStream<T> records(RecordType<T> type) throws IOException {
+        return new RecordStream<>(this, type, partsOf(type));
+    }
+
+    /**
+     * Files holding {@code type}'s records, in order: the {@code .col} file when the agent
+     * wrote the columnar format, else the JSON artifact followed by its delta segments.
+     */
+    List<String> partsOf(RecordType<?> type) throws IOException {
+        List<String> parts = new ArrayList<>();
+        String columnar = type.baseName() + ColumnarFile.EXTENSION;
+        if (type.columns.length > 0 && exists(columnar)) {
+            parts.add(columnar);
+            return parts;
+        }
+        if (exists(type.artifact)) parts.add(type.artifact);
+        parts.addAll(list(SEGMENTS + type.baseName() + "/", ".json"));
+        return parts;
+    }
+
+    boolean exists(String file) {
+        return zip != null ? entries.contains(file) : Files.isRegularFile(dir.resolve(file));
+    }
+
+    InputStream open(String file) throws IOException {
+        if (zip == null) return new BufferedInputStream(Files.newInputStream(dir.resolve(file)), BUFFER_SIZE);
+        ZipEntry entry = zip.getEntry(file);
+        if (entry == null) throw new FileNotFoundException(file + " is not in " + path);
+        return new BufferedInputStream(zip.getInputStream(entry), BUFFER_SIZE);
+    }
+
+    /** The file on disk, or null when it only exists inside a bundle. */
+    Path file(String file) {
+        return zip == null ? dir.resolve(file) : null;
+    }
+
+    /** Files directly under {@code prefix} ending in {@code suffix}, sorted by name. */
+    private List<String> list(String prefix, String suffix) throws IOException {
+        List<String> files = new ArrayList<>();
+        if (zip != null) {
+            for (String name : entries.tailSet(prefix)) {
+                if (!name.startsWith(prefix)) break;
+                if (name.endsWith(suffix) && name.indexOf('/', prefix.length()) < 0) files.add(name);
+            }
+            return files;
+        }
+        Path sub = dir.resolve(prefix);
+        if (!Files.isDirectory(sub)) return files;
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(sub, "*" + suffix)) {
+            for (Path p : stream) files.add(prefix + p.getFileName());
+        }
+        Collections.sort(files);
+        return files;
+    }
+
+    /**
+     * Checks what was read of {@code file} against its manifest entry.
+     *
+     * @param rows records parsed from it, or -1 when not counted
+     * @return false if the manifest does not list the file, so it cannot be verified
+     * @throws IOException if size, digest or row count disagree with the manifest
+     */
+    boolean verify(String file, long size, String sha256, long rows) throws IOException {
+        Manifest.Entry entry = manifest.get(file);
+        if (entry == null) return false;
+        if (entry.size >= 0 && entry.size != size) {
+            throw new IOException(file + ": size " + size + " does not match manifest " + entry.size);
+        }
+        if (!entry.sha256.equalsIgnoreCase(sha256)) {
+            throw new IOException(file + ": sha256 " + sha256 + " does not match manifest " + entry.sha256);
+        }
+        if (rows >= 0 && entry.rows >= 0 && entry.rows != rows) {
+            throw new IOException(file + ": " + rows + " rows do not match manifest " + entry.rows);
+        }
+        return true;
+    }
+
+    /** Hashes {@code file} without parsing it and verifies it; returns its size. */
+    long hash(String file) throws IOException {
+        try (HashingInputStream in = new HashingInputStream(open(file))) {
+            in.drain();
+            verify(file, in.getCount(), in.sha256Hex(), -1);
+            return in.getCount();
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (zip != null) zip.close();
+    }
+
+    @Override
+    public String toString() {
+        return path.toString();
+    }
+}
@@ -0,0 +1,251 @@
+package com.forensic.agent.ingest;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * Sequential decoder for the agent's {@code .col} artifacts, the host-side counterpart of
+ * the app's {@code ColumnarReader}. Only the footer is parsed up front; {@link #next()} then
+ * decodes one row at a time straight from the buffer, normally a read-only file mapping.
+ */
+final class ColumnarFile {
+    static final String EXTENSION = ".col";
+    private static final byte[] MAGIC = {'F', 'C', 'O', 'L'};
+    private static final int VERSION = 1;
+
+    /** Chunk encodings, as in the app's {@code ColumnarWriter}. */
+    private static final byte DELTA = 1;
+    private static final byte DICTIONARY = 2;
+    private static final byte PLAIN = 3;
+    private static final byte RAW = 4;
+
+    /** Cell kinds. */
+    private static final byte NULL = 0;
+    private static final byte KIND_LONG = 1;
+    private static final byte KIND_DOUBLE = 2;
+    private static final byte KIND_STRING = 3;
+
+    private final ByteBuffer buffer;
+    private final String[] names;
+    private final int[] blockRows;
+    private final int[] blockOffset;
+    private final int[][] chunkOffset;
+    private final int[][] dictionaryOffset;
+    private final String[][] dictionaryCache;
+    private final long rowCount;
+
+    private final int[] pos = new int[1];
+    private final int[] valuePos;
+    private final int[] nullsPos;
+    private final byte[] encoding;
+    private final byte[] kind;
+    private final long[] longValue;
+    private final double[] doubleValue;
+    private final int[] stringRef;
+    private int block = -1;
+    private int rowInBlock;
+    private long row = -1;
+
+    ColumnarFile(ByteBuffer buffer, String name) throws IOException {
+        this.buffer = buffer;
+        try {
+            int length = buffer.limit();
+            int tail = MAGIC.length + 8;
+            if (length < MAGIC.length + 1 + tail) throw new IOException(name + " is not a columnar artifact");
+            for (int i = 0; i < MAGIC.length; i++) {
+                if (buffer.get(i) != MAGIC[i] || buffer.get(length - 4 + i) != MAGIC[i]) {
+                    throw new IOException(name + " is not a complete columnar artifact");
+                }
+            }
+            if (buffer.get(4) != VERSION) throw new IOException("Unsupported version " + buffer.get(4) + " of " + name);
+
+            pos[0] = (int) buffer.getLong(length - tail);
+            int columns = (int) readVarLong();
+            names = new String[columns];
+            for (int i = 0; i < columns; i++) {
+                names[i] = readString();
+                pos[0] += 2; // type and exported flag
+            }
+            int blocks = (int) readVarLong();
+            blockRows = new int[blocks];
+            blockOffset = new int[blocks];
+            chunkOffset = new int[blocks][columns];
+            long rows = 0;
+            for (int b = 0; b < blocks; b++) {
+                blockRows[b] = (int) readVarLong();
+                blockOffset[b] = (int) readVarLong();
+                for (int i = 0; i < columns; i++) chunkOffset[b][i] = (int) readVarLong();
+                rows += blockRows[b];
+            }
+            rowCount = rows;
+            dictionaryOffset = new int[columns][];
+            dictionaryCache = new String[columns][];
+            for (int i = 0; i < columns; i++) {
+                int size = (int) readVarLong();
+                dictionaryOffset[i] = new int[size];
+                dictionaryCache[i] = new String[size];
+                for (int d = 0; d < size; d++) {
+                    dictionaryOffset[i][d] = pos[0];
+                    skipString();
+                }
+            }
+        } catch (RuntimeException e) {
+            throw new IOException("Corrupt columnar artifact " + name, e);
+        }
+        int columns = names.length;
+        valuePos = new int[columns];
+        nullsPos = new int[columns];
+        encoding = new byte[columns];
+        kind = new byte[columns];
+        longValue = new long[columns];
+        doubleValue = new double[columns];
+        stringRef = new int[columns];
+    }
+
+    long getRowCount() {
+        return rowCount;
+    }
+
+    /** Index of column {@code name}, or -1. */
+    int columnIndex(String name) {
+        return Arrays.asList(names).indexOf(name);
+    }
+
+    /** Moves to the next row; false at the end. */
+    boolean next() {
+        if (row + 1 >= rowCount) {
+            row = rowCount;
+            return false;
+        }
+        if (block < 0 || rowInBlock + 1 >= blockRows[block]) {
+            loadBlock(block + 1);
+        } else {
+            rowInBlock++;
+        }
+        row++;
+        decodeRow();
+        return true;
+    }
+
+    private void loadBlock(int b) {
+        block = b;
+        rowInBlock = 0;
+        int n = blockRows[b];
+        for (int i = 0; i < names.length; i++) {
+            int start = blockOffset[b] + chunkOffset[b][i];
+            encoding[i] = buffer.get(start);
+            nullsPos[i] = start + 1;
+            valuePos[i] = start + 1 + (n + 7) / 8;
+            longValue[i] = 0;
+        }
+    }
+
+    private void decodeRow() {
+        for (int i = 0; i < names.length; i++) {
+            if ((buffer.get(nullsPos[i] + (rowInBlock >> 3)) & (1 << (rowInBlock & 7))) != 0) {
+                kind[i] = NULL;
+                continue;
+            }
+            pos[0] = valuePos[i];
+            switch (encoding[i]) {
+                case DELTA:
+                    longValue[i] += unzigzag(readVarLong());
+                    kind[i] = KIND_LONG;
+                    break;
+                case RAW:
+                    doubleValue[i] = buffer.getDouble(pos[0]);
+                    pos[0] += 8;
+                    kind[i] = KIND_DOUBLE;
+                    break;
+                case DICTIONARY:
+                    stringRef[i] = (int) readVarLong();
+                    kind[i] = KIND_STRING;
+                    break;
+                case PLAIN:
+                    stringRef[i] = pos[0];
+                    skipString();
+                    kind[i] = KIND_STRING;
+                    break;
+                default:
+                    kind[i] = buffer.get(pos[0]++);
+                    if (kind[i] == KIND_LONG) {
+                        longValue[i] = unzigzag(readVarLong());
+                    } else if (kind[i] == KIND_DOUBLE) {
+                        doubleValue[i] = buffer.getDouble(pos[0]);
+                        pos[0] += 8;
+                    } else {
+                        stringRef[i] = pos[0];
+                        skipString();
+                    }
+                    break;
+            }
+            valuePos[i] = pos[0];
+        }
+    }
+
+    boolean isNull(int col) {
+        return kind[col] == NULL;
+    }
+
+    /** The column as a long; 0 for NULL. */
+    long getLong(int col) {
+        if (kind[col] == KIND_LONG) return longValue[col];
+        if (kind[col] == KIND_DOUBLE) return (long) doubleValue[col];
+        return 0;
+    }
+
+    String getString(int col) {
+        switch (kind[col]) {
+            case KIND_STRING:
+                if (encoding[col] == DICTIONARY) return dictionaryEntry(col, stringRef[col]);
+                pos[0] = stringRef[col];
+                return readString();
+            case KIND_LONG:
+                return String.valueOf(longValue[col]);
+            case KIND_DOUBLE:
+                return String.valueOf(doubleValue[col]);
+            default:
+                return null;
+        }
+    }
+
+    private String dictionaryEntry(int col, int code) {
+        String value = dictionaryCache[col][code];
+        if (value == null) {
+            pos[0] = dictionaryOffset[col][code];
+            value = readString();
+            dictionaryCache[col][code] = value;
+        }
+        return value;
+    }
+
+    private long readVarLong() {
+        long value = 0;
+        int shift = 0;
+        while (true) {
+            byte b = buffer.get(pos[0]++);
+            value |= (long) (b & 0x7F) << shift;
+            if (b >= 0) return value;
+            shift += 7;
+        }
+    }
+
+    private String readString() {
+        int length = (int) readVarLong();
+        byte[] bytes = new byte[length];
+        for (int i = 0; i < length; i++) bytes[i] = buffer.get(pos[0] + i);
+        pos[0] += length;
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private void skipString() {
+        int length = (int) readVarLong();
+        pos[0] += length;
+    }
+
+    private static long unzigzag(long value) {
+        return (value >>> 1) ^ -(value & 1);
+    }
+}
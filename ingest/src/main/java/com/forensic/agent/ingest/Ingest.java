@@ -0,0 +1,262 @@
+package com.forensic.agent.ingest;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Ingests a batch of acquisitions on a fork/join pool.
+ *
+ * Each acquisition is one task that forks a parse task per registered {@link RecordType}
+ * and hash tasks over the rest of its manifest (blobs, other artifacts), so a large dump
+ * spreads over idle workers while small ones finish on their own. Every task streams, so
+ * memory is bounded by the number of workers, not by the size or count of the dumps.
+ * Handlers run on worker threads and must be thread-safe.
+ *
+ * A failure (missing file, digest mismatch, malformed JSON, handler exception) is recorded
+ * in that acquisition's {@link Report} and does not stop the others.
+ */
+public class Ingest {
+    /** Manifest entries hashed per task. */
+    private static final int HASH_CHUNK = 64;
+
+    public interface Handler<T> {
+        void handle(Acquisition from, T record) throws IOException;
+    }
+
+    private final int parallelism;
+    private final Map<RecordType<?>, Handler<?>> handlers = new LinkedHashMap<>();
+
+    public Ingest(int parallelism) {
+        if (parallelism < 1) throw new IllegalArgumentException("Invalid parallelism: " + parallelism);
+        this.parallelism = parallelism;
+    }
+
+    public Ingest() {
+        this(Runtime.getRuntime().availableProcessors());
+    }
+
+    /** Sends every record of {@code type} to {@code handler}; types without a handler are only verified. */
+    public <T> Ingest on(RecordType<T> type, Handler<? super T> handler) {
+        handlers.put(type, handler);
+        return this;
+    }
+
+    /** Ingests {@code acquisitions} (directories or bundle zips) and returns a report for each, in order. */
+    public List<Report> run(List<Path> acquisitions) {
+        final List<Report> reports = new ArrayList<>();
+        final List<AcquisitionTask> tasks = new ArrayList<>();
+        for (Path path : acquisitions) {
+            Report report = new Report(path);
+            reports.add(report);
+            tasks.add(new AcquisitionTask(report));
+        }
+        ForkJoinPool pool = new ForkJoinPool(parallelism);
+        try {
+            pool.invoke(new RecursiveAction() {
+                @Override
+                protected void compute() {
+                    invokeAll(tasks);
+                }
+            });
+        } finally {
+            pool.shutdown();
+        }
+        return reports;
+    }
+
+    private class AcquisitionTask extends RecursiveAction {
+        private final Report report;
+
+        AcquisitionTask(Report report) {
+            this.report = report;
+        }
+
+        @Override
+        protected void compute() {
+            long started = System.nanoTime();
+            try (Acquisition acquisition = Acquisition.open(report.path)) {
+                Manifest manifest = acquisition.getManifest();
+                report.device = manifest.getDevice();
+                report.generated = manifest.getGenerated();
+                if (manifest.getEntries().isEmpty()) report.fail(Manifest.FILE_NAME + " is missing or empty");
+
+                List<RecursiveAction> subtasks = new ArrayList<>();
+                Set<String> parsed = new HashSet<>();
+                for (Map.Entry<RecordType<?>, Handler<?>> e : handlers.entrySet()) {
+                    List<String> parts = acquisition.partsOf(e.getKey());
+                    parsed.addAll(parts);
+                    if (!parts.isEmpty()) subtasks.add(parseTask(acquisition, e.getKey(), parts, e.getValue()));
+                }
+                List<String> rest = new ArrayList<>();
+                for (String file : manifest.getEntries().keySet()) {
+                    if (!parsed.contains(file)) rest.add(file);
+                }
+                for (int i = 0; i < rest.size(); i += HASH_CHUNK) {
+                    subtasks.add(new HashTask(acquisition, report, rest.subList(i, Math.min(rest.size(), i + HASH_CHUNK))));
+                }
+                invokeAll(subtasks);
+            } catch (IOException | RuntimeException e) {
+                report.fail(e.toString());
+            }
+            report.nanos = System.nanoTime() - started;
+        }
+
+        private <T> ParseTask<T> parseTask(Acquisition acquisition, RecordType<T> type, List<String> parts,
+                                           Handler<?> handler) {
+            @SuppressWarnings("unchecked")
+            Handler<? super T> typed = (Handler<? super T>) handler;
+            return new ParseTask<>(acquisition, report, type, parts, typed);
+        }
+    }
+
+    private static class ParseTask<T> extends RecursiveAction {
+        private final Acquisition acquisition;
+        private final Report report;
+        private final RecordType<T> type;
+        private final List<String> parts;
+        private final Handler<? super T> handler;
+
+        ParseTask(Acquisition acquisition, Report report, RecordType<T> type, List<String> parts,
+                  Handler<? super T> handler) {
+            this.acquisition = acquisition;
+            this.report = report;
+            this.type = type;
+            this.parts = parts;
+            this.handler = handler;
+        }
+
+        @Override
+        protected void compute() {
+            RecordStream<T> records = new RecordStream<>(acquisition, type, parts);
+            try {
+                T record;
+                while ((record = records.next()) != null) handler.handle(acquisition, record);
+            } catch (IOException | RuntimeException e) {
+                report.fail(type + ": " + e.getMessage());
+            } finally {
+                try {
+                    records.close();
+                } catch (IOException e) {
+                    report.fail(type + ": " + e.getMessage());
+                }
+                report.parsed(type, records);
+            }
+        }
+    }
+
+    private static class HashTask extends RecursiveAction {
+        private final Acquisition acquisition;
+        private final Report report;
+        private final List<String> files;
+
+        HashTask(Acquisition acquisition, Report report, List<String> files) {
+            this.acquisition = acquisition;
+            this.report = report;
+            this.files = files;
+        }
+
+        @Override
+        protected void compute() {
+            for (String file : files) {
+                try {
+                    report.hashed(acquisition.hash(file));
+                } catch (IOException e) {
+                    report.fail(e.getMessage() != null && e.getMessage().startsWith(file) ? e.getMessage() : file + ": " + e);
+                }
+            }
+        }
+    }
+
+    /** Outcome of ingesting one acquisition; complete once {@link #run} returns. */
+    public static final class Report {
+        public final Path path;
+        private String device;
+        private long generated;
+        private long nanos;
+        private final Map<String, Long> records = new LinkedHashMap<>();
+        private final List<String> unverified = new ArrayList<>();
+        private final List<String> failures = new ArrayList<>();
+        private int verifiedFiles;
+        private long bytes;
+
+        Report(Path path) {
+            this.path = path;
+        }
+
+        synchronized void parsed(RecordType<?> type, RecordStream<?> stream) {
+            records.put(type.name, stream.getCount());
+            verifiedFiles += stream.getVerifiedFiles();
+            unverified.addAll(stream.getUnverifiedFiles());
+            bytes += stream.getBytes();
+        }
+
+        synchronized void hashed(long size) {
+            verifiedFiles++;
+            bytes += size;
+        }
+
+        synchronized void fail(String message) {
+            failures.add(message);
+        }
+
+        public String getDevice() {
+            return device;
+        }
+
+        public long getGenerated() {
+            return generated;
+        }
+
+        /** Records handed to handlers, by type name. */
+        public synchronized Map<String, Long> getRecords() {
+            return Collections.unmodifiableMap(new LinkedHashMap<>(records));
+        }
+
+        public synchronized long getRecords(RecordType<?> type) {
+            Long n = records.get(type.name);
+            return n != null ? n : 0;
+        }
+
+        /** Files read in full whose size and digest match the manifest. */
+        public synchronized int getVerifiedFiles() {
+            return verifiedFiles;
+        }
+
+        /** Files parsed that the manifest does not list. */
+        public synchronized List<String> getUnverifiedFiles() {
+            return new ArrayList<>(unverified);
+        }
+
+        public synchronized long getBytes() {
+            return bytes;
+        }
+
+        public long getNanos() {
+            return nanos;
+        }
+
+        public synchronized List<String> getFailures() {
+            return new ArrayList<>(failures);
+        }
+
+        /** True when every file was read and verified. */
+        public synchronized boolean isOk() {
+            return failures.isEmpty() && unverified.isEmpty();
+        }
+
+        @Override
+        public synchronized String toString() {
+            return path + " (" + device + "): " + records + ", " + verifiedFiles + " files / " + bytes
+                    + " bytes verified" + (isOk() ? "" : ", failures " + failures + ", unverified " + unverified);
+        }
+    }
+}
@@ -0,0 +1,134 @@
+package com.forensic.agent.ingest;
+
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * The agent's {@code manifest.json}: size, row count and digests of every artifact, keyed by
+ * its path relative to the acquisition root ({@code sms.json}, {@code segments/sms/000001.json},
+ * {@code blobs/ab/<sha256>}).
+ */
+public final class Manifest {
+    public static final String FILE_NAME = "manifest.json";
+
+    /** One recorded artifact. */
+    public static final class Entry {
+        public final String file;
+        public final long size;
+        /** Records in the artifact, -1 for files without rows such as blobs. */
+        public final long rows;
+        public final String sha256;
+        public final String md5;
+        public final long started;
+        public final long finished;
+
+        Entry(String file, long size, long rows, String sha256, String md5, long started, long finished) {
+            this.file = file;
+            this.size = size;
+            this.rows = rows;
+            this.sha256 = sha256;
+            this.md5 = md5;
+            this.started = started;
+            this.finished = finished;
+        }
+    }
+
+    static final Manifest EMPTY = new Manifest(0, null, Collections.<String, Entry>emptyMap());
+
+    private final long generated;
+    private final String device;
+    private final Map<String, Entry> entries;
+
+    private Manifest(long generated, String device, Map<String, Entry> entries) {
+        this.generated = generated;
+        this.device = device;
+        this.entries = entries;
+    }
+
+    static Manifest read(InputStream in) throws IOException {
+        long generated = 0;
+        String device = null;
+        Map<String, Entry> entries = new LinkedHashMap<>();
+        try (JsonReader json = new JsonReader(new InputStreamReader(in, StandardCharsets.UTF_8))) {
+            json.beginObject();
+            while (json.hasNext()) {
+                String name = json.nextName();
+                if ("generated".equals(name)) {
+                    generated = json.nextLong();
+                } else if ("device".equals(name)) {
+                    device = json.nextString();
+                } else if ("artifacts".equals(name)) {
+                    json.beginArray();
+                    while (json.hasNext()) {
+                        Entry e = readEntry(json);
+                        entries.put(e.file, e);
+                    }
+                    json.endArray();
+                } else {
+                    json.skipValue();
+                }
+            }
+            json.endObject();
+        } catch (IllegalStateException | NumberFormatException e) {
+            throw new IOException("Malformed " + FILE_NAME + ": " + e.getMessage(), e);
+        }
+        return new Manifest(generated, device, Collections.unmodifiableMap(entries));
+    }
+
+    private static Entry readEntry(JsonReader json) throws IOException {
+        String file = null;
+        String sha256 = null;
+        String md5 = null;
+        long size = -1;
+        long rows = -1;
+        long started = 0;
+        long finished = 0;
+        json.beginObject();
+        while (json.hasNext()) {
+            String name = json.nextName();
+            if (json.peek() == JsonToken.NULL) {
+                json.skipValue();
+                continue;
+            }
+            switch (name) {
+                case "file": file = json.nextString(); break;
+                case "size": size = json.nextLong(); break;
+                case "rows": rows = json.nextLong(); break;
+                case "sha256": sha256 = json.nextString(); break;
+                case "md5": md5 = json.nextString(); break;
+                case "started": started = json.nextLong(); break;
+                case "finished": finished = json.nextLong(); break;
+                default: json.skipValue(); break;
+            }
+        }
+        json.endObject();
+        if (file == null || sha256 == null) throw new IOException("Manifest entry without file or sha256");
+        return new Entry(file, size, rows, sha256, md5, started, finished);
+    }
+
+    /** When the agent wrote the manifest, in epoch milliseconds; 0 if unknown. */
+    public long getGenerated() {
+        return generated;
+    }
+
+    /** Manufacturer and model of the source device, or null. */
+    public String getDevice() {
+        return device;
+    }
+
+    public Map<String, Entry> getEntries() {
+        return entries;
+    }
+
+    public Entry get(String file) {
+        return entries.get(file);
+    }
+}
@@ -0,0 +1,177 @@
+package com.forensic.agent.ingest;
+
+import com.google.gson.stream.JsonReader;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Pull stream of one record type from an {@link Acquisition}.
+ *
+ * JSON parts are parsed with a streaming reader, so only the current record is in memory,
+ * and hashed on the same pass: when a part's array ends its remaining bytes are drained and
+ * its size, SHA-256 and row count are checked against the manifest before the next part
+ * opens. Records of a part that turns out to be corrupt have therefore already been
+ * returned; the failing {@link #next()} is what tells the caller to discard them. A
+ * columnar part is hashed as a whole before it is mapped and decoded.
+ */
+public final class RecordStream<T> implements Closeable {
+    private final Acquisition acquisition;
+    private final RecordType<T> type;
+    private final List<String> parts;
+    private final List<String> unverified = new ArrayList<>();
+    private int nextPart;
+    private long count;
+    private int verified;
+    private long bytes;
+
+    private String part;
+    private long partRows;
+    private HashingInputStream hashing;
+    private JsonReader json;
+    private ColumnarFile columnar;
+    private int[] index;
+    private FileChannel channel;
+    private Path temp;
+
+    RecordStream(Acquisition acquisition, RecordType<T> type, List<String> parts) {
+        this.acquisition = acquisition;
+        this.type = type;
+        this.parts = parts;
+    }
+
+    public RecordType<T> getType() {
+        return type;
+    }
+
+    /** Files this stream reads, in order. */
+    public List<String> getParts() {
+        return parts;
+    }
+
+    /** The next record, or null after the last one of the last part. */
+    public T next() throws IOException {
+        while (true) {
+            if (json != null) {
+                try {
+                    if (json.hasNext()) {
+                        partRows++;
+                        count++;
+                        return type.read(json);
+                    }
+                    json.endArray();
+                } catch (IllegalStateException | NumberFormatException e) {
+                    throw new IOException(part + ": " + e.getMessage(), e);
+                }
+                hashing.drain();
+                finishPart(hashing.getCount(), hashing.sha256Hex(), partRows);
+            } else if (columnar != null) {
+                if (columnar.next()) {
+                    count++;
+                    return type.read(columnar, index);
+                }
+                closePart();
+            } else if (nextPart < parts.size()) {
+                openPart(parts.get(nextPart++));
+            } else {
+                return null;
+            }
+        }
+    }
+
+    private void openPart(String file) throws IOException {
+        part = file;
+        partRows = 0;
+        if (!file.endsWith(ColumnarFile.EXTENSION)) {
+            hashing = new HashingInputStream(acquisition.open(file));
+            json = new JsonReader(new InputStreamReader(hashing, StandardCharsets.UTF_8));
+            try {
+                json.beginArray();
+            } catch (IllegalStateException e) {
+                throw new IOException(file + ": " + e.getMessage(), e);
+            }
+            return;
+        }
+
+        // A bundle entry is copied out while it is hashed so it can be mapped like a file
+        Path local = acquisition.file(file);
+        try (HashingInputStream in = new HashingInputStream(acquisition.open(file))) {
+            if (local == null) {
+                temp = Files.createTempFile("ingest", ColumnarFile.EXTENSION);
+                Files.copy(in, temp, StandardCopyOption.REPLACE_EXISTING);
+                local = temp;
+            } else {
+                in.drain();
+            }
+            channel = FileChannel.open(local, StandardOpenOption.READ);
+            if (channel.size() > Integer.MAX_VALUE) throw new IOException(file + " is too large to map");
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            ColumnarFile decoded = new ColumnarFile(buffer, file);
+            index = new int[type.columns.length];
+            for (int i = 0; i < index.length; i++) {
+                index[i] = decoded.columnIndex(type.columns[i]);
+                if (index[i] < 0) throw new IOException(file + " has no column " + type.columns[i]);
+            }
+            finishPart(in.getCount(), in.sha256Hex(), decoded.getRowCount());
+            columnar = decoded;
+        }
+    }
+
+    private void finishPart(long size, String sha256, long rows) throws IOException {
+        if (json != null) closePart();
+        if (acquisition.verify(part, size, sha256, rows)) verified++;
+        else unverified.add(part);
+        bytes += size;
+    }
+
+    private void closePart() throws IOException {
+        try {
+            if (json != null) json.close();
+            if (channel != null) channel.close();
+        } finally {
+            json = null;
+            hashing = null;
+            columnar = null;
+            channel = null;
+            if (temp != null) {
+                Files.deleteIfExists(temp);
+                temp = null;
+            }
+        }
+    }
+
+    /** Records returned so far. */
+    public long getCount() {
+        return count;
+    }
+
+    /** Parts read to the end and matched against the manifest. */
+    public int getVerifiedFiles() {
+        return verified;
+    }
+
+    /** Parts read to the end that the manifest does not list. */
+    public List<String> getUnverifiedFiles() {
+        return unverified;
+    }
+
+    /** Bytes of the parts read to the end. */
+    public long getBytes() {
+        return bytes;
+    }
+
+    @Override
+    public void close() throws IOException {
+        closePart();
+    }
+}
@@ -0,0 +1,278 @@
+package com.forensic.agent.ingest;
+
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * An artifact the agent writes and how to turn its entries into {@code T}: one JSON object
+ * at a time from a {@link JsonReader}, and for the sources the agent can also write in the
+ * columnar format, one row of a {@link ColumnarFile}.
+ */
+public abstract class RecordType<T> {
+
+    public static final RecordType<Records.Contact> CONTACTS = new RecordType<Records.Contact>("contacts", "contacts.json") {
+        @Override
+        Records.Contact read(JsonReader json) throws IOException {
+            String id = null;
+            String name = null;
+            List<String> phones = new ArrayList<>();
+            List<String> emails = new ArrayList<>();
+            List<Records.Organization> organizations = new ArrayList<>();
+            List<String> addresses = new ArrayList<>();
+            json.beginObject();
+            while (json.hasNext()) {
+                String field = json.nextName();
+                if (json.peek() == JsonToken.NULL) {
+                    json.skipValue();
+                    continue;
+                }
+                switch (field) {
+                    case "id": id = json.nextString(); break;
+                    case "name": name = json.nextString(); break;
+                    case "phones": readStrings(json, phones); break;
+                    case "emails": readStrings(json, emails); break;
+                    case "addresses": readStrings(json, addresses); break;
+                    case "organizations":
+                        json.beginArray();
+                        while (json.hasNext()) {
+                            String company = null;
+                            String title = null;
+                            json.beginObject();
+                            while (json.hasNext()) {
+                                String key = json.nextName();
+                                if ("company".equals(key)) company = json.nextString();
+                                else if ("title".equals(key)) title = json.nextString();
+                                else json.skipValue();
+                            }
+                            json.endObject();
+                            organizations.add(new Records.Organization(company, title));
+                        }
+                        json.endArray();
+                        break;
+                    default: json.skipValue(); break;
+                }
+            }
+            json.endObject();
+            return new Records.Contact(id, name, phones, emails, organizations, addresses);
+        }
+    };
+
+    public static final RecordType<Records.Sms> SMS = new RecordType<Records.Sms>("sms", "sms.json",
+            "address", "body", "date", "type") {
+        @Override
+        Records.Sms read(JsonReader json) throws IOException {
+            String address = null;
+            String body = null;
+            long date = 0;
+            long type = 0;
+            json.beginObject();
+            while (json.hasNext()) {
+                String field = json.nextName();
+                if (json.peek() == JsonToken.NULL) {
+                    json.skipValue();
+                    continue;
+                }
+                switch (field) {
+                    case "address": address = json.nextString(); break;
+                    case "body": body = json.nextString(); break;
+                    case "date": date = json.nextLong(); break;
+                    case "type": type = json.nextLong(); break;
+                    default: json.skipValue(); break;
+                }
+            }
+            json.endObject();
+            return new Records.Sms(address, body, date, type);
+        }
+
+        @Override
+        Records.Sms read(ColumnarFile row, int[] index) {
+            return new Records.Sms(row.getString(index[0]), row.getString(index[1]),
+                    row.getLong(index[2]), row.getLong(index[3]));
+        }
+    };
+
+    public static final RecordType<Records.Call> CALLS = new RecordType<Records.Call>("calls", "call_logs.json",
+            "number", "date", "duration", "type") {
+        @Override
+        Records.Call read(JsonReader json) throws IOException {
+            String number = null;
+            long date = 0;
+            long duration = 0;
+            long type = 0;
+            json.beginObject();
+            while (json.hasNext()) {
+                String field = json.nextName();
+                if (json.peek() == JsonToken.NULL) {
+                    json.skipValue();
+                    continue;
+                }
+                switch (field) {
+                    case "number": number = json.nextString(); break;
+                    case "date": date = json.nextLong(); break;
+                    case "duration": duration = json.nextLong(); break;
+                    case "type": type = json.nextLong(); break;
+                    default: json.skipValue(); break;
+                }
+            }
+            json.endObject();
+            return new Records.Call(number, date, duration, type);
+        }
+
+        @Override
+        Records.Call read(ColumnarFile row, int[] index) {
+            return new Records.Call(row.getString(index[0]), row.getLong(index[1]),
+                    row.getLong(index[2]), row.getLong(index[3]));
+        }
+    };
+
+    public static final RecordType<Records.CalendarEvent> CALENDAR = new RecordType<Records.CalendarEvent>("calendar",
+            "calendar.json", "id", "title", "dtstart", "dtend") {
+        @Override
+        Records.CalendarEvent read(JsonReader json) throws IOException {
+            long id = 0;
+            String title = null;
+            long start = 0;
+            long end = 0;
+            json.beginObject();
+            while (json.hasNext()) {
+                String field = json.nextName();
+                if (json.peek() == JsonToken.NULL) {
+                    json.skipValue();
+                    continue;
+                }
+                switch (field) {
+                    case "id": id = json.nextLong(); break;
+                    case "title": title = json.nextString(); break;
+                    case "dtstart": start = json.nextLong(); break;
+                    case "dtend": end = json.nextLong(); break;
+                    default: json.skipValue(); break;
+                }
+            }
+            json.endObject();
+            return new Records.CalendarEvent(id, title, start, end);
+        }
+
+        @Override
+        Records.CalendarEvent read(ColumnarFile row, int[] index) {
+            return new Records.CalendarEvent(row.getLong(index[0]), row.getString(index[1]),
+                    row.getLong(index[2]), row.getLong(index[3]));
+        }
+    };
+
+    public static final RecordType<Records.Mms> MMS = new RecordType<Records.Mms>("mms", "mms.json") {
+        @Override
+        Records.Mms read(JsonReader json) throws IOException {
+            long id = 0;
+            long threadId = 0;
+            long date = 0;
+            long box = 0;
+            String subject = null;
+            List<Records.Part> parts = new ArrayList<>();
+            json.beginObject();
+            while (json.hasNext()) {
+                String field = json.nextName();
+                if (json.peek() == JsonToken.NULL) {
+                    json.skipValue();
+                    continue;
+                }
+                switch (field) {
+                    case "id": id = json.nextLong(); break;
+                    case "thread_id": threadId = json.nextLong(); break;
+                    case "date": date = json.nextLong(); break;
+                    case "msg_box": box = json.nextLong(); break;
+                    case "subject": subject = json.nextString(); break;
+                    case "parts":
+                        json.beginArray();
+                        while (json.hasNext()) parts.add(readPart(json));
+                        json.endArray();
+                        break;
+                    default: json.skipValue(); break;
+                }
+            }
+            json.endObject();
+            return new Records.Mms(id, threadId, date, box, subject, parts);
+        }
+    };
+
+    /** Every type, in the order {@link Ingest} schedules them. */
+    public static final List<RecordType<?>> ALL = Collections.unmodifiableList(
+            Arrays.<RecordType<?>>asList(CONTACTS, SMS, CALLS, CALENDAR, MMS));
+
+    public final String name;
+    /** JSON artifact name, e.g. {@code sms.json}. */
+    public final String artifact;
+    /** Columns {@link #read(ColumnarFile, int[])} needs, in order; empty when there is no columnar form. */
+    final String[] columns;
+
+    RecordType(String name, String artifact, String... columns) {
+        this.name = name;
+        this.artifact = artifact;
+        this.columns = columns;
+    }
+
+    /** Reads one array element, positioned before its {@code BEGIN_OBJECT}. */
+    abstract T read(JsonReader json) throws IOException;
+
+    /** Reads the current row; {@code index} maps {@link #columns} to the file's columns. */
+    T read(ColumnarFile row, int[] index) {
+        throw new UnsupportedOperationException(name + " has no columnar form");
+    }
+
+    /** Base name shared by the artifact, its segment directory and its {@code .col} file. */
+    String baseName() {
+        int dot = artifact.lastIndexOf('.');
+        return dot > 0 ? artifact.substring(0, dot) : artifact;
+    }
+
+    @Override
+    public String toString() {
+        return name;
+    }
+
+    private static void readStrings(JsonReader json, List<String> into) throws IOException {
+        json.beginArray();
+        while (json.hasNext()) {
+            if (json.peek() == JsonToken.NULL) json.skipValue();
+            else into.add(json.nextString());
+        }
+        json.endArray();
+    }
+
+    private static Records.Part readPart(JsonReader json) throws IOException {
+        long seq = 0;
+        String contentType = null;
+        String name = null;
+        String filename = null;
+        String text = null;
+        String sha256 = null;
+        long size = -1;
+        String error = null;
+        json.beginObject();
+        while (json.hasNext()) {
+            String field = json.nextName();
+            if (json.peek() == JsonToken.NULL) {
+                json.skipValue();
+                continue;
+            }
+            switch (field) {
+                case "seq": seq = json.nextLong(); break;
+                case "content_type": contentType = json.nextString(); break;
+                case "name": name = json.nextString(); break;
+                case "filename": filename = json.nextString(); break;
+                case "text": text = json.nextString(); break;
+                case "sha256": sha256 = json.nextString(); break;
+                case "size": size = json.nextLong(); break;
+                case "error": error = json.nextString(); break;
+                default: json.skipValue(); break;
+            }
+        }
+        json.endObject();
+        return new Records.Part(seq, contentType, name, filename, text, sha256, size, error);
+    }
+}
@@ -0,0 +1,140 @@
+package com.forensic.agent.ingest;
+
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Typed records for the agent's artifacts. Fields keep the artifact's names and units
+ * (dates in epoch milliseconds); a string the agent omitted is null and a list is empty.
+ */
+public final class Records {
+
+    private Records() {}
+
+    /** One entry of {@code contacts.json}. */
+    public static final class Contact {
+        public final String id;
+        public final String name;
+        public final List<String> phones;
+        public final List<String> emails;
+        public final List<Organization> organizations;
+        public final List<String> addresses;
+
+        Contact(String id, String name, List<String> phones, List<String> emails,
+                List<Organization> organizations, List<String> addresses) {
+            this.id = id;
+            this.name = name;
+            this.phones = Collections.unmodifiableList(phones);
+            this.emails = Collections.unmodifiableList(emails);
+            this.organizations = Collections.unmodifiableList(organizations);
+            this.addresses = Collections.unmodifiableList(addresses);
+        }
+    }
+
+    public static final class Organization {
+        public final String company;
+        public final String title;
+
+        Organization(String company, String title) {
+            this.company = company;
+            this.title = title;
+        }
+    }
+
+    /** One entry of {@code sms.json}. */
+    public static final class Sms {
+        public final String address;
+        public final String body;
+        public final long date;
+        public final long type;
+
+        Sms(String address, String body, long date, long type) {
+            this.address = address;
+            this.body = body;
+            this.date = date;
+            this.type = type;
+        }
+    }
+
+    /** One entry of {@code call_logs.json}. */
+    public static final class Call {
+        public final String number;
+        public final long date;
+        /** Seconds. */
+        public final long duration;
+        public final long type;
+
+        Call(String number, long date, long duration, long type) {
+            this.number = number;
+            this.date = date;
+            this.duration = duration;
+            this.type = type;
+        }
+    }
+
+    /** One entry of {@code calendar.json}. */
+    public static final class CalendarEvent {
+        public final long id;
+        public final String title;
+        public final long start;
+        public final long end;
+
+        CalendarEvent(long id, String title, long start, long end) {
+            this.id = id;
+            this.title = title;
+            this.start = start;
+            this.end = end;
+        }
+    }
+
+    /** One entry of {@code mms.json}. */
+    public static final class Mms {
+        public final long id;
+        public final long threadId;
+        public final long date;
+        public final long box;
+        public final String subject;
+        public final List<Part> parts;
+
+        Mms(long id, long threadId, long date, long box, String subject, List<Part> parts) {
+            this.id = id;
+            this.threadId = threadId;
+            this.date = date;
+            this.box = box;
+            this.subject = subject;
+            this.parts = Collections.unmodifiableList(parts);
+        }
+    }
+
+    /**
+     * One MMS part: inline {@link #text}, or binary content stored as {@code blobs/} entry
+     * {@link #sha256}, or the {@link #error} that kept it from being copied.
+     */
+    public static final class Part {
+        public final long seq;
+        public final String contentType;
+        public final String name;
+        public final String filename;
+        public final String text;
+        public final String sha256;
+        public final long size;
+        public final String error;
+
+        Part(long seq, String contentType, String name, String filename, String text, String sha256,
+             long size, String error) {
+            this.seq = seq;
+            this.contentType = contentType;
+            this.name = name;
+            this.filename = filename;
+            this.text = text;
+            this.sha256 = sha256;
+            this.size = size;
+            this.error = error;
+        }
+
+        /** Path of the part's content relative to the acquisition root, or null. */
+        public String blobPath() {
+            return sha256 == null ? null : "blobs/" + sha256.substring(0, 2) + "/" + sha256;
+        }
+    }
+}
@@ -0,0 +1,455 @@
+package com.forensic.agent.ingest;
+
+import com.google.gson.stream.JsonWriter;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Stream;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * Ingests synthetic acquisitions laid out the way the agent writes them: JSON artifacts
+ * with delta segments, blobs and columnar files recorded in a manifest, next to files the
+ * manifest does not list, and bundles of the manifest followed by its entries.
+ */
+public class IngestTest {
+    private static final int DEVICES = 50;
+    private static final int SMS = 2000;
+    private static final int SMS_DELTA = 150;
+    private static final int CALLS = 500;
+    private static final int CONTACTS = 100;
+    private static final int EVENTS = 40;
+    private static final int MMS = 30;
+
+    private Path root;
+
+    @Before
+    public void setUp() throws IOException {
+        root = Files.createTempDirectory("ingest");
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        try (Stream<Path> files = Files.walk(root)) {
+            files.sorted(Comparator.reverseOrder()).forEach(p -> p.toFile().delete());
+        }
+    }
+
+    @Test
+    public void ingestsBatchAcrossCores() throws IOException {
+        List<Path> dumps = new ArrayList<>();
+        for (int i = 0; i < DEVICES; i++) dumps.add(acquisition(root.resolve("device" + i), i));
+
+        final AtomicLong sms = new AtomicLong();
+        final AtomicLong smsDates = new AtomicLong();
+        final AtomicLong phones = new AtomicLong();
+        final AtomicLong blobParts = new AtomicLong();
+        final Map<String, AtomicLong> callsPerDevice = new ConcurrentHashMap<>();
+        Ingest ingest = new Ingest(4)
+                .on(RecordType.SMS, (from, r) -> {
+                    sms.incrementAndGet();
+                    smsDates.addAndGet(r.date % 1000);
+                })
+                .on(RecordType.CALLS, (from, r) ->
+                        callsPerDevice.computeIfAbsent(from.getManifest().getDevice(), d -> new AtomicLong()).incrementAndGet())
+                .on(RecordType.CONTACTS, (from, r) -> phones.addAndGet(r.phones.size()))
+                .on(RecordType.MMS, (from, r) -> {
+                    for (Records.Part p : r.parts) if (p.sha256 != null) blobParts.incrementAndGet();
+                });
+
+        List<Ingest.Report> reports = ingest.run(dumps);
+
+        assertEquals(DEVICES, reports.size());
+        for (int i = 0; i < DEVICES; i++) {
+            Ingest.Report report = reports.get(i);
+            assertTrue(report.toString(), report.isOk());
+            assertEquals(dumps.get(i), report.path);
+            assertEquals("Pixel " + i, report.getDevice());
+            assertEquals(SMS + SMS_DELTA, report.getRecords(RecordType.SMS));
+            assertEquals(CALLS, report.getRecords(RecordType.CALLS));
+            assertEquals(0, report.getRecords(RecordType.CALENDAR));
+            // sms, its segment, calls, contacts, mms, calendar (hashed only), the blob
+            assertEquals(7, report.getVerifiedFiles());
+        }
+        assertEquals(DEVICES * (long) (SMS + SMS_DELTA), sms.get());
+        assertEquals(DEVICES * expectedDateSum(), smsDates.get());
+        assertEquals(DEVICES * (long) CONTACTS * 2, phones.get());
+        assertEquals(DEVICES * (long) MMS / 3, blobParts.get());
+        assertEquals(DEVICES, callsPerDevice.size());
+        for (AtomicLong n : callsPerDevice.values()) assertEquals(CALLS, n.get());
+    }
+
+    @Test
+    public void readsBundleLikeDirectory() throws IOException {
+        Path dir = acquisition(root.resolve("device"), 7);
+        Path zip = bundle(dir, root.resolve("bundle.zip"));
+
+        try (Acquisition bundle = Acquisition.open(zip); Acquisition plain = Acquisition.open(dir)) {
+            assertTrue(bundle.isBundle());
+            assertEquals(plain.getManifest().getEntries().keySet(), bundle.getManifest().getEntries().keySet());
+            assertEquals(plain.partsOf(RecordType.SMS), bundle.partsOf(RecordType.SMS));
+            assertEquals(2, bundle.partsOf(RecordType.SMS).size());
+            try (RecordStream<Records.Sms> a = bundle.records(RecordType.SMS);
+                 RecordStream<Records.Sms> b = plain.records(RecordType.SMS)) {
+                Records.Sms x;
+                while ((x = a.next()) != null) {
+                    Records.Sms y = b.next();
+                    assertEquals(y.address, x.address);
+                    assertEquals(y.body, x.body);
+                    assertEquals(y.date, x.date);
+                }
+                assertNull(b.next());
+                assertEquals(2, a.getVerifiedFiles());
+                assertTrue(a.getUnverifiedFiles().isEmpty());
+            }
+            try (RecordStream<Records.Contact> contacts = bundle.records(RecordType.CONTACTS)) {
+                Records.Contact c = contacts.next();
+                assertEquals("1", c.id);
+                assertEquals("Contact \u00e9 1", c.name);
+                assertEquals(2, c.phones.size());
+                assertEquals("Acme", c.organizations.get(0).company);
+                assertNull(c.organizations.get(0).title);
+            }
+        }
+
+        Ingest.Report report = new Ingest(2).on(RecordType.MMS, (from, r) -> { }).run(listOf(zip)).get(0);
+        assertTrue(report.toString(), report.isOk());
+        assertEquals(MMS, report.getRecords(RecordType.MMS));
+        assertEquals(7, report.getVerifiedFiles());
+    }
+
+    @Test
+    public void reportsTamperedAndMissingFiles() throws IOException {
+        Path good = acquisition(root.resolve("good"), 1);
+        Path tampered = acquisition(root.resolve("tampered"), 2);
+        Path missing = acquisition(root.resolve("missing"), 3);
+        byte[] sms = Files.readAllBytes(tampered.resolve("sms.json"));
+        int at = new String(sms, StandardCharsets.UTF_8).indexOf("message 5 ");
+        sms[at + 8] = '6';
+        Files.write(tampered.resolve("sms.json"), sms);
+        Files.delete(missing.resolve("blobs").resolve(blobSha(3).substring(0, 2)).resolve(blobSha(3)));
+
+        List<Ingest.Report> reports = new Ingest(3).on(RecordType.SMS, (from, r) -> { })
+                .run(listOf(good, tampered, missing));
+        assertTrue(reports.get(0).isOk());
+        assertFalse(reports.get(1).isOk());
+        assertEquals(1, reports.get(1).getFailures().size());
+        assertTrue(reports.get(1).getFailures().get(0), reports.get(1).getFailures().get(0).contains("sms.json: sha256"));
+        assertFalse(reports.get(2).isOk());
+        assertTrue(reports.get(2).getFailures().get(0), reports.get(2).getFailures().get(0).startsWith("blobs/"));
+        assertEquals(SMS + SMS_DELTA, reports.get(2).getRecords(RecordType.SMS));
+
+        try (Acquisition a = Acquisition.open(tampered); RecordStream<Records.Sms> records = a.records(RecordType.SMS)) {
+            try {
+                while (records.next() != null) {
+                    // The mismatch surfaces once the part has been read
+                }
+                fail("Tampered sms.json was accepted");
+            } catch (IOException expected) {
+                assertEquals(SMS, records.getCount());
+            }
+        }
+    }
+
+    @Test
+    public void readsColumnarArtifact() throws IOException {
+        Path dir = acquisition(root.resolve("columnar"), 4);
+        Files.delete(dir.resolve("call_logs.json"));
+        Map<String, Long> entries = entries(dir);
+        Files.write(dir.resolve("call_logs.col"), callsColumnar());
+        entries.remove("call_logs.json");
+        entries.put("call_logs.col", 5000L);
+        writeManifest(dir, 4, entries);
+
+        try (Acquisition a = Acquisition.open(dir); RecordStream<Records.Call> calls = a.records(RecordType.CALLS)) {
+            assertEquals(listOf("call_logs.col"), calls.getParts());
+            for (int i = 1; i <= 5000; i++) {
+                Records.Call c = calls.next();
+                assertEquals(i % 3 == 0 ? null : "+1555000" + (i % 17), c.number);
+                assertEquals(1600000000000L + i * 60000L, c.date);
+                assertEquals(i % 600, c.duration);
+            }
+            assertNull(calls.next());
+            assertEquals(1, calls.getVerifiedFiles());
+        }
+        Ingest.Report report = new Ingest(2).on(RecordType.CALLS, (from, r) -> { }).run(listOf(bundle(dir, root.resolve("col.zip")))).get(0);
+        assertTrue(report.toString(), report.isOk());
+        assertEquals(5000, report.getRecords(RecordType.CALLS));
+    }
+
+    @SafeVarargs
+    private static <T> List<T> listOf(T... items) {
+        List<T> list = new ArrayList<>();
+        for (T item : items) list.add(item);
+        return list;
+    }
+
+    private static long expectedDateSum() {
+        long sum = 0;
+        for (int i = 0; i < SMS + SMS_DELTA; i++) sum += smsDate(i) % 1000;
+        return sum;
+    }
+
+    private static long smsDate(int i) {
+        return 1600000000000L + i * 37003L;
+    }
+
+    private static String blobSha(int device) {
+        return HashingInputStream.hex(HashingInputStream.sha256().digest(blob(device)));
+    }
+
+    private static byte[] blob(int device) {
+        return ("image bytes of device " + device).getBytes(StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Writes one output directory, with a delta segment for SMS and one blob, and records
+     * the artifacts in its manifest as the agent does: by relative path, rows -1 for blobs.
+     * {@code metrics.json} is written but, like the agent's, not recorded.
+     */
+    private static Path acquisition(Path dir, int device) throws IOException {
+        Map<String, Long> entries = new TreeMap<>();
+        Files.createDirectories(dir.resolve("segments/sms"));
+        writeArray(dir.resolve("sms.json"), json -> {
+            for (int i = 0; i < SMS; i++) sms(json, i);
+        });
+        entries.put("sms.json", (long) SMS);
+        writeArray(dir.resolve("segments/sms/000001.json"), json -> {
+            for (int i = SMS; i < SMS + SMS_DELTA; i++) sms(json, i);
+        });
+        entries.put("segments/sms/000001.json", (long) SMS_DELTA);
+        writeArray(dir.resolve("call_logs.json"), json -> {
+            for (int i = 0; i < CALLS; i++) {
+                json.beginObject();
+                json.name("number").value("+1555000" + (i % 40));
+                json.name("date").value(smsDate(i));
+                json.name("duration").value(i % 600);
+                json.name("type").value(1 + i % 3);
+                json.endObject();
+            }
+        });
+        entries.put("call_logs.json", (long) CALLS);
+        writeArray(dir.resolve("contacts.json"), json -> {
+            for (int i = 1; i <= CONTACTS; i++) {
+                json.beginObject();
+                json.name("id").value(String.valueOf(i));
+                json.name("name").value("Contact \u00e9 " + i);
+                json.name("phones").beginArray().value("+1555100" + i).value("555-0" + i).endArray();
+                json.name("emails").beginArray().endArray();
+                json.name("organizations").beginArray().beginObject().name("company").value("Acme").endObject().endArray();
+                json.name("addresses").beginArray().endArray();
+                json.endObject();
+            }
+        });
+        entries.put("contacts.json", (long) CONTACTS);
+        writeArray(dir.resolve("calendar.json"), json -> {
+            for (int i = 1; i <= EVENTS; i++) {
+                json.beginObject();
+                json.name("id").value(i);
+                json.name("title").value("Event " + i);
+                json.name("dtstart").value(smsDate(i));
+                json.name("dtend").value(smsDate(i) + 3600000);
+                json.endObject();
+            }
+        });
+        entries.put("calendar.json", (long) EVENTS);
+        String sha = blobSha(device);
+        Path blob = dir.resolve("blobs").resolve(sha.substring(0, 2)).resolve(sha);
+        Files.createDirectories(blob.getParent());
+        Files.write(blob, blob(device));
+        entries.put(dir.relativize(blob).toString().replace('\\', '/'), -1L);
+        writeArray(dir.resolve("mms.json"), json -> {
+            for (int i = 1; i <= MMS; i++) {
+                json.beginObject();
+                json.name("id").value(i);
+                json.name("thread_id").value(i % 4);
+                json.name("date").value(smsDate(i));
+                json.name("msg_box").value(1);
+                json.name("parts").beginArray();
+                json.beginObject().name("seq").value(0).name("content_type").value("text/plain")
+                        .name("text").value("part " + i).endObject();
+                if (i % 3 == 0) {
+                    json.beginObject().name("seq").value(1).name("content_type").value("image/jpeg")
+                            .name("sha256").value(sha).name("size").value(blob(device).length).endObject();
+                }
+                json.endArray();
+                json.endObject();
+            }
+        });
+        entries.put("mms.json", (long) MMS);
+        Files.write(dir.resolve("metrics.json"), "{\"categories\": []}".getBytes(StandardCharsets.UTF_8));
+        writeManifest(dir, device, entries);
+        return dir;
+    }
+
+    private static void sms(JsonWriter json, int i) throws IOException {
+        json.beginObject();
+        json.name("address").value("+1555000" + (i % 40));
+        json.name("body").value("message " + i + " caf\u00e9 \"quoted\"\n");
+        json.name("date").value(smsDate(i));
+        json.name("type").value(1 + i % 2);
+        json.endObject();
+    }
+
+    private interface Body {
+        void write(JsonWriter json) throws IOException;
+    }
+
+    private static void writeArray(Path file, Body body) throws IOException {
+        try (JsonWriter json = new JsonWriter(new OutputStreamWriter(Files.newOutputStream(file), StandardCharsets.UTF_8))) {
+            json.setIndent("  ");
+            json.beginArray();
+            body.write(json);
+            json.endArray();
+        }
+    }
+
+    /** Rows of every manifest entry of {@code dir}, by relative path. */
+    private static Map<String, Long> entries(Path dir) throws IOException {
+        Map<String, Long> entries = new TreeMap<>();
+        try (Acquisition a = Acquisition.open(dir)) {
+            for (Manifest.Entry e : a.getManifest().getEntries().values()) entries.put(e.file, e.rows);
+        }
+        return entries;
+    }
+
+    /** Writes {@code manifest.json} in the agent's layout, hashing each listed file. */
+    private static void writeManifest(Path dir, int device, Map<String, Long> entries) throws IOException {
+        try (JsonWriter json = new JsonWriter(new OutputStreamWriter(
+                Files.newOutputStream(dir.resolve(Manifest.FILE_NAME)), StandardCharsets.UTF_8))) {
+            json.setIndent("  ");
+            json.beginObject();
+            json.name("generated").value(1700000000000L + device);
+            json.name("device").value("Pixel " + device);
+            json.name("artifacts").beginArray();
+            for (Map.Entry<String, Long> e : entries.entrySet()) {
+                Path file = dir.resolve(e.getKey());
+                json.beginObject();
+                json.name("file").value(e.getKey());
+                json.name("size").value(Files.size(file));
+                json.name("rows").value(e.getValue());
+                json.name("sha256").value(HashingInputStream.hex(HashingInputStream.sha256().digest(Files.readAllBytes(file))));
+                json.name("started").value(1700000000000L);
+                json.name("finished").value(1700000000000L);
+                json.endObject();
+            }
+            json.endArray();
+            json.endObject();
+        }
+    }
+
+    /** A bundle as the agent streams it: the manifest first, then its entries in order. */
+    private static Path bundle(Path dir, Path zip) throws IOException {
+        try (ZipOutputStream out = new ZipOutputStream(Files.newOutputStream(zip))) {
+            out.putNextEntry(new ZipEntry(Manifest.FILE_NAME));
+            Files.copy(dir.resolve(Manifest.FILE_NAME), out);
+            for (String name : entries(dir).keySet()) {
+                out.putNextEntry(new ZipEntry(name));
+                Files.copy(dir.resolve(name), out);
+            }
+        }
+        return zip;
+    }
+
+    /**
+     * Calls in the agent's columnar layout: a hidden {@code _id}, dictionary-coded numbers
+     * with NULLs, and delta-coded dates, durations and types, split over two blocks.
+     */
+    private static byte[] callsColumnar() throws IOException {
+        String[] names = {"_id", "number", "date", "duration", "type"};
+        int rows = 5000;
+        int blockRows = 4096;
+        ByteArrayOutputStream file = new ByteArrayOutputStream();
+        file.write(new byte[]{'F', 'C', 'O', 'L', 1});
+        List<long[]> index = new ArrayList<>();
+        List<String> dictionary = new ArrayList<>();
+        for (int first = 1; first <= rows; first += blockRows) {
+            int n = Math.min(blockRows, rows - first + 1);
+            long[] entry = new long[2 + names.length];
+            entry[0] = n;
+            entry[1] = file.size();
+            ByteArrayOutputStream block = new ByteArrayOutputStream();
+            for (int col = 0; col < names.length; col++) {
+                entry[2 + col] = block.size();
+                byte[] nulls = new byte[(n + 7) / 8];
+                ByteArrayOutputStream values = new ByteArrayOutputStream();
+                long previous = 0;
+                for (int r = 0; r < n; r++) {
+                    int i = first + r;
+                    if (col == 1) {
+                        if (i % 3 == 0) {
+                            nulls[r >> 3] |= 1 << (r & 7);
+                            continue;
+                        }
+                        String number = "+1555000" + (i % 17);
+                        if (!dictionary.contains(number)) dictionary.add(number);
+                        writeVarLong(values, dictionary.indexOf(number));
+                    } else {
+                        long value = col == 0 ? i : col == 2 ? 1600000000000L + i * 60000L : col == 3 ? i % 600 : 1 + i % 3;
+                        writeVarLong(values, (value - previous) << 1 ^ (value - previous) >> 63);
+                        previous = value;
+                    }
+                }
+                block.write(col == 1 ? 2 : 1);
+                block.write(nulls);
+                values.writeTo(block);
+            }
+            block.writeTo(file);
+            index.add(entry);
+        }
+        long footer = file.size();
+        writeVarLong(file, names.length);
+        for (int col = 0; col < names.length; col++) {
+            writeString(file, names[col]);
+            file.write(col == 1 ? 1 : 2);
+            file.write(col == 0 ? 0 : 1);
+        }
+        writeVarLong(file, index.size());
+        for (long[] entry : index) for (long v : entry) writeVarLong(file, v);
+        for (int col = 0; col < names.length; col++) {
+            List<String> values = col == 1 ? dictionary : new ArrayList<String>();
+            writeVarLong(file, values.size());
+            for (String v : values) writeString(file, v);
+        }
+        for (int i = 0; i < 8; i++) file.write((int) (footer >>> (56 - 8 * i)));
+        file.write(new byte[]{'F', 'C', 'O', 'L'});
+        return file.toByteArray();
+    }
+
+    private static void writeVarLong(OutputStream out, long value) throws IOException {
+        while ((value & ~0x7FL) != 0) {
+            out.write((int) ((value & 0x7F) | 0x80));
+            value >>>= 7;
+        }
+        out.write((int) value);
+    }
+
+    private static void writeString(OutputStream out, String value) throws IOException {
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        writeVarLong(out, bytes.length);
+        out.write(bytes);
+    }
+}